@@ -0,0 +1,103 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.google.cloud.Timestamp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates test documents shaped like the ones the mobile app stores, with any number of games and images,
+ * for the benchmarks of the per-test kernels. Benchmarks over whole datasets use the DatasetGenerator.
+ * The same seed always generates the same tests, so results of different runs are comparable.
+ */
+final class SyntheticTests {
+
+    private static final String[] THEMES = {"animals", "vehicles", "fruits"};
+    private static final int IMAGES_PER_THEME = 10;
+    private static final long FIRST_TEST_SECONDS = 1_672_531_200L; // 2023-01-01T00:00:00Z
+    private static final long SECONDS_BETWEEN_TESTS = 6 * 3600L; // Spreads 5,000 tests over about three and a half years
+
+    private SyntheticTests() {
+    }
+
+    /**
+     * Generates the fields of a test document, as written by {@link TestIngestService} but without the summary.
+     *
+     * @param random        the source of randomness.
+     * @param userId        the user ID of the test.
+     * @param testIndex     the position of the test in the user's history, which determines its date.
+     * @param gamesPerTest  the number of games in the test.
+     * @param imagesPerGame the number of images shown in each game.
+     * @return the test fields.
+     */
+    static Map<String, Object> testFields(Random random, String userId, int testIndex, int gamesPerTest, int imagesPerGame) {
+        String mode = random.nextBoolean() ? "mode1" : "mode2";
+        long testSeconds = FIRST_TEST_SECONDS + testIndex * SECONDS_BETWEEN_TESTS;
+
+        List<Map<String, Object>> gamesInTest = new ArrayList<>();
+        for (int g = 0; g < gamesPerTest; g++) {
+            gamesInTest.add(gameFields(random, "game-" + g, mode, testSeconds + g * 90L, imagesPerGame));
+        }
+
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("userId", userId);
+        fields.put("gamesInTest", gamesInTest);
+        return fields;
+    }
+
+    private static Map<String, Object> gameFields(Random random, String id, String mode, long seconds, int imagesPerGame) {
+        String theme = THEMES[random.nextInt(THEMES.length)];
+        int stimulusIndex = random.nextInt(IMAGES_PER_THEME);
+        String stimuli = theme + "-" + stimulusIndex;
+
+        List<String> shownImages = new ArrayList<>(imagesPerGame);
+        List<Boolean> result = new ArrayList<>(imagesPerGame);
+        List<Integer> reactionTimes = new ArrayList<>();
+        int commissionErrors = 0;
+        int omissionErrors = 0;
+        int hits = 0;
+        int targets = 0;
+
+        for (int i = 0; i < imagesPerGame; i++) {
+            boolean stimulusShown = random.nextInt(10) == 0; // One image in ten is the stimuli
+            int imageIndex = stimulusShown ? stimulusIndex : (stimulusIndex + 1 + random.nextInt(IMAGES_PER_THEME - 1)) % IMAGES_PER_THEME;
+            String image = theme + "-" + imageIndex;
+            boolean target = "mode1".equals(mode) == stimulusShown; // In mode2 every image except the stimuli is the target
+            boolean tapped = random.nextDouble() < (target ? 0.85 : 0.08);
+
+            shownImages.add(image);
+            result.add(tapped);
+            if (tapped) {
+                reactionTimes.add(Math.max(150, (int) Math.round(450 + random.nextGaussian() * 120)));
+            }
+            if (target) {
+                targets++;
+                if (tapped) {
+                    hits++;
+                } else {
+                    omissionErrors++;
+                }
+            } else if (tapped) {
+                commissionErrors++;
+            }
+        }
+
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("id", id);
+        fields.put("mode", mode);
+        fields.put("theme", theme);
+        fields.put("stimuli", stimuli);
+        fields.put("timestamp", Timestamp.ofTimeSecondsAndNanos(seconds, 0));
+        fields.put("commissionErrors", commissionErrors);
+        fields.put("omissionErrors", omissionErrors);
+        fields.put("hitRate", targets > 0 ? hits * 100 / targets : 0);
+        fields.put("shownImages", shownImages);
+        fields.put("result", result);
+        fields.put("reactionTimes", reactionTimes);
+        fields.put("intervals", TestIngestService.INTERVALS); // The values the analytics group reaction times by
+        return fields;
+    }
+}
@@ -0,0 +1,75 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the per-test kernels every analytics endpoint is built on: decoding a stored test
+ * and computing its metrics, for a typical test and for tests with unusually many or long games.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TestKernelBenchmark {
+
+    @Param({"6", "60"})
+    public int gamesPerTest;
+
+    @Param({"60", "600"})
+    public int imagesPerGame;
+
+    private Map<String, Object> fields;
+    private TestRecord record;
+    private long documentBytes;
+    private TestService testService;
+
+    @Setup
+    public void setUp() {
+        fields = SyntheticTests.testFields(new Random(42), "user-0", 0, gamesPerTest, imagesPerGame);
+        record = TestRecord.decode("test-0", fields);
+        documentBytes = TestSummaryProjection.estimateDocumentSize("test-0", fields);
+        TestSummaryProjection summaryProjection = new TestSummaryProjection();
+        testService = new TestService(new TestSummaryCache(0, 0), null, summaryProjection, new InMemoryTestRepository(summaryProjection));
+    }
+
+    @Benchmark
+    public TestRecord decode() {
+        return TestRecord.decode("test-0", fields);
+    }
+
+    @Benchmark
+    public TestSummary computeSummary() {
+        return testService.computeSummary(record); // Behind summarizeTest, processTappedImagesForTest and the reaction time endpoints
+    }
+
+    @Benchmark
+    public TestErrorSummary computeStoredSummary() {
+        return TestErrorSummary.fromRecord(record, documentBytes); // Computed at ingest and by the summary backfill
+    }
+
+    @Benchmark
+    public TestSummary decodeAndComputeSummary() {
+        return testService.computeSummary(TestRecord.decode("test-0", fields)); // A summary cache miss after the read
+    }
+
+    @Benchmark
+    public long estimateDocumentSize() {
+        return TestSummaryProjection.estimateDocumentSize("test-0", fields);
+    }
+}
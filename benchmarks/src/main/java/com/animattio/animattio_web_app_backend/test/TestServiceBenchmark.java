@@ -0,0 +1,121 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.animattio.animattio_web_app_backend.dataset.DatasetGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link TestService} computations over the tests of one user, from a single test to 5,000 tests.
+ * Tests come from the {@link DatasetGenerator}, so they have the shapes of the load-test dataset,
+ * and are held by the {@link InMemoryTestRepository} with their stored summaries, as written at ingest,
+ * and day roll-ups are served from the {@link InMemoryTestRollupRepository}, so only the computation of the service is measured.
+ * The summary cache holds no entries, so per-test metrics are computed on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TestServiceBenchmark {
+
+    private static final String USER_ID = DatasetGenerator.userId(0);
+    private static final int GAMES_PER_TEST = 6;
+
+    @Param({"1", "50", "500", "5000"})
+    public int testsPerUser;
+
+    private TestService testService;
+    private List<String> testIds;
+    private List<TestErrorSummary> summaries;
+
+    @Setup
+    public void setUp() throws ExecutionException, InterruptedException {
+        TestSummaryProjection summaryProjection = new TestSummaryProjection();
+        InMemoryTestRepository testRepository = new InMemoryTestRepository(summaryProjection);
+        TestRollupStore rollupStore = new TestRollupStore(testRepository, new InMemoryTestRollupRepository());
+        TestIngestService testIngestService = new TestIngestService(testRepository, rollupStore);
+        DatasetGenerator generator = new DatasetGenerator(42, 1, 1, testsPerUser, GAMES_PER_TEST, testIngestService);
+        testIds = new ArrayList<>();
+        for (int i = 0; i < testsPerUser; i++) {
+            String testId = DatasetGenerator.testId(0, i);
+            testRepository.save(testId, testIngestService.toDocument(testId, generator.test(0, i))).get();
+            testIds.add(testId);
+        }
+        summaries = testRepository.findSummariesByUser(USER_ID).get();
+        rollupStore.rebuild(USER_ID).get(); // A current roll-up, as stored by the backfill
+
+        TestSummaryCache summaryCache = new TestSummaryCache(0, 0); // Disabled, every summary is computed
+        testService = new TestService(summaryCache, rollupStore, summaryProjection, testRepository);
+    }
+
+    @Benchmark
+    public List<Test> getTestsByUser() throws ExecutionException, InterruptedException {
+        return testService.getTestsByUser(USER_ID);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> sumErrorsForUserTests() throws ExecutionException, InterruptedException {
+        return testService.sumErrorsForUserTests(USER_ID);
+    }
+
+    @Benchmark
+    public Long countTestsByUser() throws ExecutionException, InterruptedException {
+        return testService.countTestsByUserAsync(USER_ID).get();
+    }
+
+    @Benchmark
+    public List<TestRollupStore.RollupBucket> buildDailyRollup() {
+        return TestRollupStore.bucketsFromSummaries(summaries); // Done when a user's roll-up is not current
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> aggregateErrorsByMonthAndMode() throws ExecutionException, InterruptedException {
+        return testService.aggregateErrorsByMonthAndMode(USER_ID);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> aggregateErrorsByFullDateAndMode() throws ExecutionException, InterruptedException {
+        return testService.aggregateErrorsByFullDateAndMode(USER_ID);
+    }
+
+    @Benchmark
+    public Map<String, ReactionTimeHistogram> summarizeReactionTimesForTests() throws ExecutionException, InterruptedException {
+        return testService.summarizeReactionTimesForTests(testIds); // Every test of the user, computed from its games
+    }
+
+    @Benchmark
+    public TestSummary summarizeTest() throws ExecutionException, InterruptedException {
+        return testService.summarizeTest(testIds.get(0));
+    }
+
+    @Benchmark
+    public Map<String, List<Long>> processTappedImagesForTest() throws ExecutionException, InterruptedException {
+        return testService.processTappedImagesForTest(testIds.get(0));
+    }
+
+    @Benchmark
+    public Map<String, Object> sumCommisions() throws ExecutionException, InterruptedException {
+        return testService.sumCommisions(testIds.get(0)); // Read from the stored summary
+    }
+
+    @Benchmark
+    public int countTotalStimuliOccurrences() throws ExecutionException, InterruptedException {
+        return testService.countTotalStimuliOccurrences(testIds.get(0)); // Read from the stored summary
+    }
+}
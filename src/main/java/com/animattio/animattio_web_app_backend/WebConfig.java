@@ -1,12 +1,25 @@
 package com.animattio.animattio_web_app_backend;
 
+import com.animattio.animattio_web_app_backend.config.StreamingTimeoutInterceptor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer { //  this interface allows to override methods to customize configurations like CORS
+    private final StreamingTimeoutInterceptor streamingTimeoutInterceptor;
+
+    public WebConfig(StreamingTimeoutInterceptor streamingTimeoutInterceptor) {
+        this.streamingTimeoutInterceptor = streamingTimeoutInterceptor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) { // Streams keep their own timeout instead of spring.mvc.async.request-timeout
+        configurer.registerCallableInterceptors(streamingTimeoutInterceptor);
+    }
+
     @Override
     public void addCorsMappings(CorsRegistry registry) { // Configures which domains, HTTP methods, and headers are allowed to access backend
         registry.addMapping("/**") // Applies the CORS configuration to all endpoints
@@ -0,0 +1,255 @@
+package com.animattio.animattio_web_app_backend.authentication;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Issues and verifies short-lived session tokens signed locally with HMAC-SHA256.
+ * A session token is minted at sign-in from a verified Firebase ID token and carries the UID and role of the user,
+ * so later requests are authenticated with one HMAC computation instead of a Firebase verification and a role lookup.
+ * <p>
+ * Tokens have the form {@code sess.<payload>.<signature>}, both parts base64url encoded, where the payload
+ * holds the key ID ("kid"), "uid", "role", "iat" and "exp". Keys are configured as {@code kid:base64-secret} pairs;
+ * new tokens are signed with the active key, while tokens of the other configured keys stay valid until they expire,
+ * so keys can be rotated without signing everybody out. Revoking a key ID rejects every token signed with it.
+ * <p>
+ * Keys are only read from the configuration, so every instance of the application accepts the same tokens,
+ * and rotating or revoking a key is a configuration change followed by a redeploy; there is no endpoint for either.
+ * To rotate, add the new key to {@code custom.session_keys}, point {@code custom.session_active_kid} at it and redeploy,
+ * then remove the old key once its tokens expired; to revoke, add the key ID to {@code custom.session_revoked_kids}
+ * and redeploy. Without configured keys session tokens are disabled: sign-in issues none, and clients keep
+ * authenticating every request with their Firebase ID token.
+ */
+@Service
+public class SessionTokenService {
+
+    public static final String TOKEN_PREFIX = "sess.";
+    private static final Logger logger = LoggerFactory.getLogger(SessionTokenService.class);
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    /**
+     * The verified contents of a session token.
+     */
+    public static class SessionToken {
+        private final String token;
+        private final String keyId;
+        private final String uid;
+        private final String role;
+        private final Instant expiresAt;
+
+        private SessionToken(String token, String keyId, String uid, String role, Instant expiresAt) {
+            this.token = token;
+            this.keyId = keyId;
+            this.uid = uid;
+            this.role = role;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public String getKeyId() {
+            return keyId;
+        }
+
+        public String getUid() {
+            return uid;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public Instant getExpiresAt() {
+            return expiresAt;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final long ttlSeconds;
+    private final Map<String, SecretKeySpec> keys = new ConcurrentHashMap<>(); // kid -> key
+    private final Set<String> revokedKeyIds = ConcurrentHashMap.newKeySet();
+    private final String activeKeyId;
+
+    /**
+     * Constructs the service with the configured keys.
+     *
+     * @param objectMapper   the mapper used to write and read token payloads.
+     * @param ttlSeconds     the maximum lifetime of a session token in seconds.
+     * @param configuredKeys comma separated {@code kid:base64-secret} pairs, or empty to disable session tokens.
+     * @param activeKeyId    the ID of the key new tokens are signed with, or empty for the first configured key.
+     * @param revokedKeyIds  comma separated IDs of keys whose tokens are rejected.
+     * @throws IllegalArgumentException if a key is malformed or the active key is not configured.
+     */
+    public SessionTokenService(ObjectMapper objectMapper,
+                               @Value("${custom.session_token_ttl_seconds:900}") long ttlSeconds,
+                               @Value("${custom.session_keys:}") String configuredKeys,
+                               @Value("${custom.session_active_kid:}") String activeKeyId,
+                               @Value("${custom.session_revoked_kids:}") String revokedKeyIds) {
+        this.objectMapper = objectMapper;
+        this.ttlSeconds = ttlSeconds;
+
+        String firstKeyId = null;
+        for (String entry : configuredKeys.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.indexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Session keys must be configured as kid:base64-secret pairs");
+            }
+            String keyId = entry.substring(0, separator).trim();
+            keys.put(keyId, new SecretKeySpec(Base64.getDecoder().decode(entry.substring(separator + 1).trim()), ALGORITHM));
+            if (firstKeyId == null) {
+                firstKeyId = keyId;
+            }
+        }
+        for (String keyId : revokedKeyIds.split(",")) {
+            if (!keyId.isBlank()) {
+                this.revokedKeyIds.add(keyId.trim());
+            }
+        }
+
+        if (!activeKeyId.isBlank()) {
+            if (!keys.containsKey(activeKeyId)) {
+                throw new IllegalArgumentException("The active session key " + activeKeyId + " is not configured");
+            }
+            this.activeKeyId = activeKeyId;
+        } else {
+            this.activeKeyId = firstKeyId; // null without configured keys
+        }
+        if (this.activeKeyId == null) {
+            logger.warn("Session tokens are disabled because custom.session_keys is empty; "
+                    + "every request is authenticated with its Firebase ID token");
+        }
+    }
+
+    /**
+     * Returns whether session tokens are issued, which requires configured keys.
+     *
+     * @return true if session tokens are enabled.
+     */
+    public boolean isEnabled() {
+        return activeKeyId != null;
+    }
+
+    /**
+     * Mints a session token for a user.
+     *
+     * @param uid            the UID of the user.
+     * @param role           the role of the user.
+     * @param notAfterMillis the latest expiry in epoch milliseconds, e.g. the expiry of the Firebase ID token.
+     * @return the signed session token and its contents.
+     * @throws IllegalStateException if session tokens are disabled.
+     */
+    public SessionToken mint(String uid, String role, long notAfterMillis) {
+        String keyId = activeKeyId;
+        if (keyId == null) {
+            throw new IllegalStateException("Session tokens are disabled, custom.session_keys is empty");
+        }
+        long now = Instant.now().getEpochSecond();
+        long expiresAt = Math.min(now + ttlSeconds, notAfterMillis / 1000);
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("kid", keyId);
+        payload.put("uid", uid);
+        payload.put("role", role);
+        payload.put("iat", now);
+        payload.put("exp", expiresAt);
+
+        try {
+            String encodedPayload = ENCODER.encodeToString(objectMapper.writeValueAsBytes(payload));
+            String token = TOKEN_PREFIX + encodedPayload + "." + ENCODER.encodeToString(sign(keys.get(keyId), encodedPayload));
+            return new SessionToken(token, keyId, uid, role, Instant.ofEpochSecond(expiresAt));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not write the session token payload", e);
+        }
+    }
+
+    /**
+     * Verifies a session token locally.
+     *
+     * @param token the session token, starting with {@link #TOKEN_PREFIX}.
+     * @return the contents of the token, or null if the token is malformed, forged, expired or signed with a revoked key.
+     */
+    public SessionToken verify(String token) {
+        if (!token.startsWith(TOKEN_PREFIX)) {
+            return null;
+        }
+        String[] parts = token.substring(TOKEN_PREFIX.length()).split("\\.");
+        if (parts.length != 2) {
+            return null;
+        }
+
+        try {
+            Map<?, ?> payload = objectMapper.readValue(DECODER.decode(parts[0]), Map.class);
+            Object keyId = payload.get("kid");
+            SecretKeySpec key = keys.get(String.valueOf(keyId));
+            if (key == null || revokedKeyIds.contains(String.valueOf(keyId))) {
+                return null;
+            }
+            if (!MessageDigest.isEqual(sign(key, parts[0]), DECODER.decode(parts[1]))) { // Constant-time comparison
+                return null;
+            }
+
+            Object uid = payload.get("uid");
+            Object role = payload.get("role");
+            Object exp = payload.get("exp");
+            if (!(uid instanceof String) || !(role instanceof String) || !(exp instanceof Number)) {
+                return null;
+            }
+            Instant expiresAt = Instant.ofEpochSecond(((Number) exp).longValue());
+            if (!Instant.now().isBefore(expiresAt)) {
+                return null;
+            }
+            return new SessionToken(token, (String) keyId, (String) uid, (String) role, expiresAt);
+        } catch (IllegalArgumentException | IOException e) {
+            return null; // Not base64 or not a JSON payload
+        }
+    }
+
+    /**
+     * Returns whether session tokens are enabled, the active key ID and the known and revoked key IDs, without the secrets.
+     *
+     * @return a map with the key IDs.
+     */
+    public Map<String, Object> getKeyStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", isEnabled());
+        status.put("activeKeyId", activeKeyId);
+        status.put("keyIds", Set.copyOf(keys.keySet()));
+        status.put("revokedKeyIds", Set.copyOf(revokedKeyIds));
+        status.put("ttlSeconds", ttlSeconds);
+        return status;
+    }
+
+    private static byte[] sign(SecretKeySpec key, String encodedPayload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(encodedPayload.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e); // Every Java runtime provides HmacSHA256
+        }
+    }
+}
@@ -1,29 +1,114 @@
-// not used
 package com.animattio.animattio_web_app_backend.authentication;
-import com.google.firebase.auth.FirebaseAuth;
+import com.animattio.animattio_web_app_backend.config.RoleDirectory;
+import com.animattio.animattio_web_app_backend.config.VerifiedTokenCache;
 import com.google.firebase.auth.FirebaseToken;
 import com.google.firebase.auth.FirebaseAuthException;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Controller for signing in with a Firebase ID token.
+ * A verified ID token is exchanged for a short-lived session token, which later requests send instead of the ID token
+ * so they are authenticated locally. Without configured session keys no session token is issued and clients keep
+ * sending their ID token. Admins can list the keys session tokens are signed with and read the statistics
+ * of the verified token cache and the role directory; keys are rotated and revoked through the configuration, see {@link SessionTokenService}.
+ */
 @RestController
 @RequestMapping("/signin")
 public class SignInController {
 
-    @Autowired
-    private FirebaseAuth firebaseAuth;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final RoleDirectory roleDirectory;
+    private final SessionTokenService sessionTokenService;
+
+    /**
+     * Constructs a new instance of SignInController.
+     *
+     * @param verifiedTokenCache  cache used to verify Firebase ID tokens.
+     * @param roleDirectory       directory used to resolve the role of the user.
+     * @param sessionTokenService service minting the session tokens.
+     */
+    public SignInController(VerifiedTokenCache verifiedTokenCache, RoleDirectory roleDirectory,
+                            SessionTokenService sessionTokenService) {
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.roleDirectory = roleDirectory;
+        this.sessionTokenService = sessionTokenService;
+    }
 
+    /**
+     * Verifies a Firebase ID token and issues a session token for its user.
+     *
+     * @param token The Authorization header with the Firebase ID token.
+     * @return A response entity with the role of the user and, if session tokens are enabled, the session token
+     *         and its expiry, or status 401 if the ID token is invalid.
+     */
     @PostMapping
     public ResponseEntity<?> handleRequest(@RequestHeader("Authorization") String token) {
         try {
             String idToken = token.replace("Bearer ", "");
-            FirebaseToken decodedToken = firebaseAuth.verifyIdToken(idToken);
+            FirebaseToken decodedToken = verifiedTokenCache.verify(idToken);
             String uid = decodedToken.getUid();
-            return ResponseEntity.ok("Authenticated successfully");
+            String role = roleDirectory.roleOf(decodedToken);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Authenticated successfully");
+            response.put("role", role);
+            if (sessionTokenService.isEnabled()) { // Otherwise the client keeps sending its ID token
+                Object exp = decodedToken.getClaims().get("exp"); // The session never outlives the ID token it was issued for
+                long notAfterMillis = exp instanceof Number ? ((Number) exp).longValue() * 1000 : Long.MAX_VALUE;
+                SessionTokenService.SessionToken sessionToken = sessionTokenService.mint(uid, role, notAfterMillis);
+                response.put("sessionToken", sessionToken.getToken());
+                response.put("expiresAt", sessionToken.getExpiresAt().toString());
+            }
+            return ResponseEntity.ok(response);
         } catch (FirebaseAuthException e) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid token");
+        } catch (ExecutionException | InterruptedException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("error", "Error resolving the user's role"));
         }
     }
+
+    /**
+     * Returns the IDs of the session keys. Keys are rotated and revoked by changing the configuration and redeploying,
+     * so this endpoint only shows which keys every instance was started with.
+     *
+     * Accessible only to users with the "admin" role.
+     *
+     * @return A response entity with whether session tokens are enabled and the active, known and revoked key IDs.
+     */
+    @GetMapping("/keys")
+    public ResponseEntity<?> getKeys() {
+        return ResponseEntity.ok(sessionTokenService.getKeyStatus());
+    }
+
+    /**
+     * Returns the hit, miss, eviction and expiration statistics of the verified ID token cache.
+     *
+     * Accessible only to users with the "admin" role.
+     *
+     * @return A response entity containing the token cache statistics.
+     */
+    @GetMapping("/token-cache/stats")
+    public ResponseEntity<Map<String, Object>> getTokenCacheStatistics() {
+        return ResponseEntity.ok(verifiedTokenCache.getStatistics());
+    }
+
+    /**
+     * Returns how many roles were resolved from token claims, from the role directory and by reading doctor documents.
+     *
+     * Accessible only to users with the "admin" role.
+     *
+     * @return A response entity containing the role directory statistics.
+     */
+    @GetMapping("/role-directory/stats")
+    public ResponseEntity<Map<String, Object>> getRoleDirectoryStatistics() {
+        return ResponseEntity.ok(roleDirectory.getStatistics());
+    }
 }
@@ -0,0 +1,49 @@
+package com.animattio.animattio_web_app_backend.cohort;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Controller for analytics over all patients of a doctor.
+ */
+@RestController
+@RequestMapping("/cohort")
+public class CohortController {
+    private final CohortService cohortService;
+
+    /**
+     * Constructs a new instance of CohortController with the given service.
+     *
+     * @param cohortService The service layer for cohort analytics.
+     */
+    public CohortController(CohortService cohortService) {
+        this.cohortService = cohortService;
+    }
+
+    /**
+     * Retrieves per-patient and cohort-level error aggregates for all patients of a doctor in one request.
+     *
+     * @param doctorId The ID of the doctor.
+     * @return A response entity containing the cohort aggregates or an error message.
+     */
+    @GetMapping("/summary")
+    public ResponseEntity<?> getCohortSummary(@RequestParam String doctorId) {
+        try {
+            return ResponseEntity.ok(cohortService.getCohortSummary(doctorId));
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode())
+                    .body(Collections.singletonMap("error", e.getReason()));
+        } catch (ExecutionException | InterruptedException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("error", "An error occurred while aggregating the cohort"));
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.animattio.animattio_web_app_backend.cohort;
+
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.animattio.animattio_web_app_backend.patient.Patient;
+import com.animattio.animattio_web_app_backend.patient.PatientRepository;
+import com.animattio.animattio_web_app_backend.patient.UserDirectoryRepository;
+import com.animattio.animattio_web_app_backend.test.TestErrorSummary;
+import com.animattio.animattio_web_app_backend.test.TestRepository;
+import com.google.cloud.Timestamp;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Service class for analytics over all patients of a doctor.
+ * The per-patient test summary reads are issued in parallel on the asynchronous repository futures,
+ * with the number of reads in flight bounded by a semaphore, so the whole cohort is read
+ * in about one Firestore round trip instead of one round trip per patient.
+ */
+@Service
+public class CohortService {
+    private final PatientRepository patientRepository;
+    private final UserDirectoryRepository userDirectoryRepository;
+    private final TestRepository testRepository;
+    private final int maxConcurrency;
+
+    /**
+     * Constructs a new instance of CohortService.
+     *
+     * @param patientRepository       the repository storing the patients.
+     * @param userDirectoryRepository the repository mapping patient usernames to user IDs.
+     * @param testRepository          the repository storing the tests.
+     * @param maxConcurrency          the maximum number of test summary reads in flight for one cohort request.
+     */
+    public CohortService(PatientRepository patientRepository, UserDirectoryRepository userDirectoryRepository,
+                         TestRepository testRepository, @Value("${custom.cohort_max_concurrency:16}") int maxConcurrency) {
+        this.patientRepository = patientRepository;
+        this.userDirectoryRepository = userDirectoryRepository;
+        this.testRepository = testRepository;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Aggregates the test errors of every patient of a doctor into per-patient and cohort-level results.
+     *
+     * @param doctorId the username of the doctor.
+     * @return a map with the "cohort" aggregate and the list of per-patient aggregates under "patients".
+     * @throws ExecutionException   if a Firestore operation fails.
+     * @throws InterruptedException if a Firestore operation is interrupted.
+     * @throws ResponseStatusException if the doctor has no patients.
+     */
+    public Map<String, Object> getCohortSummary(String doctorId) throws ExecutionException, InterruptedException {
+        List<Patient> patients = FirestoreFutures.await(patientRepository.findByDoctor(doctorId));
+        if (patients.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No patients found for the provided doctor ID: " + doctorId);
+        }
+
+        List<String> usernames = new ArrayList<>();
+        for (Patient patient : patients) {
+            if (patient.getPatientUsername() != null) {
+                usernames.add(patient.getPatientUsername());
+            }
+        }
+        Map<String, List<String>> userIdsByUsername = FirestoreFutures.await(userDirectoryRepository.findUserIdsByUsernames(usernames));
+
+        Semaphore permits = new Semaphore(maxConcurrency); // Bounds the reads in flight for this request
+        Map<String, CompletableFuture<List<TestErrorSummary>>> testReads = new LinkedHashMap<>();
+        for (List<String> userIds : userIdsByUsername.values()) {
+            for (String userId : userIds) {
+                testReads.put(userId, submit(permits, () -> testRepository.findSummariesByUser(userId)));
+                // Issued without waiting for the previous reads
+            }
+        }
+
+        CohortAggregate cohort = new CohortAggregate();
+        List<Map<String, Object>> patientResults = new ArrayList<>();
+        int patientsWithTests = 0;
+
+        for (Patient patient : patients) {
+            CohortAggregate patientAggregate = new CohortAggregate();
+            for (String userId : userIdsByUsername.getOrDefault(patient.getPatientUsername(), Collections.emptyList())) {
+                for (TestErrorSummary summary : FirestoreFutures.await(testReads.get(userId))) {
+                    patientAggregate.add(summary);
+                    cohort.add(summary);
+                }
+            }
+            if (patientAggregate.testCount > 0) {
+                patientsWithTests++;
+            }
+
+            Map<String, Object> patientResult = patientAggregate.toMap();
+            patientResult.put("patientUsername", patient.getPatientUsername());
+            patientResult.put("age", patient.getAge());
+            patientResult.put("gender", patient.getGender());
+            patientResult.put("type", patient.getType());
+            patientResults.add(patientResult);
+        }
+
+        Map<String, Object> cohortResult = cohort.toMap();
+        cohortResult.put("patientCount", patients.size());
+        cohortResult.put("patientsWithTests", patientsWithTests);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("cohort", cohortResult);
+        response.put("patients", patientResults);
+        return response;
+    }
+
+    /**
+     * Starts a read once a permit is free; the permit is returned when the read completes.
+     *
+     * @param permits the permits bounding the reads in flight.
+     * @param read    starts the read.
+     * @return the future of the read result.
+     * @throws InterruptedException if the thread is interrupted while waiting for a permit.
+     */
+    private <T> CompletableFuture<T> submit(Semaphore permits, Supplier<CompletableFuture<T>> read) throws InterruptedException {
+        permits.acquire();
+        CompletableFuture<T> future;
+        try {
+            future = read.get();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        future.whenComplete((result, error) -> permits.release()); // Released on success and on failure
+        return future;
+    }
+
+    /**
+     * Running totals of the test errors of one patient or of the whole cohort.
+     */
+    private static class CohortAggregate {
+        private int testCount;
+        private long commissionErrors;
+        private long omissionErrors;
+        private Timestamp lastTestTimestamp;
+        private final Map<String, long[]> modes = new TreeMap<>(); // mode -> {testCount, commissions, omissions}
+
+        private void add(TestErrorSummary summary) {
+            testCount++;
+            commissionErrors += summary.getCommissionErrors();
+            omissionErrors += summary.getOmissionErrors();
+
+            Timestamp endTimestamp = summary.getEndTimestamp();
+            if (endTimestamp != null && (lastTestTimestamp == null || endTimestamp.compareTo(lastTestTimestamp) > 0)) {
+                lastTestTimestamp = endTimestamp;
+            }
+
+            if (summary.getFirstMode() != null) { // Tests are grouped by the mode of their first game, as in the summed errors
+                long[] totals = modes.computeIfAbsent(summary.getFirstMode(), mode -> new long[3]);
+                totals[0]++;
+                totals[1] += summary.getCommissionErrors();
+                totals[2] += summary.getOmissionErrors();
+            }
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> result = new HashMap<>();
+            result.put("testCount", testCount);
+            result.put("commissionErrors", commissionErrors);
+            result.put("omissionErrors", omissionErrors);
+            result.put("meanCommissionErrors", testCount > 0 ? (double) commissionErrors / testCount : null);
+            result.put("meanOmissionErrors", testCount > 0 ? (double) omissionErrors / testCount : null);
+            result.put("lastTestDate", lastTestTimestamp != null ?
+                    ZonedDateTime.ofInstant(Instant.ofEpochSecond(lastTestTimestamp.getSeconds(), lastTestTimestamp.getNanos()),
+                            ZoneId.of("UTC+2")).format(DateTimeFormatter.ofPattern("d MMMM, yyyy")) : null);
+
+            Map<String, Object> modeResults = new LinkedHashMap<>();
+            for (Map.Entry<String, long[]> entry : modes.entrySet()) {
+                long[] totals = entry.getValue();
+                Map<String, Object> modeResult = new HashMap<>();
+                modeResult.put("testCount", totals[0]);
+                modeResult.put("commissionErrors", totals[1]);
+                modeResult.put("omissionErrors", totals[2]);
+                modeResults.put(entry.getKey(), modeResult);
+            }
+            result.put("modes", modeResults);
+            return result;
+        }
+    }
+}
@@ -1,10 +1,7 @@
 package com.animattio.animattio_web_app_backend.config;
 
-import com.google.firebase.auth.FirebaseAuth;
+import com.animattio.animattio_web_app_backend.authentication.SessionTokenService;
 import com.google.firebase.auth.FirebaseToken;
-import com.google.firebase.cloud.FirestoreClient;
-import com.google.cloud.firestore.DocumentSnapshot;
-import com.google.cloud.firestore.Firestore;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -21,23 +18,30 @@ import java.util.Collections;
 
 /**
  * FirebaseAuthFilter is a Spring Security filter that processes Firebase authentication tokens.
- * It validates the Firebase ID token, retrieves the user's role from Firestore,
- * and sets the authentication context for the request.
+ * It validates either a session token issued at sign-in, locally and without any remote call,
+ * or a Firebase ID token through the {@link VerifiedTokenCache}, and sets the authentication context for the request.
+ * Roles are resolved claims first, see {@link RoleDirectory}: the role comes from the token, the session token carrying
+ * the role resolved at sign-in, and the directory is only consulted for ID tokens issued before the "role" claim was set.
  */
 @Component
 public class FirebaseAuthFilter extends OncePerRequestFilter {
 
-    private final Firestore firestore;
-    private final FirebaseAuth firebaseAuth;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final RoleDirectory roleDirectory;
+    private final SessionTokenService sessionTokenService;
 
     /**
      * Constructor for FirebaseAuthFilter.
      *
-     * @param firebaseAuth FirebaseAuth instance used for verifying ID tokens.
+     * @param verifiedTokenCache  cache verifying the Firebase ID tokens.
+     * @param roleDirectory       directory resolving the roles of tokens without a role claim.
+     * @param sessionTokenService service verifying the session tokens issued at sign-in.
      */
-    public FirebaseAuthFilter(FirebaseAuth firebaseAuth) {
-        this.firebaseAuth = firebaseAuth; // FirebaseAuth instance used to verify Firebase ID tokens
-        this.firestore = FirestoreClient.getFirestore(); // Firestore client to query the Firestore database
+    public FirebaseAuthFilter(VerifiedTokenCache verifiedTokenCache, RoleDirectory roleDirectory,
+                              SessionTokenService sessionTokenService) {
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.roleDirectory = roleDirectory;
+        this.sessionTokenService = sessionTokenService;
     }
 
     /**
@@ -59,22 +63,26 @@ public class FirebaseAuthFilter extends OncePerRequestFilter {
         if (token != null && token.startsWith("Bearer ")) { // Checks if the token is present and starts with "Bearer "
             token = token.substring(7); // Remove "Bearer " from the beginning
             try {
-                FirebaseToken decodedToken = FirebaseAuth.getInstance().verifyIdToken(token); // Verifying the Firebase ID token
-                String uid = decodedToken.getUid(); // UID retrieved from token
-
-                DocumentSnapshot userDoc = firestore.collection("doctors").document(uid).get().get(); // document with fetched UID
-
-                String role = "doctor"; // Default role
-                if (userDoc.exists()) {
-                    role = (String) userDoc.get("role"); // role from the Firestore document
-                    if (role == null) {
-                        role = "doctor"; // Default role if there is no role in firestore
+                String uid;
+                String role;
+                if (token.startsWith(SessionTokenService.TOKEN_PREFIX)) { // Session token issued at sign-in
+                    SessionTokenService.SessionToken sessionToken = sessionTokenService.verify(token); // HMAC check only
+                    if (sessionToken == null) {
+                        throw new IllegalArgumentException("Invalid session token");
                     }
+                    uid = sessionToken.getUid();
+                    role = sessionToken.getRole(); // The role signed at sign-in, no lookup
+                } else {
+                    FirebaseToken decodedToken = verifiedTokenCache.verify(token); // Verifying the Firebase ID token,
+                    // the signature is only checked the first time a token is seen
+                    uid = decodedToken.getUid(); // UID retrieved from token
+                    role = roleDirectory.roleOf(decodedToken); // role from the token claims, or from the doctor document
+                    // for tokens without the claim, "doctor" if there is no document or no role
                 }
                 // Authentication Object
                 // UsernamePasswordAuthenticationToken is a Spring Security class used to represent an authenticated user
                 UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                        decodedToken.getUid(), null, Collections.singleton(new SimpleGrantedAuthority("ROLE_" + role))
+                        uid, null, Collections.singleton(new SimpleGrantedAuthority("ROLE_" + role))
                 );
                 // Credentials are not needed because the token already verified the user
                 // SimpleGrantedAuthority is used to represent a single role or permission in Spring Security for example ROLE_doctor
@@ -1,5 +1,6 @@
 package com.animattio.animattio_web_app_backend.config;
 
+import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
@@ -7,6 +8,7 @@ import com.google.firebase.auth.FirebaseAuth;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.core.io.ClassPathResource;
 
 import java.io.IOException;
@@ -16,6 +18,8 @@ import java.io.InputStream;
  * Configuration class for initializing Firebase services in the application.
  * This class sets up the Firebase SDK using a service account key file and
  * provides a bean for {@link FirebaseAuth} to handle authentication tasks.
+ * With the "in-memory" profile no data is read from Firebase, so the SDK is set up for a "demo-" project without a key;
+ * ID tokens are then only accepted from the Firebase Auth emulator (FIREBASE_AUTH_EMULATOR_HOST).
  */
 @Configuration
 public class FirebaseConfig {
@@ -35,6 +39,7 @@ public class FirebaseConfig {
      * @throws IOException if the service account key file cannot be read or is invalid.
      */
     @Bean
+    @Profile("!in-memory")
     public FirebaseAuth firebaseAuth() throws IOException {
         if (FirebaseApp.getApps().isEmpty()) { // Ensures that a Firebase app is only initialized once to avoid
             // duplicate or conflicting configurations
@@ -48,4 +53,23 @@ public class FirebaseConfig {
         }
         return FirebaseAuth.getInstance(); // Returns the default FirebaseAuth instance linked to the initialized Firebase app
     }
+
+    /**
+     * Initializes the Firebase SDK for the "in-memory" profile, without a service account key.
+     * The "demo-" project never reaches Google Cloud, so the application starts without network access.
+     *
+     * @return {@link FirebaseAuth} instance of the demo project.
+     */
+    @Bean
+    @Profile("in-memory")
+    public FirebaseAuth inMemoryFirebaseAuth() {
+        if (FirebaseApp.getApps().isEmpty()) {
+            FirebaseOptions options = FirebaseOptions.builder()
+                    .setProjectId("demo-animattio")
+                    .setCredentials(GoogleCredentials.create(new AccessToken("in-memory", null))) // Never sent to Google Cloud
+                    .build();
+            FirebaseApp.initializeApp(options);
+        }
+        return FirebaseAuth.getInstance();
+    }
 }
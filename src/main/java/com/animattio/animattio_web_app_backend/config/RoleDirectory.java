@@ -0,0 +1,187 @@
+package com.animattio.animattio_web_app_backend.config;
+
+import com.animattio.animattio_web_app_backend.doctor.Doctor;
+import com.animattio.animattio_web_app_backend.doctor.DoctorRepository;
+import com.animattio.animattio_web_app_backend.doctor.RoleClaimsSync;
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.google.firebase.auth.FirebaseToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves the roles of users, claims first.
+ * The role of a user travels in the "role" custom claim of the user's ID token, which {@link RoleClaimsSync} keeps equal
+ * to the role in the user's doctor document, so a token carrying the claim is resolved without any lookup.
+ * A role change revokes the user's refresh tokens, so it reaches the user once the ID tokens issued before it expire,
+ * within an hour, or within the revocation recheck interval of the {@link VerifiedTokenCache} when
+ * "custom.token_check_revoked" is enabled.
+ * <p>
+ * Only tokens without the claim, issued before the sync set it, are looked up in the directory of the roles of the
+ * users in the "doctors" collection, keyed by document ID (the user's UID). The directory is loaded by a role listener
+ * of the {@link DoctorRepository}, registered on the first lookup, and kept current with every added, modified or
+ * removed doctor, so a lookup is a map lookup. While the listener has not delivered its first roles, or after it failed,
+ * roles are read from the doctor document, and the listener is registered again after a delay.
+ */
+@Component
+public class RoleDirectory implements DisposableBean {
+
+    public static final String DEFAULT_ROLE = "doctor"; // Role of users without a doctor document or without a role field
+    private static final Logger logger = LoggerFactory.getLogger(RoleDirectory.class);
+
+    private final DoctorRepository doctorRepository;
+    private final long retryDelayMillis;
+    private final Map<String, String> roles = new ConcurrentHashMap<>(); // UID -> role
+    private final AtomicLong claimLookups = new AtomicLong();
+    private final AtomicLong directoryLookups = new AtomicLong();
+    private final AtomicLong fallbackReads = new AtomicLong();
+    private volatile boolean loaded;
+    private volatile DoctorRepository.Subscription subscription;
+    private volatile long retryAfterMillis;
+
+    /**
+     * Constructs the directory.
+     *
+     * @param doctorRepository  the repository of the doctor documents holding the roles.
+     * @param retryDelaySeconds how long to wait before registering the listener again after it failed.
+     */
+    public RoleDirectory(DoctorRepository doctorRepository,
+                         @Value("${custom.role_listener_retry_seconds:30}") long retryDelaySeconds) {
+        this.doctorRepository = doctorRepository;
+        this.retryDelayMillis = retryDelaySeconds * 1000;
+    }
+
+    /**
+     * Resolves the role of the user of a verified ID token from its "role" custom claim,
+     * or from the directory if the token carries no claim.
+     *
+     * @param token the verified Firebase ID token.
+     * @return the role of the user.
+     * @throws ExecutionException   if the fallback read of the doctor document fails.
+     * @throws InterruptedException if the fallback read of the doctor document is interrupted.
+     */
+    public String roleOf(FirebaseToken token) throws ExecutionException, InterruptedException {
+        Object roleClaim = token.getClaims().get(RoleClaimsSync.ROLE_CLAIM); // role carried in the token
+        return roleOf(token.getUid(), roleClaim instanceof String ? (String) roleClaim : null);
+    }
+
+    /**
+     * Resolves the role of a user that a token claims to have. The claimed role is used as is;
+     * the directory is only consulted if the token carries no role.
+     *
+     * @param uid         the UID of the user.
+     * @param claimedRole the role carried in the token, or null if it carries none.
+     * @return the role of the user.
+     * @throws ExecutionException   if the fallback read of the doctor document fails.
+     * @throws InterruptedException if the fallback read of the doctor document is interrupted.
+     */
+    public String roleOf(String uid, String claimedRole) throws ExecutionException, InterruptedException {
+        if (claimedRole != null) {
+            claimLookups.incrementAndGet();
+            return claimedRole;
+        }
+        return roleOf(uid);
+    }
+
+    /**
+     * Resolves the role of a user from the directory.
+     *
+     * @param uid the UID of the user.
+     * @return the role of the user, or {@link #DEFAULT_ROLE} if the user has no doctor document or no role.
+     * @throws ExecutionException   if the fallback read of the doctor document fails.
+     * @throws InterruptedException if the fallback read of the doctor document is interrupted.
+     */
+    public String roleOf(String uid) throws ExecutionException, InterruptedException {
+        ensureListening();
+        if (loaded) {
+            directoryLookups.incrementAndGet();
+            return roles.getOrDefault(uid, DEFAULT_ROLE);
+        }
+
+        fallbackReads.incrementAndGet(); // Listener not ready
+        Doctor doctor = FirestoreFutures.await(doctorRepository.findById(uid));
+        return doctor != null && doctor.getRole() != null ? doctor.getRole() : DEFAULT_ROLE;
+    }
+
+    /**
+     * Returns whether the directory is served from the listener, and how many roles were resolved each way.
+     *
+     * @return a map with the directory statistics.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("loaded", loaded);
+        statistics.put("size", roles.size());
+        statistics.put("claimLookups", claimLookups.get());
+        statistics.put("directoryLookups", directoryLookups.get());
+        statistics.put("fallbackReads", fallbackReads.get());
+        return statistics;
+    }
+
+    /**
+     * Stops listening when the application shuts down.
+     */
+    @Override
+    public void destroy() {
+        DoctorRepository.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    /**
+     * Registers the role listener unless it is registered or waiting to be retried.
+     */
+    private void ensureListening() {
+        if (subscription != null || System.currentTimeMillis() < retryAfterMillis) {
+            return;
+        }
+        synchronized (this) {
+            if (subscription != null || System.currentTimeMillis() < retryAfterMillis) {
+                return;
+            }
+            subscription = doctorRepository.listenToRoles(new DoctorRepository.RoleListener() {
+                @Override
+                public void onChange(Map<String, String> changedRoles, Set<String> removedIds) {
+                    for (Map.Entry<String, String> role : changedRoles.entrySet()) {
+                        roles.put(role.getKey(), role.getValue() != null ? role.getValue() : DEFAULT_ROLE);
+                    }
+                    for (String uid : removedIds) {
+                        roles.remove(uid);
+                    }
+                    loaded = true; // Set after the first roles are applied, so lookups never see a partial directory
+                }
+
+                @Override
+                public void onError(Exception error) {
+                    onListenerFailed(error);
+                }
+            });
+        }
+    }
+
+    /**
+     * Falls back to direct reads after the listener failed and schedules a new registration.
+     *
+     * @param error the listener error.
+     */
+    private synchronized void onListenerFailed(Exception error) {
+        logger.warn("Role listener failed, reading roles from the doctor documents until it is registered again", error);
+        loaded = false;
+        if (subscription != null) {
+            subscription.cancel();
+            subscription = null;
+        }
+        roles.clear(); // The next listener starts from all roles
+        retryAfterMillis = System.currentTimeMillis() + retryDelayMillis;
+    }
+}
@@ -1,5 +1,6 @@
 package com.animattio.animattio_web_app_backend.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -55,16 +56,24 @@ public class SecurityConfig {
                 // Authorization for endpoints
                 .authorizeHttpRequests(authorizeRequests ->
                         authorizeRequests
+                                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                                // Results of asynchronous controllers are dispatched again; the request was authorized on its first dispatch
                                 .requestMatchers(HttpMethod.OPTIONS, "/patients/**").permitAll()
                                 .requestMatchers("/patients/**").hasRole("doctor")
+                                .requestMatchers("/tests/summaries/backfill").hasRole("admin")
                                 .requestMatchers("/tests/**").hasRole("doctor")
+                                .requestMatchers("/cohort/**").hasRole("doctor")
                                 .requestMatchers("/doctors/create-doctor").hasRole("admin")
+                                .requestMatchers("/doctors/role-claims/**").hasRole("admin")
                                 .requestMatchers("/doctors/delete-doctor").hasRole("admin")
                                 .requestMatchers("/doctors/get-doctor-list").hasRole("admin")
                                 .requestMatchers("/doctors/get-doctor").permitAll()
                                 .requestMatchers("/doctors/username/**").permitAll()
                                 .requestMatchers("/doctors/update-profile/**").permitAll()
                                 .requestMatchers("doctors/doctor-exists/**").hasRole("admin")
+                                .requestMatchers("/signin/keys/**").hasRole("admin")
+                                .requestMatchers("/signin/token-cache/**").hasRole("admin")
+                                .requestMatchers("/signin/role-directory/**").hasRole("admin")
                                 .requestMatchers("/signin").permitAll()
                                 .requestMatchers("doctors/delete-by-username").hasRole("admin")
                 )
@@ -0,0 +1,52 @@
+package com.animattio.animattio_web_app_backend.config;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Gives streamed newline-delimited JSON responses their own async timeout.
+ * {@code spring.mvc.async.request-timeout} bounds the asynchronous endpoints that wait for Firestore,
+ * but a stream writes a user's whole history page by page and can legitimately take longer.
+ * The timeout is applied before the stream starts, when the content type of the response is already set.
+ */
+@Component
+public class StreamingTimeoutInterceptor implements CallableProcessingInterceptor {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final long streamTimeoutMillis;
+
+    /**
+     * Constructs the interceptor with the configured timeout of streams.
+     *
+     * @param streamTimeoutMillis the timeout of a streamed response in milliseconds, 0 or less for no timeout.
+     */
+    public StreamingTimeoutInterceptor(@Value("${custom.stream_request_timeout_ms:600000}") long streamTimeoutMillis) {
+        this.streamTimeoutMillis = streamTimeoutMillis;
+    }
+
+    /**
+     * Replaces the async timeout of the request if its response is a stream.
+     *
+     * @param request the current request.
+     * @param task    the task that writes the response.
+     * @param <T>     the result type of the task.
+     */
+    @Override
+    public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+        HttpServletResponse response = request.getNativeResponse(HttpServletResponse.class);
+        if (!(request instanceof AsyncWebRequest) || response == null || response.getContentType() == null) {
+            return;
+        }
+        if (NDJSON.isCompatibleWith(MediaType.parseMediaType(response.getContentType()))) {
+            ((AsyncWebRequest) request).setTimeout(streamTimeoutMillis > 0 ? streamTimeoutMillis : -1); // Negative means no timeout
+        }
+    }
+}
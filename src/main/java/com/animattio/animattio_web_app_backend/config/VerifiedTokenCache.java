@@ -0,0 +1,211 @@
+package com.animattio.animattio_web_app_backend.config;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process cache of verified Firebase ID tokens.
+ * The frontend sends the same ID token on every request for up to an hour, so the signature of a token
+ * is verified once and the decoded token is served from the cache until the token expires.
+ * Entries are keyed by the SHA-256 hash of the token, so raw tokens are never kept in memory.
+ * Lookups read a {@link ConcurrentHashMap} without locking. The cache is bounded: once it holds more than the maximum,
+ * one thread drops the expired entries and then the entries closest to expiry, which would need verifying soonest anyway,
+ * down to nine tenths of the maximum, so the sweep runs once per tenth of the maximum of new tokens at most.
+ * With revocation checks enabled, a cached token is verified again against Firebase Auth once its recheck interval passed.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    /**
+     * A decoded token together with the time it expires and the time it was last verified.
+     */
+    private static class VerifiedToken {
+        private final FirebaseToken token;
+        private final long expiresAtMillis;
+        private final long verifiedAtMillis;
+
+        private VerifiedToken(FirebaseToken token, long expiresAtMillis, long verifiedAtMillis) {
+            this.token = token;
+            this.expiresAtMillis = expiresAtMillis;
+            this.verifiedAtMillis = verifiedAtMillis;
+        }
+    }
+
+    private final FirebaseAuth firebaseAuth;
+    private final int maxEntries;
+    private final boolean checkRevoked;
+    private final long revocationRecheckMillis;
+    private final LongSupplier clock;
+    private final Map<String, VerifiedToken> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock sweepLock = new ReentrantLock();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * Constructs the cache.
+     *
+     * @param firebaseAuth             the FirebaseAuth instance used to verify tokens on a miss.
+     * @param maxEntries               the maximum number of verified tokens kept in memory.
+     * @param checkRevoked             whether tokens are also checked for revocation.
+     * @param revocationRecheckSeconds how long a token is served from the cache before its revocation is checked again.
+     */
+    @Autowired // The constructor with a clock is only for tests
+    public VerifiedTokenCache(FirebaseAuth firebaseAuth,
+                              @Value("${custom.token_cache_size:10000}") int maxEntries,
+                              @Value("${custom.token_check_revoked:false}") boolean checkRevoked,
+                              @Value("${custom.token_revocation_recheck_seconds:60}") long revocationRecheckSeconds) {
+        this(firebaseAuth, maxEntries, checkRevoked, revocationRecheckSeconds, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructs the cache with a clock, so expiry and rechecks can be tested.
+     *
+     * @param firebaseAuth             the FirebaseAuth instance used to verify tokens on a miss.
+     * @param maxEntries               the maximum number of verified tokens kept in memory.
+     * @param checkRevoked             whether tokens are also checked for revocation.
+     * @param revocationRecheckSeconds how long a token is served from the cache before its revocation is checked again.
+     * @param clock                    the source of the current time in epoch milliseconds.
+     */
+    VerifiedTokenCache(FirebaseAuth firebaseAuth, int maxEntries, boolean checkRevoked, long revocationRecheckSeconds,
+                       LongSupplier clock) {
+        this.firebaseAuth = firebaseAuth;
+        this.maxEntries = maxEntries;
+        this.checkRevoked = checkRevoked;
+        this.revocationRecheckMillis = revocationRecheckSeconds * 1000;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the decoded token, verifying it with Firebase Auth only if it is not in the cache.
+     *
+     * @param idToken the Firebase ID token sent by the client.
+     * @return the decoded token.
+     * @throws FirebaseAuthException if the token is invalid, expired or, with revocation checks enabled, revoked.
+     */
+    public FirebaseToken verify(String idToken) throws FirebaseAuthException {
+        String key = hash(idToken);
+        long now = clock.getAsLong();
+
+        VerifiedToken cached = entries.get(key);
+        if (cached != null) {
+            if (now >= cached.expiresAtMillis) { // Expired tokens are dropped and rejected by the verification below
+                if (entries.remove(key, cached)) {
+                    expirations.incrementAndGet();
+                }
+            } else if (!checkRevoked || now - cached.verifiedAtMillis < revocationRecheckMillis) {
+                hits.incrementAndGet();
+                return cached.token;
+            }
+        }
+        misses.incrementAndGet();
+
+        FirebaseToken token = firebaseAuth.verifyIdToken(idToken, checkRevoked); // Concurrent misses of one token may both verify it
+        long expiresAtMillis = expiresAtMillis(token);
+        if (expiresAtMillis > now) {
+            entries.put(key, new VerifiedToken(token, expiresAtMillis, now));
+            if (entries.size() > maxEntries) {
+                sweep(now);
+            }
+        }
+        return token;
+    }
+
+    /**
+     * Returns hit, miss, eviction and expiration statistics of the cache.
+     *
+     * @return a map with the cache statistics.
+     */
+    public Map<String, Object> getStatistics() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long requests = hitCount + missCount;
+
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("size", entries.size());
+        statistics.put("maxEntries", maxEntries);
+        statistics.put("checkRevoked", checkRevoked);
+        statistics.put("hits", hitCount);
+        statistics.put("misses", missCount);
+        statistics.put("evictions", evictions.get());
+        statistics.put("expirations", expirations.get());
+        statistics.put("hitRate", requests == 0 ? 0.0 : (double) hitCount / requests);
+        return statistics;
+    }
+
+    /**
+     * Drops the expired entries and then the entries closest to expiry until nine tenths of the maximum are left.
+     * Only one thread sweeps at a time; the others keep serving and adding entries meanwhile.
+     *
+     * @param now the current time in epoch milliseconds.
+     */
+    private void sweep(long now) {
+        if (!sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Map.Entry<String, VerifiedToken>> live = new ArrayList<>();
+            for (Map.Entry<String, VerifiedToken> entry : entries.entrySet()) {
+                if (now >= entry.getValue().expiresAtMillis) {
+                    if (entries.remove(entry.getKey(), entry.getValue())) {
+                        expirations.incrementAndGet();
+                    }
+                } else {
+                    live.add(entry);
+                }
+            }
+
+            int target = maxEntries - maxEntries / 10;
+            if (live.size() > target) {
+                live.sort(Comparator.comparingLong(entry -> entry.getValue().expiresAtMillis));
+                for (Map.Entry<String, VerifiedToken> entry : live.subList(0, live.size() - target)) {
+                    if (entries.remove(entry.getKey(), entry.getValue())) {
+                        evictions.incrementAndGet();
+                    }
+                }
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the expiry of a token from its "exp" claim.
+     *
+     * @param token the decoded token.
+     * @return the expiry in epoch milliseconds, or 0 if the token has no expiry claim.
+     */
+    private static long expiresAtMillis(FirebaseToken token) {
+        Object exp = token.getClaims().get("exp"); // Seconds since the epoch
+        return exp instanceof Number ? ((Number) exp).longValue() * 1000 : 0;
+    }
+
+    private static String hash(String idToken) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(idToken.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Every Java runtime provides SHA-256
+        }
+    }
+}
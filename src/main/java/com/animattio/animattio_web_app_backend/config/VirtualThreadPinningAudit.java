@@ -0,0 +1,110 @@
+package com.animattio.animattio_web_app_backend.config;
+
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Audit of pinned carrier threads, active with the "virtual" profile.
+ * Streams the JFR "jdk.VirtualThreadPinned" event (a virtual thread blocked while it could not unmount,
+ * e.g. inside a synchronized block or a native frame) and logs the application frame closest to the pin,
+ * so blocking calls in our code paths that defeat virtual threads are found under real load.
+ */
+@Component
+@Profile("virtual")
+public class VirtualThreadPinningAudit implements InitializingBean, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinningAudit.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String APPLICATION_PACKAGE = "com.animattio.";
+
+    private final Duration threshold;
+    private final Map<String, AtomicLong> pinsByFrame = new ConcurrentHashMap<>();
+    private final AtomicLong totalPins = new AtomicLong();
+    private RecordingStream recordingStream;
+
+    /**
+     * Constructs the audit.
+     *
+     * @param thresholdMillis the minimum duration in milliseconds of a pin to be reported.
+     */
+    public VirtualThreadPinningAudit(@Value("${custom.pinning_audit_threshold_ms:20}") long thresholdMillis) {
+        this.threshold = Duration.ofMillis(thresholdMillis);
+    }
+
+    /**
+     * Starts streaming pinned thread events in the background.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, event -> {
+            String frame = applicationFrame(event.getStackTrace());
+            totalPins.incrementAndGet();
+            pinsByFrame.computeIfAbsent(frame, key -> new AtomicLong()).incrementAndGet();
+            logger.warn("Virtual thread pinned for {} ms at {}", event.getDuration().toMillis(), frame);
+        });
+        recordingStream.startAsync();
+    }
+
+    /**
+     * Stops streaming events.
+     */
+    @Override
+    public void destroy() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+
+    /**
+     * Returns the number of pins seen so far, in total and per application frame.
+     *
+     * @return a map with the pin counts.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Long> frames = new HashMap<>();
+        pinsByFrame.forEach((frame, count) -> frames.put(frame, count.get()));
+
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("totalPins", totalPins.get());
+        statistics.put("pinsByFrame", frames);
+        return statistics;
+    }
+
+    /**
+     * Finds the innermost frame of our own code in a stack trace.
+     *
+     * @param stackTrace the stack trace of the pinned thread.
+     * @return the frame as "Class.method:line", or the top frame if no application frame is on the stack.
+     */
+    private static String applicationFrame(RecordedStackTrace stackTrace) {
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return "unknown";
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (frame.isJavaFrame() && frame.getMethod().getType().getName().startsWith(APPLICATION_PACKAGE)) {
+                return format(frame);
+            }
+        }
+        return format(stackTrace.getFrames().get(0)) + " (outside application code)";
+    }
+
+    private static String format(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+}
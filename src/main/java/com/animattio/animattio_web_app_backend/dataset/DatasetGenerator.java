@@ -0,0 +1,288 @@
+package com.animattio.animattio_web_app_backend.dataset;
+
+import com.animattio.animattio_web_app_backend.doctor.Doctor;
+import com.animattio.animattio_web_app_backend.game.Game;
+import com.animattio.animattio_web_app_backend.patient.Patient;
+import com.animattio.animattio_web_app_backend.test.Test;
+import com.animattio.animattio_web_app_backend.test.TestIngestService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Seeded generator of a synthetic dataset of doctors, patients and CPT tests, shaped like the data the mobile app stores.
+ * Every entity is generated from its own random source derived from the seed and its position,
+ * so the same seed always generates the same documents, in any order and on any machine,
+ * and a single test can be regenerated without generating the ones before it.
+ * Tests are converted to documents by {@link TestIngestService#toDocument}, so they are stored exactly like ingested tests.
+ */
+public class DatasetGenerator {
+
+    public static final int IMAGES_PER_GAME = 60;
+    public static final int STIMULI_PER_GAME = 6; // Images of each game that are the stimuli
+
+    private static final Logger logger = LoggerFactory.getLogger(DatasetGenerator.class);
+    private static final String[] THEMES = {"animals", "vehicles", "fruits"};
+    private static final int IMAGES_PER_THEME = 10;
+    private static final String[] GENDERS = {"male", "female"};
+    private static final String[] TYPES = {"epilepsy", "control"};
+    private static final long FIRST_DAY_MILLIS = 1_672_531_200_000L; // 2023-01-01T00:00:00Z
+    private static final long DAY_MILLIS = 24 * 3600_000L;
+    private static final long MILLIS_BETWEEN_GAMES = 90_000L;
+    private static final int LOG_EVERY_TESTS = 100_000;
+
+    private final long seed;
+    private final int doctors;
+    private final int patientsPerDoctor;
+    private final int testsPerPatient;
+    private final int gamesPerTest;
+    private final TestIngestService testIngestService;
+
+    /**
+     * Constructs a generator.
+     *
+     * @param seed              the seed of the dataset.
+     * @param doctors           the number of doctors.
+     * @param patientsPerDoctor the number of patients of each doctor.
+     * @param testsPerPatient   the number of tests of each patient.
+     * @param gamesPerTest      the number of games in each test.
+     * @param testIngestService the service converting tests to documents.
+     */
+    public DatasetGenerator(long seed, int doctors, int patientsPerDoctor, int testsPerPatient, int gamesPerTest,
+                            TestIngestService testIngestService) {
+        if (doctors < 0 || patientsPerDoctor < 0 || testsPerPatient < 0 || gamesPerTest < 1) {
+            throw new IllegalArgumentException("Dataset sizes cannot be negative and tests need at least one game");
+        }
+        this.seed = seed;
+        this.doctors = doctors;
+        this.patientsPerDoctor = patientsPerDoctor;
+        this.testsPerPatient = testsPerPatient;
+        this.gamesPerTest = gamesPerTest;
+        this.testIngestService = testIngestService;
+    }
+
+    /**
+     * Generates the whole dataset into a sink, doctor by doctor, and waits until the sink has written it.
+     *
+     * @param sink the destination of the documents.
+     * @return the number of doctors, patients and tests written and the elapsed time in milliseconds.
+     * @throws IOException          if the sink cannot write a document.
+     * @throws InterruptedException if writing is interrupted.
+     */
+    public Map<String, Object> generate(DatasetSink sink) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        long tests = 0;
+
+        for (int d = 0; d < doctors; d++) {
+            sink.addDoctor(doctorId(d), doctor(d));
+            for (int p = d * patientsPerDoctor; p < (d + 1) * patientsPerDoctor; p++) {
+                Patient patient = patient(p);
+                sink.addPatient(patient);
+                sink.addUser(userId(p), patient.getPatientUsername());
+                for (int t = 0; t < testsPerPatient; t++) {
+                    String testId = testId(p, t);
+                    sink.addTest(testId, testIngestService.toDocument(testId, test(p, t)));
+                    if (++tests % LOG_EVERY_TESTS == 0) {
+                        logger.info("Generated {} of {} tests", tests, (long) doctors * patientsPerDoctor * testsPerPatient);
+                    }
+                }
+            }
+        }
+        sink.finish();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("doctors", doctors);
+        result.put("patients", doctors * patientsPerDoctor);
+        result.put("tests", tests);
+        result.put("elapsedMillis", System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * Returns the ID of the document of a doctor, which is also the doctor's username.
+     *
+     * @param doctorIndex the position of the doctor.
+     * @return the doctor ID.
+     */
+    public static String doctorId(int doctorIndex) {
+        return String.format("doctor-%05d", doctorIndex);
+    }
+
+    /**
+     * Returns the username of a patient, which is also the ID of the patient document.
+     *
+     * @param patientIndex the position of the patient across all doctors.
+     * @return the patient username.
+     */
+    public static String patientUsername(int patientIndex) {
+        return String.format("patient-%07d", patientIndex);
+    }
+
+    /**
+     * Returns the ID of the user document of a patient, to which the patient's tests belong.
+     *
+     * @param patientIndex the position of the patient across all doctors.
+     * @return the user ID.
+     */
+    public static String userId(int patientIndex) {
+        return String.format("user-%07d", patientIndex);
+    }
+
+    /**
+     * Returns the ID of a test document. IDs sort by patient, then by date.
+     *
+     * @param patientIndex the position of the patient across all doctors.
+     * @param testIndex    the position of the test in the patient's history.
+     * @return the test ID.
+     */
+    public static String testId(int patientIndex, int testIndex) {
+        return String.format("test-%07d-%05d", patientIndex, testIndex);
+    }
+
+    /**
+     * Generates a doctor.
+     *
+     * @param doctorIndex the position of the doctor.
+     * @return the doctor.
+     */
+    public Doctor doctor(int doctorIndex) {
+        Doctor doctor = new Doctor();
+        doctor.setUsername(doctorId(doctorIndex));
+        doctor.setRole("doctor");
+        return doctor;
+    }
+
+    /**
+     * Generates a patient.
+     *
+     * @param patientIndex the position of the patient across all doctors.
+     * @return the patient.
+     */
+    public Patient patient(int patientIndex) {
+        Random random = random(1, patientIndex);
+        Patient patient = new Patient();
+        patient.setPatientUsername(patientUsername(patientIndex));
+        patient.setDoctorUsername(doctorId(patientsPerDoctor > 0 ? patientIndex / patientsPerDoctor : 0));
+        patient.setGender(GENDERS[random.nextInt(GENDERS.length)]);
+        patient.setAge(4 + random.nextInt(14)); // 4 to 17 years
+        patient.setType(TYPES[random.nextInt(TYPES.length)]);
+        return patient;
+    }
+
+    /**
+     * Generates a test of a patient. Tests of a patient are about a week apart, starting on a day of 2023.
+     * How often a patient taps targets and non-targets and how fast are traits of the patient, so tests of the same
+     * patient are alike.
+     *
+     * @param patientIndex the position of the patient across all doctors.
+     * @param testIndex    the position of the test in the patient's history.
+     * @return the test.
+     */
+    public Test test(int patientIndex, int testIndex) {
+        Random patientRandom = random(2, patientIndex);
+        long firstTestMillis = FIRST_DAY_MILLIS + patientRandom.nextInt(365) * DAY_MILLIS;
+        double hitProbability = 0.70 + patientRandom.nextDouble() * 0.27;
+        double falseAlarmProbability = 0.02 + patientRandom.nextDouble() * 0.13;
+        double meanReactionTime = 350 + patientRandom.nextDouble() * 300;
+        double reactionTimeDeviation = 80 + patientRandom.nextDouble() * 80;
+
+        Random random = random(3, patientIndex, testIndex);
+        long testMillis = firstTestMillis + testIndex * 7 * DAY_MILLIS
+                + random.nextInt(3) * DAY_MILLIS // Jitter of up to two days
+                + (8 + random.nextInt(11)) * 3600_000L; // Between 8:00 and 18:00
+        String mode = random.nextInt(4) == 0 ? "mode2" : "mode1";
+
+        List<Game> games = new ArrayList<>(gamesPerTest);
+        for (int g = 0; g < gamesPerTest; g++) {
+            String theme = THEMES[random.nextInt(THEMES.length)];
+            int stimulusIndex = random.nextInt(IMAGES_PER_THEME);
+
+            List<Boolean> stimulusShown = new ArrayList<>(Collections.nCopies(IMAGES_PER_GAME, false));
+            for (int i = 0; i < STIMULI_PER_GAME; i++) {
+                stimulusShown.set(i, true);
+            }
+            Collections.shuffle(stimulusShown, random);
+            List<Integer> intervals = new ArrayList<>(TestIngestService.INTERVALS);
+            Collections.shuffle(intervals, random); // Each game shows the intervals in its own order
+
+            List<String> shownImages = new ArrayList<>(IMAGES_PER_GAME);
+            List<Boolean> result = new ArrayList<>(IMAGES_PER_GAME);
+            List<Integer> reactionTimes = new ArrayList<>();
+            int commissionErrors = 0;
+            int omissionErrors = 0;
+            int hits = 0;
+            int targets = 0;
+
+            for (int i = 0; i < IMAGES_PER_GAME; i++) {
+                boolean stimulus = stimulusShown.get(i);
+                int imageIndex = stimulus ? stimulusIndex : (stimulusIndex + 1 + random.nextInt(IMAGES_PER_THEME - 1)) % IMAGES_PER_THEME;
+                boolean target = "mode1".equals(mode) == stimulus; // In mode2 every image except the stimuli is the target
+                boolean tapped = random.nextDouble() < (target ? hitProbability : falseAlarmProbability);
+
+                shownImages.add(theme + "-" + imageIndex);
+                result.add(tapped);
+                if (tapped) {
+                    reactionTimes.add(Math.max(150, (int) Math.round(meanReactionTime + random.nextGaussian() * reactionTimeDeviation)));
+                }
+                if (target) {
+                    targets++;
+                    if (tapped) {
+                        hits++;
+                    } else {
+                        omissionErrors++;
+                    }
+                } else if (tapped) {
+                    commissionErrors++;
+                }
+            }
+
+            Game game = new Game();
+            game.setId("game-" + g);
+            game.setMode(mode);
+            game.setTheme(theme);
+            game.setStimuli(theme + "-" + stimulusIndex);
+            game.setTimestamp(new Date(testMillis + g * MILLIS_BETWEEN_GAMES));
+            game.setComissionErrors(commissionErrors);
+            game.setOmissionErrors(omissionErrors);
+            game.setHitRate(targets > 0 ? hits * 100 / targets : 0);
+            game.setShownImages(shownImages);
+            game.setResult(result);
+            game.setReactionTimes(reactionTimes);
+            game.setIntervals(intervals);
+            games.add(game);
+        }
+
+        Test test = new Test();
+        test.setUserId(userId(patientIndex));
+        test.setGamesInTest(games);
+        return test;
+    }
+
+    /**
+     * Returns the random source of an entity, derived from the seed, the kind of entity and its position.
+     *
+     * @param keys the kind of entity followed by its position.
+     * @return the random source.
+     */
+    private Random random(long... keys) {
+        long mixed = seed;
+        for (long key : keys) {
+            mixed = mix(mixed ^ key) + key; // Neighbouring positions get unrelated seeds
+        }
+        return new Random(mixed);
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL; // Finalizer of MurmurHash3
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+}
@@ -0,0 +1,130 @@
+package com.animattio.animattio_web_app_backend.dataset;
+
+import com.animattio.animattio_web_app_backend.doctor.DoctorRepository;
+import com.animattio.animattio_web_app_backend.patient.PatientRepository;
+import com.animattio.animattio_web_app_backend.patient.UserDirectoryRepository;
+import com.animattio.animattio_web_app_backend.test.TestIngestService;
+import com.animattio.animattio_web_app_backend.test.TestRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Generates the synthetic dataset at startup, active with the "dataset" profile.
+ * With custom.dataset_target=repository the documents are written through the repositories to the Firestore emulator,
+ * where the application then serves them; the runner refuses to start unless FIRESTORE_EMULATOR_HOST is set
+ * (or the "in-memory" profile is active), so the dataset is never written to the configured Firebase project.
+ * With custom.dataset_target=file they are streamed to custom.dataset_file instead.
+ */
+@Component
+@Profile("dataset")
+public class DatasetRunner implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatasetRunner.class);
+
+    private final DatasetGenerator generator;
+    private final String target;
+    private final String file;
+    private final int maxInFlight;
+    private final boolean exitWhenDone;
+    private final ObjectMapper objectMapper;
+    private final DoctorRepository doctorRepository;
+    private final PatientRepository patientRepository;
+    private final UserDirectoryRepository userDirectoryRepository;
+    private final TestRepository testRepository;
+    private final ConfigurableApplicationContext context;
+    private final boolean localStore;
+
+    /**
+     * Constructs the runner.
+     *
+     * @param seed                    the seed of the dataset.
+     * @param doctors                 the number of doctors.
+     * @param patientsPerDoctor       the number of patients of each doctor.
+     * @param testsPerPatient         the number of tests of each patient.
+     * @param gamesPerTest            the number of games in each test.
+     * @param target                  "repository" or "file".
+     * @param file                    the path of the file written by the "file" target.
+     * @param maxInFlight             the maximum number of repository writes in flight.
+     * @param exitWhenDone            whether the application exits once the dataset is written.
+     * @param testIngestService       the service converting tests to documents.
+     * @param objectMapper            the mapper serializing documents to the file.
+     * @param doctorRepository        the repository of doctors.
+     * @param patientRepository       the repository of patients.
+     * @param userDirectoryRepository the repository of users.
+     * @param testRepository          the repository of tests.
+     * @param context                 the application context, closed when exiting.
+     * @param environment             the environment, whose active profiles tell whether the repositories are in memory.
+     */
+    public DatasetRunner(@Value("${custom.dataset_seed:42}") long seed,
+                         @Value("${custom.dataset_doctors:10}") int doctors,
+                         @Value("${custom.dataset_patients_per_doctor:50}") int patientsPerDoctor,
+                         @Value("${custom.dataset_tests_per_patient:20}") int testsPerPatient,
+                         @Value("${custom.dataset_games_per_test:6}") int gamesPerTest,
+                         @Value("${custom.dataset_target:repository}") String target,
+                         @Value("${custom.dataset_file:dataset.jsonl.gz}") String file,
+                         @Value("${custom.dataset_max_in_flight:64}") int maxInFlight,
+                         @Value("${custom.dataset_exit_when_done:false}") boolean exitWhenDone,
+                         TestIngestService testIngestService, ObjectMapper objectMapper,
+                         DoctorRepository doctorRepository, PatientRepository patientRepository,
+                         UserDirectoryRepository userDirectoryRepository, TestRepository testRepository,
+                         ConfigurableApplicationContext context, Environment environment) {
+        this.generator = new DatasetGenerator(seed, doctors, patientsPerDoctor, testsPerPatient, gamesPerTest, testIngestService);
+        this.target = target;
+        this.file = file;
+        this.maxInFlight = maxInFlight;
+        this.exitWhenDone = exitWhenDone;
+        this.objectMapper = objectMapper;
+        this.doctorRepository = doctorRepository;
+        this.patientRepository = patientRepository;
+        this.userDirectoryRepository = userDirectoryRepository;
+        this.testRepository = testRepository;
+        this.context = context;
+        this.localStore = System.getenv("FIRESTORE_EMULATOR_HOST") != null || environment.acceptsProfiles(Profiles.of("in-memory"));
+    }
+
+    /**
+     * Generates the dataset into the configured target.
+     *
+     * @param args the application arguments, unused.
+     * @throws IOException          if the dataset cannot be written.
+     * @throws InterruptedException if writing is interrupted.
+     * @throws IllegalStateException if the repository target would write to a real Firebase project.
+     */
+    @Override
+    public void run(ApplicationArguments args) throws IOException, InterruptedException {
+        DatasetSink sink;
+        if ("file".equals(target)) {
+            sink = new FileDatasetSink(objectMapper, Path.of(file));
+        } else if ("repository".equals(target)) {
+            if (!localStore) {
+                throw new IllegalStateException("The dataset is only written through the repositories to the Firestore emulator: "
+                        + "set FIRESTORE_EMULATOR_HOST, or use custom.dataset_target=file");
+            }
+            sink = new RepositoryDatasetSink(doctorRepository, patientRepository, userDirectoryRepository, testRepository, maxInFlight);
+        } else {
+            throw new IllegalArgumentException("custom.dataset_target must be \"repository\" or \"file\": " + target);
+        }
+
+        logger.info("Generating the dataset into the {} target", target);
+        Map<String, Object> result = generator.generate(sink);
+        logger.info("Generated the dataset: {}", result);
+
+        if (exitWhenDone) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+}
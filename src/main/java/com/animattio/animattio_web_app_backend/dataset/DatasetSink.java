@@ -0,0 +1,61 @@
+package com.animattio.animattio_web_app_backend.dataset;
+
+import com.animattio.animattio_web_app_backend.doctor.Doctor;
+import com.animattio.animattio_web_app_backend.patient.Patient;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Destination of the documents produced by the {@link DatasetGenerator}.
+ * Documents may be written asynchronously; {@link #finish()} returns once all of them are written.
+ */
+public interface DatasetSink {
+
+    /**
+     * Writes a doctor document.
+     *
+     * @param doctorId the ID of the doctor document.
+     * @param doctor   the doctor.
+     * @throws IOException          if the document cannot be written.
+     * @throws InterruptedException if waiting for room to write is interrupted.
+     */
+    void addDoctor(String doctorId, Doctor doctor) throws IOException, InterruptedException;
+
+    /**
+     * Writes a patient document, whose ID is the patient's username.
+     *
+     * @param patient the patient.
+     * @throws IOException          if the document cannot be written.
+     * @throws InterruptedException if waiting for room to write is interrupted.
+     */
+    void addPatient(Patient patient) throws IOException, InterruptedException;
+
+    /**
+     * Writes the user document of a patient.
+     *
+     * @param userId   the ID of the user document.
+     * @param username the username of the patient.
+     * @throws IOException          if the document cannot be written.
+     * @throws InterruptedException if waiting for room to write is interrupted.
+     */
+    void addUser(String userId, String username) throws IOException, InterruptedException;
+
+    /**
+     * Writes a test document.
+     *
+     * @param testId the ID of the test document.
+     * @param fields the fields of the test, including its summary.
+     * @throws IOException          if the document cannot be written.
+     * @throws InterruptedException if waiting for room to write is interrupted.
+     */
+    void addTest(String testId, Map<String, Object> fields) throws IOException, InterruptedException;
+
+    /**
+     * Waits until every document is written and releases the sink.
+     *
+     * @throws IOException          if a document could not be written.
+     * @throws InterruptedException if waiting is interrupted.
+     */
+    void finish() throws IOException, InterruptedException;
+}
@@ -0,0 +1,108 @@
+package com.animattio.animattio_web_app_backend.dataset;
+
+import com.animattio.animattio_web_app_backend.doctor.Doctor;
+import com.animattio.animattio_web_app_backend.patient.Patient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.Timestamp;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link DatasetSink} streaming the documents to a JSON Lines file, one {"collection", "id", "data"} object per line,
+ * gzip-compressed when the file name ends in ".gz". Timestamps are written as ISO-8601 strings.
+ * Documents are written as they are generated, so the size of the dataset is not limited by memory.
+ */
+public class FileDatasetSink implements DatasetSink {
+
+    private final ObjectMapper objectMapper;
+    private final BufferedWriter writer;
+
+    /**
+     * Constructs the sink, creating or replacing the file.
+     *
+     * @param objectMapper the mapper serializing the documents.
+     * @param path         the path of the file.
+     * @throws IOException if the file cannot be created.
+     */
+    public FileDatasetSink(ObjectMapper objectMapper, Path path) throws IOException {
+        this.objectMapper = objectMapper;
+        OutputStream out = Files.newOutputStream(path);
+        if (path.getFileName().toString().endsWith(".gz")) {
+            out = new GZIPOutputStream(out, 1 << 16);
+        }
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    @Override
+    public void addDoctor(String doctorId, Doctor doctor) throws IOException {
+        write("doctors", doctorId, doctor);
+    }
+
+    @Override
+    public void addPatient(Patient patient) throws IOException {
+        write("patients", patient.getPatientUsername(), patient);
+    }
+
+    @Override
+    public void addUser(String userId, String username) throws IOException {
+        write("users", userId, Collections.singletonMap("username", username));
+    }
+
+    @Override
+    public void addTest(String testId, Map<String, Object> fields) throws IOException {
+        write("tests", testId, toJson(fields));
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writer.close(); // Also finishes the gzip stream
+    }
+
+    private void write(String collection, String id, Object data) throws IOException {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("collection", collection);
+        line.put("id", id);
+        line.put("data", data);
+        writer.write(objectMapper.writeValueAsString(line));
+        writer.newLine();
+    }
+
+    /**
+     * Converts stored fields to values Jackson writes, replacing timestamps with ISO-8601 strings.
+     *
+     * @param value the stored value.
+     * @return the value to write.
+     */
+    private static Object toJson(Object value) {
+        if (value instanceof Timestamp) {
+            return value.toString();
+        }
+        if (value instanceof Map) {
+            Map<String, Object> converted = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                converted.put(String.valueOf(entry.getKey()), toJson(entry.getValue()));
+            }
+            return converted;
+        }
+        if (value instanceof List) {
+            List<Object> converted = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                converted.add(toJson(element));
+            }
+            return converted;
+        }
+        return value;
+    }
+}
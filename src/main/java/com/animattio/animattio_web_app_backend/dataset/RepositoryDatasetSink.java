@@ -0,0 +1,110 @@
+package com.animattio.animattio_web_app_backend.dataset;
+
+import com.animattio.animattio_web_app_backend.doctor.Doctor;
+import com.animattio.animattio_web_app_backend.doctor.DoctorRepository;
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.animattio.animattio_web_app_backend.patient.Patient;
+import com.animattio.animattio_web_app_backend.patient.PatientRepository;
+import com.animattio.animattio_web_app_backend.patient.UserDirectoryRepository;
+import com.animattio.animattio_web_app_backend.test.TestRepository;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * {@link DatasetSink} writing through the repositories, so the dataset is stored like the application stores documents.
+ * {@link DatasetRunner} only uses it against the Firestore emulator.
+ * Writes are asynchronous, with a bounded number in flight so generating millions of tests does not queue them all in memory.
+ */
+public class RepositoryDatasetSink implements DatasetSink {
+
+    private final DoctorRepository doctorRepository;
+    private final PatientRepository patientRepository;
+    private final UserDirectoryRepository userDirectoryRepository;
+    private final TestRepository testRepository;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>(); // First failed write
+
+    /**
+     * Constructs the sink.
+     *
+     * @param doctorRepository        the repository of doctors.
+     * @param patientRepository       the repository of patients.
+     * @param userDirectoryRepository the repository of users.
+     * @param testRepository          the repository of tests.
+     * @param maxInFlight             the maximum number of writes in flight.
+     */
+    public RepositoryDatasetSink(DoctorRepository doctorRepository, PatientRepository patientRepository,
+                                 UserDirectoryRepository userDirectoryRepository, TestRepository testRepository, int maxInFlight) {
+        this.doctorRepository = doctorRepository;
+        this.patientRepository = patientRepository;
+        this.userDirectoryRepository = userDirectoryRepository;
+        this.testRepository = testRepository;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    @Override
+    public void addDoctor(String doctorId, Doctor doctor) throws IOException, InterruptedException {
+        write(() -> doctorRepository.save(doctorId, doctor));
+    }
+
+    @Override
+    public void addPatient(Patient patient) throws IOException, InterruptedException {
+        write(() -> patientRepository.save(patient.getPatientUsername(), patient));
+    }
+
+    @Override
+    public void addUser(String userId, String username) throws IOException, InterruptedException {
+        write(() -> userDirectoryRepository.save(userId, username));
+    }
+
+    @Override
+    public void addTest(String testId, Map<String, Object> fields) throws IOException, InterruptedException {
+        write(() -> testRepository.save(testId, fields));
+    }
+
+    @Override
+    public void finish() throws IOException, InterruptedException {
+        inFlight.acquire(maxInFlight); // Every write has completed once all permits are back
+        inFlight.release(maxInFlight);
+        throwIfFailed();
+    }
+
+    /**
+     * Starts a write once fewer than the maximum number of writes are in flight.
+     *
+     * @param write starts the write.
+     * @throws IOException          if an earlier write failed.
+     * @throws InterruptedException if waiting for room to write is interrupted.
+     */
+    private void write(Supplier<CompletableFuture<?>> write) throws IOException, InterruptedException {
+        throwIfFailed(); // Stops generating at the first failure
+        inFlight.acquire();
+        CompletableFuture<?> future;
+        try {
+            future = write.get();
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        future.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                failure.compareAndSet(null, FirestoreFutures.unwrap(throwable));
+            }
+            inFlight.release();
+        });
+    }
+
+    private void throwIfFailed() throws IOException {
+        Throwable throwable = failure.get();
+        if (throwable != null) {
+            throw new IOException("Writing the dataset failed", throwable);
+        }
+    }
+}
@@ -16,6 +16,11 @@ public class Doctor {
      */
     private String role;
 
+    /**
+     * The username the doctor is being renamed to while a rename is in progress, null otherwise.
+     */
+    private String pendingUsername;
+
     /**
      * Retrieves the username of the doctor.
      *
@@ -51,4 +56,22 @@ public class Doctor {
     public void setRole(String role) {
         this.role = role;
     }
+
+    /**
+     * Retrieves the username the doctor is being renamed to.
+     *
+     * @return The new username while a rename is in progress, null otherwise.
+     */
+    public String getPendingUsername() {
+        return pendingUsername;
+    }
+
+    /**
+     * Sets the username the doctor is being renamed to.
+     *
+     * @param pendingUsername The new username while a rename is in progress, or null once it is finished.
+     */
+    public void setPendingUsername(String pendingUsername) {
+        this.pendingUsername = pendingUsername;
+    }
 }
@@ -8,6 +8,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -18,14 +19,17 @@ import java.util.concurrent.ExecutionException;
 public class DoctorController {
 
     private final DoctorService doctorService;
+    private final RoleClaimsSync roleClaimsSync;
 
     /**
      * Constructor to inject DoctorService dependency.
      *
-     * @param doctorService the service handling doctor operations.
+     * @param doctorService  the service handling doctor operations.
+     * @param roleClaimsSync the component mirroring doctor roles into custom claims.
      */
-    public DoctorController(DoctorService doctorService) {
+    public DoctorController(DoctorService doctorService, RoleClaimsSync roleClaimsSync) {
         this.doctorService = doctorService;
+        this.roleClaimsSync = roleClaimsSync;
     }
 
     /**
@@ -131,14 +135,16 @@ public class DoctorController {
     /**
      * Retrieves a doctor's details by document ID.
      *
+     * The request thread is released while Firestore is queried.
+     *
      * @param documentId The document ID of the doctor.
-     * @return The Doctor object.
-     * @throws InterruptedException If the thread is interrupted.
-     * @throws ExecutionException   If an exception occurs during Firestore operations.
+     * @return A future of the ResponseEntity containing the Doctor object (empty if not found) or an error response.
      */
     @GetMapping("/get-doctor")
-    public Doctor getDoctor(@RequestParam String documentId) throws InterruptedException, ExecutionException {
-        return doctorService.getDoctor(documentId);
+    public CompletableFuture<ResponseEntity<Doctor>> getDoctor(@RequestParam String documentId) {
+        return doctorService.getDoctorAsync(documentId)
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(e -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null));
     }
 
     /**
@@ -162,17 +168,16 @@ public class DoctorController {
      *
      * Accessible only to users with the "doctor" role.
      *
-     * @return A ResponseEntity containing the list of doctors or an error response.
+     * The request thread is released while Firestore is queried.
+     *
+     * @return A future of the ResponseEntity containing the list of doctors or an error response.
      */
     @PreAuthorize("hasRole('doctor')")
     @GetMapping("/get-doctor-list")
-    public ResponseEntity<List<Doctor>> getAllDoctors() {
-        try {
-            List<Doctor> doctors = doctorService.getAllDoctors();
-            return ResponseEntity.ok(doctors);
-        } catch (ExecutionException | InterruptedException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
-        }
+    public CompletableFuture<ResponseEntity<List<Doctor>>> getAllDoctors() {
+        return doctorService.getAllDoctorsAsync()
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(e -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null));
     }
 
     /**
@@ -190,4 +195,24 @@ public class DoctorController {
             return "Error updating username: " + e.getMessage();
         }
     }
+
+    /**
+     * Reconciles the role custom claims of all doctors' users with their doctor documents.
+     * Run it once after deploying the claims and after changing roles outside the application;
+     * only one reconciliation runs at a time, and a request while one is running gets status 409.
+     *
+     * Accessible only to users with the "admin" role.
+     *
+     * @return A response entity containing the number of scanned doctors, users that got their first claim and users
+     *         whose claim was changed, or an error message.
+     */
+    @PostMapping("/role-claims/reconcile")
+    public ResponseEntity<?> reconcileRoleClaims() {
+        try {
+            return ResponseEntity.ok(roleClaimsSync.reconcileAll());
+        } catch (ExecutionException | InterruptedException | FirebaseAuthException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("error", "Error reconciling role claims: " + e.getMessage()));
+        }
+    }
 }
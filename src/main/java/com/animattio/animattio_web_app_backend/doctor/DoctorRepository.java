@@ -0,0 +1,106 @@
+package com.animattio.animattio_web_app_backend.doctor;
+
+import com.google.cloud.Timestamp;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage of doctor documents, keyed by the UID of the doctor's Firebase Auth user.
+ * The application uses the Firestore implementation; the implementation holding the doctors in memory is used by the
+ * benchmarks and the "in-memory" profile.
+ */
+public interface DoctorRepository {
+
+    /**
+     * Receives the roles of the doctors as they change.
+     */
+    interface RoleListener {
+
+        /**
+         * Called with the roles of all doctors first, and then with every change.
+         *
+         * @param roles      the role of every added or modified doctor keyed by doctor ID, null for a doctor without a role.
+         * @param removedIds the IDs of the deleted doctors.
+         */
+        void onChange(Map<String, String> roles, Set<String> removedIds);
+
+        /**
+         * Called once if listening fails; no further changes are delivered.
+         *
+         * @param error the cause of the failure.
+         */
+        void onError(Exception error);
+    }
+
+    /**
+     * A registered {@link RoleListener}.
+     */
+    interface Subscription {
+
+        /**
+         * Stops delivering changes to the listener.
+         */
+        void cancel();
+    }
+
+    /**
+     * Finds a doctor.
+     *
+     * @param doctorId the ID of the doctor document.
+     * @return a future of the doctor, or of null if not found.
+     */
+    CompletableFuture<Doctor> findById(String doctorId);
+
+    /**
+     * Finds the IDs of the doctor documents with a username.
+     *
+     * @param username the username of the doctor.
+     * @return a future of the IDs of the matching documents, empty if none matches.
+     */
+    CompletableFuture<List<String>> findIdsByUsername(String username);
+
+    /**
+     * Finds all doctors except users with the "admin" role.
+     *
+     * @return a future of the doctors.
+     */
+    CompletableFuture<List<Doctor>> findAllExceptAdmins();
+
+    /**
+     * Finds the roles of a page of doctors in document ID order.
+     *
+     * @param afterDoctorId the ID of the last doctor of the previous page, or null for the first page.
+     * @param limit         the maximum number of doctors in the page.
+     * @return a future of the role of each doctor in the page keyed by doctor ID in document ID order,
+     *         null for a doctor without a role.
+     */
+    CompletableFuture<Map<String, String>> findRolesPage(String afterDoctorId, int limit);
+
+    /**
+     * Creates or overwrites a doctor.
+     *
+     * @param doctorId the ID of the doctor document.
+     * @param doctor   the doctor to store.
+     * @return a future of the update time of the stored document.
+     */
+    CompletableFuture<Timestamp> save(String doctorId, Doctor doctor);
+
+    /**
+     * Deletes a doctor. Deleting a missing doctor succeeds.
+     *
+     * @param doctorId the ID of the doctor document.
+     * @return a future completed once the doctor is deleted.
+     */
+    CompletableFuture<Void> deleteById(String doctorId);
+
+    /**
+     * Listens to the roles of all doctors.
+     *
+     * @param listener the listener receiving the roles.
+     * @return the subscription of the listener.
+     */
+    Subscription listenToRoles(RoleListener listener);
+}
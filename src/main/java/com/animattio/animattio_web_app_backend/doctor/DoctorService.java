@@ -1,28 +1,38 @@
 package com.animattio.animattio_web_app_backend.doctor;
-import com.google.api.core.ApiFuture;
-import com.google.cloud.firestore.*;
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.animattio.animattio_web_app_backend.patient.PatientRepository;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseAuthException;
 import com.google.firebase.auth.UserRecord;
-import com.google.firebase.cloud.FirestoreClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 /**
- * Service class for managing doctor-related operations in Firestore.
+ * Service class for managing doctor-related operations.
+ * Doctors are stored through the {@link DoctorRepository}; renaming a doctor moves its patients in batches
+ * through the {@link PatientRepository}.
  */
 @Service
 public class DoctorService {
-    private final FirebaseAuth firebaseAuth;
+    private static final Logger logger = LoggerFactory.getLogger(DoctorService.class);
+    private static final int MAX_BATCH_WRITES = 500; // Firestore limit of writes in a single batch
 
-    public DoctorService() {
-        this.firebaseAuth = FirebaseAuth.getInstance();
+    private final RoleClaimsSync roleClaimsSync;
+    private final DoctorRepository doctorRepository;
+    private final PatientRepository patientRepository;
+
+    public DoctorService(RoleClaimsSync roleClaimsSync, DoctorRepository doctorRepository, PatientRepository patientRepository) {
+        this.roleClaimsSync = roleClaimsSync;
+        this.doctorRepository = doctorRepository;
+        this.patientRepository = patientRepository;
     }
 
     /**
-     * Creates a new doctor in the Firestore database.
+     * Creates a new doctor.
      *
      * @param doctor The doctor object to create.
      * @return The update time of the created document as a string.
@@ -30,11 +40,10 @@ public class DoctorService {
      * @throws InterruptedException If the operation is interrupted.
      */
     public String createDoctor(Doctor doctor) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore(); // retrieves a Firestore instance to interact with the database
-        // FirestoreClient is a class provided by the Google Cloud Firestore SDK to interact with a Firestore database in a Java application
-        ApiFuture<WriteResult> collectionsApiFuture = dbFirestore.collection("doctors").document(doctor.getUsername()).set(doctor);
-        return collectionsApiFuture.get().getUpdateTime().toString(); // once the document is successfully created or updated,
-        // it retrieves the timestamp when the document was last modified
+        // The document is keyed by the username rather than a UID, so there is no Auth user whose role claim could be set;
+        // the RoleDirectory resolves the role of users without the claim
+        return FirestoreFutures.await(doctorRepository.save(doctor.getUsername(), doctor)).toString();
+        // once the document is successfully created or updated, it retrieves the timestamp when the document was last modified
     }
 
     /**
@@ -48,17 +57,17 @@ public class DoctorService {
     public Doctor getDoctor(String documentId) throws ExecutionException, InterruptedException {
         // ExcecutionError - Thrown if there is an issue during the execution of the Firestore operation (e.g., network errors or database issues
         // InterruptedException - Thrown if the thread waiting for the Firestore operation is interrupted
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        DocumentReference documentReference = dbFirestore.collection("doctors").document(documentId); // reference of the document
-        // with provided documentId
-        ApiFuture<DocumentSnapshot> future = documentReference.get(); // retrieves document, Snapshot represents the sata stored in the document
-        // it contains both fields and metadata
-        DocumentSnapshot documentSnapshot = future.get(); // future.get() call blocks until the operation is complete,
-        // returning a DocumentSnapshot object that contains the document’s data
-        if (documentSnapshot.exists()) {
-            return documentSnapshot.toObject(Doctor.class); // converts document to a Doctor object
-        }
-        return null;
+        return FirestoreFutures.await(doctorRepository.findById(documentId)); // blocks until the doctor is read
+    }
+
+    /**
+     * Retrieves a doctor's details based on their document ID without blocking the calling thread.
+     *
+     * @param documentId The ID of the document to retrieve.
+     * @return A future of the doctor object, or of null if not found.
+     */
+    public CompletableFuture<Doctor> getDoctorAsync(String documentId) {
+        return doctorRepository.findById(documentId);
     }
 
     /**
@@ -70,14 +79,8 @@ public class DoctorService {
      * @throws InterruptedException If the operation is interrupted.
      */
     public String getDoctorUsername(String documentId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        DocumentReference documentReference = dbFirestore.collection("doctors").document(documentId);
-        ApiFuture<DocumentSnapshot> future = documentReference.get();
-        DocumentSnapshot documentSnapshot = future.get();
-        if (documentSnapshot.exists()) {
-            return documentSnapshot.getString("username"); // returns the username field of the document
-        }
-        return null;
+        Doctor doctor = FirestoreFutures.await(doctorRepository.findById(documentId));
+        return doctor != null ? doctor.getUsername() : null; // returns the username field of the document
     }
 
     /**
@@ -89,15 +92,9 @@ public class DoctorService {
      * @throws InterruptedException If the operation is interrupted.
      */
     public boolean doesDoctorExist(String username) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        ApiFuture<QuerySnapshot> future = dbFirestore.collection("doctors")
-                .whereEqualTo("username", username)
-                .get(); // queries the doctors collection for documents where the username field matches the given username
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments(); // extracts the list of matching documents from the QuerySnapshot
-        // QuerySnapshot holds a collection of documents (DocumentSnapshot) that satisfy the query conditions
-        return !documents.isEmpty(); // checks whether the list of matching documents is non-empty
-        // returns true if at least one matching document is found
-        // returns false if no documents match the query
+        List<String> doctorIds = FirestoreFutures.await(doctorRepository.findIdsByUsername(username));
+        // finds the doctors whose username field matches the given username
+        return !doctorIds.isEmpty(); // returns true if at least one matching doctor is found
     }
 
     /**
@@ -110,19 +107,15 @@ public class DoctorService {
      * @throws FirebaseAuthException If an error occurs with Firebase authentication.
      */
     public String deleteDoctorByUsername(String username) throws ExecutionException, InterruptedException, FirebaseAuthException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        ApiFuture<QuerySnapshot> queryFuture = dbFirestore.collection("doctors")
-                .whereEqualTo("username", username)
-                .get();
-        QuerySnapshot querySnapshot = queryFuture.get();
+        List<String> doctorIds = FirestoreFutures.await(doctorRepository.findIdsByUsername(username));
 
-        if (querySnapshot.isEmpty()) {
+        if (doctorIds.isEmpty()) {
             return "Doctor with username '" + username + "' not found.";
         }
 
-        for (QueryDocumentSnapshot document : querySnapshot.getDocuments()) { // iterates over all matching documents
-            String uid = document.getId(); // retrieves uid of the document that matches the query
-            document.getReference().delete(); // deletes document from firestore
+        for (String uid : doctorIds) { // iterates over all matching doctors, whose document IDs are their uids
+            FirestoreFutures.await(doctorRepository.deleteById(uid)); // deletes the doctor document
+            roleClaimsSync.clearRole(uid); // the claim goes with the document, even if deleting the user fails below
             FirebaseAuth.getInstance().deleteUser(uid); // deletes user from Firebase Authentication based on retrieved uid
         }
 
@@ -140,18 +133,13 @@ public class DoctorService {
      * @throws FirebaseAuthException If an error occurs with Firebase authentication.
      */
     public void updateDoctorProfile(String username, String email, String password) throws ExecutionException, InterruptedException, FirebaseAuthException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-
-        ApiFuture<QuerySnapshot> query = dbFirestore.collection("doctors")
-                .whereEqualTo("username", username).get();
+        List<String> doctorIds = FirestoreFutures.await(doctorRepository.findIdsByUsername(username));
 
-        List<QueryDocumentSnapshot> documents = query.get().getDocuments(); // retrieves the matching documents from query as a List<QueryDocumentSnapshot>
-
-        if (documents.isEmpty()) {// if no documents match query
+        if (doctorIds.isEmpty()) {// if no doctor matches the username
             throw new IllegalArgumentException("Doctor not found with username: " + username);
         }
 
-        String uid = documents.get(0).getId(); // retrieves the uid of the only document that matches the query  because usernames are unique
+        String uid = doctorIds.get(0); // retrieves the uid of the only document that matches the query  because usernames are unique
         UserRecord.UpdateRequest request = new UserRecord.UpdateRequest(uid);
         // UserRecord.UpdateRequest is a class provided by the Firebase Admin SDK to modify user accounts in Firebase Authentication
         if (email != null && !email.isEmpty()) {
@@ -171,85 +159,90 @@ public class DoctorService {
      *
      * @param documentId The ID of the doctor document to delete.
      * @return A message indicating the result of the deletion.
+     * @throws ExecutionException   If an exception occurs during execution.
+     * @throws InterruptedException If the operation is interrupted.
      */
-    public String deleteDoctor(String documentId) {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        ApiFuture<WriteResult> writeResult = dbFirestore.collection("doctors").document(documentId).delete();
+    public String deleteDoctor(String documentId) throws ExecutionException, InterruptedException {
+        FirestoreFutures.await(doctorRepository.deleteById(documentId)); // the claim is only cleared once the document is gone
+        roleClaimsSync.clearRole(documentId); // the user keeps its Auth account, but no longer has the doctor's role
         return "Successfully deleted " + documentId;
     }
 
     /**
-     * Retrieves all doctors from the Firestore database except user with the "admin" role.
+     * Retrieves all doctors except user with the "admin" role.
      *
      * @return A list of doctor objects.
      * @throws ExecutionException   If an exception occurs during execution.
      * @throws InterruptedException If the operation is interrupted.
      */
     public List<Doctor> getAllDoctors() throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        CollectionReference doctorsCollection = dbFirestore.collection("doctors");
-
-        Query query = doctorsCollection.whereNotEqualTo("role", "admin"); // query to filter out documents
-        // where the role field is equal to "admin"
-        ApiFuture<QuerySnapshot> querySnapshot = query.get(); // retrieves a QuerySnapshot containing all matching documents
-        List<QueryDocumentSnapshot> documents = querySnapshot.get().getDocuments(); // retrieves the list of matching QueryDocumentSnapshot objects
-        List<Doctor> doctors = new ArrayList<>();
-
-        for (QueryDocumentSnapshot document : documents) {
-            Doctor doctor = document.toObject(Doctor.class); // iterates through the list of documents and converts each
-            // document into a Doctor object using the toObject() method
-            doctors.add(doctor);
-        }
+        return FirestoreFutures.await(doctorRepository.findAllExceptAdmins()); // filters out doctors whose role is "admin"
+    }
 
-        return doctors;
+    /**
+     * Retrieves all doctors except users with the "admin" role without blocking the calling thread.
+     *
+     * @return A future of the list of doctor objects.
+     */
+    public CompletableFuture<List<Doctor>> getAllDoctorsAsync() {
+        return doctorRepository.findAllExceptAdmins();
     }
 
     /**
      * Updates a doctor's username and associated patient records.
+     * The new username is first recorded on the doctor document as its pending username. Patients are then moved
+     * in atomic batches of up to 500 writes, each confirmed before the next one, and finally the doctor document
+     * is written with the new username and without the marker. A rename that fails part way leaves the doctor under
+     * the current username with the marker set; repeating it moves the remaining patients and finishes it, and a
+     * rename of the same doctor to another username is refused until then.
      *
      * @param currentUsername The current username of the doctor.
      * @param newUsername     The new username to set.
-     * @return A message indicating the result of the update.
+     * @return A message indicating the result of the update and the number of updated patients.
      * @throws ExecutionException   If an exception occurs during execution.
      * @throws InterruptedException If the operation is interrupted.
      */
     public String updateDoctorUsername(String currentUsername, String newUsername) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-
-        DocumentReference newUsernameRef = dbFirestore.collection("doctors").document(newUsername);
-        ApiFuture<DocumentSnapshot> newUsernameSnapshot = newUsernameRef.get();
-        if (newUsernameSnapshot.get().exists()) { // checks if the new username already exists as a document ID in the doctors collection
-            return "Username already exists.";
+        CompletableFuture<Doctor> newUsernameDoctor = doctorRepository.findById(newUsername);
+        CompletableFuture<List<String>> newUsernameIds = doctorRepository.findIdsByUsername(newUsername);
+        CompletableFuture<List<String>> doctorIds = doctorRepository.findIdsByUsername(currentUsername);
+        // The three reads run at the same time
+        if (FirestoreFutures.await(newUsernameDoctor) != null || !FirestoreFutures.await(newUsernameIds).isEmpty()) {
+            return "Username already exists."; // the new username is a document ID or the username of another doctor
         }
-
-        Query query = dbFirestore.collection("doctors")
-                .whereEqualTo("username", currentUsername);
-        ApiFuture<QuerySnapshot> querySnapshot = query.get();
-        List<QueryDocumentSnapshot> documents = querySnapshot.get().getDocuments(); // searches the doctors collection
-        // for a document where the username field matches currentUsername
-
-        if (!documents.isEmpty()) {
-            DocumentSnapshot currentDoctorSnapshot = documents.get(0);
-            Doctor doctor = currentDoctorSnapshot.toObject(Doctor.class);
-            doctor.setUsername(newUsername); // updates the username field of the Doctor object to newUsername
-
-            ApiFuture<WriteResult> updateResult = currentDoctorSnapshot.getReference().set(doctor);
-            // writes the updated Doctor object back to Firestore, overwriting the existing document
-
-            Query patientQuery = dbFirestore.collection("patients")
-                    .whereEqualTo("doctorUsername", currentUsername); // queries the patients collection for all
-            // documents where the doctorUsername field matches currentUsername
-
-            ApiFuture<QuerySnapshot> patientQuerySnapshot = patientQuery.get();
-            List<QueryDocumentSnapshot> patientDocuments = patientQuerySnapshot.get().getDocuments();
-
-            for (QueryDocumentSnapshot patientDoc : patientDocuments) {
-                ApiFuture<WriteResult> updatePatientResult = patientDoc.getReference().update("doctorUsername", newUsername);
-            } // iterates over each matching patient document and updates the doctorUsername field to newUsername
-
-            return "Username updated successfully.";
-        } else {
+        if (FirestoreFutures.await(doctorIds).isEmpty()) {
             return "Doctor not found.";
         }
+
+        String doctorId = FirestoreFutures.await(doctorIds).get(0); // usernames are unique
+        Doctor doctor = FirestoreFutures.await(doctorRepository.findById(doctorId));
+        if (doctor == null) {
+            return "Doctor not found."; // deleted since the username was looked up
+        }
+        if (doctor.getPendingUsername() != null && !doctor.getPendingUsername().equals(newUsername)) {
+            return "A rename to '" + doctor.getPendingUsername() + "' is in progress; repeat it to finish it first.";
+        }
+
+        doctor.setPendingUsername(newUsername);
+        FirestoreFutures.await(doctorRepository.save(doctorId, doctor)); // records the rename before any patient moves
+
+        int updatedPatients = 0;
+        int batchCount = 0;
+        int moved;
+        do {
+            moved = FirestoreFutures.await(patientRepository.reassignDoctor(currentUsername, newUsername, MAX_BATCH_WRITES));
+            // waits for each batch, so at most one batch is in flight
+            updatedPatients += moved;
+            batchCount++;
+            logger.info("Renaming doctor {} to {}: updated {} patients", currentUsername, newUsername, updatedPatients);
+        } while (moved == MAX_BATCH_WRITES);
+
+        doctor.setUsername(newUsername);
+        doctor.setPendingUsername(null);
+        FirestoreFutures.await(doctorRepository.save(doctorId, doctor)); // overwrites the doctor document with the new username
+        roleClaimsSync.syncRole(doctorId, doctor.getRole());
+        logger.info("Renamed doctor {} to {}: updated {} patients in {} batches", currentUsername, newUsername, updatedPatients, batchCount);
+
+        return "Username updated successfully. Updated " + updatedPatients + " patients in " + batchCount + " batches.";
     }
 }
@@ -0,0 +1,121 @@
+package com.animattio.animattio_web_app_backend.doctor;
+
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.WriteResult;
+import com.google.firebase.cloud.FirestoreClient;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link DoctorRepository} over the "doctors" collection of Firestore.
+ */
+@Repository
+@Profile("!in-memory")
+public class FirestoreDoctorRepository implements DoctorRepository {
+
+    @Override
+    public CompletableFuture<Doctor> findById(String doctorId) {
+        return FirestoreFutures.toCompletableFuture(doctors().document(doctorId).get())
+                .thenApply(documentSnapshot -> documentSnapshot.exists() ? documentSnapshot.toObject(Doctor.class) : null);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findIdsByUsername(String username) {
+        return FirestoreFutures.toCompletableFuture(doctors()
+                        .whereEqualTo("username", username)
+                        .select(FieldPath.documentId()) // Only the document IDs are needed
+                        .get())
+                .thenApply(querySnapshot -> {
+                    List<String> doctorIds = new ArrayList<>();
+                    for (QueryDocumentSnapshot document : querySnapshot.getDocuments()) {
+                        doctorIds.add(document.getId());
+                    }
+                    return doctorIds;
+                });
+    }
+
+    @Override
+    public CompletableFuture<List<Doctor>> findAllExceptAdmins() {
+        return FirestoreFutures.toCompletableFuture(doctors().whereNotEqualTo("role", "admin").get())
+                .thenApply(querySnapshot -> {
+                    List<Doctor> doctors = new ArrayList<>();
+                    for (QueryDocumentSnapshot document : querySnapshot.getDocuments()) {
+                        doctors.add(document.toObject(Doctor.class));
+                    }
+                    return doctors;
+                });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> findRolesPage(String afterDoctorId, int limit) {
+        Query query = doctors()
+                .select("role") // Only the role is needed
+                .orderBy(FieldPath.documentId())
+                .limit(limit);
+        if (afterDoctorId != null) {
+            query = query.startAfter(afterDoctorId);
+        }
+        return FirestoreFutures.toCompletableFuture(query.get())
+                .thenApply(querySnapshot -> {
+                    Map<String, String> roles = new LinkedHashMap<>();
+                    for (QueryDocumentSnapshot document : querySnapshot.getDocuments()) {
+                        roles.put(document.getId(), document.getString("role"));
+                    }
+                    return roles;
+                });
+    }
+
+    @Override
+    public CompletableFuture<Timestamp> save(String doctorId, Doctor doctor) {
+        return FirestoreFutures.toCompletableFuture(doctors().document(doctorId).set(doctor))
+                .thenApply(WriteResult::getUpdateTime);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteById(String doctorId) {
+        return FirestoreFutures.toCompletableFuture(doctors().document(doctorId).delete())
+                .thenApply(writeResult -> null);
+    }
+
+    @Override
+    public Subscription listenToRoles(RoleListener listener) {
+        ListenerRegistration registration = doctors().addSnapshotListener((snapshot, error) -> {
+            if (error != null) {
+                listener.onError(error);
+                return;
+            }
+            Map<String, String> roles = new HashMap<>();
+            Set<String> removedIds = new HashSet<>();
+            for (DocumentChange change : snapshot.getDocumentChanges()) { // The first snapshot adds every document
+                String doctorId = change.getDocument().getId();
+                if (change.getType() == DocumentChange.Type.REMOVED) {
+                    removedIds.add(doctorId);
+                } else {
+                    roles.put(doctorId, change.getDocument().getString("role"));
+                }
+            }
+            listener.onChange(roles, removedIds);
+        });
+        return registration::remove;
+    }
+
+    private CollectionReference doctors() {
+        return FirestoreClient.getFirestore().collection("doctors");
+    }
+}
@@ -0,0 +1,112 @@
+package com.animattio.animattio_web_app_backend.doctor;
+
+import com.google.cloud.Timestamp;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link DoctorRepository} holding the doctors in memory, for the benchmarks and the "in-memory" profile.
+ * Doctors are copied on the way in and out like Firestore serializes them, and role listeners are notified
+ * on the thread that saves or deletes a doctor.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemoryDoctorRepository implements DoctorRepository {
+
+    private final ConcurrentNavigableMap<String, Doctor> doctors = new ConcurrentSkipListMap<>(); // doctor ID -> doctor
+    private final List<RoleListener> roleListeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public CompletableFuture<Doctor> findById(String doctorId) {
+        Doctor doctor = doctors.get(doctorId);
+        return CompletableFuture.completedFuture(doctor != null ? copy(doctor) : null);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findIdsByUsername(String username) {
+        List<String> doctorIds = new ArrayList<>();
+        for (Map.Entry<String, Doctor> doctor : doctors.entrySet()) {
+            if (Objects.equals(doctor.getValue().getUsername(), username)) {
+                doctorIds.add(doctor.getKey());
+            }
+        }
+        return CompletableFuture.completedFuture(doctorIds);
+    }
+
+    @Override
+    public CompletableFuture<List<Doctor>> findAllExceptAdmins() {
+        List<Doctor> matches = new ArrayList<>();
+        for (Doctor doctor : doctors.values()) {
+            if (doctor.getRole() != null && !doctor.getRole().equals("admin")) { // A not-equal filter also skips documents without the field
+                matches.add(copy(doctor));
+            }
+        }
+        matches.sort(Comparator.comparing(Doctor::getRole)); // Firestore orders a not-equal filter by the filtered field first
+        return CompletableFuture.completedFuture(matches);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> findRolesPage(String afterDoctorId, int limit) {
+        Map<String, String> roles = new LinkedHashMap<>();
+        for (Map.Entry<String, Doctor> doctor : (afterDoctorId == null ? doctors : doctors.tailMap(afterDoctorId, false)).entrySet()) {
+            if (roles.size() == limit) {
+                break;
+            }
+            roles.put(doctor.getKey(), doctor.getValue().getRole());
+        }
+        return CompletableFuture.completedFuture(roles);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Timestamp> save(String doctorId, Doctor doctor) { // Listeners see the changes in order
+        doctors.put(doctorId, copy(doctor));
+        Map<String, String> roles = new HashMap<>();
+        roles.put(doctorId, doctor.getRole()); // The role may be null
+        for (RoleListener listener : roleListeners) {
+            listener.onChange(roles, Set.of());
+        }
+        return CompletableFuture.completedFuture(Timestamp.now());
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> deleteById(String doctorId) {
+        if (doctors.remove(doctorId) != null) {
+            for (RoleListener listener : roleListeners) {
+                listener.onChange(Map.of(), Set.of(doctorId));
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public synchronized Subscription listenToRoles(RoleListener listener) {
+        Map<String, String> roles = new HashMap<>();
+        for (Map.Entry<String, Doctor> doctor : doctors.entrySet()) {
+            roles.put(doctor.getKey(), doctor.getValue().getRole());
+        }
+        listener.onChange(roles, Set.of());
+        roleListeners.add(listener);
+        return () -> roleListeners.remove(listener);
+    }
+
+    private static Doctor copy(Doctor doctor) {
+        Doctor copy = new Doctor();
+        copy.setUsername(doctor.getUsername());
+        copy.setRole(doctor.getRole());
+        copy.setPendingUsername(doctor.getPendingUsername());
+        return copy;
+    }
+}
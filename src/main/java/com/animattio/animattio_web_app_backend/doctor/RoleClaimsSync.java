@@ -0,0 +1,204 @@
+package com.animattio.animattio_web_app_backend.doctor;
+
+import com.animattio.animattio_web_app_backend.config.RoleDirectory;
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.google.firebase.auth.AuthErrorCode;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.GetUsersResult;
+import com.google.firebase.auth.UidIdentifier;
+import com.google.firebase.auth.UserIdentifier;
+import com.google.firebase.auth.UserRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mirrors the "role" field of doctor documents into the "role" custom claim of the matching Firebase Auth users,
+ * so the role travels inside the ID token and the auth filter does not need to read it from Firestore.
+ * Claims are written whenever {@link DoctorService} renames or deletes a doctor whose document is keyed by the UID
+ * of its user, and an admin triggered reconciliation sets the claim of users that do not have it yet, such as users
+ * created before the sync, and corrects users whose claim differs from their document.
+ * <p>
+ * Setting the claim of a user that has none changes nothing the user is authorized for, since tokens without the claim
+ * resolve to the same role through the {@link RoleDirectory}, so the user's sessions are kept.
+ * Changing or removing an existing claim also revokes the user's refresh tokens, so the old claim cannot be refreshed
+ * into new ID tokens and the user signs in again to get the new one. ID tokens issued before the change stay valid
+ * until they expire; {@link RoleDirectory} trusts the claim and only looks up the doctor documents for tokens without it.
+ */
+@Component
+public class RoleClaimsSync {
+
+    public static final String ROLE_CLAIM = "role";
+    private static final Logger logger = LoggerFactory.getLogger(RoleClaimsSync.class);
+    private static final int PAGE_SIZE = 500; // Doctor documents read per query
+    private static final int MAX_USER_LOOKUPS = 100; // Firebase Auth limit of users in a single getUsers call
+
+    private final FirebaseAuth firebaseAuth;
+    private final DoctorRepository doctorRepository;
+    private final AtomicBoolean reconciling = new AtomicBoolean();
+
+    /**
+     * Constructs the sync component.
+     *
+     * @param firebaseAuth     the FirebaseAuth instance whose users get the claims.
+     * @param doctorRepository the repository of the doctor documents holding the roles.
+     */
+    public RoleClaimsSync(FirebaseAuth firebaseAuth, DoctorRepository doctorRepository) {
+        this.firebaseAuth = firebaseAuth;
+        this.doctorRepository = doctorRepository;
+    }
+
+    /**
+     * Sets the role claim of a user, keeping the user's other custom claims.
+     * Failures are logged and left to the reconciliation, so they never fail the Firestore operation that triggered them.
+     *
+     * @param uid  the UID of the user, which is the ID of the doctor document.
+     * @param role the role of the doctor, or null for the default role.
+     */
+    public void syncRole(String uid, String role) {
+        try {
+            UserRecord user = firebaseAuth.getUser(uid);
+            setRoleClaim(user, role != null ? role : RoleDirectory.DEFAULT_ROLE);
+        } catch (FirebaseAuthException e) {
+            logFailure(uid, e);
+        }
+    }
+
+    /**
+     * Removes the role claim of a user whose doctor document was deleted.
+     *
+     * @param uid the UID of the user.
+     */
+    public void clearRole(String uid) {
+        try {
+            UserRecord user = firebaseAuth.getUser(uid);
+            if (user.getCustomClaims().containsKey(ROLE_CLAIM)) {
+                Map<String, Object> claims = new HashMap<>(user.getCustomClaims());
+                claims.remove(ROLE_CLAIM);
+                firebaseAuth.setCustomUserClaims(uid, claims);
+                firebaseAuth.revokeRefreshTokens(uid); // No new ID token carries the removed role
+            }
+        } catch (FirebaseAuthException e) {
+            logFailure(uid, e);
+        }
+    }
+
+    /**
+     * Compares the role claim of every doctor's user with the role in the doctor document and corrects the differences.
+     * Doctor documents are read page by page with only their role field, and users are looked up in batches of 100.
+     * Only one reconciliation runs at a time.
+     *
+     * @return a map with the number of scanned doctors, users that got their first claim, users whose claim was changed
+     *         and their sessions revoked, doctors without a user and failed updates.
+     * @throws ResponseStatusException with status CONFLICT if a reconciliation is already running.
+     * @throws ExecutionException      if reading the doctor documents fails.
+     * @throws InterruptedException    if reading the doctor documents is interrupted.
+     * @throws FirebaseAuthException   if looking up the users fails.
+     */
+    public Map<String, Object> reconcileAll() throws ExecutionException, InterruptedException, FirebaseAuthException {
+        if (!reconciling.compareAndSet(false, true)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A role claims reconciliation is already running.");
+        }
+        try {
+            return reconcilePages();
+        } finally {
+            reconciling.set(false);
+        }
+    }
+
+    private Map<String, Object> reconcilePages() throws ExecutionException, InterruptedException, FirebaseAuthException {
+        int scanned = 0;
+        int added = 0;
+        int changed = 0;
+        int missingUsers = 0;
+        int failed = 0;
+        String lastDoctorId = null;
+        Map<String, String> page;
+        do {
+            page = FirestoreFutures.await(doctorRepository.findRolesPage(lastDoctorId, PAGE_SIZE));
+            scanned += page.size();
+
+            List<String> doctorIds = new ArrayList<>(page.keySet());
+            for (int start = 0; start < doctorIds.size(); start += MAX_USER_LOOKUPS) {
+                List<UserIdentifier> identifiers = new ArrayList<>();
+                for (String doctorId : doctorIds.subList(start, Math.min(start + MAX_USER_LOOKUPS, doctorIds.size()))) {
+                    identifiers.add(new UidIdentifier(doctorId));
+                }
+
+                GetUsersResult users = firebaseAuth.getUsers(identifiers);
+                missingUsers += users.getNotFound().size(); // Doctor documents without an Auth user, e.g. keyed by username
+                for (UserRecord user : users.getUsers()) {
+                    String role = page.get(user.getUid());
+                    try {
+                        switch (setRoleClaim(user, role != null ? role : RoleDirectory.DEFAULT_ROLE)) {
+                            case ADDED:
+                                added++;
+                                break;
+                            case CHANGED:
+                                changed++;
+                                break;
+                            default:
+                                break;
+                        }
+                    } catch (FirebaseAuthException e) {
+                        logFailure(user.getUid(), e);
+                        failed++;
+                    }
+                }
+            }
+
+            if (!doctorIds.isEmpty()) {
+                lastDoctorId = doctorIds.get(doctorIds.size() - 1);
+            }
+        } while (page.size() == PAGE_SIZE);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("scanned", scanned);
+        result.put("added", added);
+        result.put("changed", changed);
+        result.put("missingUsers", missingUsers);
+        result.put("failed", failed);
+        logger.info("Role claims reconciled: {}", result);
+        return result;
+    }
+
+    /**
+     * How setting a role claim changed the claims of a user.
+     */
+    private enum ClaimUpdate {
+        UNCHANGED, ADDED, CHANGED
+    }
+
+    private ClaimUpdate setRoleClaim(UserRecord user, String role) throws FirebaseAuthException {
+        Object previousRole = user.getCustomClaims().get(ROLE_CLAIM);
+        if (role.equals(previousRole)) {
+            return ClaimUpdate.UNCHANGED; // Already up to date
+        }
+        Map<String, Object> claims = new HashMap<>(user.getCustomClaims());
+        claims.put(ROLE_CLAIM, role);
+        firebaseAuth.setCustomUserClaims(user.getUid(), claims);
+        if (previousRole == null) {
+            return ClaimUpdate.ADDED; // Tokens without the claim already resolve to this role, the sessions are kept
+        }
+        firebaseAuth.revokeRefreshTokens(user.getUid()); // No new ID token carries the previous role
+        return ClaimUpdate.CHANGED;
+    }
+
+    private static void logFailure(String uid, FirebaseAuthException e) {
+        if (e.getAuthErrorCode() == AuthErrorCode.USER_NOT_FOUND) {
+            logger.debug("No Firebase Auth user for doctor document {}", uid);
+        } else {
+            logger.warn("Could not sync the role claim of user {}", uid, e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.animattio.animattio_web_app_backend.firestore;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bridges Firestore {@link ApiFuture}s to {@link CompletableFuture}s, so services can compose Firestore calls
+ * and controllers can return them without blocking a request thread on {@code future.get()}.
+ * Futures complete on an application executor, so continuations such as summarizing tests
+ * never run on the gRPC threads of the Firestore client.
+ */
+public final class FirestoreFutures {
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final Executor CONTINUATION_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "firestore-continuation-" + threadCount.incrementAndGet());
+                thread.setDaemon(true); // Does not keep the application running
+                return thread;
+            });
+
+    private FirestoreFutures() {
+    }
+
+    /**
+     * Adapts an {@link ApiFuture} to a {@link CompletableFuture} completed on the application executor of Firestore continuations.
+     * Cancelling the returned future cancels the Firestore call.
+     *
+     * @param apiFuture the Firestore future.
+     * @param <T>       the result type.
+     * @return a future completed with the result or the failure of the Firestore call.
+     */
+    public static <T> CompletableFuture<T> toCompletableFuture(ApiFuture<T> apiFuture) {
+        return toCompletableFuture(apiFuture, CONTINUATION_EXECUTOR);
+    }
+
+    /**
+     * Adapts an {@link ApiFuture} to a {@link CompletableFuture} completed on the given executor, which also runs
+     * the continuations that are not async. Cancelling the returned future cancels the Firestore call.
+     *
+     * @param apiFuture the Firestore future.
+     * @param executor  the executor completing the future.
+     * @param <T>       the result type.
+     * @return a future completed with the result or the failure of the Firestore call.
+     */
+    public static <T> CompletableFuture<T> toCompletableFuture(ApiFuture<T> apiFuture, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                apiFuture.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        ApiFutures.addCallback(apiFuture, new ApiFutureCallback<T>() {
+            @Override
+            public void onFailure(Throwable error) {
+                future.completeExceptionally(error);
+            }
+
+            @Override
+            public void onSuccess(T result) {
+                future.complete(result);
+            }
+        }, executor); // Not on the thread that finished the Firestore call
+        return future;
+    }
+
+    /**
+     * Waits for a future, for synchronous callers of asynchronous service methods.
+     * Runtime exceptions such as {@code ResponseStatusException} are rethrown as they are,
+     * so synchronous callers see the same exceptions as before.
+     *
+     * @param future the future to wait for.
+     * @param <T>    the result type.
+     * @return the result of the future.
+     * @throws ExecutionException   if the future failed with a checked exception.
+     * @throws InterruptedException if waiting is interrupted.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws ExecutionException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the original failure of a composed future, without the completion and execution wrappers.
+     *
+     * @param error the failure passed to a completion stage.
+     * @return the underlying failure.
+     */
+    public static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
@@ -0,0 +1,35 @@
+package com.animattio.animattio_web_app_backend.game;
+
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.WriteResult;
+import com.google.firebase.cloud.FirestoreClient;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link GameRepository} over the "games" collection of Firestore.
+ */
+@Repository
+@Profile("!in-memory")
+public class FirestoreGameRepository implements GameRepository {
+
+    @Override
+    public CompletableFuture<Game> findById(String gameId) {
+        return FirestoreFutures.toCompletableFuture(games().document(gameId).get())
+                .thenApply(documentSnapshot -> documentSnapshot.exists() ? documentSnapshot.toObject(Game.class) : null);
+    }
+
+    @Override
+    public CompletableFuture<Timestamp> save(String gameId, Game game) {
+        return FirestoreFutures.toCompletableFuture(games().document(gameId).set(game))
+                .thenApply(WriteResult::getUpdateTime);
+    }
+
+    private CollectionReference games() {
+        return FirestoreClient.getFirestore().collection("games");
+    }
+}
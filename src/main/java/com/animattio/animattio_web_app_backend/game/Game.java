@@ -1,5 +1,7 @@
 package com.animattio.animattio_web_app_backend.game;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
+
 import java.util.Date;
 import java.util.List;
 
@@ -12,7 +14,9 @@ public class Game {
 
     /**
      * The number of commission errors during the game.
+     * Also accepted as "commissionErrors" in request bodies, the spelling used in stored documents.
      */
+    @JsonAlias("commissionErrors")
     private int comissionErrors;
 
     /**
@@ -0,0 +1,273 @@
+package com.animattio.animattio_web_app_backend.game;
+
+import com.google.cloud.Timestamp;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, typed representation of a game stored in the "gamesInTest" array of a test document.
+ * Reaction times and intervals are held as int arrays, results as a bit set
+ * and shown images as codes of the {@link ImageDictionary} of the game's test.
+ */
+public final class GameRecord {
+
+    /**
+     * Receives the interval and reaction time of a tapped image.
+     */
+    @FunctionalInterface
+    public interface TappedReactionConsumer {
+        void accept(int interval, int reactionTime);
+    }
+
+    private final String mode;
+    private final String theme;
+    private final int stimuliCode;
+    private final int commissionErrors;
+    private final int omissionErrors;
+    private final int hitRate;
+    private final Timestamp timestamp;
+    private final int[] shownImages;
+    private final int[] reactionTimes;
+    private final int[] intervals;
+    private final BitSet result;
+    private final int resultLength;
+
+    private GameRecord(String mode, String theme, int stimuliCode, int commissionErrors, int omissionErrors,
+                       int hitRate, Timestamp timestamp, int[] shownImages, int[] reactionTimes, int[] intervals,
+                       BitSet result, int resultLength) {
+        this.mode = mode;
+        this.theme = theme;
+        this.stimuliCode = stimuliCode;
+        this.commissionErrors = commissionErrors;
+        this.omissionErrors = omissionErrors;
+        this.hitRate = hitRate;
+        this.timestamp = timestamp;
+        this.shownImages = shownImages;
+        this.reactionTimes = reactionTimes;
+        this.intervals = intervals;
+        this.result = result;
+        this.resultLength = resultLength;
+    }
+
+    /**
+     * Decodes a game from the map Firestore returns for an element of "gamesInTest".
+     * Missing fields are allowed; fields of another type than the app stores are rejected.
+     *
+     * @param game   the stored game fields.
+     * @param images the image dictionary of the game's test.
+     * @return the decoded game.
+     * @throws IllegalArgumentException if a field has the wrong type.
+     */
+    public static GameRecord fromFirestoreMap(Map<?, ?> game, ImageDictionary images) {
+        List<?> storedResult = field(game, "result", List.class);
+        BitSet result = new BitSet();
+        int resultLength = 0;
+        if (storedResult != null) {
+            resultLength = storedResult.size();
+            for (int i = 0; i < resultLength; i++) {
+                Object tapped = storedResult.get(i);
+                if (tapped != null && !(tapped instanceof Boolean)) {
+                    throw new IllegalArgumentException("result must be a list of booleans");
+                }
+                if (Boolean.TRUE.equals(tapped)) {
+                    result.set(i);
+                }
+            }
+        }
+
+        List<?> storedImages = field(game, "shownImages", List.class);
+        int[] shownImages = null;
+        if (storedImages != null) {
+            shownImages = new int[storedImages.size()];
+            for (int i = 0; i < shownImages.length; i++) {
+                Object image = storedImages.get(i);
+                if (image != null && !(image instanceof String)) {
+                    throw new IllegalArgumentException("shownImages must be a list of image names");
+                }
+                shownImages[i] = images.encode((String) image);
+            }
+        }
+
+        return new GameRecord(
+                field(game, "mode", String.class),
+                field(game, "theme", String.class),
+                images.encode(field(game, "stimuli", String.class)),
+                toInt(field(game, "commissionErrors", Number.class)),
+                toInt(field(game, "omissionErrors", Number.class)),
+                toInt(field(game, "hitRate", Number.class)),
+                field(game, "timestamp", Timestamp.class),
+                shownImages,
+                toIntArray("reactionTimes", field(game, "reactionTimes", List.class)),
+                toIntArray("intervals", field(game, "intervals", List.class)),
+                result,
+                storedResult != null ? resultLength : -1);
+    }
+
+    /**
+     * Counts the shown images equal to the stimulus of the game.
+     *
+     * @return the number of shown stimulus images.
+     */
+    public int countStimulusImages() {
+        int count = 0;
+        if (shownImages != null && stimuliCode != ImageDictionary.NO_IMAGE) {
+            for (int imageCode : shownImages) { // Compares int codes instead of image name strings
+                if (imageCode == stimuliCode) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the shown images different from the stimulus of the game.
+     *
+     * @return the number of shown images other than the stimulus.
+     */
+    public int countOtherImages() {
+        int count = 0;
+        if (shownImages != null) {
+            for (int imageCode : shownImages) {
+                if (imageCode != ImageDictionary.NO_IMAGE && imageCode != stimuliCode) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Passes the interval and reaction time of every tapped image to a consumer.
+     * The n-th tapped image (n-th set bit of the results) uses the n-th reaction time, and images
+     * 0-19, 20-39 and 40+ were shown with the first, second and third interval.
+     * Games without results, reaction times or all three intervals have no tapped reactions.
+     *
+     * @param consumer the consumer of the tapped reactions.
+     */
+    public void forEachTappedReaction(TappedReactionConsumer consumer) {
+        if (resultLength < 0 || reactionTimes == null || intervals == null || intervals.length < 3) {
+            return;
+        }
+
+        int tappedImageCount = 0;
+        for (int index = result.nextSetBit(0); index >= 0 && tappedImageCount < reactionTimes.length; index = result.nextSetBit(index + 1)) {
+            int assignedInterval;
+            if (index < 20) {
+                assignedInterval = intervals[0];
+            } else if (index < 40) {
+                assignedInterval = intervals[1];
+            } else {
+                assignedInterval = intervals[2];
+            } // Assigns interval to the tapped image
+
+            consumer.accept(assignedInterval, reactionTimes[tappedImageCount++]);
+        }
+    }
+
+    /**
+     * Reads a field of a stored game, checking its type.
+     *
+     * @param game the stored game fields.
+     * @param name the name of the field.
+     * @param type the type the app stores the field as.
+     * @return the value of the field, or null if the field is missing.
+     * @throws IllegalArgumentException if the field has another type.
+     */
+    private static <T> T field(Map<?, ?> game, String name, Class<T> type) {
+        Object value = game.get(name);
+        if (value != null && !type.isInstance(value)) {
+            throw new IllegalArgumentException(name + " must be a " + type.getSimpleName());
+        }
+        return type.cast(value);
+    }
+
+    private static int toInt(Number value) {
+        return value != null ? value.intValue() : 0;
+    }
+
+    private static int[] toIntArray(String name, List<?> values) {
+        if (values == null) {
+            return null;
+        }
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            if (!(values.get(i) instanceof Number)) {
+                throw new IllegalArgumentException(name + " must be a list of numbers");
+            }
+            array[i] = ((Number) values.get(i)).intValue();
+        }
+        return array;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public String getTheme() {
+        return theme;
+    }
+
+    /**
+     * @return the dictionary code of the target stimulus, or {@link ImageDictionary#NO_IMAGE}.
+     */
+    public int getStimuliCode() {
+        return stimuliCode;
+    }
+
+    public int getCommissionErrors() {
+        return commissionErrors;
+    }
+
+    public int getOmissionErrors() {
+        return omissionErrors;
+    }
+
+    /**
+     * @return the hit rate (percentage of correct responses) of the game.
+     */
+    public int getHitRate() {
+        return hitRate;
+    }
+
+    public Timestamp getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the dictionary codes of the shown images, or null if the game has no shown images.
+     */
+    public int[] getShownImages() {
+        return shownImages;
+    }
+
+    /**
+     * @return the reaction times of the tapped images, or null if the game has none stored.
+     */
+    public int[] getReactionTimes() {
+        return reactionTimes;
+    }
+
+    /**
+     * @return the intervals of the game, or null if the game has none stored.
+     */
+    public int[] getIntervals() {
+        return intervals;
+    }
+
+    /**
+     * @return the bit set of tapped images; bit i is set when image i was tapped.
+     */
+    public BitSet getResult() {
+        return result;
+    }
+
+    /**
+     * @return the number of stored results, or -1 if the game has no results stored.
+     */
+    public int getResultLength() {
+        return resultLength;
+    }
+}
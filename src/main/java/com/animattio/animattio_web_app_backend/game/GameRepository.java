@@ -0,0 +1,30 @@
+package com.animattio.animattio_web_app_backend.game;
+
+import com.google.cloud.Timestamp;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage of standalone game documents.
+ * The application uses the Firestore implementation; the implementation holding the games in memory is used by the
+ * "in-memory" profile.
+ */
+public interface GameRepository {
+
+    /**
+     * Finds a game.
+     *
+     * @param gameId the ID of the game document.
+     * @return a future of the game, or of null if not found.
+     */
+    CompletableFuture<Game> findById(String gameId);
+
+    /**
+     * Creates or overwrites a game.
+     *
+     * @param gameId the ID of the game document.
+     * @param game   the game to store.
+     * @return a future of the update time of the stored document.
+     */
+    CompletableFuture<Timestamp> save(String gameId, Game game);
+}
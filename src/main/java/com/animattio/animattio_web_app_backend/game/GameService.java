@@ -1,28 +1,20 @@
 // not used
 package com.animattio.animattio_web_app_backend.game;
 
-import com.animattio.animattio_web_app_backend.patient.Patient;
-import com.google.api.core.ApiFuture;
-import com.google.cloud.firestore.DocumentReference;
-import com.google.cloud.firestore.DocumentSnapshot;
-import com.google.cloud.firestore.Firestore;
-import com.google.firebase.cloud.FirestoreClient;
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
 import org.springframework.stereotype.Service;
 
 import java.util.concurrent.ExecutionException;
 @Service
 public class GameService {
-    public Game getGame(String documentId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        DocumentReference documentReference = dbFirestore.collection("games").document(documentId);
-        ApiFuture<DocumentSnapshot> future = documentReference.get();
-        DocumentSnapshot documentSnapshot = future.get();
+    private final GameRepository gameRepository;
+
+    public GameService(GameRepository gameRepository) {
+        this.gameRepository = gameRepository;
+    }
 
-        if (documentSnapshot.exists()) {
-            System.out.println("Document data: " + documentSnapshot.getData());
-            return documentSnapshot.toObject(Game.class);
-        }
-        return null;
+    public Game getGame(String documentId) throws ExecutionException, InterruptedException {
+        return FirestoreFutures.await(gameRepository.findById(documentId));
     }
 
 }
@@ -0,0 +1,58 @@
+package com.animattio.animattio_web_app_backend.game;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encoding of the image names shown in the games of one test.
+ * Games only use a small set of image names, so each name is stored once
+ * and games refer to it by a small int code.
+ * Codes are only compared between games of the same test, so each decoded test builds its own dictionary:
+ * it is filled by the single thread decoding the test, only read afterwards, and dropped with the test,
+ * so it needs no locking and never grows beyond the images of one test.
+ */
+public final class ImageDictionary {
+
+    /**
+     * The code used for a missing (null) image name.
+     */
+    public static final int NO_IMAGE = -1;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Returns the code of an image name, assigning a new code to names seen for the first time.
+     *
+     * @param name the image name.
+     * @return the code of the image name, or {@link #NO_IMAGE} for null.
+     */
+    public int encode(String name) {
+        if (name == null) {
+            return NO_IMAGE;
+        }
+        return codes.computeIfAbsent(name, newName -> {
+            names.add(newName);
+            return names.size() - 1;
+        });
+    }
+
+    /**
+     * Returns the image name of a code.
+     *
+     * @param code the code of the image name.
+     * @return the image name, or null for {@link #NO_IMAGE}.
+     */
+    public String decode(int code) {
+        return code == NO_IMAGE ? null : names.get(code);
+    }
+
+    /**
+     * @return the number of distinct image names.
+     */
+    public int size() {
+        return names.size();
+    }
+}
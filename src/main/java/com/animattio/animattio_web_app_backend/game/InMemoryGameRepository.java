@@ -0,0 +1,51 @@
+package com.animattio.animattio_web_app_backend.game;
+
+import com.google.cloud.Timestamp;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link GameRepository} holding the games in memory, for the "in-memory" profile.
+ * Games are copied on the way in and out like Firestore serializes them.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemoryGameRepository implements GameRepository {
+
+    private final Map<String, Game> games = new ConcurrentHashMap<>(); // game ID -> game
+
+    @Override
+    public CompletableFuture<Game> findById(String gameId) {
+        Game game = games.get(gameId);
+        return CompletableFuture.completedFuture(game != null ? copy(game) : null);
+    }
+
+    @Override
+    public CompletableFuture<Timestamp> save(String gameId, Game game) {
+        games.put(gameId, copy(game));
+        return CompletableFuture.completedFuture(Timestamp.now());
+    }
+
+    private static Game copy(Game game) {
+        Game copy = new Game();
+        copy.setId(game.getId());
+        copy.setMode(game.getMode());
+        copy.setTheme(game.getTheme());
+        copy.setStimuli(game.getStimuli());
+        copy.setTimestamp(game.getTimestamp() != null ? new Date(game.getTimestamp().getTime()) : null);
+        copy.setComissionErrors(game.getComissionErrors());
+        copy.setOmissionErrors(game.getOmissionErrors());
+        copy.setHitRate(game.getHitRate());
+        copy.setShownImages(game.getShownImages() != null ? new ArrayList<>(game.getShownImages()) : null);
+        copy.setResult(game.getResult() != null ? new ArrayList<>(game.getResult()) : null);
+        copy.setReactionTimes(game.getReactionTimes() != null ? new ArrayList<>(game.getReactionTimes()) : null);
+        copy.setIntervals(game.getIntervals() != null ? new ArrayList<>(game.getIntervals()) : null);
+        return copy;
+    }
+}
@@ -0,0 +1,119 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of the erasure of one patient.
+ * Counters are updated from the Firestore callback threads of the deletes, so every counter is atomic
+ * and the status map is built from a consistent read of each counter.
+ */
+public class ErasureJob {
+
+    /**
+     * The states of an erasure job.
+     */
+    public enum State { RUNNING, COMPLETED, FAILED }
+
+    private final String jobId;
+    private final String username;
+    private final Instant startedAt = Instant.now();
+    private final Map<String, AtomicLong> found = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> deleted = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> failed = new ConcurrentHashMap<>();
+    private volatile State state = State.RUNNING;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    /**
+     * Constructs a running erasure job.
+     *
+     * @param jobId    the ID of the job.
+     * @param username the username of the patient to erase.
+     */
+    public ErasureJob(String jobId, String username) {
+        this.jobId = jobId;
+        this.username = username;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * Checks whether the job is still deleting documents.
+     *
+     * @return true if the job has not finished yet.
+     */
+    public boolean isRunning() {
+        return state == State.RUNNING;
+    }
+
+    void addFound(String collection, long count) {
+        found.computeIfAbsent(collection, key -> new AtomicLong()).addAndGet(count);
+    }
+
+    void addDeleted(String collection) {
+        deleted.computeIfAbsent(collection, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    void addFailed(String collection) {
+        failed.computeIfAbsent(collection, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    void complete() {
+        finish(State.COMPLETED, null);
+    }
+
+    void fail(String error) {
+        finish(State.FAILED, error);
+    }
+
+    private void finish(State state, String error) {
+        this.error = error;
+        this.finishedAt = Instant.now();
+        this.state = state; // Written last, so a finished state is never seen without its details
+    }
+
+    /**
+     * Returns the current progress of the job.
+     *
+     * @return a map with the state, the timestamps and the found, deleted and failed documents per collection.
+     */
+    public Map<String, Object> toStatus() {
+        Map<String, Object> status = new TreeMap<>();
+        status.put("jobId", jobId);
+        status.put("username", username);
+        status.put("state", state.name());
+        status.put("startedAt", startedAt.toString());
+        status.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+        status.put("found", snapshot(found));
+        status.put("deleted", snapshot(deleted));
+        status.put("failed", snapshot(failed));
+        if (error != null) {
+            status.put("error", error);
+        }
+        return status;
+    }
+
+    private static Map<String, Long> snapshot(Map<String, AtomicLong> counters) {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((collection, count) -> values.put(collection, count.get()));
+        return values;
+    }
+}
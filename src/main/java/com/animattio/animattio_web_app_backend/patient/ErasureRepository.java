@@ -0,0 +1,78 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Storage operations of the {@link PatientErasureService}: finding the documents that belong to a patient
+ * in the "patients", "users" and "tests" collections, and deleting them with flow control.
+ * The application uses the Firestore implementation; the implementation over the in-memory repositories is used by the tests.
+ */
+public interface ErasureRepository {
+
+    /**
+     * Deletes of one erasure, sent in parallel at a limited rate.
+     */
+    interface BulkDelete {
+
+        /**
+         * Queues the delete of a document.
+         *
+         * @param collection the collection of the document: "patients", "users" or "tests".
+         * @param documentId the ID of the document.
+         * @return a future completed once the document is deleted, failed if the delete failed.
+         */
+        CompletableFuture<Void> delete(String collection, String documentId);
+
+        /**
+         * Sends every queued delete and waits until all of them are answered.
+         *
+         * @throws ExecutionException   if the deletes cannot be sent.
+         * @throws InterruptedException if waiting is interrupted.
+         */
+        void flush() throws ExecutionException, InterruptedException;
+
+        /**
+         * Sends the remaining deletes and releases the writer.
+         *
+         * @throws ExecutionException   if the remaining deletes cannot be sent.
+         * @throws InterruptedException if waiting is interrupted.
+         */
+        void close() throws ExecutionException, InterruptedException;
+    }
+
+    /**
+     * Finds the IDs of the patient documents of a patient.
+     *
+     * @param username the username of the patient.
+     * @return a future of the IDs, empty if none matches.
+     */
+    CompletableFuture<List<String>> findPatientIds(String username);
+
+    /**
+     * Finds the IDs of the user documents the mobile app created for a patient.
+     *
+     * @param username the username of the patient.
+     * @return a future of the user IDs, empty if none matches.
+     */
+    CompletableFuture<List<String>> findUserIds(String username);
+
+    /**
+     * Finds one page of the IDs of a user's tests in document ID order, without reading the games.
+     *
+     * @param userId      the user ID of the tests.
+     * @param afterTestId the last test ID of the previous page, or null for the first page.
+     * @param limit       the maximum number of IDs in the page.
+     * @return a future of the test IDs of the page.
+     */
+    CompletableFuture<List<String>> findTestIds(String userId, String afterTestId, int limit);
+
+    /**
+     * Opens the deletes of one erasure.
+     *
+     * @param maxOpsPerSecond the maximum number of deletes per second.
+     * @return the deletes, which must be closed.
+     */
+    BulkDelete openBulkDelete(int maxOpsPerSecond);
+}
@@ -0,0 +1,82 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.BulkWriterOptions;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.firebase.cloud.FirestoreClient;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * {@link ErasureRepository} over Firestore. Deletes go through a {@link BulkWriter}, which batches them in parallel
+ * and ramps up its rate up to the limit of the erasure.
+ */
+@Repository
+@Profile("!in-memory")
+public class FirestoreErasureRepository implements ErasureRepository {
+
+    @Override
+    public CompletableFuture<List<String>> findPatientIds(String username) {
+        return documentIds(FirestoreClient.getFirestore().collection("patients").whereEqualTo("patientUsername", username));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findUserIds(String username) {
+        return documentIds(FirestoreClient.getFirestore().collection("users").whereEqualTo("username", username));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findTestIds(String userId, String afterTestId, int limit) {
+        Query query = FirestoreClient.getFirestore().collection("tests")
+                .whereEqualTo("userId", userId)
+                .orderBy(FieldPath.documentId())
+                .limit(limit);
+        return documentIds(afterTestId != null ? query.startAfter(afterTestId) : query);
+    }
+
+    @Override
+    public BulkDelete openBulkDelete(int maxOpsPerSecond) {
+        Firestore dbFirestore = FirestoreClient.getFirestore();
+        BulkWriter bulkWriter = dbFirestore.bulkWriter(BulkWriterOptions.builder()
+                .setMaxOpsPerSecond(maxOpsPerSecond)
+                .build());
+
+        return new BulkDelete() {
+            @Override
+            public CompletableFuture<Void> delete(String collection, String documentId) {
+                return FirestoreFutures.toCompletableFuture(bulkWriter.delete(dbFirestore.collection(collection).document(documentId)))
+                        .thenApply(writeResult -> null);
+            }
+
+            @Override
+            public void flush() throws ExecutionException, InterruptedException {
+                bulkWriter.flush().get();
+            }
+
+            @Override
+            public void close() throws ExecutionException, InterruptedException {
+                bulkWriter.close();
+            }
+        };
+    }
+
+    private static CompletableFuture<List<String>> documentIds(Query query) {
+        return FirestoreFutures.toCompletableFuture(query.select(FieldPath.documentId()).get()) // Only the references are needed
+                .thenApply(querySnapshot -> {
+                    List<String> documentIds = new ArrayList<>();
+                    for (QueryDocumentSnapshot document : querySnapshot.getDocuments()) {
+                        documentIds.add(document.getId());
+                    }
+                    return documentIds;
+                });
+    }
+}
@@ -0,0 +1,127 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.AggregateQuerySnapshot;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import com.google.firebase.cloud.FirestoreClient;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link PatientRepository} over the "patients" collection of Firestore.
+ */
+@Repository
+@Profile("!in-memory")
+public class FirestorePatientRepository implements PatientRepository {
+
+    @Override
+    public CompletableFuture<Patient> findById(String patientId) {
+        return FirestoreFutures.toCompletableFuture(patients().document(patientId).get())
+                .thenApply(documentSnapshot -> documentSnapshot.exists() ? documentSnapshot.toObject(Patient.class) : null);
+    }
+
+    @Override
+    public CompletableFuture<List<Patient>> findByDoctor(String doctorId) {
+        return list(patients().whereEqualTo("doctorUsername", doctorId));
+    }
+
+    @Override
+    public CompletableFuture<List<Patient>> findByDoctorAndAgeBetween(String doctorId, int minAge, int maxAge) {
+        return list(patients()
+                .whereEqualTo("doctorUsername", doctorId)
+                .whereGreaterThanOrEqualTo("age", minAge)
+                .whereLessThanOrEqualTo("age", maxAge));
+    }
+
+    @Override
+    public CompletableFuture<List<Patient>> findByDoctorAndGender(String doctorId, String gender) {
+        return list(patients().whereEqualTo("doctorUsername", doctorId).whereEqualTo("gender", gender));
+    }
+
+    @Override
+    public CompletableFuture<List<Patient>> findByDoctorAndType(String doctorId, String type) {
+        return list(patients().whereEqualTo("doctorUsername", doctorId).whereEqualTo("type", type));
+    }
+
+    @Override
+    public CompletableFuture<Long> countByDoctor(String doctorId) {
+        return FirestoreFutures.toCompletableFuture(patients().whereEqualTo("doctorUsername", doctorId).count().get())
+                .thenApply(AggregateQuerySnapshot::getCount); // Server-side aggregation, no patient documents are transferred
+    }
+
+    @Override
+    public CompletableFuture<Integer> reassignDoctor(String doctorId, String newDoctorId, int maxPatients) {
+        Firestore dbFirestore = FirestoreClient.getFirestore();
+        Query patientQuery = patients()
+                .whereEqualTo("doctorUsername", doctorId)
+                .select(FieldPath.documentId()) // Only the references are needed to update the patients
+                .limit(maxPatients);
+
+        return FirestoreFutures.toCompletableFuture(patientQuery.get()).thenCompose(querySnapshot -> {
+            List<QueryDocumentSnapshot> patientDocuments = querySnapshot.getDocuments();
+            if (patientDocuments.isEmpty()) {
+                return CompletableFuture.completedFuture(0);
+            }
+            WriteBatch batch = dbFirestore.batch();
+            for (QueryDocumentSnapshot patientDoc : patientDocuments) {
+                batch.update(patientDoc.getReference(), "doctorUsername", newDoctorId);
+            }
+            return FirestoreFutures.toCompletableFuture(batch.commit()).thenApply(writeResults -> patientDocuments.size());
+        });
+    }
+
+    @Override
+    public CompletableFuture<Timestamp> save(String patientId, Patient patient) {
+        return FirestoreFutures.toCompletableFuture(patients().document(patientId).set(patient))
+                .thenApply(WriteResult::getUpdateTime);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteById(String patientId) {
+        return FirestoreFutures.toCompletableFuture(patients().document(patientId).delete())
+                .thenApply(writeResult -> null);
+    }
+
+    @Override
+    public Subscription listenToDoctor(String doctorId, PatientListener listener) {
+        ListenerRegistration registration = patients().whereEqualTo("doctorUsername", doctorId)
+                .addSnapshotListener((snapshot, error) -> {
+                    if (error != null) {
+                        listener.onError(error);
+                        return;
+                    }
+                    List<Patient> patients = new ArrayList<>();
+                    for (QueryDocumentSnapshot document : snapshot.getDocuments()) {
+                        patients.add(document.toObject(Patient.class));
+                    }
+                    listener.onChange(patients);
+                });
+        return registration::remove;
+    }
+
+    private CollectionReference patients() {
+        return FirestoreClient.getFirestore().collection("patients");
+    }
+
+    private CompletableFuture<List<Patient>> list(Query query) {
+        return FirestoreFutures.toCompletableFuture(query.get()).thenApply(querySnapshot -> {
+            List<Patient> patients = new ArrayList<>();
+            for (QueryDocumentSnapshot document : querySnapshot.getDocuments()) {
+                patients.add(document.toObject(Patient.class));
+            }
+            return patients;
+        });
+    }
+}
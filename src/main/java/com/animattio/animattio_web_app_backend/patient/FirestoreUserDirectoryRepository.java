@@ -0,0 +1,85 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.WriteResult;
+import com.google.firebase.cloud.FirestoreClient;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link UserDirectoryRepository} over the "users" collection of Firestore.
+ */
+@Repository
+@Profile("!in-memory")
+public class FirestoreUserDirectoryRepository implements UserDirectoryRepository {
+
+    private static final int MAX_IN_VALUES = 30; // Firestore limit of values in a single whereIn filter
+
+    @Override
+    public CompletableFuture<String> findUserIdByUsername(String username) {
+        return FirestoreFutures.toCompletableFuture(users()
+                        .whereEqualTo("username", username)
+                        .select(FieldPath.documentId()) // Only the ID of the user document is needed
+                        .limit(1)
+                        .get())
+                .thenApply(querySnapshot -> querySnapshot.isEmpty() ? null : querySnapshot.getDocuments().get(0).getId());
+    }
+
+    @Override
+    public CompletableFuture<Map<String, List<String>>> findUserIdsByUsernames(List<String> usernames) {
+        List<CompletableFuture<List<QueryDocumentSnapshot>>> userQueries = new ArrayList<>();
+        for (int i = 0; i < usernames.size(); i += MAX_IN_VALUES) {
+            userQueries.add(FirestoreFutures.toCompletableFuture(users()
+                            .whereIn("username", new ArrayList<>(usernames.subList(i, Math.min(i + MAX_IN_VALUES, usernames.size()))))
+                            .select("username") // Only the username is needed to map user documents to patients
+                            .get())
+                    .thenApply(querySnapshot -> querySnapshot.getDocuments())); // Issued without waiting for the previous queries
+        }
+
+        return CompletableFuture.allOf(userQueries.toArray(new CompletableFuture[0])).thenApply(done -> {
+            Map<String, List<String>> userIds = new TreeMap<>();
+            for (CompletableFuture<List<QueryDocumentSnapshot>> userQuery : userQueries) {
+                for (QueryDocumentSnapshot userDoc : userQuery.join()) {
+                    userIds.computeIfAbsent(userDoc.getString("username"), username -> new ArrayList<>()).add(userDoc.getId());
+                }
+            }
+            for (List<String> ids : userIds.values()) {
+                Collections.sort(ids); // A username spread over several queries keeps user ID order
+            }
+            return userIds;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> save(String userId, String username) {
+        return FirestoreFutures.toCompletableFuture(users().document(userId).set(Collections.singletonMap("username", username)))
+                .thenApply(writeResult -> null);
+    }
+
+    @Override
+    public CompletableFuture<Integer> renameUsername(String currentUsername, String newUsername) {
+        return FirestoreFutures.toCompletableFuture(users().whereEqualTo("username", currentUsername).select(FieldPath.documentId()).get())
+                .thenCompose(querySnapshot -> {
+                    List<CompletableFuture<WriteResult>> updates = new ArrayList<>();
+                    for (QueryDocumentSnapshot userDoc : querySnapshot.getDocuments()) {
+                        updates.add(FirestoreFutures.toCompletableFuture(userDoc.getReference().update("username", newUsername)));
+                    }
+                    return CompletableFuture.allOf(updates.toArray(new CompletableFuture[0]))
+                            .thenApply(updated -> updates.size());
+                });
+    }
+
+    private CollectionReference users() {
+        return FirestoreClient.getFirestore().collection("users");
+    }
+}
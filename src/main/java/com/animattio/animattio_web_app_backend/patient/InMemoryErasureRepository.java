@@ -0,0 +1,84 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import com.animattio.animattio_web_app_backend.test.InMemoryTestRepository;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link ErasureRepository} over the in-memory repositories, for the tests and the "in-memory" profile.
+ * Deletes are applied as soon as they are queued and are not rate limited.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemoryErasureRepository implements ErasureRepository {
+
+    private final InMemoryPatientRepository patientRepository;
+    private final InMemoryUserDirectoryRepository userDirectoryRepository;
+    private final InMemoryTestRepository testRepository;
+
+    /**
+     * Constructs the repository.
+     *
+     * @param patientRepository       the repository of the patient documents.
+     * @param userDirectoryRepository the repository of the user documents.
+     * @param testRepository          the repository of the test documents.
+     */
+    public InMemoryErasureRepository(InMemoryPatientRepository patientRepository,
+                                     InMemoryUserDirectoryRepository userDirectoryRepository,
+                                     InMemoryTestRepository testRepository) {
+        this.patientRepository = patientRepository;
+        this.userDirectoryRepository = userDirectoryRepository;
+        this.testRepository = testRepository;
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findPatientIds(String username) {
+        return CompletableFuture.completedFuture(patientRepository.findIdsByUsername(username));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findUserIds(String username) {
+        return CompletableFuture.completedFuture(userDirectoryRepository.findUserIds(username));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findTestIds(String userId, String afterTestId, int limit) {
+        return CompletableFuture.completedFuture(testRepository.findTestIds(userId, afterTestId, limit));
+    }
+
+    @Override
+    public BulkDelete openBulkDelete(int maxOpsPerSecond) {
+        return new BulkDelete() {
+            @Override
+            public CompletableFuture<Void> delete(String collection, String documentId) {
+                switch (collection) {
+                    case "patients":
+                        patientRepository.deleteById(documentId);
+                        break;
+                    case "users":
+                        userDirectoryRepository.deleteById(documentId);
+                        break;
+                    case "tests":
+                        testRepository.deleteById(documentId);
+                        break;
+                    default:
+                        return CompletableFuture.failedFuture(new IllegalArgumentException("Unknown collection: " + collection));
+                }
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public void flush() {
+                // Deletes are applied when they are queued
+            }
+
+            @Override
+            public void close() {
+                // Nothing is held open
+            }
+        };
+    }
+}
@@ -0,0 +1,168 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import com.google.cloud.Timestamp;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+/**
+ * {@link PatientRepository} holding the patients in memory, for the benchmarks and the "in-memory" profile.
+ * Patients are copied on the way in and out like Firestore serializes them, and results come in document ID order
+ * (age ranges by age first) like the Firestore queries, so services behave the same without a Firebase project.
+ * Patient listeners are notified on the thread that saves, moves or deletes a patient of their doctor.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemoryPatientRepository implements PatientRepository {
+
+    private final ConcurrentNavigableMap<String, Patient> patients = new ConcurrentSkipListMap<>(); // patient ID -> patient
+    private final Map<String, List<PatientListener>> listeners = new ConcurrentHashMap<>(); // doctor username -> listeners
+
+    @Override
+    public CompletableFuture<Patient> findById(String patientId) {
+        Patient patient = patients.get(patientId);
+        return CompletableFuture.completedFuture(patient != null ? copy(patient) : null);
+    }
+
+    @Override
+    public CompletableFuture<List<Patient>> findByDoctor(String doctorId) {
+        return CompletableFuture.completedFuture(list(patient -> Objects.equals(patient.getDoctorUsername(), doctorId)));
+    }
+
+    @Override
+    public CompletableFuture<List<Patient>> findByDoctorAndAgeBetween(String doctorId, int minAge, int maxAge) {
+        List<Patient> matches = list(patient -> Objects.equals(patient.getDoctorUsername(), doctorId)
+                && patient.getAge() >= minAge && patient.getAge() <= maxAge);
+        matches.sort(Comparator.comparingInt(Patient::getAge)); // Stable, so equal ages stay in document ID order
+        return CompletableFuture.completedFuture(matches);
+    }
+
+    @Override
+    public CompletableFuture<List<Patient>> findByDoctorAndGender(String doctorId, String gender) {
+        return CompletableFuture.completedFuture(list(patient -> Objects.equals(patient.getDoctorUsername(), doctorId)
+                && Objects.equals(patient.getGender(), gender)));
+    }
+
+    @Override
+    public CompletableFuture<List<Patient>> findByDoctorAndType(String doctorId, String type) {
+        return CompletableFuture.completedFuture(list(patient -> Objects.equals(patient.getDoctorUsername(), doctorId)
+                && Objects.equals(patient.getType(), type)));
+    }
+
+    @Override
+    public CompletableFuture<Long> countByDoctor(String doctorId) {
+        long count = patients.values().stream().filter(patient -> Objects.equals(patient.getDoctorUsername(), doctorId)).count();
+        return CompletableFuture.completedFuture(count);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Integer> reassignDoctor(String doctorId, String newDoctorId, int maxPatients) {
+        int moved = 0; // Synchronized, so concurrent moves never count the same patient twice and listeners see changes in order
+        for (Map.Entry<String, Patient> patient : patients.entrySet()) {
+            if (moved == maxPatients) {
+                break;
+            }
+            if (Objects.equals(patient.getValue().getDoctorUsername(), doctorId)) {
+                Patient reassigned = copy(patient.getValue());
+                reassigned.setDoctorUsername(newDoctorId);
+                patients.put(patient.getKey(), reassigned);
+                moved++;
+            }
+        }
+        if (moved > 0) {
+            notifyListeners(doctorId, newDoctorId);
+        }
+        return CompletableFuture.completedFuture(moved);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Timestamp> save(String patientId, Patient patient) {
+        Patient previous = patients.put(patientId, copy(patient));
+        notifyListeners(previous != null ? previous.getDoctorUsername() : null, patient.getDoctorUsername());
+        return CompletableFuture.completedFuture(Timestamp.now());
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> deleteById(String patientId) {
+        Patient removed = patients.remove(patientId);
+        if (removed != null) {
+            notifyListeners(removed.getDoctorUsername(), null);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public synchronized Subscription listenToDoctor(String doctorId, PatientListener listener) {
+        listener.onChange(list(patient -> Objects.equals(patient.getDoctorUsername(), doctorId)));
+        listeners.computeIfAbsent(doctorId, doctor -> new CopyOnWriteArrayList<>()).add(listener);
+        return () -> listeners.getOrDefault(doctorId, List.of()).remove(listener);
+    }
+
+    /**
+     * Finds the IDs of the patient documents with a patient username, for the in-memory erasure.
+     *
+     * @param username the username of the patient.
+     * @return the patient IDs in ID order.
+     */
+    public List<String> findIdsByUsername(String username) {
+        List<String> patientIds = new ArrayList<>();
+        for (Map.Entry<String, Patient> patient : patients.entrySet()) {
+            if (Objects.equals(patient.getValue().getPatientUsername(), username)) {
+                patientIds.add(patient.getKey());
+            }
+        }
+        return patientIds;
+    }
+
+    /**
+     * Delivers the current patients of the doctors a change touched to their listeners.
+     *
+     * @param doctorIds the usernames of the doctors, null for none.
+     */
+    private void notifyListeners(String... doctorIds) {
+        Set<String> notified = new HashSet<>();
+        for (String doctorId : doctorIds) {
+            List<PatientListener> doctorListeners = doctorId != null ? listeners.get(doctorId) : null;
+            if (doctorListeners == null || doctorListeners.isEmpty() || !notified.add(doctorId)) {
+                continue;
+            }
+            List<Patient> doctorPatients = list(patient -> Objects.equals(patient.getDoctorUsername(), doctorId));
+            for (PatientListener listener : doctorListeners) {
+                listener.onChange(doctorPatients);
+            }
+        }
+    }
+
+    private List<Patient> list(Predicate<Patient> filter) {
+        List<Patient> matches = new ArrayList<>();
+        for (Patient patient : patients.values()) {
+            if (filter.test(patient)) {
+                matches.add(copy(patient));
+            }
+        }
+        return matches;
+    }
+
+    private static Patient copy(Patient patient) {
+        Patient copy = new Patient();
+        copy.setPatientUsername(patient.getPatientUsername());
+        copy.setDoctorUsername(patient.getDoctorUsername());
+        copy.setGender(patient.getGender());
+        copy.setAge(patient.getAge());
+        copy.setType(patient.getType());
+        return copy;
+    }
+}
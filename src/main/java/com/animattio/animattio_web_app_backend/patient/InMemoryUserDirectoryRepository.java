@@ -0,0 +1,89 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * {@link UserDirectoryRepository} holding the users in memory, for the benchmarks and the "in-memory" profile.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemoryUserDirectoryRepository implements UserDirectoryRepository {
+
+    private final ConcurrentNavigableMap<String, String> usernames = new ConcurrentSkipListMap<>(); // user ID -> username
+
+    @Override
+    public CompletableFuture<String> findUserIdByUsername(String username) {
+        for (Map.Entry<String, String> user : usernames.entrySet()) {
+            if (Objects.equals(user.getValue(), username)) {
+                return CompletableFuture.completedFuture(user.getKey()); // Lowest user ID, like the first document of the query
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, List<String>>> findUserIdsByUsernames(List<String> usernames) {
+        Set<String> wanted = new HashSet<>(usernames);
+        Map<String, List<String>> userIds = new TreeMap<>();
+        for (Map.Entry<String, String> user : this.usernames.entrySet()) {
+            if (wanted.contains(user.getValue())) {
+                userIds.computeIfAbsent(user.getValue(), username -> new ArrayList<>()).add(user.getKey()); // In user ID order
+            }
+        }
+        return CompletableFuture.completedFuture(userIds);
+    }
+
+    @Override
+    public CompletableFuture<Void> save(String userId, String username) {
+        usernames.put(userId, username);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Integer> renameUsername(String currentUsername, String newUsername) {
+        int renamed = 0;
+        for (Map.Entry<String, String> user : usernames.entrySet()) {
+            if (Objects.equals(user.getValue(), currentUsername) && usernames.replace(user.getKey(), currentUsername, newUsername)) {
+                renamed++;
+            }
+        }
+        return CompletableFuture.completedFuture(renamed);
+    }
+
+    /**
+     * Finds the IDs of every user with a username, for the in-memory erasure.
+     *
+     * @param username the username of the patient.
+     * @return the user IDs in ID order.
+     */
+    public List<String> findUserIds(String username) {
+        List<String> userIds = new ArrayList<>();
+        for (Map.Entry<String, String> user : usernames.entrySet()) {
+            if (Objects.equals(user.getValue(), username)) {
+                userIds.add(user.getKey());
+            }
+        }
+        return userIds;
+    }
+
+    /**
+     * Deletes a user, for the in-memory erasure. Deleting a missing user succeeds.
+     *
+     * @param userId the user ID.
+     */
+    public void deleteById(String userId) {
+        usernames.remove(userId);
+    }
+}
@@ -1,6 +1,5 @@
 package com.animattio.animattio_web_app_backend.patient;
 
-import com.google.firebase.auth.FirebaseAuthException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -9,6 +8,7 @@ import org.springframework.web.server.ResponseStatusException;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 /**
  * PatientController
@@ -21,14 +21,24 @@ import java.util.concurrent.ExecutionException;
 @RequestMapping("/patients")
 //@CrossOrigin(origins = "http://localhost:3000")
 public class PatientController {
+    private static final int MAX_SEARCH_LIMIT = 200;
+    private static final int MAX_QUERY_LIMIT = 500;
+
     private final PatientService patientService;
+    private final PatientErasureService patientErasureService;
+    private final PatientDirectory patientDirectory;
     /**
      * Constructor to inject PatientService dependency.
      *
-     * @param patientService the service handling patient operations.
+     * @param patientService        the service handling patient operations.
+     * @param patientErasureService the service erasing all documents of a patient.
+     * @param patientDirectory      the in-memory directory used to search the patients of a doctor.
      */
-    public PatientController(PatientService patientService) {
+    public PatientController(PatientService patientService, PatientErasureService patientErasureService,
+                             PatientDirectory patientDirectory) {
         this.patientService = patientService;
+        this.patientErasureService = patientErasureService;
+        this.patientDirectory = patientDirectory;
     }
     /**
      * Creates a new patient record.
@@ -46,21 +56,23 @@ public class PatientController {
     /**
      * Retrieves a patient by document ID.
      *
+     * The request thread is released while Firestore is queried.
+     *
      * @param documentId The ID of the patient document.
-     * @return The Patient object or an error message if not found.
-     * @throws ExecutionException
-     * @throws InterruptedException
+     * @return A future of the Patient object or an error message if not found.
      */
     @PreAuthorize("hasRole('doctor')")
     @GetMapping("/get-patient")
-    public ResponseEntity<?> getPatient(@RequestParam String documentId) throws ExecutionException, InterruptedException {
-        Patient patient = patientService.getPatient(documentId);
-        if (patient != null) {
-            return ResponseEntity.ok(patient);
-        } else {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body(Collections.singletonMap("error", "Patient not found"));
-        }
+    public CompletableFuture<ResponseEntity<?>> getPatient(@RequestParam String documentId) {
+        return patientService.getPatientAsync(documentId).<ResponseEntity<?>>thenApply(patient -> {
+            if (patient != null) {
+                return ResponseEntity.ok(patient);
+            } else {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Collections.singletonMap("error", "Patient not found"));
+            }
+        }).exceptionally(e -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Collections.singletonMap("error", "An error occurred while retrieving the patient")));
     }
 
     /**
@@ -161,23 +173,24 @@ public class PatientController {
     /**
      * Retrieves all patients for a specific doctor.
      *
+     * The request thread is released while Firestore is queried.
+     *
      * @param doctorId The ID of the doctor.
-     * @return A list of patients or an error message if none found.
+     * @return A future of the list of patients or an error message if none found.
      */
     @GetMapping("/get-all-patients")
-    public ResponseEntity<?> getAllPatients(@RequestParam String doctorId) {
-        try {
-            List<Patient> patients = patientService.getAllPatients(doctorId);
-            if (!patients.isEmpty()) {
-                return ResponseEntity.ok(patients);
-            } else {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                        .body(Collections.singletonMap("error", "No patients found for this doctor"));
-            }
-        } catch (InterruptedException | ExecutionException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Collections.singletonMap("error", "An error occurred while retrieving patients"));
-        }
+    public CompletableFuture<ResponseEntity<?>> getAllPatients(@RequestParam String doctorId) {
+        return patientService.getAllPatientsAsync(doctorId)
+                .<ResponseEntity<?>>thenApply(patients -> {
+                    if (!patients.isEmpty()) {
+                        return ResponseEntity.ok(patients);
+                    } else {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                                .body(Collections.singletonMap("error", "No patients found for this doctor"));
+                    }
+                })
+                .exceptionally(e -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(Collections.singletonMap("error", "An error occurred while retrieving patients")));
     }
 
     /**
@@ -234,7 +247,8 @@ public class PatientController {
     }
 
     /**
-     * Retrieves patients by username for a specific doctor.
+     * Retrieves patients by username for a specific doctor: the patients whose username starts with the given username,
+     * ignoring the case of its first letter. Typo-tolerant matching is only offered by {@code /patients/search}.
      *
      * @param doctorId The ID of the doctor.
      * @param username The username of the patient (optional).
@@ -259,6 +273,62 @@ public class PatientController {
         }
     }
 
+    /**
+     * Searches the patients of a doctor as the user types, matching usernames case-insensitively
+     * by prefix, infix and, for queries of at least five characters, with typos.
+     *
+     * @param doctorId The ID of the doctor.
+     * @param q        The text typed by the user.
+     * @param limit    The maximum number of matches (default 20, at most 200).
+     * @return A list of matches with the patient, the kind of match and the number of typos.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchPatients(@RequestParam String doctorId,
+                                            @RequestParam(defaultValue = "") String q,
+                                            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            int boundedLimit = Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT));
+            return ResponseEntity.ok(patientDirectory.search(doctorId, q, boundedLimit));
+        } catch (InterruptedException | ExecutionException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("message", "An error occurred while searching patients"));
+        }
+    }
+
+
+    /**
+     * Retrieves the patients of a doctor matching any combination of filters, evaluated in memory.
+     *
+     * @param doctorId       The ID of the doctor.
+     * @param minAge         The minimum age (inclusive, optional).
+     * @param maxAge         The maximum age (inclusive, optional).
+     * @param gender         The accepted genders (optional, repeatable).
+     * @param type           The accepted types (optional, repeatable).
+     * @param usernamePrefix The case-insensitive username prefix (optional).
+     * @param sort           "username", "-username", "age" or "-age" (default "username").
+     * @param limit          The maximum number of returned patients (default 50, at most 500).
+     * @return The number of matching patients and the first matches, or an error message.
+     */
+    @GetMapping("/query")
+    public ResponseEntity<?> queryPatients(@RequestParam String doctorId,
+                                           @RequestParam(required = false) Integer minAge,
+                                           @RequestParam(required = false) Integer maxAge,
+                                           @RequestParam(required = false) List<String> gender,
+                                           @RequestParam(required = false) List<String> type,
+                                           @RequestParam(required = false) String usernamePrefix,
+                                           @RequestParam(required = false) String sort,
+                                           @RequestParam(defaultValue = "50") int limit) {
+        try {
+            int boundedLimit = Math.max(1, Math.min(limit, MAX_QUERY_LIMIT));
+            return ResponseEntity.ok(patientDirectory.getFacets(doctorId)
+                    .query(minAge, maxAge, gender, type, usernamePrefix, sort, boundedLimit));
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).body(Collections.singletonMap("message", e.getReason()));
+        } catch (InterruptedException | ExecutionException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("message", "An error occurred while querying patients"));
+        }
+    }
 
     /**
      * Retrieves patients by type for a specific doctor.
@@ -283,6 +353,20 @@ public class PatientController {
         }
     }
 
+    /**
+     * Counts the patients of a specific doctor without reading the patient documents.
+     *
+     * @param doctorId The ID of the doctor.
+     * @return A future of the response entity containing the number of patients or an error message.
+     */
+    @GetMapping("/count")
+    public CompletableFuture<ResponseEntity<?>> countPatients(@RequestParam String doctorId) {
+        return patientService.countPatientsAsync(doctorId)
+                .<ResponseEntity<?>>thenApply(count -> ResponseEntity.ok(Collections.singletonMap("count", count)))
+                .exceptionally(e -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(Collections.singletonMap("error", "An error occurred while counting patients")));
+    }
+
     /**
      * Deletes a patient by document ID.
      *
@@ -311,18 +395,44 @@ public class PatientController {
         }
     }
     /**
-     * Deletes a patient by username.
+     * Starts erasing a patient by username, together with the patient's users and tests.
+     *
+     * The erasure runs in the background: the response is 202 Accepted with the status of the erasure job
+     * (its "jobId" and "state"), not a confirmation that the documents are gone. Clients poll
+     * /patients/erasure-jobs/{jobId} until the state is COMPLETED or FAILED; a FAILED erasure can be started again.
      *
      * @param username The username of the patient to delete.
-     * @return A success message upon deletion.
-     * @throws ExecutionException
-     * @throws InterruptedException
-     * @throws FirebaseAuthException
+     * @return A response entity with status 202 and the status of the erasure job,
+     *         or an error message if the patient is not found.
      */
 //    @PreAuthorize("hasRole('doctor')")
     @DeleteMapping("/delete-by-username")
-    public String deletePatientByUsername(@RequestParam String username) throws ExecutionException, InterruptedException, FirebaseAuthException, FirebaseAuthException {
-        return patientService.deletePatientByUsername(username);
+    public ResponseEntity<?> deletePatientByUsername(@RequestParam String username) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(patientErasureService.startErasure(username).toStatus());
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).body(Collections.singletonMap("error", e.getReason()));
+        } catch (ExecutionException | InterruptedException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("error", "Error deleting patient: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Retrieves the progress of a patient erasure.
+     *
+     * Jobs are kept by the instance that started them for an hour after they finish.
+     *
+     * @param jobId The ID of the erasure job returned when the erasure was started.
+     * @return A response entity with the status of the job, or an error message if the job is not found.
+     */
+    @GetMapping("/erasure-jobs/{jobId}")
+    public ResponseEntity<?> getErasureJob(@PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(patientErasureService.getJob(jobId).toStatus());
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).body(Collections.singletonMap("error", e.getReason()));
+        }
     }
 
 }
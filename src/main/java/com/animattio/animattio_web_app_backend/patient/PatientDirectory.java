@@ -0,0 +1,167 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps a {@link PatientSearchIndex} and a {@link PatientFacetIndex} of the patients of each doctor in memory.
+ * The patients of a doctor are loaded once through a {@link PatientRepository} listener on the doctor's patients,
+ * and every added, modified or removed patient replaces both indexes with new ones,
+ * so searching as the user types and filtering by attributes cost no Firestore reads.
+ * Indexes are kept for a bounded number of doctors; the least recently used one stops listening when the limit is reached.
+ */
+@Component
+public class PatientDirectory implements DisposableBean {
+
+    /**
+     * The indexes of a single doctor together with the listener that keeps them current.
+     */
+    private static class DoctorPatients {
+        private final CompletableFuture<Void> loaded = new CompletableFuture<>(); // Completed by the first listener event
+        private volatile PatientSearchIndex index = PatientSearchIndex.build(List.of());
+        private volatile PatientFacetIndex facets = PatientFacetIndex.build(List.of());
+        private PatientRepository.Subscription subscription;
+    }
+
+    private final PatientRepository patientRepository;
+    private final int maxDoctors;
+    private final Map<String, DoctorPatients> doctors;
+
+    /**
+     * Constructs the directory.
+     *
+     * @param patientRepository the repository storing the patients.
+     * @param maxDoctors        the maximum number of doctors whose patients are kept and listened to.
+     */
+    public PatientDirectory(PatientRepository patientRepository,
+                            @Value("${custom.patient_directory_max_doctors:200}") int maxDoctors) {
+        this.patientRepository = patientRepository;
+        this.maxDoctors = maxDoctors;
+        this.doctors = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DoctorPatients> eldest) {
+                boolean evict = size() > PatientDirectory.this.maxDoctors
+                        && eldest.getValue().loaded.isDone(); // Never drops an index a request may still be waiting for
+                if (evict && eldest.getValue().subscription != null) {
+                    eldest.getValue().subscription.cancel(); // Stops listening for the least recently used doctor
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Returns the current index of a doctor's patients.
+     * The first call for a doctor registers the listener and waits for the initial load.
+     *
+     * @param doctorId the username of the doctor.
+     * @return the index of the doctor's patients.
+     * @throws ExecutionException   if the listener fails.
+     * @throws InterruptedException if waiting for the initial load is interrupted.
+     */
+    public PatientSearchIndex getIndex(String doctorId) throws ExecutionException, InterruptedException {
+        DoctorPatients doctorPatients = doctorPatientsFor(doctorId);
+        doctorPatients.loaded.get(); // Waits only until the first snapshot of the doctor's patients has been indexed
+        return doctorPatients.index;
+    }
+
+    /**
+     * Returns the current attribute bitmaps of a doctor's patients.
+     * The first call for a doctor registers the listener and waits for the initial load.
+     *
+     * @param doctorId the username of the doctor.
+     * @return the attribute bitmaps of the doctor's patients.
+     * @throws ExecutionException   if the listener fails.
+     * @throws InterruptedException if waiting for the initial load is interrupted.
+     */
+    public PatientFacetIndex getFacets(String doctorId) throws ExecutionException, InterruptedException {
+        DoctorPatients doctorPatients = doctorPatientsFor(doctorId);
+        doctorPatients.loaded.get();
+        return doctorPatients.facets;
+    }
+
+    /**
+     * Searches the patients of a doctor by username.
+     *
+     * @param doctorId the username of the doctor.
+     * @param query    the text typed by the user.
+     * @param limit    the maximum number of matches.
+     * @return the matching patients, see {@link PatientSearchIndex#search(String, int)}.
+     * @throws ExecutionException   if the listener fails.
+     * @throws InterruptedException if waiting for the initial load is interrupted.
+     */
+    public List<PatientSearchIndex.Match> search(String doctorId, String query, int limit) throws ExecutionException, InterruptedException {
+        return getIndex(doctorId).search(query, limit);
+    }
+
+    /**
+     * Stops all listeners when the application shuts down.
+     */
+    @Override
+    public void destroy() {
+        synchronized (doctors) {
+            for (DoctorPatients doctorPatients : doctors.values()) {
+                if (doctorPatients.subscription != null) {
+                    doctorPatients.subscription.cancel();
+                }
+            }
+            doctors.clear();
+        }
+    }
+
+    /**
+     * Returns the index holder of a doctor, registering a listener on the doctor's patients if needed.
+     *
+     * @param doctorId the username of the doctor.
+     * @return the index holder of the doctor.
+     */
+    private DoctorPatients doctorPatientsFor(String doctorId) {
+        synchronized (doctors) {
+            DoctorPatients doctorPatients = doctors.get(doctorId);
+            if (doctorPatients == null) {
+                DoctorPatients newDoctorPatients = new DoctorPatients();
+                doctors.put(doctorId, newDoctorPatients); // Before listening, as the in-memory repository delivers the patients at once
+                newDoctorPatients.subscription = patientRepository.listenToDoctor(doctorId, new PatientRepository.PatientListener() {
+                    @Override
+                    public void onChange(List<Patient> patients) {
+                        newDoctorPatients.index = PatientSearchIndex.build(patients); // Replaces the indexes as a whole
+                        newDoctorPatients.facets = PatientFacetIndex.build(patients);
+                        newDoctorPatients.loaded.complete(null);
+                    }
+
+                    @Override
+                    public void onError(Exception error) {
+                        newDoctorPatients.loaded.completeExceptionally(error);
+                        discard(doctorId, newDoctorPatients); // The next request registers a new listener
+                    }
+                });
+                doctorPatients = newDoctorPatients;
+            }
+            return doctorPatients;
+        }
+    }
+
+    /**
+     * Removes a failed index holder from the directory.
+     *
+     * @param doctorId       the username of the doctor.
+     * @param doctorPatients the failed index holder.
+     */
+    private void discard(String doctorId, DoctorPatients doctorPatients) {
+        synchronized (doctors) {
+            if (doctors.get(doctorId) == doctorPatients) {
+                doctors.remove(doctorId);
+            }
+        }
+        if (doctorPatients.subscription != null) {
+            doctorPatients.subscription.cancel();
+        }
+    }
+}
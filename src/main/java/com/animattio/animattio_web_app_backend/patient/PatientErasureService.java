@@ -0,0 +1,327 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.animattio.animattio_web_app_backend.test.TestRollupRepository;
+import com.animattio.animattio_web_app_backend.test.TestSummaryCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Service class for erasing every document that belongs to a patient.
+ * The tests of the patient's users are deleted first, then the users and finally the patient documents,
+ * so an erasure that fails part way can be started again and still finds what is left.
+ * Deletes go through the {@link ErasureRepository}, which sends them in parallel with flow control,
+ * and run as background jobs whose progress is reported by {@link #getJob(String)}.
+ * Cached summaries of the deleted tests are invalidated once their deletes finish, and the roll-ups of the users,
+ * which are derived from their tests, are deleted right after the tests.
+ * <p>
+ * Jobs are held in memory by the instance that started them. Finished jobs are evicted after an hour, or earlier once
+ * more than {@value #MAX_FINISHED_JOBS} have finished, and all jobs are lost on restart. With several instances a job
+ * can only be queried on the instance that runs it, and the same patient may be erased by two instances at once;
+ * deletes are idempotent, so that only costs duplicate work. Starting the erasure again is always safe and reports
+ * what is left.
+ */
+@Service
+public class PatientErasureService implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientErasureService.class);
+    private static final int PAGE_SIZE = 500; // Test references read per query
+    private static final Duration JOB_RETENTION = Duration.ofHours(1); // How long finished jobs can still be queried
+    static final int MAX_FINISHED_JOBS = 1000; // Finished jobs kept at most, the oldest are evicted first
+
+    private final int maxOpsPerSecond;
+    private final ErasureRepository erasureRepository;
+    private final TestSummaryCache summaryCache;
+    private final TestRollupRepository rollupRepository;
+    private final ExecutorService executor;
+    private final Map<String, ErasureJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, ErasureJob> runningJobsByUsername = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new instance of PatientErasureService.
+     *
+     * @param maxOpsPerSecond   the maximum number of deletes per second of one erasure.
+     * @param maxConcurrentJobs the maximum number of erasures running at the same time.
+     * @param erasureRepository the repository finding and deleting the documents of a patient.
+     * @param summaryCache      the cache of computed test summaries.
+     * @param rollupRepository  the repository of the per user test roll-ups.
+     */
+    public PatientErasureService(@Value("${custom.erasure_max_ops_per_second:500}") int maxOpsPerSecond,
+                                 @Value("${custom.erasure_max_concurrent_jobs:2}") int maxConcurrentJobs,
+                                 ErasureRepository erasureRepository, TestSummaryCache summaryCache,
+                                 TestRollupRepository rollupRepository) {
+        this.maxOpsPerSecond = maxOpsPerSecond;
+        this.erasureRepository = erasureRepository;
+        this.summaryCache = summaryCache;
+        this.rollupRepository = rollupRepository;
+        this.executor = Executors.newFixedThreadPool(maxConcurrentJobs);
+    }
+
+    /**
+     * Starts erasing a patient. If an erasure of the same patient is already running, that job is returned instead,
+     * so repeated requests never delete the same documents twice in parallel.
+     *
+     * @param username the username of the patient.
+     * @return the running erasure job.
+     * @throws ExecutionException   if the Firestore operation fails.
+     * @throws InterruptedException if the Firestore operation is interrupted.
+     * @throws ResponseStatusException with status NOT_FOUND if no patient or user has the username.
+     */
+    public ErasureJob startErasure(String username) throws ExecutionException, InterruptedException {
+        ErasureJob running = runningJobsByUsername.get(username);
+        if (running != null && running.isRunning()) { // A finished job is only removed after it finished
+            return running;
+        }
+
+        CompletableFuture<List<String>> patientIds = erasureRepository.findPatientIds(username);
+        CompletableFuture<List<String>> userIds = erasureRepository.findUserIds(username); // Both reads run at the same time
+        if (FirestoreFutures.await(patientIds).isEmpty() && FirestoreFutures.await(userIds).isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient with username '" + username + "' not found.");
+        }
+
+        evictFinishedJobs();
+        ErasureJob job = new ErasureJob(UUID.randomUUID().toString(), username);
+        running = runningJobsByUsername.compute(username,
+                (key, current) -> current != null && current.isRunning() ? current : job);
+        if (running != job) {
+            return running; // Another request started the same erasure in the meantime
+        }
+        jobs.put(job.getJobId(), job);
+        executor.execute(() -> run(job));
+        return job;
+    }
+
+    /**
+     * Retrieves an erasure job.
+     *
+     * @param jobId the ID of the job.
+     * @return the job.
+     * @throws ResponseStatusException with status NOT_FOUND if the job does not exist, expired or was started on another instance.
+     */
+    public ErasureJob getJob(String jobId) {
+        evictFinishedJobs();
+        ErasureJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Erasure job not found for the provided ID: " + jobId);
+        }
+        return job;
+    }
+
+    /**
+     * Stops the erasure threads when the application shuts down.
+     */
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Deletes the tests, users and patient documents of a patient, waiting for each stage before the next one.
+     *
+     * @param job the job to run.
+     */
+    private void run(ErasureJob job) {
+        ErasureRepository.BulkDelete bulkDelete = erasureRepository.openBulkDelete(maxOpsPerSecond);
+
+        try {
+            List<String> userIds = FirestoreFutures.await(erasureRepository.findUserIds(job.getUsername()));
+            List<CompletableFuture<Void>> testDeletes = new ArrayList<>();
+            List<String> testIds = new ArrayList<>();
+            for (String userId : userIds) {
+                testDeletes.addAll(deleteTestsOfUser(bulkDelete, job, userId, testIds));
+            }
+            long testFailures = awaitStage(bulkDelete, testDeletes);
+            testIds.forEach(summaryCache::invalidate); // Also after failed deletes, the summary is read again if the test is left
+            if (stoppedOnFailures(job, "tests", testFailures)) {
+                return;
+            }
+            if (stoppedOnFailures(job, "test roll-ups", deleteRollups(userIds))) {
+                return;
+            }
+
+            List<CompletableFuture<Void>> userDeletes = deleteAll(bulkDelete, job, "users", userIds);
+            if (stoppedOnFailures(job, "users", awaitStage(bulkDelete, userDeletes))) {
+                return;
+            }
+
+            List<String> patientIds = FirestoreFutures.await(erasureRepository.findPatientIds(job.getUsername()));
+            if (stoppedOnFailures(job, "patients", awaitStage(bulkDelete, deleteAll(bulkDelete, job, "patients", patientIds)))) {
+                return;
+            }
+            job.complete();
+            logger.info("Erased patient {}: {}", job.getUsername(), job.toStatus());
+        } catch (ExecutionException | RuntimeException e) {
+            job.fail(e.getMessage());
+            logger.warn("Erasure of patient {} failed", job.getUsername(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail("Erasure was interrupted");
+        } finally {
+            try {
+                bulkDelete.close(); // Every stage was awaited, nothing is left to send
+            } catch (ExecutionException e) {
+                logger.warn("Closing the writer of the erasure of patient {} failed", job.getUsername(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            runningJobsByUsername.remove(job.getUsername(), job);
+        }
+    }
+
+    /**
+     * Queues the deletes of every test of a user, reading the test references page by page.
+     *
+     * @param bulkDelete the deletes of the job.
+     * @param job        the job to report progress to.
+     * @param userId     the ID of the user document the tests belong to.
+     * @param testIds    the list the IDs of the tests are added to.
+     * @return the futures of the queued deletes.
+     * @throws ExecutionException   if the Firestore operation fails.
+     * @throws InterruptedException if the Firestore operation is interrupted.
+     */
+    private List<CompletableFuture<Void>> deleteTestsOfUser(ErasureRepository.BulkDelete bulkDelete, ErasureJob job, String userId,
+                                                           List<String> testIds) throws ExecutionException, InterruptedException {
+        List<CompletableFuture<Void>> deletes = new ArrayList<>();
+        String last = null;
+        List<String> page;
+        do {
+            page = FirestoreFutures.await(erasureRepository.findTestIds(userId, last, PAGE_SIZE));
+            deletes.addAll(deleteAll(bulkDelete, job, "tests", page));
+            testIds.addAll(page);
+            if (!page.isEmpty()) {
+                last = page.get(page.size() - 1);
+            }
+        } while (page.size() == PAGE_SIZE);
+        return deletes;
+    }
+
+    /**
+     * Deletes the roll-ups of the users, one user at a time.
+     *
+     * @param userIds the IDs of the user documents of the patient.
+     * @return the number of failed deletes.
+     * @throws InterruptedException if the Firestore operation is interrupted.
+     */
+    private long deleteRollups(List<String> userIds) throws InterruptedException {
+        long failures = 0;
+        for (String userId : userIds) {
+            try {
+                FirestoreFutures.await(rollupRepository.deleteByUser(userId));
+            } catch (ExecutionException | RuntimeException e) {
+                logger.warn("Deleting the roll-up of user {} failed", userId, e);
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Queues the deletes of documents and counts their results as they complete.
+     *
+     * @param bulkDelete  the deletes of the job.
+     * @param job         the job to report progress to.
+     * @param collection  the collection the documents belong to.
+     * @param documentIds the IDs of the documents to delete.
+     * @return the futures of the queued deletes.
+     */
+    private List<CompletableFuture<Void>> deleteAll(ErasureRepository.BulkDelete bulkDelete, ErasureJob job, String collection,
+                                                    List<String> documentIds) {
+        job.addFound(collection, documentIds.size());
+        List<CompletableFuture<Void>> deletes = new ArrayList<>();
+        for (String documentId : documentIds) {
+            CompletableFuture<Void> delete = bulkDelete.delete(collection, documentId);
+            deletes.add(delete);
+            delete.whenComplete((deleted, error) -> { // Live progress for the status endpoint
+                if (error != null) {
+                    job.addFailed(collection);
+                } else {
+                    job.addDeleted(collection);
+                }
+            });
+        }
+        return deletes;
+    }
+
+    /**
+     * Sends every queued delete and waits until all of them succeeded or failed.
+     *
+     * @param bulkDelete the deletes of the job.
+     * @param deletes    the futures of the deletes of the stage.
+     * @return the number of failed deletes.
+     * @throws ExecutionException   if the Firestore operation fails.
+     * @throws InterruptedException if the Firestore operation is interrupted.
+     */
+    private long awaitStage(ErasureRepository.BulkDelete bulkDelete, List<CompletableFuture<Void>> deletes)
+            throws ExecutionException, InterruptedException {
+        bulkDelete.flush();
+        long failures = 0;
+        for (CompletableFuture<Void> delete : deletes) {
+            try {
+                delete.get();
+            } catch (ExecutionException e) {
+                failures++;
+            }
+        }
+        return failures; // Counted here rather than from the progress counters, whose callbacks may still be running
+    }
+
+    /**
+     * Fails the job if a delete of the finished stage failed, so the documents of the next stages stay
+     * and a later erasure still finds the remaining documents.
+     *
+     * @param job      the job.
+     * @param stage    the collection of the finished stage.
+     * @param failures the number of failed deletes of the stage.
+     * @return true if the job was stopped.
+     */
+    private boolean stoppedOnFailures(ErasureJob job, String stage, long failures) {
+        if (failures == 0) {
+            return false;
+        }
+        job.fail(failures + " " + stage + " could not be deleted; start the erasure again to retry");
+        logger.warn("Erasure of patient {} stopped: {}", job.getUsername(), job.toStatus());
+        return true;
+    }
+
+    /**
+     * Evicts finished jobs older than the retention, and the oldest finished jobs beyond the maximum.
+     * Running jobs are never evicted.
+     */
+    private void evictFinishedJobs() {
+        Instant expiry = Instant.now().minus(JOB_RETENTION);
+        List<ErasureJob> finished = new ArrayList<>();
+        for (ErasureJob job : jobs.values()) {
+            if (!job.isRunning() && job.getFinishedAt() != null) {
+                if (job.getFinishedAt().isBefore(expiry)) {
+                    jobs.remove(job.getJobId());
+                } else {
+                    finished.add(job);
+                }
+            }
+        }
+        if (finished.size() > MAX_FINISHED_JOBS) {
+            finished.sort(Comparator.comparing(ErasureJob::getFinishedAt));
+            for (ErasureJob job : finished.subList(0, finished.size() - MAX_FINISHED_JOBS)) {
+                jobs.remove(job.getJobId());
+            }
+        }
+    }
+}
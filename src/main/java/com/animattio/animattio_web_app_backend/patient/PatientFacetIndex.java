@@ -0,0 +1,190 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Immutable bitmaps over the attributes of the patients of one doctor.
+ * Patients are numbered in username order, and every gender, type and age gets a bit set of the patients having it,
+ * so any combination of filters is evaluated by intersecting bit sets, without Firestore reads.
+ * Username prefixes need no bitmap: the prefix matches are a contiguous range of the username order.
+ * A new index is built whenever the patients of the doctor change, so queries never need locking.
+ */
+public final class PatientFacetIndex {
+
+    private final List<Patient> patients; // Sorted by lowercased username
+    private final String[] usernames; // Lowercased usernames, in the order of the patients
+    private final Map<String, BitSet> byGender;
+    private final Map<String, BitSet> byType;
+    private final NavigableMap<Integer, BitSet> byAge;
+
+    private PatientFacetIndex(List<Patient> patients, String[] usernames, Map<String, BitSet> byGender,
+                              Map<String, BitSet> byType, NavigableMap<Integer, BitSet> byAge) {
+        this.patients = patients;
+        this.usernames = usernames;
+        this.byGender = byGender;
+        this.byType = byType;
+        this.byAge = byAge;
+    }
+
+    /**
+     * Builds the bitmaps of a list of patients.
+     *
+     * @param patients the patients of a doctor.
+     * @return the index.
+     */
+    public static PatientFacetIndex build(List<Patient> patients) {
+        List<Patient> sorted = new ArrayList<>();
+        for (Patient patient : patients) {
+            if (patient.getPatientUsername() != null) {
+                sorted.add(patient);
+            }
+        }
+        sorted.sort(Comparator.comparing(patient -> normalize(patient.getPatientUsername())));
+
+        String[] usernames = new String[sorted.size()];
+        Map<String, BitSet> byGender = new HashMap<>();
+        Map<String, BitSet> byType = new HashMap<>();
+        NavigableMap<Integer, BitSet> byAge = new TreeMap<>();
+        for (int i = 0; i < usernames.length; i++) {
+            Patient patient = sorted.get(i);
+            usernames[i] = normalize(patient.getPatientUsername());
+            if (patient.getGender() != null) {
+                byGender.computeIfAbsent(patient.getGender(), key -> new BitSet()).set(i);
+            }
+            if (patient.getType() != null) {
+                byType.computeIfAbsent(patient.getType(), key -> new BitSet()).set(i);
+            }
+            byAge.computeIfAbsent(patient.getAge(), key -> new BitSet()).set(i);
+        }
+        return new PatientFacetIndex(List.copyOf(sorted), usernames, byGender, byType, byAge);
+    }
+
+    /**
+     * Returns the patients matching every given filter. Filters left null or empty are not applied.
+     * Genders and types match exactly, like the single-attribute endpoints; several values of one attribute match any of them.
+     *
+     * @param minAge         the minimum age (inclusive), or null.
+     * @param maxAge         the maximum age (inclusive), or null.
+     * @param genders        the accepted genders, or null.
+     * @param types          the accepted types, or null.
+     * @param usernamePrefix the case-insensitive username prefix, or null.
+     * @param sort           "username" or "age", prefixed with "-" for descending order; null sorts by username.
+     * @param limit          the maximum number of returned patients.
+     * @return a map with the number of matching patients under "total" and the first matches under "patients".
+     * @throws ResponseStatusException with status BAD_REQUEST if the age range or the sort is invalid.
+     */
+    public Map<String, Object> query(Integer minAge, Integer maxAge, Collection<String> genders, Collection<String> types,
+                                     String usernamePrefix, String sort, int limit) {
+        if (minAge != null && maxAge != null && minAge > maxAge) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "minAge must not be greater than maxAge");
+        }
+        Comparator<Integer> order = order(sort);
+
+        BitSet matches = new BitSet(usernames.length);
+        matches.set(0, usernames.length);
+        if (minAge != null || maxAge != null) {
+            BitSet ages = new BitSet(usernames.length);
+            NavigableMap<Integer, BitSet> range = byAge.subMap(minAge != null ? minAge : Integer.MIN_VALUE, true,
+                    maxAge != null ? maxAge : Integer.MAX_VALUE, true);
+            range.values().forEach(ages::or);
+            matches.and(ages);
+        }
+        if (genders != null && !genders.isEmpty()) {
+            matches.and(anyOf(byGender, genders));
+        }
+        if (types != null && !types.isEmpty()) {
+            matches.and(anyOf(byType, types));
+        }
+        if (usernamePrefix != null && !usernamePrefix.isBlank()) {
+            matches.and(prefixRange(normalize(usernamePrefix)));
+        }
+
+        List<Integer> positions = new ArrayList<>(matches.cardinality());
+        matches.stream().forEach(positions::add);
+        if (order != null) {
+            positions.sort(order);
+        }
+
+        List<Patient> page = new ArrayList<>();
+        for (int i = 0; i < positions.size() && page.size() < limit; i++) {
+            page.add(patients.get(positions.get(i)));
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("total", positions.size());
+        result.put("patients", page);
+        return result;
+    }
+
+    /**
+     * Returns the order of a sort parameter.
+     *
+     * @param sort the sort parameter.
+     * @return the comparator of patient positions, or null for the ascending username order the positions already have.
+     */
+    private Comparator<Integer> order(String sort) {
+        if (sort == null || sort.isBlank() || sort.equals("username")) {
+            return null;
+        }
+        Comparator<Integer> byUsername = Comparator.naturalOrder(); // Positions are numbered in username order
+        switch (sort) {
+            case "-username":
+                return byUsername.reversed();
+            case "age":
+                return Comparator.<Integer>comparingInt(i -> patients.get(i).getAge()).thenComparing(byUsername);
+            case "-age":
+                return Comparator.<Integer>comparingInt(i -> patients.get(i).getAge()).reversed().thenComparing(byUsername);
+            default:
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "sort must be one of username, -username, age, -age");
+        }
+    }
+
+    private BitSet prefixRange(String prefix) {
+        int from = lowerBound(prefix);
+        int to = lowerBound(prefix + Character.MAX_VALUE); // First username after every username starting with the prefix
+        BitSet range = new BitSet(usernames.length);
+        range.set(from, to);
+        return range;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = usernames.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (usernames[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static BitSet anyOf(Map<String, BitSet> bitmaps, Collection<String> values) {
+        BitSet union = new BitSet();
+        for (String value : values) {
+            BitSet bitmap = bitmaps.get(value);
+            if (bitmap != null) {
+                union.or(bitmap);
+            }
+        }
+        return union;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,134 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import com.google.cloud.Timestamp;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage of patient documents, keyed by the patient's username.
+ * The application uses the Firestore implementation; the implementation holding the patients in memory is used by the
+ * benchmarks and the "in-memory" profile.
+ */
+public interface PatientRepository {
+
+    /**
+     * Receives the patients of a doctor as they change.
+     */
+    interface PatientListener {
+
+        /**
+         * Called with all patients of the doctor first, and again with all of them after every change.
+         *
+         * @param patients the current patients of the doctor.
+         */
+        void onChange(List<Patient> patients);
+
+        /**
+         * Called once if listening fails; no further changes are delivered.
+         *
+         * @param error the cause of the failure.
+         */
+        void onError(Exception error);
+    }
+
+    /**
+     * A registered {@link PatientListener}.
+     */
+    interface Subscription {
+
+        /**
+         * Stops delivering changes to the listener.
+         */
+        void cancel();
+    }
+
+    /**
+     * Finds a patient.
+     *
+     * @param patientId the username of the patient, which is the ID of its document.
+     * @return a future of the patient, or of null if not found.
+     */
+    CompletableFuture<Patient> findById(String patientId);
+
+    /**
+     * Finds all patients of a doctor.
+     *
+     * @param doctorId the username of the doctor.
+     * @return a future of the patients of the doctor.
+     */
+    CompletableFuture<List<Patient>> findByDoctor(String doctorId);
+
+    /**
+     * Finds the patients of a doctor within an age range.
+     *
+     * @param doctorId the username of the doctor.
+     * @param minAge   the minimum age (inclusive).
+     * @param maxAge   the maximum age (inclusive).
+     * @return a future of the matching patients.
+     */
+    CompletableFuture<List<Patient>> findByDoctorAndAgeBetween(String doctorId, int minAge, int maxAge);
+
+    /**
+     * Finds the patients of a doctor with a gender.
+     *
+     * @param doctorId the username of the doctor.
+     * @param gender   the gender of the patients.
+     * @return a future of the matching patients.
+     */
+    CompletableFuture<List<Patient>> findByDoctorAndGender(String doctorId, String gender);
+
+    /**
+     * Finds the patients of a doctor with a type.
+     *
+     * @param doctorId the username of the doctor.
+     * @param type     the type of the patients.
+     * @return a future of the matching patients.
+     */
+    CompletableFuture<List<Patient>> findByDoctorAndType(String doctorId, String type);
+
+    /**
+     * Counts the patients of a doctor without transferring them.
+     *
+     * @param doctorId the username of the doctor.
+     * @return a future of the number of patients of the doctor.
+     */
+    CompletableFuture<Long> countByDoctor(String doctorId);
+
+    /**
+     * Moves patients of a doctor to another doctor username in one atomic write.
+     * Moved patients no longer match the current username, so repeated calls move the remaining patients.
+     *
+     * @param doctorId    the current username of the doctor.
+     * @param newDoctorId the username the patients are moved to.
+     * @param maxPatients the maximum number of patients to move, at most 500 (the Firestore batch limit).
+     * @return a future of the number of moved patients, less than maxPatients once no patients remain.
+     */
+    CompletableFuture<Integer> reassignDoctor(String doctorId, String newDoctorId, int maxPatients);
+
+    /**
+     * Creates or overwrites a patient.
+     *
+     * @param patientId the ID of the patient document.
+     * @param patient   the patient to store.
+     * @return a future of the update time of the stored document.
+     */
+    CompletableFuture<Timestamp> save(String patientId, Patient patient);
+
+    /**
+     * Deletes a patient. Deleting a missing patient succeeds.
+     *
+     * @param patientId the ID of the patient document.
+     * @return a future completed once the patient is deleted.
+     */
+    CompletableFuture<Void> deleteById(String patientId);
+
+    /**
+     * Listens to the patients of a doctor.
+     *
+     * @param doctorId the username of the doctor.
+     * @param listener the listener receiving the patients.
+     * @return the subscription of the listener.
+     */
+    Subscription listenToDoctor(String doctorId, PatientListener listener);
+}
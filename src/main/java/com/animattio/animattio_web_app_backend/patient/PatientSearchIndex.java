@@ -0,0 +1,277 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable search index over the usernames of the patients of one doctor.
+ * Usernames are lowercased and indexed by their trigrams, so a case-insensitive prefix or infix search only checks
+ * the usernames that contain every trigram of the query. Queries of at least five characters also match usernames
+ * containing the query with one typo (two for queries longer than five characters), ranked after the exact matches;
+ * shorter queries are matched exactly, since a typo in them matches most usernames.
+ * {@link #startingWith(String)} serves lookups that must not match anything but the exact prefix.
+ * A new index is built whenever the patients of the doctor change, so searches never need locking.
+ */
+public final class PatientSearchIndex {
+
+    private static final int GRAM_LENGTH = 3;
+    private static final int MIN_FUZZY_LENGTH = 5; // Shorter queries match too many usernames with a typo
+    private static final int LONG_QUERY_LENGTH = 5; // Queries longer than this tolerate two typos
+
+    /**
+     * How a username matched a query.
+     */
+    public enum MatchType { PREFIX, INFIX, FUZZY }
+
+    /**
+     * A patient matching a query.
+     */
+    public static class Match {
+        private final Patient patient;
+        private final MatchType matchType;
+        private final int distance;
+
+        private Match(Patient patient, MatchType matchType, int distance) {
+            this.patient = patient;
+            this.matchType = matchType;
+            this.distance = distance;
+        }
+
+        public Patient getPatient() {
+            return patient;
+        }
+
+        public MatchType getMatchType() {
+            return matchType;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    private final List<Patient> patients; // Sorted by lowercased username
+    private final String[] keys; // Lowercased usernames, in the order of the patients
+    private final Map<String, int[]> postings; // trigram -> ascending positions of the usernames containing it
+
+    private PatientSearchIndex(List<Patient> patients, String[] keys, Map<String, int[]> postings) {
+        this.patients = patients;
+        this.keys = keys;
+        this.postings = postings;
+    }
+
+    /**
+     * Builds the index of a list of patients.
+     *
+     * @param patients the patients of a doctor.
+     * @return the index.
+     */
+    public static PatientSearchIndex build(List<Patient> patients) {
+        List<Patient> sorted = new ArrayList<>();
+        for (Patient patient : patients) {
+            if (patient.getPatientUsername() != null) {
+                sorted.add(patient);
+            }
+        }
+        sorted.sort(Comparator.comparing(patient -> normalize(patient.getPatientUsername())));
+
+        String[] keys = new String[sorted.size()];
+        Map<String, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = normalize(sorted.get(i).getPatientUsername());
+            for (String gram : trigrams(keys[i])) {
+                positions.computeIfAbsent(gram, key -> new ArrayList<>()).add(i); // Ascending, as i only grows
+            }
+        }
+
+        Map<String, int[]> postings = new HashMap<>();
+        positions.forEach((gram, list) -> postings.put(gram, list.stream().mapToInt(Integer::intValue).toArray()));
+        return new PatientSearchIndex(Collections.unmodifiableList(sorted), keys, postings);
+    }
+
+    /**
+     * Returns all patients of the index.
+     *
+     * @return the patients sorted by username.
+     */
+    public List<Patient> getPatients() {
+        return patients;
+    }
+
+    /**
+     * Returns the number of indexed patients.
+     *
+     * @return the number of patients.
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Searches the usernames case-insensitively. Prefix matches come first, then infix matches, each sorted by username,
+     * then matches with typos sorted by the number of typos.
+     *
+     * @param query the text typed by the user.
+     * @param limit the maximum number of matches.
+     * @return the matching patients.
+     */
+    public List<Match> search(String query, int limit) {
+        String normalized = normalize(query);
+        List<Match> matches = new ArrayList<>();
+        if (normalized.isEmpty()) {
+            for (int i = 0; i < keys.length && matches.size() < limit; i++) {
+                matches.add(new Match(patients.get(i), MatchType.PREFIX, 0));
+            }
+            return matches;
+        }
+
+        List<Match> infixMatches = new ArrayList<>();
+        Set<Integer> matched = new HashSet<>();
+        for (int i : candidates(normalized)) {
+            int index = keys[i].indexOf(normalized);
+            if (index == 0) {
+                matches.add(new Match(patients.get(i), MatchType.PREFIX, 0));
+                matched.add(i);
+            } else if (index > 0) {
+                infixMatches.add(new Match(patients.get(i), MatchType.INFIX, 0));
+                matched.add(i);
+            }
+        }
+        matches.addAll(infixMatches);
+
+        if (matches.size() < limit && normalized.length() >= MIN_FUZZY_LENGTH) {
+            int maxDistance = normalized.length() > LONG_QUERY_LENGTH ? 2 : 1;
+            List<Match> fuzzyMatches = new ArrayList<>();
+            for (int i = 0; i < keys.length; i++) {
+                if (!matched.contains(i)) {
+                    int distance = substringDistance(normalized, keys[i], maxDistance);
+                    if (distance <= maxDistance) {
+                        fuzzyMatches.add(new Match(patients.get(i), MatchType.FUZZY, distance));
+                    }
+                }
+            }
+            fuzzyMatches.sort(Comparator.comparingInt(Match::getDistance)); // Stable, so equal distances stay sorted by username
+            matches.addAll(fuzzyMatches);
+        }
+
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * Finds the patients whose username starts with a prefix, where only the case of the first letter of the prefix is
+     * ignored. Usernames starting with the lowercase first letter come first, then the ones starting with the uppercase
+     * one, each sorted by username.
+     *
+     * @param prefix the start of the username.
+     * @return the matching patients, or every patient if the prefix is null or blank.
+     */
+    public List<Patient> startingWith(String prefix) {
+        if (prefix == null || prefix.trim().isEmpty()) {
+            return new ArrayList<>(patients);
+        }
+        String lowercaseFirst = prefix.substring(0, 1).toLowerCase() + prefix.substring(1);
+        String uppercaseFirst = prefix.substring(0, 1).toUpperCase() + prefix.substring(1);
+
+        List<Patient> lowercaseMatches = new ArrayList<>();
+        List<Patient> uppercaseMatches = new ArrayList<>();
+        for (Patient patient : patients) {
+            String username = patient.getPatientUsername();
+            if (username.startsWith(lowercaseFirst)) {
+                lowercaseMatches.add(patient);
+            } else if (username.startsWith(uppercaseFirst)) {
+                uppercaseMatches.add(patient);
+            }
+        }
+        lowercaseMatches.sort(Comparator.comparing(Patient::getPatientUsername)); // Case-sensitive, like a Firestore range query
+        uppercaseMatches.sort(Comparator.comparing(Patient::getPatientUsername));
+        lowercaseMatches.addAll(uppercaseMatches);
+        return lowercaseMatches;
+    }
+
+    /**
+     * Finds the usernames that can contain the query, by intersecting the postings of the query's trigrams.
+     *
+     * @param normalized the lowercased query.
+     * @return the ascending positions of the candidate usernames.
+     */
+    private int[] candidates(String normalized) {
+        if (normalized.length() < GRAM_LENGTH) {
+            int[] all = new int[keys.length];
+            Arrays.setAll(all, i -> i);
+            return all; // Too short for trigrams, every username is checked
+        }
+
+        List<int[]> lists = new ArrayList<>();
+        for (String gram : trigrams(normalized)) {
+            int[] list = postings.get(gram);
+            if (list == null) {
+                return new int[0]; // No username contains this trigram
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.length)); // Starts from the rarest trigram
+
+        int[] result = lists.get(0);
+        for (int l = 1; l < lists.size() && result.length > 0; l++) {
+            int[] other = lists.get(l);
+            result = Arrays.stream(result).filter(i -> Arrays.binarySearch(other, i) >= 0).toArray();
+        }
+        return result;
+    }
+
+    /**
+     * Computes the smallest edit distance between the query and any substring of a username,
+     * stopping early once it exceeds the maximum.
+     *
+     * @param query       the lowercased query.
+     * @param key         the lowercased username.
+     * @param maxDistance the largest distance of interest.
+     * @return the distance, or a value greater than maxDistance if the query does not match within it.
+     */
+    static int substringDistance(String query, String key, int maxDistance) {
+        int[] previous = new int[key.length() + 1]; // A match may start anywhere in the username, so the first row is zero
+        int[] current = new int[key.length() + 1];
+
+        for (int i = 1; i <= query.length(); i++) {
+            current[0] = i;
+            int rowMinimum = current[0];
+            for (int j = 1; j <= key.length(); j++) {
+                int substitution = previous[j - 1] + (query.charAt(i - 1) == key.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (rowMinimum > maxDistance) {
+                return maxDistance + 1; // Every alignment already needs more edits
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        int best = Integer.MAX_VALUE;
+        for (int distance : previous) { // A match may end anywhere in the username
+            best = Math.min(best, distance);
+        }
+        return best;
+    }
+
+    private static Set<String> trigrams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,24 +1,40 @@
 package com.animattio.animattio_web_app_backend.patient;
 
-import com.google.api.core.ApiFuture;
-import com.google.cloud.firestore.*;
-import com.google.firebase.auth.FirebaseAuthException;
-import com.google.firebase.cloud.FirestoreClient;
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.google.cloud.Timestamp;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.stream.Collectors;
 
 /**
  * Service class for managing patient-related operations.
  * Provides methods to create, retrieve, update, delete, and query patient data
- * stored in a Firestore database.
+ * stored through the {@link PatientRepository} and {@link UserDirectoryRepository}.
  */
 @Service
 public class PatientService {
 
+    private final PatientDirectory patientDirectory;
+    private final PatientRepository patientRepository;
+    private final UserDirectoryRepository userDirectoryRepository;
+
+    /**
+     * Constructs a new instance of PatientService.
+     *
+     * @param patientDirectory        the in-memory directory used to search the patients of a doctor.
+     * @param patientRepository       the repository storing the patients.
+     * @param userDirectoryRepository the repository mapping patient usernames to the users of the mobile app.
+     */
+    public PatientService(PatientDirectory patientDirectory, PatientRepository patientRepository,
+                          UserDirectoryRepository userDirectoryRepository) {
+        this.patientDirectory = patientDirectory;
+        this.patientRepository = patientRepository;
+        this.userDirectoryRepository = userDirectoryRepository;
+    }
+
     /**
      * Creates a new patient in the Firestore database.
      *
@@ -26,16 +42,13 @@ public class PatientService {
      * @return A ResponseEntity with the creation status and updated timestamp.
      */
     public ResponseEntity<?> createPatient(Patient patient) {
-        Firestore dbFirestore = FirestoreClient.getFirestore(); // retrieves the Firestore database instance
         try {
-            ApiFuture<WriteResult> collectionsApiFuture = dbFirestore.collection("patients").document(patient.getPatientUsername()).set(patient);
-            // Creates or references a document in the patients collection and writes the patient object to the specified document in Firestore
-            WriteResult writeResult = collectionsApiFuture.get(); // get() method waits for the Firestore write operation to complete
-            // it returns a WriteResult object, which contains details about the write operation (update time)
+            Timestamp updateTime = FirestoreFutures.await(patientRepository.save(patient.getPatientUsername(), patient));
+            // Writes the patient object to the document named after the patient's username and waits for the write to complete
 
             Map<String, Object> response = new HashMap<>(); // Map object created to structure the HTTP response
             response.put("message", "Patient created successfully");
-            response.put("updatedTime", writeResult.getUpdateTime());
+            response.put("updatedTime", updateTime);
 
             return ResponseEntity.ok(response); // HTTP 200 (OK) status with the response map as the body
         } catch (ExecutionException | InterruptedException e) {
@@ -52,15 +65,17 @@ public class PatientService {
      * @throws ExecutionException, InterruptedException if Firestore operations fail.
      */
     public Patient getPatient(String documentId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        DocumentReference documentReference = dbFirestore.collection("patients").document(documentId);
-        ApiFuture<DocumentSnapshot> future = documentReference.get(); // .get() on documentReference initiates an asynchronous request to fetch the document from Firestore
-        DocumentSnapshot documentSnapshot = future.get();
-        if (documentSnapshot.exists()) { // Checks if the document was found in Firestore
-            return documentSnapshot.toObject(Patient.class); // documentSnapshot.toObject(Patient.class) maps the document's fields
-            // into a Patient object using the provided Patient class
-        }
-        return null;
+        return FirestoreFutures.await(patientRepository.findById(documentId));
+    }
+
+    /**
+     * Retrieves a patient by their document ID without blocking the calling thread.
+     *
+     * @param documentId The ID of the document in Firestore.
+     * @return A future of the retrieved Patient object, or of null if not found.
+     */
+    public CompletableFuture<Patient> getPatientAsync(String documentId) {
+        return patientRepository.findById(documentId);
     }
 
     /**
@@ -71,44 +86,30 @@ public class PatientService {
      * @throws ExecutionException, InterruptedException if Firestore operations fail.
      */
     public void updatePatient(String documentId, Patient updatedPatient) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-
         String newDocumentId = updatedPatient.getPatientUsername();
         if (newDocumentId == null || newDocumentId.isEmpty()) {
             throw new IllegalArgumentException("Patient username cannot be null or empty");
         } // Ensures that the new username (patientUsername) provided in the updatedPatient object is not null or empty
 
-        DocumentReference oldDocumentReference = dbFirestore.collection("patients").document(documentId);
-        ApiFuture<DocumentSnapshot> future = oldDocumentReference.get();
-        DocumentSnapshot documentSnapshot = future.get();
-        // Retrieves the existing document from the patients collection by its documentId
+        Patient currentPatient = FirestoreFutures.await(patientRepository.findById(documentId));
+        // Retrieves the existing patient by its documentId
 
-        if (documentSnapshot.exists()) {
-            Map<String, Object> updates = new HashMap<>();
-            updates.put("patientUsername", newDocumentId);
-            updates.put("doctorUsername", documentSnapshot.getString("doctorUsername"));
-            updates.put("gender", updatedPatient.getGender());
-            updates.put("age", updatedPatient.getAge());
-            updates.put("type", updatedPatient.getType());
-            // Creates a Map with updated fields while retaining the doctorUsername from old document
+        if (currentPatient != null) {
+            Patient patient = new Patient();
+            patient.setPatientUsername(newDocumentId);
+            patient.setDoctorUsername(currentPatient.getDoctorUsername());
+            patient.setGender(updatedPatient.getGender());
+            patient.setAge(updatedPatient.getAge());
+            patient.setType(updatedPatient.getType());
+            // Creates the updated patient while retaining the doctorUsername from old document
 
-            DocumentReference newDocumentReference = dbFirestore.collection("patients").document(newDocumentId);
-            ApiFuture<WriteResult> writeResult = newDocumentReference.set(updates);
-            writeResult.get(); // Writes the updated data to the new document ID
+            FirestoreFutures.await(patientRepository.save(newDocumentId, patient)); // Writes the updated data to the new document ID
 
-            ApiFuture<QuerySnapshot> usersQuery = dbFirestore.collection("users")
-                    .whereEqualTo("username", documentId).get(); // Queries the users collection to find all documents
-            // where the username field matches the old documentId
-
-            for (DocumentSnapshot userDoc : usersQuery.get().getDocuments()) {
-                DocumentReference userDocumentReference = dbFirestore.collection("users").document(userDoc.getId());
-                userDocumentReference.update("username", newDocumentId).get(); // Iterates through the matching documents
-                // and updates the username field to the new username
-            }
+            FirestoreFutures.await(userDirectoryRepository.renameUsername(documentId, newDocumentId));
+            // Updates the username of the users of the mobile app that had the old documentId
 
             if (!documentId.equals(newDocumentId)) {
-                ApiFuture<WriteResult> deleteResult = oldDocumentReference.delete();
-                deleteResult.get(); // Deletes the old document from the patients collection
+                FirestoreFutures.await(patientRepository.deleteById(documentId)); // Deletes the old document of the patient
             }
         } else {
             throw new RuntimeException("Patient document not found");
@@ -123,20 +124,8 @@ public class PatientService {
      * @return The document ID or null if not found.
      */
     public String getPatientDocumentIdByUsername(String username) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-
-        CollectionReference usersCollection = dbFirestore.collection("users");
-        Query query = usersCollection.whereEqualTo("username", username).limit(1); // Query to search for documents in the users
-        // collection where the username field equals the provided username. The limit is to ensure only one patient is retrieved
-        ApiFuture<QuerySnapshot> querySnapshot = query.get();
-        List<QueryDocumentSnapshot> documents = querySnapshot.get().getDocuments(); // .getDocuments() retrieves a list of QueryDocumentSnapshot objects,
-        // each representing a document matching the query
-
-        if (!documents.isEmpty()) {
-            return documents.get(0).getId(); // If the documents list is not empty, retrieve the ID of the first document in the list and return it
-        } else {
-            return null;
-        }
+        return FirestoreFutures.await(userDirectoryRepository.findUserIdByUsername(username));
+        // ID of the first user whose username field equals the provided username, or null if there is none
     }
 
     /**
@@ -146,15 +135,8 @@ public class PatientService {
      * @return The patient's age or null if not found.
      */
     public Long getPatientAge(String documentId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        DocumentReference documentReference = dbFirestore.collection("patients").document(documentId);
-        ApiFuture<DocumentSnapshot> future = documentReference.get();
-        DocumentSnapshot documentSnapshot = future.get();
-
-        if (documentSnapshot.exists()) {
-            return documentSnapshot.getLong("age");
-        }
-        return null;
+        Patient patient = FirestoreFutures.await(patientRepository.findById(documentId));
+        return patient != null ? Long.valueOf(patient.getAge()) : null;
     }
 
     /**
@@ -164,15 +146,8 @@ public class PatientService {
      * @return The patient's gender or null if not found.
      */
     public String getPatientGender(String documentId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        DocumentReference documentReference = dbFirestore.collection("patients").document(documentId);
-        ApiFuture<DocumentSnapshot> future = documentReference.get();
-        DocumentSnapshot documentSnapshot = future.get();
-
-        if (documentSnapshot.exists()) {
-            return documentSnapshot.getString("gender");
-        }
-        return null;
+        Patient patient = FirestoreFutures.await(patientRepository.findById(documentId));
+        return patient != null ? patient.getGender() : null;
     }
 
     /**
@@ -183,15 +158,8 @@ public class PatientService {
      * @throws ExecutionException, InterruptedException if Firestore operations fail.
      */
     public String getPatientType(String documentId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        DocumentReference documentReference = dbFirestore.collection("patients").document(documentId);
-        ApiFuture<DocumentSnapshot> future = documentReference.get();
-        DocumentSnapshot documentSnapshot = future.get();
-
-        if (documentSnapshot.exists()) {
-            return documentSnapshot.getString("type");
-        }
-        return null;
+        Patient patient = FirestoreFutures.await(patientRepository.findById(documentId));
+        return patient != null ? patient.getType() : null;
     }
 
 
@@ -203,19 +171,27 @@ public class PatientService {
      * @throws ExecutionException, InterruptedException if Firestore operations fail.
      */
     public List<Patient> getAllPatients(String doctorId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
+        return FirestoreFutures.await(patientRepository.findByDoctor(doctorId));
+    }
 
-        CollectionReference patientsCollection = dbFirestore.collection("patients");
-        Query query = patientsCollection.whereEqualTo("doctorUsername", doctorId);
-        ApiFuture<QuerySnapshot> querySnapshot = query.get();
-        List<QueryDocumentSnapshot> documents = querySnapshot.get().getDocuments();
-        List<Patient> patients = new ArrayList<>();
-        for (QueryDocumentSnapshot document : documents) {
-            Patient patient = document.toObject(Patient.class);
-            patients.add(patient);
-        }
+    /**
+     * Retrieves all patients from a specific doctor without blocking the calling thread.
+     *
+     * @param doctorId The ID of the doctor.
+     * @return A future of the list of Patient objects associated with the doctor.
+     */
+    public CompletableFuture<List<Patient>> getAllPatientsAsync(String doctorId) {
+        return patientRepository.findByDoctor(doctorId);
+    }
 
-        return patients;
+    /**
+     * Counts the patients of a specific doctor without transferring the patient documents.
+     *
+     * @param doctorId The ID of the doctor.
+     * @return A future of the number of patients associated with the doctor.
+     */
+    public CompletableFuture<Long> countPatientsAsync(String doctorId) {
+        return patientRepository.countByDoctor(doctorId);
     }
 
     /**
@@ -228,24 +204,7 @@ public class PatientService {
      * @throws ExecutionException, InterruptedException if Firestore operations fail.
      */
     public List<Patient> getPatientsByAge(String doctorId, int minAge, int maxAge) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-
-        CollectionReference patientsCollection = dbFirestore.collection("patients");
-        Query query = patientsCollection
-                .whereEqualTo("doctorUsername", doctorId)
-                .whereGreaterThanOrEqualTo("age", minAge)
-                .whereLessThanOrEqualTo("age", maxAge); // Query to get all documents where age fields are within the range
-
-        ApiFuture<QuerySnapshot> querySnapshot = query.get();
-        List<QueryDocumentSnapshot> documents = querySnapshot.get().getDocuments();
-        List<Patient> patients = new ArrayList<>();
-
-        for (QueryDocumentSnapshot document : documents) {
-            Patient patient = document.toObject(Patient.class);
-            patients.add(patient);
-        }
-
-        return patients;
+        return FirestoreFutures.await(patientRepository.findByDoctorAndAgeBetween(doctorId, minAge, maxAge));
     }
 
     /**
@@ -257,21 +216,12 @@ public class PatientService {
      * @throws ExecutionException, InterruptedException if Firestore operations fail.
      */
     public List<Patient> getPatientsByGender(String doctorId, String gender) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-
-        CollectionReference patientsCollection = dbFirestore.collection("patients");
-        Query query = patientsCollection.whereEqualTo("doctorUsername", doctorId).whereEqualTo("gender",gender);
-        ApiFuture<QuerySnapshot> querySnapshot = query.get();
-        List<QueryDocumentSnapshot> documents = querySnapshot.get().getDocuments();
-        List<Patient> patients = new ArrayList<>();
-        for (QueryDocumentSnapshot document : documents) {
-            Patient patient = document.toObject(Patient.class);
-            patients.add(patient);
-        }
-        return patients;
+        return FirestoreFutures.await(patientRepository.findByDoctorAndGender(doctorId, gender));
     }
     /**
-     * Retrieves patients from a specific doctor by a partial username match.
+     * Retrieves patients from a specific doctor whose username starts with a partial username,
+     * ignoring only the case of its first letter. Usernames with typos are not matched; searching as the user types,
+     * with typo tolerance, is served by {@link PatientDirectory#search(String, String, int)}.
      *
      * @param doctorId The ID of the doctor.
      * @param partialUsername The partial username to filter by.
@@ -279,52 +229,10 @@ public class PatientService {
      * @throws ExecutionException, InterruptedException if Firestore operations fail.
      */
     public List<Patient> getPatientsByUsername(String doctorId, String partialUsername) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        CollectionReference patientsCollection = dbFirestore.collection("patients");
-
-        List<Patient> patients = new ArrayList<>();
-
-        if (partialUsername != null && !partialUsername.trim().isEmpty()) {
-            String lowercaseFirst = partialUsername.substring(0, 1).toLowerCase() + partialUsername.substring(1); // Converts the first letter to lowercase
-            String uppercaseFirst = partialUsername.substring(0, 1).toUpperCase() + partialUsername.substring(1); // Converts the first letter to uppercase
-
-            Query query2 = patientsCollection.whereEqualTo("doctorUsername", doctorId)
-                    .orderBy("patientUsername")
-                    .startAt(lowercaseFirst)
-                    .endAt(lowercaseFirst + "\uf8ff"); // startAt(lowercaseFirst) and endAt(lowercaseFirst + "\uf8ff") creates
-            // a range for all strings starting with lowercaseFirst
-
-            Query query3 = patientsCollection.whereEqualTo("doctorUsername", doctorId)
-                    .orderBy("patientUsername")
-                    .startAt(uppercaseFirst)
-                    .endAt(uppercaseFirst + "\uf8ff"); // startAt(uppercaseFirst) and endAt(uppercaseFirst + "\uf8ff") creates
-            // a range for all strings starting with uppercaseFirst
-
-            patients.addAll(fetchPatientsFromQuery(query2));
-            patients.addAll(fetchPatientsFromQuery(query3));
-            // fetchPatientsFromQuery executes each query and returns the results as a list of Patient objects
-
-            patients = patients.stream().distinct().collect(Collectors.toList()); // removes duplicates if there are any with didtinct() and converts back to list
-        } else {
-            Query query = patientsCollection.whereEqualTo("doctorUsername", doctorId);
-            patients = fetchPatientsFromQuery(query); // If partialUsername is null or empty, retrieves all patients associated with the given doctorId
-        }
-
-        return patients;
-    }
-
-    private List<Patient> fetchPatientsFromQuery(Query query) throws ExecutionException, InterruptedException {
-        ApiFuture<QuerySnapshot> querySnapshot = query.get();
-        List<Patient> patients = new ArrayList<>();
-        for (QueryDocumentSnapshot document : querySnapshot.get().getDocuments()) { // Iterates through the matching documents in the query snapshot
-            patients.add(document.toObject(Patient.class)); // List of patients that match the query
-        }
-        return patients;
+        PatientSearchIndex index = patientDirectory.getIndex(doctorId); // In-memory index of the doctor's patients
+        return index.startingWith(partialUsername); // If partialUsername is null or empty, returns all patients associated with the given doctorId
     }
 
-
-
-
     /**
      * Retrieves patients from a specific doctor by their type.
      *
@@ -334,18 +242,7 @@ public class PatientService {
      * @throws ExecutionException, InterruptedException if Firestore operations fail.
      */
     public List<Patient> getPatientsByType(String doctorId, String type) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-
-        CollectionReference patientsCollection = dbFirestore.collection("patients");
-        Query query = patientsCollection.whereEqualTo("doctorUsername", doctorId).whereEqualTo("type",type);
-        ApiFuture<QuerySnapshot> querySnapshot = query.get();
-        List<QueryDocumentSnapshot> documents = querySnapshot.get().getDocuments();
-        List<Patient> patients = new ArrayList<>();
-        for (QueryDocumentSnapshot document : documents) {
-            Patient patient = document.toObject(Patient.class);
-            patients.add(patient);
-        }
-        return patients;
+        return FirestoreFutures.await(patientRepository.findByDoctorAndType(doctorId, type));
     }
 
     /**
@@ -355,9 +252,8 @@ public class PatientService {
      * @return A ResponseEntity indicating the success or failure of the deletion.
      */
     public ResponseEntity<?> deletePatient(String documentId) {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
         try {
-            ApiFuture<WriteResult> writeResult = dbFirestore.collection("patients").document(documentId).delete();
+            patientRepository.deleteById(documentId);
             return ResponseEntity.ok("Successfully deleted: " + documentId);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -373,39 +269,7 @@ public class PatientService {
      * @throws ExecutionException, InterruptedException if Firestore operations fail.
      */
     public boolean doesPatientExist(String username) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        ApiFuture<DocumentSnapshot> future = dbFirestore.collection("patients").document(username).get();
-        DocumentSnapshot documentSnapshot = future.get();
-        return documentSnapshot.exists(); // Returns true if the document exists and false if not
-    }
-
-    /**
-     * Deletes a patient by their username.
-     *
-     * @param username The username of the patient to delete.
-     * @return A message indicating the result of the deletion.
-     * @throws ExecutionException, InterruptedException, FirebaseAuthException if Firestore operations fail.
-     */
-    public String deletePatientByUsername(String username) throws ExecutionException, InterruptedException, FirebaseAuthException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-
-        ApiFuture<QuerySnapshot> queryFuture = dbFirestore.collection("patients")
-                .whereEqualTo("patientUsername", username)
-                .get(); // Creates a query to find documents where the patientUsername field matches the provided username
-
-        QuerySnapshot querySnapshot = queryFuture.get(); // Retrieves a QuerySnapshot, which contains the documents matching the query
-
-        if (querySnapshot.isEmpty()) {
-            return "Patient with username '" + username + "' not found."; // If no documents match the query
-            // the method returns a message indicating that no patient was found
-        }
-
-        for (QueryDocumentSnapshot document : querySnapshot.getDocuments()) {
-
-            document.getReference().delete();
-        } // Iterates over all documents in the QuerySnapshot using getDocuments() and deletes each document by calling delete() on its DocumentReference
-
-        return "Patient with username '" + username + "' deleted successfully.";
+        return FirestoreFutures.await(patientRepository.findById(username)) != null; // Returns true if the patient exists and false if not
     }
 
 }
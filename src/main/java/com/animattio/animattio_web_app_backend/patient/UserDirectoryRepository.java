@@ -0,0 +1,47 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage of the user documents the mobile app creates for patients, which map a patient's username to the user ID
+ * their tests are stored under. The application uses the Firestore implementation; the implementation holding the users
+ * in memory is used by the benchmarks and the "in-memory" profile.
+ */
+public interface UserDirectoryRepository {
+
+    /**
+     * Finds the user ID of a patient.
+     *
+     * @param username the username of the patient.
+     * @return a future of the user ID, or of null if no user has the username.
+     */
+    CompletableFuture<String> findUserIdByUsername(String username);
+
+    /**
+     * Finds the user IDs of several patients at once.
+     *
+     * @param usernames the usernames of the patients.
+     * @return a future of the IDs of the users of each username in user ID order, without the usernames no user has.
+     */
+    CompletableFuture<Map<String, List<String>>> findUserIdsByUsernames(List<String> usernames);
+
+    /**
+     * Creates or overwrites the user document of a patient.
+     *
+     * @param userId   the user ID, which is the ID of the user document.
+     * @param username the username of the patient.
+     * @return a future completed once the user is stored.
+     */
+    CompletableFuture<Void> save(String userId, String username);
+
+    /**
+     * Changes the username of every user having the current username.
+     *
+     * @param currentUsername the current username.
+     * @param newUsername     the new username.
+     * @return a future of the number of renamed users.
+     */
+    CompletableFuture<Integer> renameUsername(String currentUsername, String newUsername);
+}
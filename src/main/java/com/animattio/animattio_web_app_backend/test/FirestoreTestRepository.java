@@ -0,0 +1,297 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.AggregateField;
+import com.google.cloud.firestore.AggregateQuery;
+import com.google.cloud.firestore.AggregateQuerySnapshot;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldMask;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import com.google.firebase.cloud.FirestoreClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Repository;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link TestRepository} over the "tests" collection of Firestore.
+ * Summary reads select only the summary field of the tests, so tests with a current summary are not transferred in full.
+ */
+@Repository
+@Profile("!in-memory")
+public class FirestoreTestRepository implements TestRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(FirestoreTestRepository.class);
+
+    private final TestSummaryProjection summaryProjection;
+
+    /**
+     * Constructs the repository.
+     *
+     * @param summaryProjection the projection layer reading and backfilling the summary field.
+     */
+    public FirestoreTestRepository(TestSummaryProjection summaryProjection) {
+        this.summaryProjection = summaryProjection;
+    }
+
+    @Override
+    public CompletableFuture<Test> findById(String testId) {
+        return FirestoreFutures.toCompletableFuture(tests().document(testId).get())
+                .thenApply(documentSnapshot -> documentSnapshot.exists() ? documentSnapshot.toObject(Test.class) : null);
+    }
+
+    @Override
+    public CompletableFuture<List<Test>> findByUser(String userId) {
+        return FirestoreFutures.toCompletableFuture(tests().whereEqualTo("userId", userId).get()).thenApply(querySnapshot -> {
+            List<Test> tests = new ArrayList<>();
+            for (QueryDocumentSnapshot document : querySnapshot.getDocuments()) {
+                tests.add(document.toObject(Test.class));
+            }
+            return tests;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Test>> findPageByUser(String userId, String afterTestId, int limit) {
+        return FirestoreFutures.toCompletableFuture(userPage(userId, afterTestId, limit).get()).thenApply(querySnapshot -> {
+            Map<String, Test> tests = new LinkedHashMap<>();
+            for (QueryDocumentSnapshot document : querySnapshot.getDocuments()) {
+                tests.put(document.getId(), document.toObject(Test.class));
+            }
+            return tests;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> countByUser(String userId) {
+        return FirestoreFutures.toCompletableFuture(tests().whereEqualTo("userId", userId).count().get())
+                .thenApply(AggregateQuerySnapshot::getCount); // Server-side aggregation, no test documents are transferred
+    }
+
+    @Override
+    public CompletableFuture<List<TestErrorSummary>> findSummariesByUser(String userId) {
+        return fetchSummaries(tests().whereEqualTo("userId", userId));
+    }
+
+    @Override
+    public CompletableFuture<List<TestErrorSummary>> findSummaryPageByUser(String userId, String afterTestId, int limit) {
+        return fetchSummaries(userPage(userId, afterTestId, limit));
+    }
+
+    @Override
+    public CompletableFuture<ErrorTotals> sumStoredErrorTotals(String userId) {
+        AggregateField commissionSum = AggregateField.sum(TestSummaryProjection.SUMMARY_FIELD + ".commissionErrors");
+        AggregateField omissionSum = AggregateField.sum(TestSummaryProjection.SUMMARY_FIELD + ".omissionErrors");
+        AggregateQuery summaryQuery = tests().whereEqualTo("userId", userId)
+                .whereGreaterThanOrEqualTo(TestSummaryProjection.SUMMARY_FIELD + ".gameCount", 0) // Only tests with a stored summary
+                .aggregate(AggregateField.count(), commissionSum, omissionSum);
+
+        return FirestoreFutures.toCompletableFuture(summaryQuery.get()).thenApply(totals -> {
+            long summarizedTestCount = totals.getCount(); // Sums over no documents are null
+            return new ErrorTotals(summarizedTestCount,
+                    summarizedTestCount > 0 ? totals.getLong(commissionSum) : 0L,
+                    summarizedTestCount > 0 ? totals.getLong(omissionSum) : 0L);
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<StoredSummary> findStoredSummary(String testId) {
+        return FirestoreFutures.toCompletableFuture(tests().document(testId).get(FieldMask.of(TestSummaryProjection.SUMMARY_FIELD)))
+                .thenApply(testDoc -> { // Reads the summary field only, the snapshot also carries the update time
+                    if (!testDoc.exists()) {
+                        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Test not found for the provided ID: " + testId);
+                    }
+                    Map<String, Object> summaryFields = (Map<String, Object>) testDoc.get(TestSummaryProjection.SUMMARY_FIELD);
+                    return new StoredSummary(summaryFields != null ? TestErrorSummary.fromFirestoreMap(testId, summaryFields) : null,
+                            testDoc.getUpdateTime());
+                });
+    }
+
+    @Override
+    public CompletableFuture<Timestamp> findUpdateTime(String testId) {
+        return FirestoreFutures.toCompletableFuture(tests()
+                        .whereEqualTo(FieldPath.documentId(), testId)
+                        .select(FieldPath.documentId())
+                        .get()) // Projection without fields returns only the document ID and its update time
+                .thenApply(querySnapshot -> querySnapshot.isEmpty() ? null : querySnapshot.getDocuments().get(0).getUpdateTime());
+    }
+
+    @Override
+    public CompletableFuture<StoredTest> findRecord(String testId) {
+        return FirestoreFutures.toCompletableFuture(tests().document(testId).get())
+                .thenApply(testDoc -> testDoc.exists() ? new StoredTest(TestRecord.decode(testDoc), testDoc.getUpdateTime()) : null);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<BackfillPage> backfillSummaryPage(String afterTestId, int limit) {
+        Query query = tests().orderBy(FieldPath.documentId()).limit(limit);
+        if (afterTestId != null) {
+            query = query.startAfter(afterTestId);
+        }
+
+        return FirestoreFutures.toCompletableFuture(query.select(TestSummaryProjection.SUMMARY_FIELD, "userId").get())
+                .thenCompose(querySnapshot -> {
+                    List<QueryDocumentSnapshot> documents = querySnapshot.getDocuments();
+                    Set<String> userIds = new HashSet<>();
+                    List<DocumentReference> missingReferences = new ArrayList<>();
+                    for (QueryDocumentSnapshot document : documents) {
+                        if (document.getString("userId") != null) {
+                            userIds.add(document.getString("userId"));
+                        }
+                        Map<String, Object> summaryFields = (Map<String, Object>) document.get(TestSummaryProjection.SUMMARY_FIELD);
+                        if (summaryFields == null || !TestErrorSummary.fromFirestoreMap(document.getId(), summaryFields).isCurrent()) {
+                            missingReferences.add(document.getReference()); // Missing or written with an older summary layout
+                        }
+                    }
+                    String lastTestId = documents.isEmpty() ? null : documents.get(documents.size() - 1).getId();
+                    if (missingReferences.isEmpty()) {
+                        return CompletableFuture.completedFuture(new BackfillPage(documents.size(), 0, 0, userIds, lastTestId));
+                    }
+                    return storeSummaries(missingReferences).thenApply(counts -> new BackfillPage(documents.size(), counts[0],
+                            counts[1], userIds, lastTestId));
+                });
+    }
+
+    @Override
+    public String newTestId() {
+        return tests().document().getId(); // Generated client-side, no request is made
+    }
+
+    @Override
+    public CompletableFuture<Timestamp> save(String testId, Map<String, Object> fields) {
+        return FirestoreFutures.toCompletableFuture(tests().document(testId).set(fields))
+                .thenApply(WriteResult::getUpdateTime);
+    }
+
+    private CollectionReference tests() {
+        return FirestoreClient.getFirestore().collection("tests");
+    }
+
+    /**
+     * Builds the query of one page of a user's test documents ordered by document ID.
+     *
+     * @param userId      the user ID of the tests.
+     * @param afterTestId the ID of the last test of the previous page, or null for the first page.
+     * @param limit       the maximum number of tests in the page.
+     * @return the query of the page.
+     */
+    private Query userPage(String userId, String afterTestId, int limit) {
+        Query query = tests()
+                .whereEqualTo("userId", userId)
+                .orderBy(FieldPath.documentId()) // Stable order so the last document ID can serve as a cursor
+                .limit(limit);
+        if (afterTestId != null) {
+            query = query.startAfter(afterTestId); // Continues right after the last document of the previous page
+        }
+        return query;
+    }
+
+    /**
+     * Runs a query over test documents selecting only their summary field.
+     * Documents without a current summary are summarized from a full read.
+     *
+     * @param query the query over the tests collection.
+     * @return a future of the summaries of the matching tests in query order.
+     */
+    private CompletableFuture<List<TestErrorSummary>> fetchSummaries(Query query) {
+        return FirestoreFutures.toCompletableFuture(query.select(TestSummaryProjection.SUMMARY_FIELD).get())
+                .thenCompose(snapshot -> toSummaries(snapshot.getDocuments()));
+    }
+
+    /**
+     * Reads the summaries of the documents returned by a projected query.
+     *
+     * @param documents the documents returned by a query selecting the summary field.
+     * @return a future of the summaries of the documents in the same order.
+     */
+    private CompletableFuture<List<TestErrorSummary>> toSummaries(List<QueryDocumentSnapshot> documents) {
+        TestErrorSummary[] summaries = new TestErrorSummary[documents.size()];
+        List<DocumentReference> missingReferences = new ArrayList<>();
+        List<Integer> missingPositions = new ArrayList<>();
+
+        for (int i = 0; i < documents.size(); i++) {
+            QueryDocumentSnapshot document = documents.get(i);
+            summaries[i] = summaryProjection.readProjected(document.getId(), document.getData());
+            if (summaries[i] == null) {
+                missingReferences.add(document.getReference());
+                missingPositions.add(i);
+            }
+        }
+
+        if (missingReferences.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of(summaries));
+        }
+        return readFull(missingReferences).thenApply(fullDocuments -> {
+            for (int i = 0; i < fullDocuments.size(); i++) {
+                DocumentSnapshot fullDocument = fullDocuments.get(i);
+                summaries[missingPositions.get(i)] = summaryProjection.summarize(fullDocument.getId(), fullDocument.getData());
+            }
+            return List.of(summaries);
+        });
+    }
+
+    /**
+     * Reads test documents in full.
+     *
+     * @param references the references of the test documents.
+     * @return a future of the documents in the order of the references.
+     */
+    private CompletableFuture<List<DocumentSnapshot>> readFull(List<DocumentReference> references) {
+        return FirestoreFutures.toCompletableFuture(FirestoreClient.getFirestore().getAll(references.toArray(new DocumentReference[0])));
+    }
+
+    /**
+     * Reads test documents in full, computes their summaries and stores them in the summary field in one batch.
+     * Malformed tests are logged and skipped.
+     *
+     * @param references the references of the test documents, at most 500 (the Firestore batch limit).
+     * @return a future of the number of stored summaries and of malformed tests, completed once the summaries are stored.
+     */
+    private CompletableFuture<int[]> storeSummaries(List<DocumentReference> references) {
+        Firestore dbFirestore = FirestoreClient.getFirestore();
+
+        return readFull(references).thenCompose(fullDocuments -> {
+            WriteBatch batch = dbFirestore.batch();
+            int batchSize = 0;
+            int malformed = 0;
+            for (DocumentSnapshot document : fullDocuments) {
+                if (!document.exists()) {
+                    continue; // Deleted since the page was read
+                }
+                try {
+                    TestErrorSummary summary = summaryProjection.summarize(document.getId(), document.getData());
+                    batch.update(document.getReference(), TestSummaryProjection.SUMMARY_FIELD, summary.toFirestoreMap());
+                    batchSize++;
+                } catch (MalformedTestException e) {
+                    logger.warn("Skipped backfilling the summary: {}", e.getMessage());
+                    malformed++;
+                }
+            }
+            int[] counts = {batchSize, malformed};
+            if (batchSize == 0) {
+                return CompletableFuture.completedFuture(counts);
+            }
+            return FirestoreFutures.toCompletableFuture(batch.commit()).thenApply(writeResults -> counts);
+        });
+    }
+}
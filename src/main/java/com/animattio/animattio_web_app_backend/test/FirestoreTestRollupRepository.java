@@ -0,0 +1,91 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.SetOptions;
+import com.google.firebase.cloud.FirestoreClient;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link TestRollupRepository} over the "testRollups" collection of Firestore.
+ * The document of a user holds a "tests" map from test ID to the day (ISO date, null for undated tests), mode,
+ * commissions and omissions of the test. A contribution takes about 80 bytes, so a roll-up stays well below
+ * the 1 MiB document limit up to roughly ten thousand tests per user.
+ */
+@Repository
+@Profile("!in-memory")
+public class FirestoreTestRollupRepository implements TestRollupRepository {
+
+    private static final String TESTS_FIELD = "tests";
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Map<String, TestRollupStore.TestContribution>> findByUser(String userId) {
+        return FirestoreFutures.toCompletableFuture(rollups().document(userId).get()).thenApply(rollupDoc -> {
+            if (!rollupDoc.exists()) {
+                return null;
+            }
+            Map<String, Object> tests = (Map<String, Object>) rollupDoc.get(TESTS_FIELD);
+            Map<String, TestRollupStore.TestContribution> contributions = new HashMap<>();
+            if (tests != null) {
+                tests.forEach((testId, fields) -> contributions.put(testId, fromFirestoreMap((Map<String, Object>) fields)));
+            }
+            return contributions;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> save(String userId, Map<String, TestRollupStore.TestContribution> contributions) {
+        Map<String, Object> tests = new HashMap<>();
+        contributions.forEach((testId, contribution) -> tests.put(testId, toFirestoreMap(contribution)));
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(TESTS_FIELD, tests);
+        return FirestoreFutures.toCompletableFuture(rollups().document(userId).set(fields))
+                .thenApply(writeResult -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveContribution(String userId, String testId, TestRollupStore.TestContribution contribution) {
+        Map<String, Object> tests = new HashMap<>();
+        tests.put(testId, toFirestoreMap(contribution));
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(TESTS_FIELD, tests);
+        return FirestoreFutures.toCompletableFuture(rollups().document(userId).set(fields, SetOptions.merge()))
+                .thenApply(writeResult -> null); // Merging leaves the contributions of the other tests in place
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteByUser(String userId) {
+        return FirestoreFutures.toCompletableFuture(rollups().document(userId).delete())
+                .thenApply(writeResult -> null);
+    }
+
+    private static Map<String, Object> toFirestoreMap(TestRollupStore.TestContribution contribution) {
+        Map<String, Object> fields = new HashMap<>(); // Allows the null day of undated tests
+        fields.put("day", contribution.getDay() != null ? contribution.getDay().toString() : null);
+        fields.put("mode", contribution.getMode());
+        fields.put("commissions", contribution.getCommissions());
+        fields.put("omissions", contribution.getOmissions());
+        return fields;
+    }
+
+    private static TestRollupStore.TestContribution fromFirestoreMap(Map<String, Object> fields) {
+        String day = (String) fields.get("day");
+        return new TestRollupStore.TestContribution(day != null ? LocalDate.parse(day) : null, (String) fields.get("mode"),
+                toInt(fields.get("commissions")), toInt(fields.get("omissions")));
+    }
+
+    private static int toInt(Object value) {
+        return value != null ? ((Number) value).intValue() : 0;
+    }
+
+    private CollectionReference rollups() {
+        return FirestoreClient.getFirestore().collection("testRollups");
+    }
+}
@@ -0,0 +1,349 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.animattio.animattio_web_app_backend.game.Game;
+import com.google.cloud.Timestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Repository;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link TestRepository} holding the test documents in memory, for the benchmarks and the "in-memory" profile.
+ * Tests are kept as the field maps Firestore stores, including the "summary" field, and indexed by user ID,
+ * so the analytics decode and summarize them exactly as they do with Firestore, through the same {@link TestSummaryProjection}.
+ * Generated test IDs are sequential, so runs over the same data are repeatable.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemoryTestRepository implements TestRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryTestRepository.class);
+
+    /**
+     * The fields of a test document and the time they were written.
+     */
+    private static class StoredDocument {
+        private final Map<String, Object> fields;
+        private final Timestamp updateTime;
+
+        private StoredDocument(Map<String, Object> fields, Timestamp updateTime) {
+            this.fields = fields;
+            this.updateTime = updateTime;
+        }
+    }
+
+    private final ConcurrentNavigableMap<String, StoredDocument> documents = new ConcurrentSkipListMap<>(); // test ID -> document
+    private final Map<String, NavigableSet<String>> testIdsByUser = new ConcurrentHashMap<>(); // user ID -> test IDs
+    private final AtomicLong nextTestId = new AtomicLong();
+    private final TestSummaryProjection summaryProjection;
+
+    /**
+     * Constructs the repository.
+     *
+     * @param summaryProjection the projection layer reading the summary field.
+     */
+    public InMemoryTestRepository(TestSummaryProjection summaryProjection) {
+        this.summaryProjection = summaryProjection;
+    }
+
+    @Override
+    public CompletableFuture<Test> findById(String testId) {
+        StoredDocument document = documents.get(testId);
+        return CompletableFuture.completedFuture(document != null ? toTest(document.fields) : null);
+    }
+
+    @Override
+    public CompletableFuture<List<Test>> findByUser(String userId) {
+        List<Test> tests = new ArrayList<>();
+        for (StoredDocument document : documentsOf(userId)) {
+            tests.add(toTest(document.fields));
+        }
+        return CompletableFuture.completedFuture(tests);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Test>> findPageByUser(String userId, String afterTestId, int limit) {
+        Map<String, Test> tests = new LinkedHashMap<>();
+        for (String testId : pageOf(userId, afterTestId, limit)) {
+            StoredDocument document = documents.get(testId);
+            if (document != null) {
+                tests.put(testId, toTest(document.fields));
+            }
+        }
+        return CompletableFuture.completedFuture(tests);
+    }
+
+    @Override
+    public CompletableFuture<Long> countByUser(String userId) {
+        NavigableSet<String> testIds = testIdsByUser.get(userId);
+        return CompletableFuture.completedFuture(testIds != null ? (long) testIds.size() : 0L);
+    }
+
+    @Override
+    public CompletableFuture<List<TestErrorSummary>> findSummariesByUser(String userId) {
+        NavigableSet<String> testIds = testIdsByUser.get(userId);
+        return CompletableFuture.completedFuture(summarize(testIds != null ? testIds : List.of()));
+    }
+
+    @Override
+    public CompletableFuture<List<TestErrorSummary>> findSummaryPageByUser(String userId, String afterTestId, int limit) {
+        return CompletableFuture.completedFuture(summarize(pageOf(userId, afterTestId, limit)));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<ErrorTotals> sumStoredErrorTotals(String userId) {
+        long summarizedTestCount = 0;
+        long commissionErrors = 0;
+        long omissionErrors = 0;
+        for (StoredDocument document : documentsOf(userId)) {
+            Map<String, Object> summaryFields = (Map<String, Object>) document.fields.get(TestSummaryProjection.SUMMARY_FIELD);
+            if (summaryFields == null || !(summaryFields.get("gameCount") instanceof Number)) {
+                continue; // Not matched by the Firestore query either
+            }
+            summarizedTestCount++;
+            commissionErrors += summaryFields.get("commissionErrors") != null ? ((Number) summaryFields.get("commissionErrors")).longValue() : 0L;
+            omissionErrors += summaryFields.get("omissionErrors") != null ? ((Number) summaryFields.get("omissionErrors")).longValue() : 0L;
+        }
+        return CompletableFuture.completedFuture(new ErrorTotals(summarizedTestCount, commissionErrors, omissionErrors));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<StoredSummary> findStoredSummary(String testId) {
+        StoredDocument document = documents.get(testId);
+        if (document == null) {
+            return CompletableFuture.failedFuture(
+                    new ResponseStatusException(HttpStatus.NOT_FOUND, "Test not found for the provided ID: " + testId));
+        }
+        Map<String, Object> summaryFields = (Map<String, Object>) document.fields.get(TestSummaryProjection.SUMMARY_FIELD);
+        return CompletableFuture.completedFuture(new StoredSummary(
+                summaryFields != null ? TestErrorSummary.fromFirestoreMap(testId, summaryFields) : null, document.updateTime));
+    }
+
+    @Override
+    public CompletableFuture<Timestamp> findUpdateTime(String testId) {
+        StoredDocument document = documents.get(testId);
+        return CompletableFuture.completedFuture(document != null ? document.updateTime : null);
+    }
+
+    @Override
+    public CompletableFuture<StoredTest> findRecord(String testId) {
+        StoredDocument document = documents.get(testId);
+        return CompletableFuture.completedFuture(document != null
+                ? new StoredTest(TestRecord.decode(testId, document.fields), document.updateTime) : null);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<BackfillPage> backfillSummaryPage(String afterTestId, int limit) {
+        Set<String> userIds = new HashSet<>();
+        int scanned = 0;
+        int backfilled = 0;
+        int malformed = 0;
+        String lastTestId = null;
+        for (Map.Entry<String, StoredDocument> entry : (afterTestId != null ? documents.tailMap(afterTestId, false) : documents).entrySet()) {
+            if (scanned == limit) {
+                break;
+            }
+            String testId = entry.getKey();
+            StoredDocument document = entry.getValue();
+            scanned++;
+            lastTestId = testId;
+            if (document.fields.get("userId") instanceof String) {
+                userIds.add((String) document.fields.get("userId"));
+            }
+
+            Map<String, Object> summaryFields = (Map<String, Object>) document.fields.get(TestSummaryProjection.SUMMARY_FIELD);
+            if (summaryFields != null && TestErrorSummary.fromFirestoreMap(testId, summaryFields).isCurrent()) {
+                continue;
+            }
+            try {
+                Map<String, Object> fields = new HashMap<>(document.fields);
+                fields.put(TestSummaryProjection.SUMMARY_FIELD, summaryProjection.summarize(testId, document.fields).toFirestoreMap());
+                documents.replace(testId, document, new StoredDocument(fields, Timestamp.now())); // Like an update, unless rewritten meanwhile
+                backfilled++;
+            } catch (MalformedTestException e) {
+                logger.warn("Skipped backfilling the summary: {}", e.getMessage());
+                malformed++;
+            }
+        }
+        return CompletableFuture.completedFuture(new BackfillPage(scanned, backfilled, malformed, userIds, lastTestId));
+    }
+
+    @Override
+    public String newTestId() {
+        return String.format("test-%010d", nextTestId.incrementAndGet()); // Zero-padded, so ID order is creation order
+    }
+
+    @Override
+    public CompletableFuture<Timestamp> save(String testId, Map<String, Object> fields) {
+        Timestamp updateTime = Timestamp.now();
+        StoredDocument previous = documents.put(testId, new StoredDocument(new HashMap<>(fields), updateTime));
+        if (previous != null && previous.fields.get("userId") != null) {
+            NavigableSet<String> previousTestIds = testIdsByUser.get((String) previous.fields.get("userId"));
+            if (previousTestIds != null) {
+                previousTestIds.remove(testId); // The test may have moved to another user
+            }
+        }
+        if (fields.get("userId") != null) {
+            testIdsByUser.computeIfAbsent((String) fields.get("userId"), userId -> new ConcurrentSkipListSet<>()).add(testId);
+        }
+        return CompletableFuture.completedFuture(updateTime);
+    }
+
+    /**
+     * Finds one page of the IDs of a user's tests in ID order, for the in-memory erasure.
+     *
+     * @param userId      the user ID of the tests.
+     * @param afterTestId the last test ID of the previous page, or null for the first page.
+     * @param limit       the maximum number of IDs in the page.
+     * @return the test IDs of the page.
+     */
+    public List<String> findTestIds(String userId, String afterTestId, int limit) {
+        return pageOf(userId, afterTestId, limit);
+    }
+
+    /**
+     * Deletes a test, for the in-memory erasure. Deleting a missing test succeeds.
+     *
+     * @param testId the ID of the test document.
+     */
+    public void deleteById(String testId) {
+        StoredDocument removed = documents.remove(testId);
+        if (removed != null && removed.fields.get("userId") != null) {
+            NavigableSet<String> testIds = testIdsByUser.get((String) removed.fields.get("userId"));
+            if (testIds != null) {
+                testIds.remove(testId);
+            }
+        }
+    }
+
+    /**
+     * Reads the summaries of tests, like a projected Firestore read: tests without a current stored summary are
+     * summarized from their fields, and the summary is not stored.
+     *
+     * @param testIds the IDs of the tests.
+     * @return the summaries of the tests that exist, in the order of the IDs.
+     */
+    private List<TestErrorSummary> summarize(Iterable<String> testIds) {
+        List<TestErrorSummary> summaries = new ArrayList<>();
+        for (String testId : testIds) {
+            StoredDocument document = documents.get(testId);
+            if (document == null) {
+                continue; // Deleted while iterating
+            }
+            Map<String, Object> projectedFields = new HashMap<>();
+            if (document.fields.containsKey(TestSummaryProjection.SUMMARY_FIELD)) {
+                projectedFields.put(TestSummaryProjection.SUMMARY_FIELD, document.fields.get(TestSummaryProjection.SUMMARY_FIELD));
+            }
+            TestErrorSummary stored = summaryProjection.readProjected(testId, projectedFields);
+            summaries.add(stored != null ? stored : summaryProjection.summarize(testId, document.fields));
+        }
+        return summaries;
+    }
+
+    /**
+     * Finds the IDs of one page of a user's tests in ID order.
+     *
+     * @param userId      the user ID of the tests.
+     * @param afterTestId the last test ID of the previous page, or null for the first page.
+     * @param limit       the maximum number of IDs in the page.
+     * @return the test IDs of the page.
+     */
+    private List<String> pageOf(String userId, String afterTestId, int limit) {
+        List<String> page = new ArrayList<>();
+        NavigableSet<String> testIds = testIdsByUser.get(userId);
+        if (testIds != null) {
+            for (String testId : afterTestId != null ? testIds.tailSet(afterTestId, false) : testIds) {
+                if (page.size() == limit) {
+                    break;
+                }
+                page.add(testId);
+            }
+        }
+        return page;
+    }
+
+    private List<StoredDocument> documentsOf(String userId) {
+        List<StoredDocument> userDocuments = new ArrayList<>();
+        NavigableSet<String> testIds = testIdsByUser.get(userId);
+        if (testIds != null) {
+            for (String testId : testIds) {
+                StoredDocument document = documents.get(testId);
+                if (document != null) {
+                    userDocuments.add(document);
+                }
+            }
+        }
+        return userDocuments;
+    }
+
+    /**
+     * Maps stored test fields to a {@link Test}.
+     *
+     * @param fields the stored fields of the test.
+     * @return the test.
+     */
+    @SuppressWarnings("unchecked")
+    private static Test toTest(Map<String, Object> fields) {
+        Test test = new Test();
+        test.setUserId((String) fields.get("userId"));
+
+        List<Map<String, Object>> gamesInTest = (List<Map<String, Object>>) fields.get("gamesInTest");
+        if (gamesInTest != null) {
+            List<Game> games = new ArrayList<>();
+            for (Map<String, Object> gameFields : gamesInTest) {
+                Game game = new Game();
+                game.setId((String) gameFields.get("id"));
+                game.setMode((String) gameFields.get("mode"));
+                game.setTheme((String) gameFields.get("theme"));
+                game.setStimuli((String) gameFields.get("stimuli"));
+                Timestamp timestamp = (Timestamp) gameFields.get("timestamp");
+                game.setTimestamp(timestamp != null ? timestamp.toDate() : null);
+                game.setComissionErrors(toInt(gameFields.get("commissionErrors"))); // Stored documents spell the field "commissionErrors"
+                game.setOmissionErrors(toInt(gameFields.get("omissionErrors")));
+                game.setHitRate(toInt(gameFields.get("hitRate")));
+                game.setShownImages(gameFields.get("shownImages") != null ? new ArrayList<>((List<String>) gameFields.get("shownImages")) : null);
+                game.setResult(gameFields.get("result") != null ? new ArrayList<>((List<Boolean>) gameFields.get("result")) : null);
+                game.setReactionTimes(toIntList((List<?>) gameFields.get("reactionTimes")));
+                game.setIntervals(toIntList((List<?>) gameFields.get("intervals")));
+                games.add(game);
+            }
+            test.setGamesInTest(games);
+        }
+        return test;
+    }
+
+    private static int toInt(Object value) {
+        return value != null ? ((Number) value).intValue() : 0;
+    }
+
+    private static List<Integer> toIntList(List<?> values) {
+        if (values == null) {
+            return null;
+        }
+        List<Integer> ints = new ArrayList<>(values.size());
+        for (Object value : values) {
+            ints.add(value != null ? ((Number) value).intValue() : null);
+        }
+        return ints;
+    }
+}
@@ -0,0 +1,48 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link TestRollupRepository} holding the roll-ups in memory, for the benchmarks and the "in-memory" profile.
+ * A stored roll-up is never modified; every write replaces it with a changed copy, so reads need no locking.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemoryTestRollupRepository implements TestRollupRepository {
+
+    private final Map<String, Map<String, TestRollupStore.TestContribution>> rollups = new ConcurrentHashMap<>(); // user ID -> roll-up
+
+    @Override
+    public CompletableFuture<Map<String, TestRollupStore.TestContribution>> findByUser(String userId) {
+        Map<String, TestRollupStore.TestContribution> contributions = rollups.get(userId);
+        return CompletableFuture.completedFuture(contributions != null ? new HashMap<>(contributions) : null);
+    }
+
+    @Override
+    public CompletableFuture<Void> save(String userId, Map<String, TestRollupStore.TestContribution> contributions) {
+        rollups.put(userId, new HashMap<>(contributions));
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveContribution(String userId, String testId, TestRollupStore.TestContribution contribution) {
+        rollups.compute(userId, (key, contributions) -> { // Atomic per user, so concurrent contributions are not lost
+            Map<String, TestRollupStore.TestContribution> updated = contributions != null ? new HashMap<>(contributions) : new HashMap<>();
+            updated.put(testId, contribution);
+            return updated;
+        });
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteByUser(String userId) {
+        rollups.remove(userId);
+        return CompletableFuture.completedFuture(null);
+    }
+}
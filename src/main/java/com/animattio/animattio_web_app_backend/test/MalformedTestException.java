@@ -0,0 +1,25 @@
+package com.animattio.animattio_web_app_backend.test;
+
+/**
+ * Thrown when a stored test document does not have the layout of a test,
+ * such as a "gamesInTest" field that is not a list of games or a game field of the wrong type.
+ */
+public class MalformedTestException extends RuntimeException {
+
+    private final String testId;
+
+    /**
+     * Constructs the exception.
+     *
+     * @param testId the ID of the test document.
+     * @param reason what is wrong with the document.
+     */
+    public MalformedTestException(String testId, String reason) {
+        super("Test " + testId + " is malformed: " + reason);
+        this.testId = testId;
+    }
+
+    public String getTestId() {
+        return testId;
+    }
+}
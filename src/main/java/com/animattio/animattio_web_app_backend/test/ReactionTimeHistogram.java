@@ -0,0 +1,133 @@
+package com.animattio.animattio_web_app_backend.test;
+
+/**
+ * Fixed-bin histogram of reaction times in milliseconds, built in one pass on primitive counters.
+ * Histograms with the same bins merge by adding counters, so the distribution of several tests
+ * is computed without keeping their raw reaction times.
+ * Median and percentiles are approximated by linear interpolation inside the bin they fall in.
+ */
+public class ReactionTimeHistogram {
+
+    public static final int BIN_WIDTH = 50; // Milliseconds covered by one bin
+    public static final int BIN_COUNT = 100; // Bins cover 0 to 5000 ms, the last bin also holds longer times
+
+    private final long[] bins = new long[BIN_COUNT];
+    private long count;
+    private double sum;
+    private double sumOfSquares;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    /**
+     * Adds a reaction time to the histogram.
+     *
+     * @param reactionTime the reaction time in milliseconds.
+     */
+    public void add(long reactionTime) {
+        int bin = (int) Math.min(Math.max(reactionTime, 0) / BIN_WIDTH, BIN_COUNT - 1);
+        bins[bin]++;
+        count++;
+        sum += reactionTime;
+        sumOfSquares += (double) reactionTime * reactionTime;
+        min = Math.min(min, reactionTime);
+        max = Math.max(max, reactionTime);
+    }
+
+    /**
+     * Adds all counters of another histogram to this histogram.
+     *
+     * @param other the histogram to merge into this one.
+     */
+    public void merge(ReactionTimeHistogram other) {
+        for (int i = 0; i < BIN_COUNT; i++) {
+            bins[i] += other.bins[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the smallest reaction time, or null if the histogram is empty.
+     */
+    public Long getMin() {
+        return count > 0 ? min : null;
+    }
+
+    /**
+     * @return the largest reaction time, or null if the histogram is empty.
+     */
+    public Long getMax() {
+        return count > 0 ? max : null;
+    }
+
+    /**
+     * @return the mean reaction time, or null if the histogram is empty.
+     */
+    public Double getMean() {
+        return count > 0 ? sum / count : null;
+    }
+
+    /**
+     * @return the population standard deviation of the reaction times, or null if the histogram is empty.
+     */
+    public Double getStandardDeviation() {
+        if (count == 0) {
+            return null;
+        }
+        double mean = sum / count;
+        return Math.sqrt(Math.max(sumOfSquares / count - mean * mean, 0)); // Guards against rounding below zero
+    }
+
+    public Double getMedian() {
+        return percentile(0.5);
+    }
+
+    public Double getP90() {
+        return percentile(0.9);
+    }
+
+    public Double getP99() {
+        return percentile(0.99);
+    }
+
+    public int getBinWidth() {
+        return BIN_WIDTH;
+    }
+
+    /**
+     * @return the number of reaction times in each bin; bin i holds times from i * binWidth to (i + 1) * binWidth.
+     */
+    public long[] getBins() {
+        return bins;
+    }
+
+    /**
+     * Approximates a percentile from the bins.
+     *
+     * @param fraction the percentile as a fraction between 0 and 1.
+     * @return the approximate reaction time at the percentile, or null if the histogram is empty.
+     */
+    private Double percentile(double fraction) {
+        if (count == 0) {
+            return null;
+        }
+        double rank = fraction * count;
+        long cumulative = 0;
+        for (int i = 0; i < BIN_COUNT; i++) {
+            if (bins[i] > 0 && cumulative + bins[i] >= rank) {
+                double position = (rank - cumulative) / bins[i]; // Position of the rank inside the bin
+                double value = (i + position) * BIN_WIDTH;
+                return Math.min(Math.max(value, min), max); // Keeps the estimate inside the observed range
+            }
+            cumulative += bins[i];
+        }
+        return (double) max;
+    }
+}
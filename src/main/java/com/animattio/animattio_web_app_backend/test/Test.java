@@ -1,13 +1,16 @@
 package com.animattio.animattio_web_app_backend.test;
 
 import com.animattio.animattio_web_app_backend.game.Game;
+import com.google.cloud.firestore.annotation.IgnoreExtraProperties;
 
 import java.util.List;
 
 /**
  * Represents a test consisting of multiple games.
  * Each test is associated with a specific user ID and contains a list of games.
+ * Derived fields stored on the test document (such as "summary") are ignored when mapping.
  */
+@IgnoreExtraProperties
 public class Test {
     /**
      * The unique identifier of the user associated with this test.
@@ -1,14 +1,23 @@
 package com.animattio.animattio_web_app_backend.test;
 
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.velocity.exception.ResourceNotFoundException;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 /**
  * Controller for managing and processing test-related operations.
@@ -16,14 +25,24 @@ import java.util.concurrent.ExecutionException;
 @RestController
 @RequestMapping("/tests")
 public class TestController {
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final TestService testService;
+    private final TestIngestService testIngestService;
+    private final ObjectMapper objectMapper;
     /**
      * Constructs a new instance of TestController with the given service.
      *
-     * @param testService The service layer for test-related operations.
+     * @param testService       The service layer for test-related operations.
+     * @param testIngestService The service that validates and stores new tests with their summaries.
+     * @param objectMapper      The mapper used to write streamed NDJSON lines.
      */
-    public TestController(TestService testService) {
+    public TestController(TestService testService, TestIngestService testIngestService, ObjectMapper objectMapper) {
         this.testService = testService;
+        this.testIngestService = testIngestService;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -48,52 +67,240 @@ public class TestController {
     /**
      * Retrieves all tests for a given user ID.
      *
+     * The request thread is released while Firestore is queried.
+     *
      * @param userId The ID of the user whose tests are to be retrieved.
-     * @return A response entity containing the list of tests or an error message.
+     * @return A future of the response entity containing the list of tests or an error message.
      */
     @GetMapping("/get-all-tests")
-    public ResponseEntity<?> getAllPatients(@RequestParam String userId) {
+    public CompletableFuture<ResponseEntity<?>> getAllPatients(@RequestParam String userId) {
+        return testService.getTestsByUserAsync(userId)
+                .<ResponseEntity<?>>thenApply(tests -> {
+                    if (!tests.isEmpty()) {
+                        return ResponseEntity.ok(tests);
+                    } else {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                                .body(Collections.singletonMap("error", "No tests found for this user"));
+                    }
+                })
+                .exceptionally(e -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(Collections.singletonMap("error", "An error occurred while retrieving tests")));
+    }
+
+    /**
+     * Counts the tests of a given user ID without reading the test documents.
+     *
+     * @param userId The ID of the user whose tests are to be counted.
+     * @return A future of the response entity containing the number of tests or an error message.
+     */
+    @GetMapping("/count")
+    public CompletableFuture<ResponseEntity<?>> countTests(@RequestParam String userId) {
+        return testService.countTestsByUserAsync(userId)
+                .<ResponseEntity<?>>thenApply(count -> ResponseEntity.ok(Collections.singletonMap("count", count)))
+                .exceptionally(e -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(Collections.singletonMap("error", "An error occurred while counting tests")));
+    }
+
+    /**
+     * Retrieves the total commission and omission errors of a user's tests from server-side sums
+     * over the stored test summaries, or from the summaries of every test while some have none stored.
+     *
+     * @param userId The ID of the user whose errors are to be summed.
+     * @return A future of the response entity containing the error totals or an error message.
+     */
+    @GetMapping("/error-totals/{userId}")
+    public CompletableFuture<ResponseEntity<?>> getErrorTotals(@PathVariable String userId) {
+        return testService.sumErrorTotalsForUserAsync(userId)
+                .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(e -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(Collections.singletonMap("error", "An error occurred while summing errors")));
+    }
+
+    /**
+     * Retrieves one page of the tests for a given user ID.
+     *
+     * @param userId    The ID of the user whose tests are to be retrieved.
+     * @param pageSize  The maximum number of tests in the page (1 to 500).
+     * @param pageToken The token returned with the previous page (optional).
+     * @return A response entity containing the page of tests and the next page token.
+     */
+    @GetMapping("/get-all-tests/page")
+    public ResponseEntity<?> getTestsPage(@RequestParam String userId,
+                                          @RequestParam(defaultValue = "50") int pageSize,
+                                          @RequestParam(required = false) String pageToken) {
         try {
-            List<Test> tests = testService.getTestsByUser(userId);
-            if (!tests.isEmpty()) {
-                return ResponseEntity.ok(tests);
-            } else {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                        .body(Collections.singletonMap("error", "No tests found for this user"));
-            }
+            return ResponseEntity.ok(testService.getTestsByUserPage(userId, clampPageSize(pageSize), pageToken));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Collections.singletonMap("error", "Invalid page token"));
         } catch (InterruptedException | ExecutionException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Collections.singletonMap("error", "An error occurred while retrieving tests"));
         }
     }
 
+    /**
+     * Streams all tests for a given user ID as newline-delimited JSON, one test per line.
+     * Tests are fetched page by page, so server memory does not grow with the user's history.
+     *
+     * @param userId The ID of the user whose tests are to be streamed.
+     * @return A response entity streaming the tests.
+     */
+    @GetMapping("/get-all-tests/stream")
+    public ResponseEntity<StreamingResponseBody> streamTests(@RequestParam String userId) {
+        StreamingResponseBody body = outputStream -> {
+            String pageToken = null;
+            do {
+                TestPage<Test> page;
+                try {
+                    page = testService.getTestsByUserPage(userId, DEFAULT_PAGE_SIZE, pageToken);
+                } catch (ExecutionException | InterruptedException e) {
+                    throw new IOException("An error occurred while retrieving tests", e);
+                }
+                writeLines(outputStream, page.getItems());
+                pageToken = page.getNextPageToken();
+            } while (pageToken != null);
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
     /**
      * Retrieves the summed errors for a user's tests.
      *
+     * The request thread is released while Firestore is queried.
+     *
      * @param userId The ID of the user whose tests' errors are to be summed.
-     * @return A response entity containing the list of summed errors by mode.
+     * @return A future of the response entity containing the list of summed errors by mode.
      */
     @GetMapping("/summed-errors/{userId}")
-    public ResponseEntity<List<Map<String, Object>>> getSummedErrorsForUserTests(@PathVariable String userId) {
+    public CompletableFuture<ResponseEntity<List<Map<String, Object>>>> getSummedErrorsForUserTests(@PathVariable String userId) {
+        return testService.sumErrorsForUserTestsAsync(userId)
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(e -> {
+                    Throwable cause = FirestoreFutures.unwrap(e);
+                    if (cause instanceof ResponseStatusException) {
+                        return ResponseEntity.status(((ResponseStatusException) cause).getStatusCode()).body(null);
+                    }
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+                });
+    }
+
+    /**
+     * Retrieves the summed errors for one page of a user's tests.
+     *
+     * @param userId    The ID of the user whose tests' errors are to be summed.
+     * @param pageSize  The maximum number of tests in the page (1 to 500).
+     * @param pageToken The token returned with the previous page (optional).
+     * @return A response entity containing the page of summed errors and the next page token.
+     */
+    @GetMapping("/summed-errors/{userId}/page")
+    public ResponseEntity<?> getSummedErrorsPage(@PathVariable String userId,
+                                                 @RequestParam(defaultValue = "50") int pageSize,
+                                                 @RequestParam(required = false) String pageToken) {
         try {
-            List<Map<String, Object>> result = testService.sumErrorsForUserTests(userId);
-            return ResponseEntity.ok(result);
-        } catch (ResponseStatusException e) {
-            return ResponseEntity.status(e.getStatusCode()).body(null);
+            return ResponseEntity.ok(testService.sumErrorsForUserTestsPage(userId, clampPageSize(pageSize), pageToken));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Collections.singletonMap("error", "Invalid page token"));
         } catch (ExecutionException | InterruptedException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("error", "An error occurred while summing errors"));
         }
     }
 
     /**
-     * Retrieves processed game data for a specific test.
+     * Streams the summed errors of all of a user's tests as newline-delimited JSON, one test per line.
+     *
+     * @param userId The ID of the user whose tests' errors are to be summed.
+     * @return A response entity streaming the summed errors.
+     */
+    @GetMapping("/summed-errors/{userId}/stream")
+    public ResponseEntity<StreamingResponseBody> streamSummedErrors(@PathVariable String userId) {
+        StreamingResponseBody body = outputStream -> {
+            String pageToken = null;
+            do {
+                TestPage<Map<String, Object>> page;
+                try {
+                    page = testService.sumErrorsForUserTestsPage(userId, DEFAULT_PAGE_SIZE, pageToken);
+                } catch (ExecutionException | InterruptedException e) {
+                    throw new IOException("An error occurred while summing errors", e);
+                }
+                writeLines(outputStream, page.getItems());
+                pageToken = page.getNextPageToken();
+            } while (pageToken != null);
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    /**
+     * Retrieves all metrics of a specific test (omissions, commissions, stimuli counts
+     * and processed game data) computed from a single read of the test.
+     *
+     * The request thread is released while Firestore is queried.
      *
      * @param testId The ID of the test.
+     * @return A future of the response entity containing the test summary.
+     */
+    @GetMapping("/{testId}/summary")
+    public CompletableFuture<ResponseEntity<?>> getTestSummary(@PathVariable String testId) {
+        return testService.summarizeTestAsync(testId)
+                .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(e -> {
+                    Throwable cause = FirestoreFutures.unwrap(e);
+                    if (cause instanceof ResponseStatusException) {
+                        ResponseStatusException statusException = (ResponseStatusException) cause;
+                        return ResponseEntity.status(statusException.getStatusCode()).body(Map.of("error", statusException.getReason()));
+                    }
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "Internal server error"));
+                });
+    }
+
+    /**
+     * Retrieves hit, miss and eviction statistics of the test summary cache.
+     *
+     * @return A response entity containing the cache statistics.
+     */
+    @GetMapping("/summary-cache/stats")
+    public ResponseEntity<Map<String, Object>> getSummaryCacheStatistics() {
+        return ResponseEntity.ok(testService.getSummaryCacheStatistics());
+    }
+
+    /**
+     * Retrieves how many daily and monthly aggregates were served from a current roll-up and how many from the test summaries.
+     *
+     * @return A response entity containing the roll-up read statistics.
+     */
+    @GetMapping("/rollups/stats")
+    public ResponseEntity<Map<String, Object>> getRollupStatistics() {
+        return ResponseEntity.ok(testService.getRollupStatistics());
+    }
+
+    /**
+     * Retrieves the number of documents and bytes read by aggregate queries through projected and full reads.
+     *
+     * @return A response entity containing the read statistics.
+     */
+    @GetMapping("/projection/stats")
+    public ResponseEntity<Map<String, Object>> getProjectionStatistics() {
+        return ResponseEntity.ok(testService.getProjectionStatistics());
+    }
+
+    /**
+     * Retrieves processed game data for a specific test.
+     * With summary=true, returns per-interval reaction time histograms with mean, SD, median, p90 and p99
+     * instead of the raw reaction times.
+     *
+     * @param testId  The ID of the test.
+     * @param summary Whether to return reaction time summaries instead of raw reaction times.
      * @return A response entity containing the processed game data.
      */
     @GetMapping("/{testId}/processed-games")
-    public ResponseEntity<Map<String, List<Long>>> getProcessedGames(@PathVariable String testId) {
+    public ResponseEntity<?> getProcessedGames(@PathVariable String testId,
+                                               @RequestParam(defaultValue = "false") boolean summary) {
         try {
+            if (summary) {
+                return ResponseEntity.ok(testService.summarizeReactionTimesForTest(testId));
+            }
             Map<String, List<Long>> processedGamesData = testService.processTappedImagesForTest(testId);
             return ResponseEntity.ok(processedGamesData);
         } catch (ExecutionException | InterruptedException e) {
@@ -103,6 +310,24 @@ public class TestController {
         }
     }
 
+    /**
+     * Retrieves per-interval reaction time summaries merged over several tests.
+     * At most {@link TestService#MAX_MERGED_TESTS} tests can be requested; longer lists are rejected with 400.
+     *
+     * @param testIds The IDs of the tests.
+     * @return A response entity containing the merged reaction time histograms.
+     */
+    @GetMapping("/processed-games/summary")
+    public ResponseEntity<?> getMergedReactionTimeSummary(@RequestParam List<String> testIds) {
+        try {
+            return ResponseEntity.ok(testService.summarizeReactionTimesForTests(testIds));
+        } catch (ExecutionException | InterruptedException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "Internal server error"));
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).body(Map.of("error", e.getReason()));
+        }
+    }
+
     /**
      * Retrieves the omission errors for a specific test.
      *
@@ -179,26 +404,94 @@ public class TestController {
      * Aggregates errors by month and mode for a specific user's tests.
      *
      * @param userId The ID of the user whose tests' errors are to be aggregated.
+     * @param from   The first day to include (yyyy-MM-dd, optional).
+     * @param to     The last day to include (yyyy-MM-dd, optional).
      * @return A list of maps containing aggregated errors by month and mode.
      * @throws ExecutionException If an error occurs during Firestore query execution.
      * @throws InterruptedException If the thread is interrupted while waiting for the Firestore query to complete.
      */
     @GetMapping("/aggregate-errors-monthly/{userId}")
-    public List<Map<String, Object>> aggregateErrorsByMonthAndMode(@PathVariable String userId) throws ExecutionException, InterruptedException {
-        return testService.aggregateErrorsByMonthAndMode(userId);
+    public List<Map<String, Object>> aggregateErrorsByMonthAndMode(@PathVariable String userId,
+                                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) throws ExecutionException, InterruptedException {
+        return testService.aggregateErrorsByMonthAndMode(userId, from, to);
     }
 
     /**
      * Aggregates errors by full date and mode for a specific user's tests.
      *
      * @param userId The ID of the user whose tests' errors are to be aggregated.
+     * @param from   The first day to include (yyyy-MM-dd, optional).
+     * @param to     The last day to include (yyyy-MM-dd, optional).
      * @return A list of maps containing aggregated errors by full date and mode.
      * @throws ExecutionException If an error occurs during Firestore query execution.
      * @throws InterruptedException If the thread is interrupted while waiting for the Firestore query to complete.
      */
     @GetMapping("/aggregate-errors-daily/{userId}")
-    public List<Map<String, Object>> aggregateErrorsByFullDateAndMode(@PathVariable String userId) throws ExecutionException, InterruptedException {
-        return testService.aggregateErrorsByFullDateAndMode(userId);
+    public List<Map<String, Object>> aggregateErrorsByFullDateAndMode(@PathVariable String userId,
+                                                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) throws ExecutionException, InterruptedException {
+        return testService.aggregateErrorsByFullDateAndMode(userId, from, to);
     }
-}
 
+    /**
+     * Stores the denormalised summary on every test that does not have one yet,
+     * so date-range aggregate queries also find older tests.
+     *
+     * @return A response entity containing the number of scanned, backfilled and malformed tests and of rebuilt roll-ups,
+     *         and the IDs of the users whose roll-up was skipped because of a malformed test.
+     */
+    @PostMapping("/summaries/backfill")
+    public ResponseEntity<?> backfillSummaries() {
+        try {
+            return ResponseEntity.ok(testService.backfillSummaries());
+        } catch (ExecutionException | InterruptedException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("error", "An error occurred while backfilling test summaries"));
+        }
+    }
+
+    /**
+     * Stores a new test together with its precomputed summary.
+     *
+     * @param test The test to store.
+     * @return A response entity containing the ID of the new test and its summary,
+     *         or an error message if the test is invalid.
+     */
+    @PostMapping("/ingest")
+    public ResponseEntity<?> ingestTest(@RequestBody Test test) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(testIngestService.ingestTest(test));
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).body(Map.of("error", e.getReason()));
+        } catch (ExecutionException | InterruptedException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("error", "An error occurred while storing the test"));
+        }
+    }
+
+    /**
+     * Limits a requested page size to the supported range.
+     *
+     * @param pageSize The requested page size.
+     * @return The page size between 1 and the maximum page size.
+     */
+    private int clampPageSize(int pageSize) {
+        return Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Writes items as JSON lines and flushes them, so each page reaches the client as soon as it is read.
+     *
+     * @param outputStream The response output stream.
+     * @param items        The items to write.
+     * @throws IOException If writing to the stream fails.
+     */
+    private void writeLines(OutputStream outputStream, List<?> items) throws IOException {
+        for (Object item : items) {
+            outputStream.write(objectMapper.writeValueAsBytes(item));
+            outputStream.write('\n');
+        }
+        outputStream.flush();
+    }
+}
@@ -0,0 +1,296 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.animattio.animattio_web_app_backend.game.GameRecord;
+import com.google.cloud.Timestamp;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Represents the denormalised summary stored in the "summary" field of a test document.
+ * It holds everything the aggregate endpoints need (modes, timestamps and summed errors),
+ * so aggregate queries can project this field instead of downloading the raw games.
+ * It also holds the per-test metrics (stimuli counts, hit rate and reaction time statistics),
+ * so these are read from one field instead of being derived from the games on every read.
+ */
+public class TestErrorSummary {
+
+    /**
+     * Version of the stored summary layout. Version 2 added stimuli counts, hit rate and reaction time statistics;
+     * summaries of older versions only hold the error totals and timestamps.
+     */
+    public static final int CURRENT_VERSION = 2;
+
+    /**
+     * The version of the summary layout.
+     */
+    private int version;
+
+    /**
+     * The ID of the test document.
+     */
+    private String testId;
+
+    /**
+     * The mode of the first game in the test.
+     */
+    private String firstMode;
+
+    /**
+     * The mode of the last game in the test.
+     */
+    private String lastMode;
+
+    /**
+     * The earliest game timestamp in the test.
+     */
+    private Timestamp startTimestamp;
+
+    /**
+     * The latest game timestamp in the test.
+     */
+    private Timestamp endTimestamp;
+
+    /**
+     * The timestamp of the last game in the test.
+     */
+    private Timestamp lastTimestamp;
+
+    /**
+     * The total number of commission errors in the test.
+     */
+    private int commissionErrors;
+
+    /**
+     * The total number of omission errors in the test.
+     */
+    private int omissionErrors;
+
+    /**
+     * The number of games in the test.
+     */
+    private int gameCount;
+
+    /**
+     * The estimated size in bytes of the full test document the summary was computed from.
+     */
+    private long documentBytes;
+
+    /**
+     * The total number of target stimuli occurrences in the test (depends on the mode of the first game).
+     */
+    private int stimuliCount;
+
+    /**
+     * The total number of non-target stimuli occurrences in the test.
+     */
+    private int nonStimuliCount;
+
+    /**
+     * The mean hit rate of the games in the test, or null if the test has no games.
+     */
+    private Double meanHitRate;
+
+    /**
+     * Reaction time statistics (count, mean, standardDeviation, min, max, median, p90, p99)
+     * grouped by interval ("1250", "2250", "4250").
+     */
+    private Map<String, Map<String, Object>> reactionTimeStats;
+
+    /**
+     * Computes the summary of a decoded test.
+     *
+     * @param testRecord    the decoded test.
+     * @param documentBytes the estimated size of the full test document.
+     * @return the computed summary.
+     */
+    public static TestErrorSummary fromRecord(TestRecord testRecord, long documentBytes) {
+        TestErrorSummary summary = new TestErrorSummary();
+        summary.version = CURRENT_VERSION;
+        summary.testId = testRecord.getTestId();
+        summary.documentBytes = documentBytes;
+        summary.reactionTimeStats = new TreeMap<>();
+
+        if (!testRecord.hasGames()) {
+            return summary;
+        }
+
+        summary.firstMode = testRecord.firstGame().getMode();
+        summary.lastMode = testRecord.lastGame().getMode();
+        summary.lastTimestamp = testRecord.lastGame().getTimestamp();
+        summary.gameCount = testRecord.getGames().length;
+
+        Map<String, ReactionTimeHistogram> histograms = new TreeMap<>();
+        int targetCount = 0;
+        int nonTargetCount = 0;
+        long hitRateSum = 0;
+
+        for (GameRecord game : testRecord.getGames()) {
+            summary.commissionErrors += game.getCommissionErrors();
+            summary.omissionErrors += game.getOmissionErrors();
+            targetCount += game.countStimulusImages();
+            nonTargetCount += game.countOtherImages();
+            hitRateSum += game.getHitRate();
+
+            Timestamp gameTimestamp = game.getTimestamp(); // Finds the earliest and latest dates
+            if (gameTimestamp != null) {
+                if (summary.startTimestamp == null || gameTimestamp.compareTo(summary.startTimestamp) < 0) {
+                    summary.startTimestamp = gameTimestamp;
+                }
+                if (summary.endTimestamp == null || gameTimestamp.compareTo(summary.endTimestamp) > 0) {
+                    summary.endTimestamp = gameTimestamp;
+                }
+            }
+
+            game.forEachTappedReaction((interval, reactionTime) ->
+                    histograms.computeIfAbsent(String.valueOf(interval), key -> new ReactionTimeHistogram()).add(reactionTime));
+        }
+
+        if ("mode1".equals(summary.firstMode)) { // In mode1 the stimuli is the target
+            summary.stimuliCount = targetCount;
+            summary.nonStimuliCount = nonTargetCount;
+        } else if ("mode2".equals(summary.firstMode)) { // In mode2 every image except the stimuli is the target
+            summary.stimuliCount = nonTargetCount;
+            summary.nonStimuliCount = targetCount;
+        }
+        summary.meanHitRate = (double) hitRateSum / summary.gameCount;
+
+        for (Map.Entry<String, ReactionTimeHistogram> entry : histograms.entrySet()) {
+            ReactionTimeHistogram histogram = entry.getValue();
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("count", histogram.getCount());
+            stats.put("mean", histogram.getMean());
+            stats.put("standardDeviation", histogram.getStandardDeviation());
+            stats.put("min", histogram.getMin());
+            stats.put("max", histogram.getMax());
+            stats.put("median", histogram.getMedian());
+            stats.put("p90", histogram.getP90());
+            stats.put("p99", histogram.getP99());
+            summary.reactionTimeStats.put(entry.getKey(), stats); // Statistics only, the bins are not stored
+        }
+        return summary;
+    }
+
+    /**
+     * Reads a summary from the "summary" field of a test document.
+     *
+     * @param testId the ID of the test document.
+     * @param fields the stored summary fields.
+     * @return the summary.
+     */
+    public static TestErrorSummary fromFirestoreMap(String testId, Map<String, Object> fields) {
+        TestErrorSummary summary = new TestErrorSummary();
+        summary.testId = testId;
+        summary.firstMode = (String) fields.get("firstMode");
+        summary.lastMode = (String) fields.get("lastMode");
+        summary.startTimestamp = (Timestamp) fields.get("startTimestamp");
+        summary.endTimestamp = (Timestamp) fields.get("endTimestamp");
+        summary.lastTimestamp = (Timestamp) fields.get("lastTimestamp");
+        summary.commissionErrors = toInt(fields.get("commissionErrors"));
+        summary.omissionErrors = toInt(fields.get("omissionErrors"));
+        summary.gameCount = toInt(fields.get("gameCount"));
+        summary.documentBytes = fields.get("documentBytes") != null ? ((Number) fields.get("documentBytes")).longValue() : 0L;
+        summary.version = toInt(fields.get("version"));
+        summary.stimuliCount = toInt(fields.get("stimuliCount"));
+        summary.nonStimuliCount = toInt(fields.get("nonStimuliCount"));
+        summary.meanHitRate = fields.get("meanHitRate") != null ? ((Number) fields.get("meanHitRate")).doubleValue() : null;
+        summary.reactionTimeStats = (Map<String, Map<String, Object>>) fields.get("reactionTimeStats");
+        return summary;
+    }
+
+    /**
+     * Converts the summary into the map stored in the "summary" field of the test document.
+     *
+     * @return the summary fields.
+     */
+    public Map<String, Object> toFirestoreMap() {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("firstMode", firstMode);
+        fields.put("lastMode", lastMode);
+        fields.put("startTimestamp", startTimestamp);
+        fields.put("endTimestamp", endTimestamp);
+        fields.put("lastTimestamp", lastTimestamp);
+        fields.put("commissionErrors", commissionErrors);
+        fields.put("omissionErrors", omissionErrors);
+        fields.put("gameCount", gameCount);
+        fields.put("documentBytes", documentBytes);
+        fields.put("version", version);
+        fields.put("stimuliCount", stimuliCount);
+        fields.put("nonStimuliCount", nonStimuliCount);
+        fields.put("meanHitRate", meanHitRate);
+        fields.put("reactionTimeStats", reactionTimeStats);
+        return fields;
+    }
+
+    private static int toInt(Object value) {
+        return value != null ? ((Number) value).intValue() : 0;
+    }
+
+    public String getTestId() {
+        return testId;
+    }
+
+    public String getFirstMode() {
+        return firstMode;
+    }
+
+    public String getLastMode() {
+        return lastMode;
+    }
+
+    public Timestamp getStartTimestamp() {
+        return startTimestamp;
+    }
+
+    public Timestamp getEndTimestamp() {
+        return endTimestamp;
+    }
+
+    public Timestamp getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public int getCommissionErrors() {
+        return commissionErrors;
+    }
+
+    public int getOmissionErrors() {
+        return omissionErrors;
+    }
+
+    public int getGameCount() {
+        return gameCount;
+    }
+
+    public long getDocumentBytes() {
+        return documentBytes;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if the summary holds every field of the current layout.
+     */
+    public boolean isCurrent() {
+        return version >= CURRENT_VERSION;
+    }
+
+    public int getStimuliCount() {
+        return stimuliCount;
+    }
+
+    public int getNonStimuliCount() {
+        return nonStimuliCount;
+    }
+
+    public Double getMeanHitRate() {
+        return meanHitRate;
+    }
+
+    public Map<String, Map<String, Object>> getReactionTimeStats() {
+        return reactionTimeStats;
+    }
+}
@@ -0,0 +1,191 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.animattio.animattio_web_app_backend.game.Game;
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.google.cloud.Timestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Service class for ingesting new tests.
+ * A test is validated, summarized once at write time and stored together with its summary,
+ * so read paths find the metrics in the "summary" field instead of deriving them from the games.
+ * The test is also added to the roll-up of its user.
+ */
+@Service
+public class TestIngestService {
+    private static final Logger logger = LoggerFactory.getLogger(TestIngestService.class);
+    private static final Set<String> MODES = Set.of("mode1", "mode2");
+    private static final int INTERVAL_COUNT = 3; // Images 0-19, 20-39 and 40+ use the three intervals in order
+
+    /**
+     * The intervals in milliseconds the mobile app stores, each the display interval plus 250 ms.
+     * The reaction time analytics group by these values, so tests with other intervals are rejected.
+     */
+    public static final List<Integer> INTERVALS = List.of(1250, 2250, 4250);
+
+    private final TestRepository testRepository;
+    private final TestRollupStore rollupStore;
+
+    /**
+     * Constructs a new instance of TestIngestService.
+     *
+     * @param testRepository the repository the tests are stored in.
+     * @param rollupStore    the store of the per day roll-ups the tests are added to.
+     */
+    public TestIngestService(TestRepository testRepository, TestRollupStore rollupStore) {
+        this.testRepository = testRepository;
+        this.rollupStore = rollupStore;
+    }
+
+    /**
+     * Validates a test, computes its summary and stores both in a new test document.
+     *
+     * @param test the test to ingest.
+     * @return a map with the ID of the new test document and the stored summary.
+     * @throws ExecutionException   if the Firestore operation fails.
+     * @throws InterruptedException if the Firestore operation is interrupted.
+     * @throws ResponseStatusException with status BAD_REQUEST if the test is invalid.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> ingestTest(Test test) throws ExecutionException, InterruptedException {
+        validate(test); // Before an ID is generated for the test
+        String testId = testRepository.newTestId(); // Generated document ID
+        Map<String, Object> fields = toDocument(testId, test);
+
+        FirestoreFutures.await(testRepository.save(testId, fields));
+        TestErrorSummary summary = TestErrorSummary.fromFirestoreMap(testId, (Map<String, Object>) fields.get(TestSummaryProjection.SUMMARY_FIELD));
+
+        try {
+            FirestoreFutures.await(rollupStore.recordTest(test.getUserId(), testId, summary));
+        } catch (ExecutionException e) { // The test is stored; the roll-up no longer counts as current until the next backfill
+            logger.warn("Adding test {} to the roll-up of user {} failed", testId, test.getUserId(), e);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("testId", testId);
+        response.put("summary", summary);
+        return response;
+    }
+
+    /**
+     * Validates a test and converts it into the fields of its test document, including the summary,
+     * exactly as {@link #ingestTest(Test)} stores them.
+     *
+     * @param testId the ID of the test document, which is part of the stored summary.
+     * @param test   the test to convert.
+     * @return the fields of the test document.
+     * @throws ResponseStatusException with status BAD_REQUEST if the test is invalid.
+     */
+    public Map<String, Object> toDocument(String testId, Test test) {
+        validate(test);
+
+        List<Map<String, Object>> gamesInTest = new ArrayList<>();
+        for (Game game : test.getGamesInTest()) {
+            gamesInTest.add(toFirestoreMap(game));
+        }
+
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("userId", test.getUserId());
+        fields.put("gamesInTest", gamesInTest);
+
+        long documentBytes = TestSummaryProjection.estimateDocumentSize(testId, fields);
+        TestErrorSummary summary = TestErrorSummary.fromRecord(TestRecord.decode(testId, fields), documentBytes);
+        fields.put(TestSummaryProjection.SUMMARY_FIELD, summary.toFirestoreMap()); // Written in the same write as the games
+        return fields;
+    }
+
+    /**
+     * Checks that a test and its games are complete and consistent.
+     *
+     * @param test the test to validate.
+     * @throws ResponseStatusException with status BAD_REQUEST describing the first problem found.
+     */
+    private void validate(Test test) {
+        if (test == null || test.getUserId() == null || test.getUserId().isEmpty()) {
+            throw invalid("userId is required");
+        }
+        if (test.getGamesInTest() == null || test.getGamesInTest().isEmpty()) {
+            throw invalid("gamesInTest must contain at least one game");
+        }
+
+        for (int i = 0; i < test.getGamesInTest().size(); i++) {
+            Game game = test.getGamesInTest().get(i);
+            String prefix = "gamesInTest[" + i + "]: ";
+            if (game == null) {
+                throw invalid(prefix + "game is missing");
+            }
+            if (!MODES.contains(game.getMode())) {
+                throw invalid(prefix + "mode must be one of " + MODES);
+            }
+            if (game.getStimuli() == null || game.getStimuli().isEmpty()) {
+                throw invalid(prefix + "stimuli is required");
+            }
+            if (game.getTimestamp() == null) {
+                throw invalid(prefix + "timestamp is required");
+            }
+            if (game.getComissionErrors() < 0 || game.getOmissionErrors() < 0) {
+                throw invalid(prefix + "error counts cannot be negative");
+            }
+            if (game.getHitRate() < 0 || game.getHitRate() > 100) {
+                throw invalid(prefix + "hitRate must be between 0 and 100");
+            }
+            if (game.getShownImages() == null || game.getResult() == null
+                    || game.getShownImages().size() != game.getResult().size()) {
+                throw invalid(prefix + "shownImages and result must have one entry per shown image");
+            }
+            if (game.getShownImages().contains(null) || game.getResult().contains(null)) {
+                throw invalid(prefix + "shownImages and result cannot contain null entries");
+            }
+            if (game.getIntervals() == null || game.getIntervals().size() != INTERVAL_COUNT || game.getIntervals().contains(null)) {
+                throw invalid(prefix + "intervals must contain " + INTERVAL_COUNT + " values");
+            }
+            if (!INTERVALS.containsAll(game.getIntervals())) {
+                throw invalid(prefix + "intervals must be among " + INTERVALS);
+            }
+
+            long tappedImages = game.getResult().stream().filter(Boolean::booleanValue).count();
+            if (game.getReactionTimes() == null || game.getReactionTimes().size() != tappedImages
+                    || game.getReactionTimes().contains(null)) {
+                throw invalid(prefix + "reactionTimes must have one entry per tapped image");
+            }
+        }
+    }
+
+    /**
+     * Converts a game into the map stored in the "gamesInTest" array, with the field names the mobile app uses.
+     *
+     * @param game the validated game.
+     * @return the stored game fields.
+     */
+    private Map<String, Object> toFirestoreMap(Game game) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("id", game.getId());
+        fields.put("mode", game.getMode());
+        fields.put("theme", game.getTheme());
+        fields.put("stimuli", game.getStimuli());
+        fields.put("timestamp", Timestamp.of(game.getTimestamp()));
+        fields.put("commissionErrors", game.getComissionErrors()); // Stored documents spell the field "commissionErrors"
+        fields.put("omissionErrors", game.getOmissionErrors());
+        fields.put("hitRate", game.getHitRate());
+        fields.put("shownImages", new ArrayList<>(game.getShownImages()));
+        fields.put("result", new ArrayList<>(game.getResult()));
+        fields.put("reactionTimes", new ArrayList<>(game.getReactionTimes()));
+        fields.put("intervals", new ArrayList<>(game.getIntervals()));
+        return fields;
+    }
+
+    private static ResponseStatusException invalid(String reason) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, reason);
+    }
+}
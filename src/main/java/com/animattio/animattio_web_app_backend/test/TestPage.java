@@ -0,0 +1,76 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Represents one page of a cursor-paginated list of test results.
+ * The page token is opaque to clients and encodes the ID of the last test document of the page,
+ * which is used as the Firestore startAfter cursor of the next page.
+ *
+ * @param <T> the type of the items in the page.
+ */
+public class TestPage<T> {
+
+    /**
+     * The items in this page.
+     */
+    private List<T> items;
+
+    /**
+     * The token of the next page, or null if this is the last page.
+     */
+    private String nextPageToken;
+
+    /**
+     * Constructs a new page.
+     *
+     * @param items         the items in the page.
+     * @param nextPageToken the token of the next page, or null if this is the last page.
+     */
+    public TestPage(List<T> items, String nextPageToken) {
+        this.items = items;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public void setItems(List<T> items) {
+        this.items = items;
+    }
+
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    public void setNextPageToken(String nextPageToken) {
+        this.nextPageToken = nextPageToken;
+    }
+
+    /**
+     * Encodes the ID of the last document of a page into an opaque page token.
+     *
+     * @param lastDocumentId the ID of the last document of the page.
+     * @return the page token.
+     */
+    public static String encodeToken(String lastDocumentId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastDocumentId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a page token into the ID of the last document of the previous page.
+     *
+     * @param pageToken the page token.
+     * @return the document ID, or null if the token is null or empty.
+     * @throws IllegalArgumentException if the token is malformed.
+     */
+    public static String decodeToken(String pageToken) {
+        if (pageToken == null || pageToken.isEmpty()) {
+            return null;
+        }
+        return new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,127 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.animattio.animattio_web_app_backend.game.GameRecord;
+import com.animattio.animattio_web_app_backend.game.ImageDictionary;
+import com.google.cloud.firestore.DocumentSnapshot;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, typed representation of a test document.
+ * This is the single decoding layer shared by all test analytics,
+ * so no analytics code casts the raw "gamesInTest" maps itself.
+ * The types of the stored fields are checked while decoding, and documents that do not have the layout of a test
+ * are rejected with a {@link MalformedTestException}.
+ */
+public final class TestRecord {
+
+    private static final GameRecord[] NO_GAMES = new GameRecord[0];
+
+    private final String testId;
+    private final String userId;
+    private final GameRecord[] games;
+    private final ImageDictionary images;
+
+    private TestRecord(String testId, String userId, GameRecord[] games, ImageDictionary images) {
+        this.testId = testId;
+        this.userId = userId;
+        this.games = games;
+        this.images = images;
+    }
+
+    /**
+     * Decodes a test document snapshot.
+     *
+     * @param testDoc the test document.
+     * @return the decoded test.
+     * @throws MalformedTestException if the document does not have the layout of a test.
+     */
+    public static TestRecord decode(DocumentSnapshot testDoc) {
+        return decode(testDoc.getId(), testDoc.getData());
+    }
+
+    /**
+     * Decodes the fields of a test document.
+     *
+     * @param testId the ID of the test document.
+     * @param fields the stored fields of the test, or null if the document does not exist.
+     * @return the decoded test.
+     * @throws MalformedTestException if the fields do not have the layout of a test.
+     */
+    public static TestRecord decode(String testId, Map<String, Object> fields) {
+        ImageDictionary images = new ImageDictionary();
+        if (fields == null) {
+            return new TestRecord(testId, null, NO_GAMES, images);
+        }
+
+        Object userId = fields.get("userId");
+        if (userId != null && !(userId instanceof String)) {
+            throw new MalformedTestException(testId, "userId must be a String");
+        }
+        Object gamesInTest = fields.get("gamesInTest");
+        if (gamesInTest != null && !(gamesInTest instanceof List)) {
+            throw new MalformedTestException(testId, "gamesInTest must be a list of games");
+        }
+
+        GameRecord[] games = NO_GAMES;
+        if (gamesInTest != null) {
+            List<?> storedGames = (List<?>) gamesInTest;
+            games = new GameRecord[storedGames.size()];
+            for (int i = 0; i < games.length; i++) {
+                if (!(storedGames.get(i) instanceof Map)) {
+                    throw new MalformedTestException(testId, "game " + i + " must be a map of fields");
+                }
+                try {
+                    games[i] = GameRecord.fromFirestoreMap((Map<?, ?>) storedGames.get(i), images);
+                } catch (IllegalArgumentException e) {
+                    throw new MalformedTestException(testId, "in game " + i + ", " + e.getMessage());
+                }
+            }
+        }
+        return new TestRecord(testId, (String) userId, games, images);
+    }
+
+    public String getTestId() {
+        return testId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return the dictionary of the image codes of the games of this test.
+     */
+    public ImageDictionary getImageDictionary() {
+        return images;
+    }
+
+    /**
+     * @return the games of the test in stored order; empty if the test has no games.
+     */
+    public GameRecord[] getGames() {
+        return games;
+    }
+
+    /**
+     * @return true if the test has at least one game.
+     */
+    public boolean hasGames() {
+        return games.length > 0;
+    }
+
+    /**
+     * @return the first game of the test, or null if the test has no games.
+     */
+    public GameRecord firstGame() {
+        return games.length > 0 ? games[0] : null;
+    }
+
+    /**
+     * @return the last game of the test, or null if the test has no games.
+     */
+    public GameRecord lastGame() {
+        return games.length > 0 ? games[games.length - 1] : null;
+    }
+}
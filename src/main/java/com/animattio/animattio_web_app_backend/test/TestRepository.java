@@ -0,0 +1,255 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.google.cloud.Timestamp;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage of test documents, as written by the mobile app or by {@link TestIngestService}.
+ * The application uses the Firestore implementation; the implementation holding the tests in memory is used by the
+ * benchmarks and the "in-memory" profile.
+ * Summaries are read through the {@link TestSummaryProjection}, so tests with a current stored summary are not read in full.
+ */
+public interface TestRepository {
+
+    /**
+     * A decoded test together with the update time of its document.
+     */
+    class StoredTest {
+        private final TestRecord record;
+        private final Timestamp updateTime;
+
+        public StoredTest(TestRecord record, Timestamp updateTime) {
+            this.record = record;
+            this.updateTime = updateTime;
+        }
+
+        public TestRecord getRecord() {
+            return record;
+        }
+
+        public Timestamp getUpdateTime() {
+            return updateTime;
+        }
+    }
+
+    /**
+     * The summary stored on a test, if any, together with the update time of its document.
+     */
+    class StoredSummary {
+        private final TestErrorSummary summary;
+        private final Timestamp updateTime;
+
+        public StoredSummary(TestErrorSummary summary, Timestamp updateTime) {
+            this.summary = summary;
+            this.updateTime = updateTime;
+        }
+
+        public TestErrorSummary getSummary() {
+            return summary;
+        }
+
+        public Timestamp getUpdateTime() {
+            return updateTime;
+        }
+    }
+
+    /**
+     * Error sums over the summaries stored on a user's tests.
+     */
+    class ErrorTotals {
+        private final long summarizedTestCount;
+        private final long commissionErrors;
+        private final long omissionErrors;
+
+        public ErrorTotals(long summarizedTestCount, long commissionErrors, long omissionErrors) {
+            this.summarizedTestCount = summarizedTestCount;
+            this.commissionErrors = commissionErrors;
+            this.omissionErrors = omissionErrors;
+        }
+
+        public long getSummarizedTestCount() {
+            return summarizedTestCount;
+        }
+
+        public long getCommissionErrors() {
+            return commissionErrors;
+        }
+
+        public long getOmissionErrors() {
+            return omissionErrors;
+        }
+    }
+
+    /**
+     * The outcome of backfilling the summaries of one page of tests.
+     */
+    class BackfillPage {
+        private final int scanned;
+        private final int backfilled;
+        private final int malformed;
+        private final Set<String> userIds;
+        private final String lastTestId;
+
+        public BackfillPage(int scanned, int backfilled, int malformed, Set<String> userIds, String lastTestId) {
+            this.scanned = scanned;
+            this.backfilled = backfilled;
+            this.malformed = malformed;
+            this.userIds = userIds;
+            this.lastTestId = lastTestId;
+        }
+
+        /**
+         * @return the number of tests in the page.
+         */
+        public int getScanned() {
+            return scanned;
+        }
+
+        /**
+         * @return the number of tests whose summary was stored.
+         */
+        public int getBackfilled() {
+            return backfilled;
+        }
+
+        /**
+         * @return the number of tests without a current summary that could not be decoded and were skipped.
+         */
+        public int getMalformed() {
+            return malformed;
+        }
+
+        /**
+         * @return the user IDs of all tests in the page.
+         */
+        public Set<String> getUserIds() {
+            return userIds;
+        }
+
+        /**
+         * @return the ID of the last test of the page, or null if the page is empty.
+         */
+        public String getLastTestId() {
+            return lastTestId;
+        }
+    }
+
+    /**
+     * Finds a test.
+     *
+     * @param testId the ID of the test document.
+     * @return a future of the test, or of null if not found.
+     */
+    CompletableFuture<Test> findById(String testId);
+
+    /**
+     * Finds all tests of a user, in document ID order.
+     *
+     * @param userId the user ID of the tests.
+     * @return a future of the tests of the user.
+     */
+    CompletableFuture<List<Test>> findByUser(String userId);
+
+    /**
+     * Finds one page of a user's tests in document ID order.
+     *
+     * @param userId      the user ID of the tests.
+     * @param afterTestId the ID of the last test of the previous page, or null for the first page.
+     * @param limit       the maximum number of tests in the page.
+     * @return a future of the tests of the page keyed by test ID in document ID order.
+     */
+    CompletableFuture<Map<String, Test>> findPageByUser(String userId, String afterTestId, int limit);
+
+    /**
+     * Counts the tests of a user without transferring them.
+     *
+     * @param userId the user ID of the tests.
+     * @return a future of the number of tests of the user.
+     */
+    CompletableFuture<Long> countByUser(String userId);
+
+    /**
+     * Reads the summaries of all tests of a user, in document ID order.
+     * Tests without a current stored summary are summarized from their games; the summary is not stored.
+     *
+     * @param userId the user ID of the tests.
+     * @return a future of the summaries of the tests of the user.
+     */
+    CompletableFuture<List<TestErrorSummary>> findSummariesByUser(String userId);
+
+    /**
+     * Reads the summaries of one page of a user's tests in document ID order.
+     * Tests without a current stored summary are summarized from their games; the summary is not stored.
+     *
+     * @param userId      the user ID of the tests.
+     * @param afterTestId the ID of the last test of the previous page, or null for the first page.
+     * @param limit       the maximum number of tests in the page.
+     * @return a future of the summaries of the tests of the page.
+     */
+    CompletableFuture<List<TestErrorSummary>> findSummaryPageByUser(String userId, String afterTestId, int limit);
+
+    /**
+     * Sums the errors of the summaries stored on a user's tests without transferring the tests.
+     * Tests without a stored summary are not included in the sums nor in the summarized test count.
+     *
+     * @param userId the user ID of the tests.
+     * @return a future of the sums and of the number of tests they include.
+     */
+    CompletableFuture<ErrorTotals> sumStoredErrorTotals(String userId);
+
+    /**
+     * Reads only the summary stored on a test and the update time of the test document, in one read without the games.
+     *
+     * @param testId the ID of the test document.
+     * @return a future of the stored summary, null if the test has no summary, with the update time, failed with a
+     *         {@link org.springframework.web.server.ResponseStatusException} if the test is not found.
+     */
+    CompletableFuture<StoredSummary> findStoredSummary(String testId);
+
+    /**
+     * Reads only the update time of a test, which changes whenever the test document is written.
+     *
+     * @param testId the ID of the test document.
+     * @return a future of the update time, or of null if the test is not found.
+     */
+    CompletableFuture<Timestamp> findUpdateTime(String testId);
+
+    /**
+     * Reads and decodes a full test.
+     *
+     * @param testId the ID of the test document.
+     * @return a future of the decoded test with its update time, or of null if the test is not found.
+     */
+    CompletableFuture<StoredTest> findRecord(String testId);
+
+    /**
+     * Stores the summary field on the tests of one page, in document ID order over all tests, that do not have one yet
+     * or have one of an older layout. Only those tests are read in full.
+     * Malformed tests are logged and skipped, so one bad document does not stop the backfill.
+     *
+     * @param afterTestId the ID of the last test of the previous page, or null for the first page.
+     * @param limit       the maximum number of tests in the page, at most 500 (the Firestore batch limit).
+     * @return a future of the outcome of the page, completed once every summary is stored.
+     */
+    CompletableFuture<BackfillPage> backfillSummaryPage(String afterTestId, int limit);
+
+    /**
+     * Generates the ID of a new test document.
+     *
+     * @return the new, unused ID.
+     */
+    String newTestId();
+
+    /**
+     * Creates or overwrites a test document.
+     *
+     * @param testId the ID of the test document.
+     * @param fields the fields of the test, with the field names the mobile app uses.
+     * @return a future of the update time of the stored document.
+     */
+    CompletableFuture<Timestamp> save(String testId, Map<String, Object> fields);
+}
@@ -0,0 +1,48 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage of the persisted roll-up of each user: the day, mode and error totals every test of the user contributes,
+ * keyed by test ID, in one document per user.
+ * The application uses the Firestore implementation; the implementation holding the roll-ups in memory is used by the
+ * benchmarks and the "in-memory" profile.
+ */
+public interface TestRollupRepository {
+
+    /**
+     * Finds the roll-up of a user.
+     *
+     * @param userId the user ID of the tests.
+     * @return a future of the contributions of the user's tests keyed by test ID, or of null if the user has no roll-up.
+     */
+    CompletableFuture<Map<String, TestRollupStore.TestContribution>> findByUser(String userId);
+
+    /**
+     * Creates or overwrites the roll-up of a user.
+     *
+     * @param userId        the user ID of the tests.
+     * @param contributions the contributions of every test of the user keyed by test ID.
+     * @return a future completed once the roll-up is stored.
+     */
+    CompletableFuture<Void> save(String userId, Map<String, TestRollupStore.TestContribution> contributions);
+
+    /**
+     * Adds or replaces the contribution of one test in the roll-up of a user, creating the roll-up if needed.
+     *
+     * @param userId       the user ID of the test.
+     * @param testId       the ID of the test document.
+     * @param contribution the contribution of the test.
+     * @return a future completed once the contribution is stored.
+     */
+    CompletableFuture<Void> saveContribution(String userId, String testId, TestRollupStore.TestContribution contribution);
+
+    /**
+     * Deletes the roll-up of a user, if any.
+     *
+     * @param userId the user ID of the tests.
+     * @return a future completed once the roll-up is deleted.
+     */
+    CompletableFuture<Void> deleteByUser(String userId);
+}
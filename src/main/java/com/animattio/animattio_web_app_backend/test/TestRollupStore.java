@@ -0,0 +1,281 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.google.cloud.Timestamp;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves per user, per mode and per day roll-ups of test errors.
+ * The roll-up of a user is persisted through the {@link TestRollupRepository} as the contribution of every test,
+ * so an aggregate request reads one roll-up document and counts the user's tests instead of reading every test.
+ * Ingested tests are added to the roll-up when they are stored, and {@link #rebuild(String)} rewrites it from the
+ * test summaries after a backfill.
+ * <p>
+ * The mobile app writes tests directly to Firestore, so the roll-up only counts as current while it holds as many tests
+ * as the user has. Otherwise the buckets are built from the summaries of all of the user's tests, which reads only
+ * their summary field, and nothing is written, so GET requests never write; the next backfill brings the roll-up
+ * up to date. Changes to existing tests outside the ingest path are not detected until the roll-up is rebuilt.
+ * Monthly aggregates are derived from the day buckets.
+ */
+@Component
+public class TestRollupStore {
+
+    private static final ZoneId ZONE_ID = ZoneId.of("UTC+2");
+
+    /**
+     * Aggregated errors of all tests of a user in one mode on one day.
+     */
+    public static class RollupBucket {
+        private final LocalDate day;
+        private final String mode;
+        private int commissions;
+        private int omissions;
+        private int testCount;
+
+        private RollupBucket(LocalDate day, String mode) {
+            this.day = day;
+            this.mode = mode;
+        }
+
+        public LocalDate getDay() {
+            return day;
+        }
+
+        public String getMode() {
+            return mode;
+        }
+
+        public int getCommissions() {
+            return commissions;
+        }
+
+        public int getOmissions() {
+            return omissions;
+        }
+
+        public int getTestCount() {
+            return testCount;
+        }
+    }
+
+    /**
+     * Contribution of a single test to its day bucket, as stored in the roll-up of its user.
+     */
+    public static final class TestContribution {
+        private final LocalDate day;
+        private final String mode;
+        private final int commissions;
+        private final int omissions;
+
+        /**
+         * Constructs a contribution.
+         *
+         * @param day         the day of the last game of the test, or null if the test has no dated games.
+         * @param mode        the mode of the last game of the test.
+         * @param commissions the commission errors of the test.
+         * @param omissions   the omission errors of the test.
+         */
+        public TestContribution(LocalDate day, String mode, int commissions, int omissions) {
+            this.day = day;
+            this.mode = mode;
+            this.commissions = commissions;
+            this.omissions = omissions;
+        }
+
+        /**
+         * @return the day of the test, or null if the test has no dated games and is in no bucket.
+         */
+        public LocalDate getDay() {
+            return day;
+        }
+
+        public String getMode() {
+            return mode;
+        }
+
+        public int getCommissions() {
+            return commissions;
+        }
+
+        public int getOmissions() {
+            return omissions;
+        }
+    }
+
+    private final TestRepository testRepository;
+    private final TestRollupRepository rollupRepository;
+
+    private final AtomicLong currentReads = new AtomicLong();
+    private final AtomicLong summaryReads = new AtomicLong();
+
+    /**
+     * Constructs the roll-up store.
+     *
+     * @param testRepository   the repository of the tests the roll-ups are built from.
+     * @param rollupRepository the repository the roll-ups are stored in.
+     */
+    public TestRollupStore(TestRepository testRepository, TestRollupRepository rollupRepository) {
+        this.testRepository = testRepository;
+        this.rollupRepository = rollupRepository;
+    }
+
+    /**
+     * Returns the day buckets of a user in chronological order, and by mode within a day.
+     *
+     * @param userId the ID of the user.
+     * @return the day buckets of the user, or null if the user has no tests.
+     * @throws ExecutionException   if the Firestore operation fails.
+     * @throws InterruptedException if the Firestore operation is interrupted.
+     */
+    public List<RollupBucket> getDailyBuckets(String userId) throws ExecutionException, InterruptedException {
+        return getDailyBuckets(userId, null, null);
+    }
+
+    /**
+     * Returns the day buckets of a user within a date range in chronological order, and by mode within a day.
+     * The range is applied to the roll-up, so tests without a stored summary are counted like every other test.
+     *
+     * @param userId the ID of the user.
+     * @param from   the first day of the range (inclusive), or null for no lower bound.
+     * @param to     the last day of the range (inclusive), or null for no upper bound.
+     * @return the day buckets of the user in the range, or null if the user has no tests.
+     * @throws ExecutionException   if the Firestore operation fails.
+     * @throws InterruptedException if the Firestore operation is interrupted.
+     */
+    public List<RollupBucket> getDailyBuckets(String userId, LocalDate from, LocalDate to) throws ExecutionException, InterruptedException {
+        CompletableFuture<Map<String, TestContribution>> storedRollup = rollupRepository.findByUser(userId);
+        CompletableFuture<Long> testCount = testRepository.countByUser(userId); // Both reads run at the same time
+
+        Map<String, TestContribution> contributions = FirestoreFutures.await(storedRollup);
+        long tests = FirestoreFutures.await(testCount);
+        if (tests == 0) {
+            return null;
+        }
+        if (contributions != null && contributions.size() == tests) {
+            currentReads.incrementAndGet();
+            return buckets(contributions.values(), from, to);
+        }
+
+        summaryReads.incrementAndGet(); // Missing tests written by the mobile app, or no roll-up yet
+        List<TestErrorSummary> summaries = FirestoreFutures.await(testRepository.findSummariesByUser(userId));
+        List<TestContribution> summarized = new ArrayList<>(summaries.size());
+        for (TestErrorSummary summary : summaries) {
+            summarized.add(toContribution(summary));
+        }
+        return buckets(summarized, from, to);
+    }
+
+    /**
+     * Adds an ingested test to the roll-up of its user.
+     *
+     * @param userId  the ID of the user.
+     * @param testId  the ID of the test document.
+     * @param summary the summary stored on the test.
+     * @return a future completed once the contribution is stored.
+     */
+    public CompletableFuture<Void> recordTest(String userId, String testId, TestErrorSummary summary) {
+        return rollupRepository.saveContribution(userId, testId, toContribution(summary));
+    }
+
+    /**
+     * Rewrites the roll-up of a user from the summaries of all of the user's tests.
+     *
+     * @param userId the ID of the user.
+     * @return a future completed once the roll-up is stored.
+     */
+    public CompletableFuture<Void> rebuild(String userId) {
+        return testRepository.findSummariesByUser(userId).thenCompose(summaries -> {
+            if (summaries.isEmpty()) {
+                return rollupRepository.deleteByUser(userId);
+            }
+            Map<String, TestContribution> contributions = new HashMap<>();
+            for (TestErrorSummary summary : summaries) {
+                contributions.put(summary.getTestId(), toContribution(summary));
+            }
+            return rollupRepository.save(userId, contributions);
+        });
+    }
+
+    /**
+     * Returns how many aggregate requests were served from a current roll-up and how many from the test summaries.
+     *
+     * @return a map with the roll-up read statistics.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("currentReads", currentReads.get());
+        statistics.put("summaryReads", summaryReads.get());
+        return statistics;
+    }
+
+    /**
+     * Builds day buckets from test summaries, with the same day and mode assignment as the roll-ups.
+     *
+     * @param summaries the summaries of the tests.
+     * @return the day buckets in chronological order, and by mode within a day.
+     */
+    public static List<RollupBucket> bucketsFromSummaries(List<TestErrorSummary> summaries) {
+        List<TestContribution> contributions = new ArrayList<>(summaries.size());
+        for (TestErrorSummary summary : summaries) {
+            contributions.add(toContribution(summary));
+        }
+        return buckets(contributions, null, null);
+    }
+
+    /**
+     * Sums test contributions within a date range into day buckets. Contributions of undated tests are skipped.
+     *
+     * @param contributions the contributions of the tests.
+     * @param from          the first day of the range (inclusive), or null for no lower bound.
+     * @param to            the last day of the range (inclusive), or null for no upper bound.
+     * @return the day buckets in chronological order, and by mode within a day.
+     */
+    private static List<RollupBucket> buckets(Collection<TestContribution> contributions, LocalDate from, LocalDate to) {
+        TreeMap<LocalDate, Map<String, RollupBucket>> days = new TreeMap<>();
+        for (TestContribution contribution : contributions) {
+            if (contribution.day == null || (from != null && contribution.day.isBefore(from))
+                    || (to != null && contribution.day.isAfter(to))) {
+                continue;
+            }
+            RollupBucket bucket = days.computeIfAbsent(contribution.day, day -> new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder())))
+                    .computeIfAbsent(contribution.mode, mode -> new RollupBucket(contribution.day, mode));
+            bucket.commissions += contribution.commissions;
+            bucket.omissions += contribution.omissions;
+            bucket.testCount++;
+        }
+
+        List<RollupBucket> buckets = new ArrayList<>();
+        for (Map<String, RollupBucket> modeBuckets : days.values()) {
+            buckets.addAll(modeBuckets.values());
+        }
+        return buckets;
+    }
+
+    /**
+     * Computes the contribution of a summarized test. The day and mode of the test come from its last game.
+     *
+     * @param summary the summary of the test.
+     * @return the contribution of the test, with a null day if the test has no dated games.
+     */
+    private static TestContribution toContribution(TestErrorSummary summary) {
+        Timestamp lastTimestamp = summary.getLastTimestamp();
+        LocalDate day = lastTimestamp != null
+                ? Instant.ofEpochSecond(lastTimestamp.getSeconds(), lastTimestamp.getNanos()).atZone(ZONE_ID).toLocalDate()
+                : null;
+        return new TestContribution(day, summary.getLastMode(), summary.getCommissionErrors(), summary.getOmissionErrors());
+    }
+}
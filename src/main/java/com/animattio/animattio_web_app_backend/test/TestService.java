@@ -1,17 +1,19 @@
 package com.animattio.animattio_web_app_backend.test;
+import com.animattio.animattio_web_app_backend.firestore.FirestoreFutures;
+import com.animattio.animattio_web_app_backend.game.GameRecord;
 import com.google.cloud.Timestamp;
-import com.google.api.core.ApiFuture;
-import com.google.cloud.firestore.*;
-import com.google.firebase.cloud.FirestoreClient;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 import java.time.Instant;
+import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.function.ToIntFunction;
 
 /**
  * Service class for managing test-related operations in the application.
@@ -20,6 +22,30 @@ import java.util.concurrent.ExecutionException;
  */
 @Service
 public class TestService {
+    public static final int MAX_MERGED_TESTS = 100; // Tests whose reaction times are summarized by one request
+    private static final int BACKFILL_PAGE_SIZE = 500; // Firestore limit of writes in a single batch
+
+    private final TestSummaryCache summaryCache;
+    private final TestRollupStore rollupStore;
+    private final TestSummaryProjection summaryProjection;
+    private final TestRepository testRepository;
+
+    /**
+     * Constructs a new instance of TestService.
+     *
+     * @param summaryCache      the cache of computed test summaries.
+     * @param rollupStore       the store of per day error roll-ups.
+     * @param summaryProjection the projection layer counting the bytes of summary reads.
+     * @param testRepository    the repository storing the tests.
+     */
+    public TestService(TestSummaryCache summaryCache, TestRollupStore rollupStore, TestSummaryProjection summaryProjection,
+                       TestRepository testRepository) {
+        this.summaryCache = summaryCache;
+        this.rollupStore = rollupStore;
+        this.summaryProjection = summaryProjection;
+        this.testRepository = testRepository;
+    }
+
     /**
      * Retrieves a single test document by its ID.
      *
@@ -29,17 +55,7 @@ public class TestService {
      * @throws InterruptedException if the Firestore operation is interrupted.
      */
     public Test getTest(String documentId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        DocumentReference documentReference = dbFirestore.collection("tests").document(documentId);
-        ApiFuture<DocumentSnapshot> future = documentReference.get();
-        DocumentSnapshot documentSnapshot = future.get();
-
-        if (documentSnapshot.exists()) {
-            Test test = documentSnapshot.toObject(Test.class);
-            return test;
-        }
-
-        return null;
+        return FirestoreFutures.await(testRepository.findById(documentId));
     }
 
     /**
@@ -51,25 +67,52 @@ public class TestService {
      * @throws InterruptedException if the Firestore operation is interrupted.
      */
     public List<Test> getTestsByUser(String userId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
+        return FirestoreFutures.await(testRepository.findByUser(userId));
+    }
 
-        CollectionReference testsCollection = dbFirestore.collection("tests");
-        Query query = testsCollection.whereEqualTo("userId", userId);
-        ApiFuture<QuerySnapshot> querySnapshot = query.get();
+    /**
+     * Retrieves all tests associated with a specific user ID without blocking the calling thread.
+     *
+     * @param userId the user ID for which to fetch tests.
+     * @return a future of the list of {@link Test} objects.
+     */
+    public CompletableFuture<List<Test>> getTestsByUserAsync(String userId) {
+        return testRepository.findByUser(userId);
+    }
+
+    /**
+     * Retrieves one page of the tests associated with a specific user ID.
+     *
+     * @param userId    the user ID for which to fetch tests.
+     * @param pageSize  the maximum number of tests in the page.
+     * @param pageToken the token returned with the previous page, or null for the first page.
+     * @return a {@link TestPage} of {@link Test} objects.
+     * @throws ExecutionException   if the Firestore operation fails.
+     * @throws InterruptedException if the Firestore operation is interrupted.
+     * @throws IllegalArgumentException if the page token is malformed.
+     */
+    public TestPage<Test> getTestsByUserPage(String userId, int pageSize, String pageToken) throws ExecutionException, InterruptedException {
+        Map<String, Test> page = FirestoreFutures.await(testRepository.findPageByUser(userId, TestPage.decodeToken(pageToken), pageSize + 1));
+        // One test more than the page size is requested to know whether a next page exists
 
-        List<QueryDocumentSnapshot> documents = querySnapshot.get().getDocuments();
         List<Test> tests = new ArrayList<>();
-        for (QueryDocumentSnapshot document : documents) {
-            Test test = document.toObject(Test.class);
-            tests.add(test);
+        String lastTestId = null;
+        for (Map.Entry<String, Test> test : page.entrySet()) {
+            if (tests.size() == pageSize) {
+                break;
+            }
+            tests.add(test.getValue());
+            lastTestId = test.getKey();
         }
 
-        return tests;
+        String nextPageToken = page.size() > pageSize ? TestPage.encodeToken(lastTestId) : null;
+        return new TestPage<>(tests, nextPageToken);
     }
 
     /**
      * Aggregates errors for all tests of a user, including commission and omission errors,
      * along with test start and end dates and game modes.
+     * Only the summary field of the tests is read.
      *
      * @param userId the user ID for which to aggregate test errors.
      * @return a list of maps representing aggregated error data.
@@ -77,106 +120,298 @@ public class TestService {
      * @throws InterruptedException if the Firestore operation is interrupted.
      */
     public List<Map<String, Object>> sumErrorsForUserTests(String userId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
+        return FirestoreFutures.await(sumErrorsForUserTestsAsync(userId));
+    }
 
-        ApiFuture<QuerySnapshot> future = dbFirestore.collection("tests")
-                .whereEqualTo("userId", userId)
-                .get();
+    /**
+     * Aggregates errors for all tests of a user without blocking the calling thread.
+     *
+     * @param userId the user ID for which to aggregate test errors.
+     * @return a future of the list of maps representing aggregated error data, failed with a
+     *         {@link ResponseStatusException} if the user has no tests.
+     */
+    public CompletableFuture<List<Map<String, Object>>> sumErrorsForUserTestsAsync(String userId) {
+        return testRepository.findSummariesByUser(userId).thenApply(testSummaries -> { // Transfers only the summary field
+            if (testSummaries.isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No tests found for the provided user ID: " + userId);
+            }
 
-        List<QueryDocumentSnapshot> testDocuments = future.get().getDocuments();
-        List<Map<String, Object>> testResults = new ArrayList<>();
+            List<Map<String, Object>> testResults = new ArrayList<>();
+            for (TestErrorSummary testSummary : testSummaries) {
+                testResults.add(sumErrorsForTest(testSummary));
+            }
+            return testResults; // Returns a list of user tests with summed errors
+        });
+    }
 
-        if (testDocuments.isEmpty()) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No tests found for the provided user ID: " + userId);
+    /**
+     * Counts the tests of a user without transferring the test documents.
+     *
+     * @param userId the user ID for which to count tests.
+     * @return a future of the number of tests of the user.
+     */
+    public CompletableFuture<Long> countTestsByUserAsync(String userId) {
+        return testRepository.countByUser(userId);
+    }
+
+    /**
+     * Sums the commission and omission errors of all tests of a user with server-side aggregation queries
+     * over the stored summary field. If some tests have no stored summary, for example tests the mobile app wrote
+     * since the last backfill, the sums are computed from the summaries of every test instead, which reads the
+     * tests without a summary in full; nothing is stored, so the next backfill makes the aggregation cover them.
+     *
+     * @param userId the user ID for which to sum errors.
+     * @return a future of a map with testCount, summarizedTestCount (the tests with a stored summary),
+     *         commissionErrors and omissionErrors.
+     */
+    public CompletableFuture<Map<String, Object>> sumErrorTotalsForUserAsync(String userId) {
+        CompletableFuture<TestRepository.ErrorTotals> storedTotals = testRepository.sumStoredErrorTotals(userId);
+        CompletableFuture<Long> testCount = testRepository.countByUser(userId);
+        // Both aggregations run in parallel, one RPC each
+
+        return storedTotals.thenCombine(testCount, (totals, count) -> {
+            Map<String, Object> result = new HashMap<>();
+            result.put("testCount", count);
+            result.put("summarizedTestCount", totals.getSummarizedTestCount());
+            result.put("commissionErrors", totals.getCommissionErrors());
+            result.put("omissionErrors", totals.getOmissionErrors());
+            return result;
+        }).thenCompose(result -> {
+            if ((long) result.get("summarizedTestCount") >= (long) result.get("testCount")) {
+                return CompletableFuture.completedFuture(result);
+            }
+            return testRepository.findSummariesByUser(userId).thenApply(testSummaries -> {
+                long commissionErrors = 0;
+                long omissionErrors = 0;
+                for (TestErrorSummary testSummary : testSummaries) {
+                    commissionErrors += testSummary.getCommissionErrors();
+                    omissionErrors += testSummary.getOmissionErrors();
+                }
+                result.put("commissionErrors", commissionErrors); // Includes the tests without a stored summary
+                result.put("omissionErrors", omissionErrors);
+                return result;
+            });
+        });
+    }
+
+    /**
+     * Aggregates errors for one page of the tests of a user.
+     *
+     * @param userId    the user ID for which to aggregate test errors.
+     * @param pageSize  the maximum number of tests in the page.
+     * @param pageToken the token returned with the previous page, or null for the first page.
+     * @return a {@link TestPage} of maps representing aggregated error data.
+     * @throws ExecutionException   if the Firestore operation fails.
+     * @throws InterruptedException if the Firestore operation is interrupted.
+     * @throws IllegalArgumentException if the page token is malformed.
+     */
+    public TestPage<Map<String, Object>> sumErrorsForUserTestsPage(String userId, int pageSize, String pageToken) throws ExecutionException, InterruptedException {
+        List<TestErrorSummary> testSummaries = FirestoreFutures.await(
+                testRepository.findSummaryPageByUser(userId, TestPage.decodeToken(pageToken), pageSize + 1)); // Transfers only the summary field
+
+        List<Map<String, Object>> testResults = new ArrayList<>();
+        for (int i = 0; i < Math.min(pageSize, testSummaries.size()); i++) {
+            testResults.add(sumErrorsForTest(testSummaries.get(i)));
         }
 
+        String nextPageToken = testSummaries.size() > pageSize ? TestPage.encodeToken(testSummaries.get(pageSize - 1).getTestId()) : null;
+        return new TestPage<>(testResults, nextPageToken);
+    }
+
+    /**
+     * Formats the summed errors, start and end dates and game mode of a single test.
+     *
+     * @param testSummary the summary of the test.
+     * @return a map with the test ID, summed errors, formatted start and end dates and game mode.
+     */
+    private Map<String, Object> sumErrorsForTest(TestErrorSummary testSummary) {
         ZoneId zoneId = ZoneId.of("UTC+2");
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("d MMMM, yyyy"); // Sets the time zone to UTC+2 and defines a date
         // formatter to format dates in a "day month, year" format
 
-        for (DocumentSnapshot testDoc : testDocuments) {
-            Map<String, Object> testResult = new HashMap<>();
-
-            int totalCommissionErrors = 0;
-            int totalOmissionErrors = 0;
-            Timestamp startDate = null;
-            Timestamp endDate = null;
-            String firstGameMode = null;
-
-            List<Map<String, Object>> gamesInTest = (List<Map<String, Object>>) testDoc.get("gamesInTest");
-            // Retrieves the list of games (gamesInTest) within the current test document
-
-            if (gamesInTest != null && !gamesInTest.isEmpty()) {
-                startDate = (Timestamp) gamesInTest.get(0).get("timestamp");
-                endDate = (Timestamp) gamesInTest.get(0).get("timestamp");
-                firstGameMode = (String) gamesInTest.get(0).get("mode"); // Parameters from the first game in list
-
-                for (Map<String, Object> game : gamesInTest) {
-                    totalCommissionErrors += ((Long) game.get("commissionErrors")).intValue();
-                    totalOmissionErrors += ((Long) game.get("omissionErrors")).intValue(); // Summed errors for the test
-
-                    Timestamp gameTimestamp = (Timestamp) game.get("timestamp"); // Finds the earliest and latest dates
-                    if (gameTimestamp != null) {
-                        if (gameTimestamp.compareTo(startDate) < 0) {
-                            startDate = gameTimestamp;
-                        }
-                        if (gameTimestamp.compareTo(endDate) > 0) {
-                            endDate = gameTimestamp;
-                        }
-                    }
-                }
+        Map<String, Object> testResult = new HashMap<>();
+        Timestamp startDate = testSummary.getStartTimestamp();
+        Timestamp endDate = testSummary.getEndTimestamp();
+
+        String formattedStartDate = startDate != null ?
+                ZonedDateTime.ofInstant(Instant.ofEpochSecond(startDate.getSeconds(), startDate.getNanos()), zoneId).format(formatter) : null;
+        String formattedEndDate = endDate != null ?
+                ZonedDateTime.ofInstant(Instant.ofEpochSecond(endDate.getSeconds(), endDate.getNanos()), zoneId).format(formatter) : null;
+        // Converts the Firestore Timestamp to a readable date format in UTC+2
+
+        testResult.put("testId", testSummary.getTestId());
+        testResult.put("commissions", testSummary.getCommissionErrors());
+        testResult.put("omissions", testSummary.getOmissionErrors());
+        testResult.put("startDate", formattedStartDate);
+        testResult.put("endDate", formattedEndDate);
+        testResult.put("gameMode", testSummary.getFirstMode()); // Stores the aggregated data for this test into the map
+        return testResult;
+    }
+
+    /**
+     * Computes all per-test metrics (errors, stimuli counts and grouped reaction times)
+     * from a single read of the test document. Summaries are served from the cache
+     * while the update time of the test document does not change, and without reading it
+     * for {@code custom.summary_cache_fresh_seconds} after it was last checked.
+     *
+     * @param testId the ID of the test to summarize.
+     * @return the {@link TestSummary} of the test.
+     * @throws ExecutionException   if the Firestore operation fails.
+     * @throws InterruptedException if the Firestore operation is interrupted.
+     * @throws ResponseStatusException if the test is not found.
+     */
+    public TestSummary summarizeTest(String testId) throws ExecutionException, InterruptedException {
+        return FirestoreFutures.await(summarizeTestAsync(testId));
+    }
+
+    /**
+     * Computes all per-test metrics of a test without blocking the calling thread.
+     *
+     * @param testId the ID of the test to summarize.
+     * @return a future of the {@link TestSummary} of the test, failed with a
+     *         {@link ResponseStatusException} if the test is not found.
+     */
+    public CompletableFuture<TestSummary> summarizeTestAsync(String testId) {
+        TestSummary freshSummary = summaryCache.getFresh(testId);
+        if (freshSummary != null) {
+            return CompletableFuture.completedFuture(freshSummary); // Validated recently, the update time is not read again
+        }
+
+        return testRepository.findUpdateTime(testId).thenCompose(updateTime -> {
+            if (updateTime == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Test not found for the provided ID: " + testId);
             }
+            return summarizeTestVersionAsync(testId, updateTime);
+        });
+    }
 
-            String formattedStartDate = startDate != null ?
-                    ZonedDateTime.ofInstant(Instant.ofEpochSecond(startDate.getSeconds(), startDate.getNanos()), zoneId).format(formatter) : null;
-            String formattedEndDate = endDate != null ?
-                    ZonedDateTime.ofInstant(Instant.ofEpochSecond(endDate.getSeconds(), endDate.getNanos()), zoneId).format(formatter) : null;
-            // Converts the Firestore Timestamp to a readable date format in UTC+2
-
-            testResult.put("testId", testDoc.getId());
-            testResult.put("commissions", totalCommissionErrors);
-            testResult.put("omissions", totalOmissionErrors);
-            testResult.put("startDate", formattedStartDate);
-            testResult.put("endDate", formattedEndDate);
-            testResult.put("gameMode", firstGameMode); // Stores the aggregated data for this test into the map
-            testResults.add(testResult);
+    /**
+     * Returns the summary of a test whose current update time is already known, from the cache or from a full read.
+     *
+     * @param testId     the ID of the test to summarize.
+     * @param updateTime the current update time of the test document.
+     * @return a future of the {@link TestSummary} of the test, failed with a
+     *         {@link ResponseStatusException} if the test is not found.
+     */
+    private CompletableFuture<TestSummary> summarizeTestVersionAsync(String testId, Timestamp updateTime) {
+        TestSummary cachedSummary = summaryCache.get(testId, updateTime);
+        if (cachedSummary != null) {
+            return CompletableFuture.completedFuture(cachedSummary); // The test did not change since its summary was computed
         }
 
-        return testResults; // Returns a list of user tests with summed errors
+        return testRepository.findRecord(testId).thenApply(storedTest -> {
+            // The only full read needed for every metric of the test
+            if (storedTest == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Test not found for the provided ID: " + testId);
+            }
+
+            TestSummary summary = computeSummary(storedTest.getRecord());
+            summaryCache.put(testId, storedTest.getUpdateTime(), summary);
+            return summary;
+        });
     }
 
     /**
-     * Sums up the total number of commission errors for a specific test.
+     * Returns the number of documents and bytes read by aggregate queries through projected and full reads.
      *
-     * @param testId the ID of the test to process.
-     * @return a map containing the total commission errors for the test.
-     * @throws ExecutionException   if the Firestore operation fails.
-     * @throws InterruptedException if the Firestore operation is interrupted.
+     * @return a map with the read statistics.
      */
-    public Map<String, Object> sumCommisions(String testId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        DocumentReference testDocRef = dbFirestore.collection("tests").document(testId);
-        ApiFuture<DocumentSnapshot> future = testDocRef.get();
-        DocumentSnapshot testDoc = future.get();
-        int totalCommissionErrors = 0;
+    public Map<String, Object> getProjectionStatistics() {
+        return summaryProjection.getStatistics();
+    }
 
-        if (testDoc.exists()) {
-            List<Map<String, Object>> gamesInTest = (List<Map<String, Object>>) testDoc.get("gamesInTest");
-            if (gamesInTest != null && !gamesInTest.isEmpty()) {
-                // Iterates through each game in the list, retrieves the value for the "commissionErrors",
-                // and adds it to the total amount of commission errors
+    /**
+     * Returns how many aggregate requests were served from a current roll-up and how many from the test summaries.
+     *
+     * @return a map with the roll-up read statistics.
+     */
+    public Map<String, Object> getRollupStatistics() {
+        return rollupStore.getStatistics();
+    }
 
-                for (Map<String, Object> game : gamesInTest) {
-                    totalCommissionErrors += ((Long) game.get("commissionErrors")).intValue();
+    /**
+     * Returns the statistics of the test summary cache.
+     *
+     * @return a map with hit, miss, eviction and invalidation counts.
+     */
+    public Map<String, Object> getSummaryCacheStatistics() {
+        return summaryCache.getStatistics();
+    }
 
-                }
+    /**
+     * Computes the summary of a decoded test in one pass over its games.
+     *
+     * @param testRecord the decoded test.
+     * @return the {@link TestSummary} of the test.
+     */
+    TestSummary computeSummary(TestRecord testRecord) {
+        Map<String, List<Long>> groupedData = new HashMap<>();
+        groupedData.put("1250", new ArrayList<>());
+        groupedData.put("2250", new ArrayList<>());
+        groupedData.put("4250", new ArrayList<>());
+        // Creates a map where keys represent interval + 250 ms categories (1250, 2250, 4250) and values
+        // are lists to store corresponding reaction times
+
+        Map<String, ReactionTimeHistogram> histograms = new HashMap<>();
+        for (String interval : groupedData.keySet()) {
+            histograms.put(interval, new ReactionTimeHistogram()); // Filled in the same pass as groupedData
+        }
+
+        int totalCommissionErrors = 0;
+        int totalOmissionErrors = 0;
+        int targetCount = 0; // Number of shown images equal to the stimuli of their game
+        int nonTargetCount = 0; // Number of shown images different from the stimuli of their game
+        String firstGameMode = null;
+
+        if (testRecord.hasGames()) {
+            firstGameMode = testRecord.firstGame().getMode(); // Mode of the first game determines how stimuli are counted
+
+            for (GameRecord game : testRecord.getGames()) {
+                totalCommissionErrors += game.getCommissionErrors();
+                totalOmissionErrors += game.getOmissionErrors();
+
+                targetCount += game.countStimulusImages();
+                nonTargetCount += game.countOtherImages();
+
+                game.forEachTappedReaction((interval, reactionTime) -> {
+                    String intervalKey = String.valueOf(interval);
+                    List<Long> intervalReactionTimes = groupedData.get(intervalKey);
+                    if (intervalReactionTimes != null) {
+                        intervalReactionTimes.add((long) reactionTime); // Adds the reaction time to the interval category in groupedData
+                        histograms.get(intervalKey).add(reactionTime);
+                    }
+                });
             }
-        } else {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Test not found for the provided ID: " + testId);
         }
 
+        TestSummary summary = new TestSummary();
+        summary.setTestId(testRecord.getTestId());
+        summary.setGameMode(firstGameMode);
+        summary.setTotalCommissionErrors(totalCommissionErrors);
+        summary.setTotalOmissionErrors(totalOmissionErrors);
+        if ("mode1".equals(firstGameMode)) { // In mode1 the stimuli is the target
+            summary.setStimuliCount(targetCount);
+            summary.setNonStimuliCount(nonTargetCount);
+        } else if ("mode2".equals(firstGameMode)) { // In mode2 every image except the stimuli is the target
+            summary.setStimuliCount(nonTargetCount);
+            summary.setNonStimuliCount(targetCount);
+        }
+        summary.setProcessedGames(groupedData);
+        summary.setReactionTimeHistograms(histograms);
+        return summary;
+    }
+
+    /**
+     * Sums up the total number of commission errors for a specific test.
+     *
+     * @param testId the ID of the test to process.
+     * @return a map containing the total commission errors for the test.
+     * @throws ExecutionException   if the Firestore operation fails.
+     * @throws InterruptedException if the Firestore operation is interrupted.
+     */
+    public Map<String, Object> sumCommisions(String testId) throws ExecutionException, InterruptedException {
         Map<String, Object> response = new HashMap<>();
-        response.put("totalCommissionErrors", totalCommissionErrors);
+        response.put("totalCommissionErrors", readSummaryValue(testId, TestErrorSummary::getCommissionErrors, TestSummary::getTotalCommissionErrors));
         return response;
     }
 
@@ -189,25 +424,8 @@ public class TestService {
      * @throws InterruptedException if the Firestore operation is interrupted.
      */
     public Map<String, Object> sumOmisions(String testId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        DocumentReference testDocRef = dbFirestore.collection("tests").document(testId);
-        ApiFuture<DocumentSnapshot> future = testDocRef.get();
-        DocumentSnapshot testDoc = future.get();
-        int totalOmissionErrors = 0;
-        if (testDoc.exists()) {
-            List<Map<String, Object>> gamesInTest = (List<Map<String, Object>>) testDoc.get("gamesInTest");
-            if (gamesInTest != null && !gamesInTest.isEmpty()) {
-
-                for (Map<String, Object> game : gamesInTest) {
-                    totalOmissionErrors += ((Long) game.get("omissionErrors")).intValue();
-                }
-            }
-        } else {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Test not found for the provided ID: " + testId);
-        }
-
         Map<String, Object> response = new HashMap<>();
-        response.put("totalOmissionErrors", totalOmissionErrors);
+        response.put("totalOmissionErrors", readSummaryValue(testId, TestErrorSummary::getOmissionErrors, TestSummary::getTotalOmissionErrors));
         return response;
     }
 
@@ -220,80 +438,52 @@ public class TestService {
      * @throws InterruptedException if the Firestore operation is interrupted.
      */
     public Map<String, List<Long>> processTappedImagesForTest(String testId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        DocumentReference testDocRef = dbFirestore.collection("tests").document(testId);
-        ApiFuture<DocumentSnapshot> future = testDocRef.get();
-        DocumentSnapshot testDoc = future.get();
-
-        Map<String, List<Long>> groupedData = new HashMap<>();
-        groupedData.put("1250", new ArrayList<>());
-        groupedData.put("2250", new ArrayList<>());
-        groupedData.put("4250", new ArrayList<>());
-        // Creates a map where keys represent interval + 250 ms categories (1250, 2250, 4250) and values
-        // are lists to store corresponding reaction times
-
-        if (testDoc.exists()) {
-            List<Map<String, Object>> gamesInTest = (List<Map<String, Object>>) testDoc.get("gamesInTest");
-
-            if (gamesInTest != null && !gamesInTest.isEmpty()) {
-                for (Map<String, Object> game : gamesInTest) {
-                    List<Boolean> results = (List<Boolean>) game.get("result");
-                    List<Long> reactionTimes = (List<Long>) game.get("reactionTimes");
-                    List<Long> intervals = (List<Long>) game.get("intervals");
-
-                    processGame(results, reactionTimes, intervals, groupedData);
-                }
-            }
-        } else {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Test not found for the provided ID: " + testId);
-        }
-
-        return groupedData; // Grouped reaction times
+        return summarizeTest(testId).getProcessedGames(); // Grouped reaction times
     }
 
     /**
-     * Helper method to process a game's tapped images and group reaction times by intervals.
+     * Summarizes the reaction times of a specific test per interval as histograms with mean, SD and percentiles.
      *
-     * @param result        the list of results indicating whether each image was tapped.
-     * @param reactionTimes the list of reaction times for tapped images.
-     * @param intervals     the intervals used for grouping.
-     * @param groupedData   the map to store grouped reaction times.
+     * @param testId the ID of the test to summarize.
+     * @return a map where keys are intervals ("1250", "2250", "4250") and values are reaction time histograms.
+     * @throws ExecutionException   if the Firestore operation fails.
+     * @throws InterruptedException if the Firestore operation is interrupted.
      */
-    private void processGame(List<Boolean> result, List<Long> reactionTimes, List<Long> intervals, Map<String, List<Long>> groupedData) {
-        List<Integer> tappedIndices = new ArrayList<>();
-
-        for (int i = 0; i < result.size(); i++) {
-            if (result.get(i)) {
-                tappedIndices.add(i);
-            }
-        } // Adds the indices of all elements where result.get(i) is true to the tappedIndices list
-
-        for (int tappedImageCount = 0; tappedImageCount < tappedIndices.size(); tappedImageCount++) {
-            int index = tappedIndices.get(tappedImageCount);
+    public Map<String, ReactionTimeHistogram> summarizeReactionTimesForTest(String testId) throws ExecutionException, InterruptedException {
+        return summarizeReactionTimesForTests(List.of(testId));
+    }
 
-            if (tappedImageCount >= reactionTimes.size()) {
-                break;
-            }
+    /**
+     * Summarizes the reaction times of several tests per interval by merging their histograms.
+     * The summaries of the tests are read at the same time.
+     *
+     * @param testIds the IDs of the tests to summarize, at most {@link #MAX_MERGED_TESTS}.
+     * @return a map where keys are intervals ("1250", "2250", "4250") and values are merged reaction time histograms.
+     * @throws ExecutionException   if the Firestore operation fails.
+     * @throws InterruptedException if the Firestore operation is interrupted.
+     * @throws ResponseStatusException with status BAD_REQUEST if there are too many tests,
+     *                                 or NOT_FOUND if one of the tests is not found.
+     */
+    public Map<String, ReactionTimeHistogram> summarizeReactionTimesForTests(List<String> testIds) throws ExecutionException, InterruptedException {
+        if (testIds.size() > MAX_MERGED_TESTS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + MAX_MERGED_TESTS + " tests can be summarized at once, got " + testIds.size());
+        }
 
-            Long reactionTime = reactionTimes.get(tappedImageCount);
-            // Retrieves the reaction time corresponding to the current tapped image
+        List<CompletableFuture<TestSummary>> summaries = new ArrayList<>(testIds.size());
+        for (String testId : testIds) {
+            summaries.add(summarizeTestAsync(testId));
+        }
+        FirestoreFutures.await(CompletableFuture.allOf(summaries.toArray(new CompletableFuture[0])));
 
-            if (intervals.size() < 3) {
-                break; // All three intervals included
+        Map<String, ReactionTimeHistogram> merged = new TreeMap<>();
+        for (CompletableFuture<TestSummary> summary : summaries) {
+            for (Map.Entry<String, ReactionTimeHistogram> entry : summary.join().getReactionTimeHistograms().entrySet()) {
+                merged.computeIfAbsent(entry.getKey(), interval -> new ReactionTimeHistogram()).merge(entry.getValue());
+                // Merges into new histograms, so the cached summaries stay unchanged
             }
-
-            Long assignedInterval;
-            if (index < 20) {
-                assignedInterval = intervals.get(0);
-            } else if (index < 40) {
-                assignedInterval = intervals.get(1);
-            } else {
-                assignedInterval = intervals.get(2);
-            } // Assigns interval to the tapped image
-
-            groupedData.get(String.valueOf(assignedInterval)).add(reactionTime);
-            // Adds the reaction time to the interval category in groupedData
         }
+        return merged;
     }
 
     /**
@@ -305,50 +495,7 @@ public class TestService {
      * @throws InterruptedException if the Firestore operation is interrupted.
      */
     public int countTotalStimuliOccurrences(String testId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        DocumentReference testDocRef = dbFirestore.collection("tests").document(testId);
-        ApiFuture<DocumentSnapshot> future = testDocRef.get();
-        DocumentSnapshot testDoc = future.get();
-
-        if (!testDoc.exists()) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Test not found for the provided ID: " + testId);
-        }
-
-        List<Map<String, Object>> gamesInTest = (List<Map<String, Object>>) testDoc.get("gamesInTest");
-
-        if (gamesInTest == null || gamesInTest.isEmpty()) {
-            return 0; // Returns 0 if the list of game is null
-        }
-
-        String firstGameMode = (String) gamesInTest.get(0).get("mode"); // Retrieves the mode of the first game to determine how to count stimuli
-        int totalCount = 0;
-
-        if ("mode1".equals(firstGameMode)) {
-            for (Map<String, Object> game : gamesInTest) {
-                String stimuli = (String) game.get("stimuli");
-                List<String> shownImages = (List<String>) game.get("shownImages");
-
-                if (shownImages != null && stimuli != null) {
-                    int count = Collections.frequency(shownImages, stimuli); // Counts how many times the stimuli appears in the shownImages
-                    totalCount += count;
-                }
-            }
-        } else if ("mode2".equals(firstGameMode)) {
-            for (Map<String, Object> game : gamesInTest) {
-                List<String> shownImages = (List<String>) game.get("shownImages");
-                String stimuli = (String) game.get("stimuli");
-
-                if (shownImages != null) {
-                    for (String image : shownImages) {
-                        if (!image.equals(stimuli)) { // Counts all shownImages that are not the stimuli
-                            totalCount++;
-                        }
-                    }
-                }
-            }
-        }
-
-        return totalCount;
+        return readSummaryValue(testId, TestErrorSummary::getStimuliCount, TestSummary::getStimuliCount);
     }
 
     /**
@@ -361,119 +508,90 @@ public class TestService {
      * @throws ResponseStatusException If the test is not found or contains no games.
      */
     public int countNonStimuliOccurrences(String testId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        DocumentReference testDocRef = dbFirestore.collection("tests").document(testId);
-        ApiFuture<DocumentSnapshot> future = testDocRef.get();
-        DocumentSnapshot testDoc = future.get();
-
-        if (!testDoc.exists()) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Test not found for the provided ID: " + testId);
-        }
-
-        List<Map<String, Object>> gamesInTest = (List<Map<String, Object>>) testDoc.get("gamesInTest");
+        return readSummaryValue(testId, TestErrorSummary::getNonStimuliCount, TestSummary::getNonStimuliCount);
+    }
 
-        if (gamesInTest == null || gamesInTest.isEmpty()) {
-            return 0;
+    /**
+     * Reads a metric of a test from the summary precomputed at ingest (or by the backfill), without its games.
+     * The summary field and the update time of the test come from one read, so a test without a summary of the current
+     * version is served from the summary cache, and only read in full if its summary is not cached.
+     *
+     * @param testId       the ID of the test.
+     * @param fromStored   extracts the metric from a stored summary.
+     * @param fromComputed extracts the metric from a summary computed from the games.
+     * @return the metric.
+     * @throws ExecutionException   if the Firestore operation fails.
+     * @throws InterruptedException if the Firestore operation is interrupted.
+     * @throws ResponseStatusException if the test is not found.
+     */
+    private int readSummaryValue(String testId, ToIntFunction<TestErrorSummary> fromStored, ToIntFunction<TestSummary> fromComputed)
+            throws ExecutionException, InterruptedException {
+        TestSummary freshSummary = summaryCache.getFresh(testId);
+        if (freshSummary != null) {
+            return fromComputed.applyAsInt(freshSummary); // Validated recently, nothing is read
         }
 
-        String firstGameMode = (String) gamesInTest.get(0).get("mode");
-        int totalCount = 0;
-
-        if ("mode1".equals(firstGameMode)) {
-            for (Map<String, Object> game : gamesInTest) {
-                List<String> shownImages = (List<String>) game.get("shownImages");
-                String stimuli = (String) game.get("stimuli");
+        TestRepository.StoredSummary stored = FirestoreFutures.await(testRepository.findStoredSummary(testId)); // Summary field and update time
 
-                if (shownImages != null) {
-                    for (String image : shownImages) {
-                        if (!image.equals(stimuli)) {
-                            totalCount++;
-                        }
-                    }
-                }
-            }
-        } else if ("mode2".equals(firstGameMode)) {
-            for (Map<String, Object> game : gamesInTest) {
-                String stimuli = (String) game.get("stimuli");
-                List<String> shownImages = (List<String>) game.get("shownImages");
-
-                if (shownImages != null && stimuli != null) {
-                    int count = Collections.frequency(shownImages, stimuli);
-                    totalCount += count;
-                }
-            }
+        TestErrorSummary summary = stored.getSummary();
+        if (summary != null && summary.isCurrent()) {
+            return fromStored.applyAsInt(summary);
         }
-
-        return totalCount;
+        // Written before summaries existed or with an older version, computed from the games instead
+        return fromComputed.applyAsInt(FirestoreFutures.await(summarizeTestVersionAsync(testId, stored.getUpdateTime())));
     }
 
     /**
      * Aggregates errors (omission and commission) by month and mode for a user's tests.
+     * Monthly results are derived from the user's day roll-ups.
      *
      * @param userId The ID of the user whose tests are to be aggregated.
      * @return A list of maps containing aggregated data for each month and mode, including
      *         the number of commission errors, omission errors, target stimuli, and non-target stimuli.
+     *         The results are sorted by month, then by mode.
      * @throws ExecutionException If an error occurs during Firestore query execution.
      * @throws InterruptedException If the thread is interrupted while waiting for the Firestore query to complete.
      * @throws ResponseStatusException If no tests are found for the specified user ID.
      */
     public List<Map<String, Object>> aggregateErrorsByMonthAndMode(String userId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        ApiFuture<QuerySnapshot> future = dbFirestore.collection("tests")
-                .whereEqualTo("userId", userId)
-                .get();
-
-        List<QueryDocumentSnapshot> testDocuments = future.get().getDocuments();
-        Map<String, Map<String, Map<String, Object>>> monthlyAggregatedResults = new HashMap<>(); // Map for results
+        return aggregateErrorsByMonthAndMode(userId, null, null);
+    }
 
-        if (testDocuments.isEmpty()) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No tests found for the provided user ID: " + userId);
-        }
+    /**
+     * Aggregates errors (omission and commission) by month and mode for a user's tests within a date range.
+     * The results are read from the user's day roll-up, also with a range, so tests without a stored summary
+     * are included.
+     *
+     * @param userId The ID of the user whose tests are to be aggregated.
+     * @param from   The first day of the range (inclusive), or null for no lower bound.
+     * @param to     The last day of the range (inclusive), or null for no upper bound.
+     * @return A list of maps containing aggregated data for each month and mode in the range.
+     * @throws ExecutionException If an error occurs during Firestore query execution.
+     * @throws InterruptedException If the thread is interrupted while waiting for the Firestore query to complete.
+     * @throws ResponseStatusException If no tests are found for the specified user ID or the range is invalid.
+     */
+    public List<Map<String, Object>> aggregateErrorsByMonthAndMode(String userId, LocalDate from, LocalDate to) throws ExecutionException, InterruptedException {
+        List<TestRollupStore.RollupBucket> dailyBuckets = dailyBucketsInRange(userId, from, to);
 
-        int numberOfTests = testDocuments.size();
-        ZoneId zoneId = ZoneId.of("UTC+2");
         DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("MM.yyyy");
+        Map<String, Map<String, Map<String, Object>>> monthlyAggregatedResults = new LinkedHashMap<>(); // Day buckets are chronological,
+        // so months are inserted in chronological order
 
-        for (DocumentSnapshot testDoc : testDocuments) {
-            List<Map<String, Object>> gamesInTest = (List<Map<String, Object>>) testDoc.get("gamesInTest");
-
-            if (gamesInTest != null && !gamesInTest.isEmpty()) {
-                Map<String, Object> lastGame = gamesInTest.get(gamesInTest.size() - 1);
-                String testMode = (String) lastGame.get("mode"); // Retrieves mode of the test from last game in gamesInTest
+        for (TestRollupStore.RollupBucket bucket : dailyBuckets) {
+            String month = bucket.getDay().format(monthFormatter); // Retrieves month to aggregate the results
 
-                int commissionErrors = 0;
-                int omissionErrors = 0;
+            Map<String, Map<String, Object>> modeResults = monthlyAggregatedResults.computeIfAbsent(month,
+                    key -> new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder()))); // Creates new map for each month, sorted by mode
+            Map<String, Object> monthlyResult = modeResults.computeIfAbsent(bucket.getMode(), key -> new HashMap<>()); // Creates new map for mode
 
-                for (Map<String, Object> game : gamesInTest) {
-                    commissionErrors += ((Long) game.get("commissionErrors")).intValue(); //Summed errors from all the games in test
-                    omissionErrors += ((Long) game.get("omissionErrors")).intValue();
-                }
-
-                Timestamp gameTimestamp = (Timestamp) lastGame.get("timestamp");
-                if (gameTimestamp != null) {
-                    ZonedDateTime zonedDateTime = ZonedDateTime.ofInstant(Instant.ofEpochSecond(gameTimestamp.getSeconds(), gameTimestamp.getNanos()), zoneId); // readable date from timestamp
-                    String month = zonedDateTime.format(monthFormatter); // Retrieves month to aggregate the results
-
-                    Map<String, Map<String, Object>> modeResults = monthlyAggregatedResults.getOrDefault(month, new HashMap<>()); // Creates new map for each month
-                    Map<String, Object> monthlyResult = modeResults.getOrDefault(testMode, new HashMap<>()); // Creates new map for mode
-
-                    monthlyResult.put("month", month);
-                    monthlyResult.put("mode", testMode);
-                    monthlyResult.put("commissions", (int) monthlyResult.getOrDefault("commissions", 0) + commissionErrors); // Adds all commissions in month
-                    monthlyResult.put("omissions", (int) monthlyResult.getOrDefault("omissions", 0) + omissionErrors); // Adds all omissions in month
-
-                    if ("mode1".equals(testMode)) {
-                        monthlyResult.put("targetStimuli", 36 * numberOfTests);
-                        monthlyResult.put("nonTargetStimuli", 324 * numberOfTests);
-                    } else if ("mode2".equals(testMode)) {
-                        monthlyResult.put("targetStimuli", 324 * numberOfTests);
-                        monthlyResult.put("nonTargetStimuli", 36 * numberOfTests);
-                    }
+            monthlyResult.put("month", month);
+            monthlyResult.put("mode", bucket.getMode());
+            monthlyResult.put("commissions", (int) monthlyResult.getOrDefault("commissions", 0) + bucket.getCommissions()); // Adds all commissions in month
+            monthlyResult.put("omissions", (int) monthlyResult.getOrDefault("omissions", 0) + bucket.getOmissions()); // Adds all omissions in month
 
-                    modeResults.put(testMode, monthlyResult);
-                    monthlyAggregatedResults.put(month, modeResults);
-                }
-            }
+            int testCount = (int) monthlyResult.getOrDefault("testCount", 0) + bucket.getTestCount(); // Number of tests in month
+            monthlyResult.put("testCount", testCount);
+            putStimuliTotals(monthlyResult, bucket.getMode(), testCount);
         }
 
         List<Map<String, Object>> aggregatedResults = new ArrayList<>();
@@ -487,82 +605,143 @@ public class TestService {
 
     /**
      * Aggregates errors (omission and commission) by full date and mode for a user's tests.
+     * Results are read from the user's day roll-ups.
      *
      * @param userId The ID of the user whose tests are to be aggregated.
      * @return A list of maps containing aggregated data for each date and mode, including
      *         the number of commission errors, omission errors, target stimuli, and non-target stimuli.
-     *         The results are sorted by date.
+     *         The results are sorted by date, then by mode.
      * @throws ExecutionException If an error occurs during Firestore query execution.
      * @throws InterruptedException If the thread is interrupted while waiting for the Firestore query to complete.
      * @throws ResponseStatusException If no tests are found for the specified user ID.
      */
     public List<Map<String, Object>> aggregateErrorsByFullDateAndMode(String userId) throws ExecutionException, InterruptedException {
-        Firestore dbFirestore = FirestoreClient.getFirestore();
-        ApiFuture<QuerySnapshot> future = dbFirestore.collection("tests")
-                .whereEqualTo("userId", userId)
-                .get();
-
-        List<QueryDocumentSnapshot> testDocuments = future.get().getDocuments();
-        Map<String, Map<String, Object>> dailyAggregatedResults = new HashMap<>(); // date as key
+        return aggregateErrorsByFullDateAndMode(userId, null, null);
+    }
 
-        if (testDocuments.isEmpty()) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No tests found for the provided user ID: " + userId);
-        }
+    /**
+     * Aggregates errors (omission and commission) by date and mode for a user's tests within a date range.
+     * The results are read from the user's day roll-up, also with a range, so tests without a stored summary
+     * are included.
+     *
+     * @param userId The ID of the user whose tests are to be aggregated.
+     * @param from   The first day of the range (inclusive), or null for no lower bound.
+     * @param to     The last day of the range (inclusive), or null for no upper bound.
+     * @return A list of maps containing aggregated data for each date and mode in the range.
+     * @throws ExecutionException If an error occurs during Firestore query execution.
+     * @throws InterruptedException If the thread is interrupted while waiting for the Firestore query to complete.
+     * @throws ResponseStatusException If no tests are found for the specified user ID or the range is invalid.
+     */
+    public List<Map<String, Object>> aggregateErrorsByFullDateAndMode(String userId, LocalDate from, LocalDate to) throws ExecutionException, InterruptedException {
+        List<TestRollupStore.RollupBucket> dailyBuckets = dailyBucketsInRange(userId, from, to);
 
-        ZoneId zoneId = ZoneId.of("UTC+2");
         DateTimeFormatter fullDateFormatter = DateTimeFormatter.ofPattern("d MMMM yyyy");
+        List<Map<String, Object>> aggregatedResults = new ArrayList<>();
 
-        for (DocumentSnapshot testDoc : testDocuments) {
-            List<Map<String, Object>> gamesInTest = (List<Map<String, Object>>) testDoc.get("gamesInTest");
-
-            if (gamesInTest != null && !gamesInTest.isEmpty()) {
-                Map<String, Object> lastGame = gamesInTest.get(gamesInTest.size() - 1);
-                String testMode = (String) lastGame.get("mode");
-
-                int commissionErrors = 0;
-                int omissionErrors = 0;
-
-                for (Map<String, Object> game : gamesInTest) {
-                    commissionErrors += ((Long) game.get("commissionErrors")).intValue();
-                    omissionErrors += ((Long) game.get("omissionErrors")).intValue();
-                } // Sums up commissionErrors and omissionErrors for all games in the test
-
-                Timestamp gameTimestamp = (Timestamp) lastGame.get("timestamp");
-                if (gameTimestamp != null) {
-                    ZonedDateTime zonedDateTime = ZonedDateTime.ofInstant(
-                            Instant.ofEpochSecond(gameTimestamp.getSeconds(), gameTimestamp.getNanos()), zoneId);
-                    String fullDate = zonedDateTime.format(fullDateFormatter); // readable date from timestamp
-
-                    Map<String, Object> dailyResult = dailyAggregatedResults.getOrDefault(fullDate, new HashMap<>());
-
-                    dailyResult.put("date", fullDate);
-                    dailyResult.put("mode", testMode);
-                    dailyResult.put("commissions", (int) dailyResult.getOrDefault("commissions", 0) + commissionErrors);
-                    dailyResult.put("omissions", (int) dailyResult.getOrDefault("omissions", 0) + omissionErrors);
+        for (TestRollupStore.RollupBucket bucket : dailyBuckets) { // Buckets are already sorted by date
+            Map<String, Object> dailyResult = new HashMap<>();
+            dailyResult.put("date", bucket.getDay().format(fullDateFormatter));
+            dailyResult.put("mode", bucket.getMode());
+            dailyResult.put("commissions", bucket.getCommissions());
+            dailyResult.put("omissions", bucket.getOmissions());
+            dailyResult.put("testCount", bucket.getTestCount()); // Number of tests with a certain date and mode
+            putStimuliTotals(dailyResult, bucket.getMode(), bucket.getTestCount());
+            aggregatedResults.add(dailyResult);
+        }
 
-                    int testCount = (int) dailyResult.getOrDefault("testCount", 0) + 1; // Number of tests with a certain date
-                    dailyResult.put("testCount", testCount);
+        return aggregatedResults;
+    }
 
-                    if ("mode1".equals(testMode)) {
-                        dailyResult.put("targetStimuli", 36 * testCount);
-                        dailyResult.put("nonTargetStimuli", 324 * testCount);
-                    } else if ("mode2".equals(testMode)) {
-                        dailyResult.put("targetStimuli", 324 * testCount);
-                        dailyResult.put("nonTargetStimuli", 36 * testCount);
-                    }
+    /**
+     * Returns the day buckets of a user's tests within a date range, from the user's roll-up.
+     * Tests are assigned to the day of their last game, in UTC+2.
+     *
+     * @param userId The ID of the user.
+     * @param from   The first day of the range (inclusive), or null for no lower bound.
+     * @param to     The last day of the range (inclusive), or null for no upper bound.
+     * @return The day buckets in chronological order, empty if the user has no tests in a given range.
+     * @throws ExecutionException If an error occurs during Firestore query execution.
+     * @throws InterruptedException If the thread is interrupted while waiting for the Firestore query to complete.
+     * @throws ResponseStatusException If the user has no tests (without a range) or the range is invalid.
+     */
+    private List<TestRollupStore.RollupBucket> dailyBucketsInRange(String userId, LocalDate from, LocalDate to) throws ExecutionException, InterruptedException {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The start of the date range is after its end");
+        }
 
-                    dailyAggregatedResults.put(fullDate, dailyResult);
-                }
+        List<TestRollupStore.RollupBucket> dailyBuckets = rollupStore.getDailyBuckets(userId, from, to);
+        if (dailyBuckets == null) {
+            if (from != null || to != null) {
+                return List.of(); // A range without tests is an empty result
             }
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No tests found for the provided user ID: " + userId);
         }
-
-        List<Map<String, Object>> aggregatedResults = new ArrayList<>(dailyAggregatedResults.values());
-        aggregatedResults.sort(Comparator.comparing(result -> result.get("date").toString())); // Sort by date
-
-        return aggregatedResults;
+        return dailyBuckets;
     }
 
+    /**
+     * Stores the summary field on every test that does not have one yet, then rebuilds the roll-ups of the users
+     * of all scanned tests, so they also count the tests the mobile app wrote directly.
+     *
+     * The roll-up of a user with a malformed test is not rebuilt, and the user is listed as skipped.
+     *
+     * @return a map with the number of scanned, backfilled and malformed tests and of rebuilt roll-ups, and the IDs of
+     * the users whose roll-up was skipped.
+     * @throws ExecutionException   if the Firestore operation fails.
+     * @throws InterruptedException if the Firestore operation is interrupted.
+     */
+    public Map<String, Object> backfillSummaries() throws ExecutionException, InterruptedException {
+        Set<String> userIds = new HashSet<>();
+        long scanned = 0;
+        long backfilled = 0;
+        long malformed = 0;
+        String lastTestId = null;
+        while (true) { // Tests are scanned page by page reading only their summary field and user ID
+            TestRepository.BackfillPage page = FirestoreFutures.await(testRepository.backfillSummaryPage(lastTestId, BACKFILL_PAGE_SIZE));
+            if (page.getScanned() == 0) {
+                break;
+            }
+            scanned += page.getScanned();
+            backfilled += page.getBackfilled();
+            malformed += page.getMalformed();
+            userIds.addAll(page.getUserIds());
+            lastTestId = page.getLastTestId();
+        }
 
+        Map<String, Object> result = new HashMap<>();
+        result.put("scanned", scanned);
+        result.put("backfilled", backfilled);
+        result.put("malformed", malformed);
+        int rollupsRebuilt = 0;
+        List<String> rollupsSkipped = new ArrayList<>();
+        for (String userId : userIds) {
+            try {
+                FirestoreFutures.await(rollupStore.rebuild(userId)); // One user at a time, each reads the summaries of the user's tests
+                rollupsRebuilt++;
+            } catch (MalformedTestException e) {
+                rollupsSkipped.add(userId); // Served from the test summaries until the malformed test is fixed
+            }
+        }
+        result.put("rollupsRebuilt", rollupsRebuilt);
+        result.put("rollupsSkipped", rollupsSkipped);
+        return result;
+    }
 
-
-}
\ No newline at end of file
+    /**
+     * Adds the number of target and non-target stimuli shown in a number of tests of the given mode.
+     * Each test shows 36 target and 324 non-target stimuli in mode1, and the opposite in mode2.
+     *
+     * @param result    the aggregated result to update.
+     * @param mode      the mode of the tests.
+     * @param testCount the number of tests.
+     */
+    private void putStimuliTotals(Map<String, Object> result, String mode, int testCount) {
+        if ("mode1".equals(mode)) {
+            result.put("targetStimuli", 36 * testCount);
+            result.put("nonTargetStimuli", 324 * testCount);
+        } else if ("mode2".equals(mode)) {
+            result.put("targetStimuli", 324 * testCount);
+            result.put("nonTargetStimuli", 36 * testCount);
+        }
+    }
+}
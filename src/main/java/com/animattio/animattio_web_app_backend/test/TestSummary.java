@@ -0,0 +1,116 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents all per-test metrics shown on the test screen.
+ * The metrics are computed from a single read of the test document
+ * in one pass over the games in the test.
+ */
+public class TestSummary {
+
+    /**
+     * The ID of the summarized test document.
+     */
+    private String testId;
+
+    /**
+     * The mode of the first game in the test.
+     */
+    private String gameMode;
+
+    /**
+     * The total number of commission errors in the test.
+     */
+    private int totalCommissionErrors;
+
+    /**
+     * The total number of omission errors in the test.
+     */
+    private int totalOmissionErrors;
+
+    /**
+     * The total number of target stimuli occurrences in the test.
+     */
+    private int stimuliCount;
+
+    /**
+     * The total number of non-target stimuli occurrences in the test.
+     */
+    private int nonStimuliCount;
+
+    /**
+     * Reaction times grouped by interval ("1250", "2250", "4250").
+     */
+    private Map<String, List<Long>> processedGames;
+
+    /**
+     * Reaction time histograms grouped by interval ("1250", "2250", "4250").
+     */
+    private Map<String, ReactionTimeHistogram> reactionTimeHistograms;
+
+    public String getTestId() {
+        return testId;
+    }
+
+    public void setTestId(String testId) {
+        this.testId = testId;
+    }
+
+    public String getGameMode() {
+        return gameMode;
+    }
+
+    public void setGameMode(String gameMode) {
+        this.gameMode = gameMode;
+    }
+
+    public int getTotalCommissionErrors() {
+        return totalCommissionErrors;
+    }
+
+    public void setTotalCommissionErrors(int totalCommissionErrors) {
+        this.totalCommissionErrors = totalCommissionErrors;
+    }
+
+    public int getTotalOmissionErrors() {
+        return totalOmissionErrors;
+    }
+
+    public void setTotalOmissionErrors(int totalOmissionErrors) {
+        this.totalOmissionErrors = totalOmissionErrors;
+    }
+
+    public int getStimuliCount() {
+        return stimuliCount;
+    }
+
+    public void setStimuliCount(int stimuliCount) {
+        this.stimuliCount = stimuliCount;
+    }
+
+    public int getNonStimuliCount() {
+        return nonStimuliCount;
+    }
+
+    public void setNonStimuliCount(int nonStimuliCount) {
+        this.nonStimuliCount = nonStimuliCount;
+    }
+
+    public Map<String, List<Long>> getProcessedGames() {
+        return processedGames;
+    }
+
+    public void setProcessedGames(Map<String, List<Long>> processedGames) {
+        this.processedGames = processedGames;
+    }
+
+    public Map<String, ReactionTimeHistogram> getReactionTimeHistograms() {
+        return reactionTimeHistograms;
+    }
+
+    public void setReactionTimeHistograms(Map<String, ReactionTimeHistogram> reactionTimeHistograms) {
+        this.reactionTimeHistograms = reactionTimeHistograms;
+    }
+}
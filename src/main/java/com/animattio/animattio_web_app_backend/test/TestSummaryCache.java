@@ -0,0 +1,158 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.google.cloud.Timestamp;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of computed test summaries.
+ * Entries are keyed by test ID and are only served while the Firestore update time
+ * of the test document matches the update time the summary was computed from.
+ * The cache is bounded and evicts the least recently used entry when full.
+ * By default every hit is validated against the update time. A positive fresh window serves entries validated within
+ * the window without reading the update time again; changes made within that window by the mobile app or by another
+ * instance are then served stale until the window ends, so it is only meant for a single instance that owns all writes.
+ */
+@Component
+public class TestSummaryCache {
+
+    /**
+     * A cached summary together with the update time of the document it was computed from.
+     */
+    private static class CachedSummary {
+        private final Timestamp updateTime;
+        private final TestSummary summary;
+        private long validatedAtMillis; // When the update time was last read and matched
+
+        private CachedSummary(Timestamp updateTime, TestSummary summary, long validatedAtMillis) {
+            this.updateTime = updateTime;
+            this.summary = summary;
+            this.validatedAtMillis = validatedAtMillis;
+        }
+    }
+
+    private final int maxEntries;
+    private final long freshMillis;
+    private final Map<String, CachedSummary> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Constructs the cache with the configured maximum number of entries.
+     *
+     * @param maxEntries   the maximum number of summaries kept in memory.
+     * @param freshSeconds how long a validated entry is served without reading the update time again, 0 (the default) to always read it.
+     */
+    public TestSummaryCache(@Value("${custom.summary_cache_size:1000}") int maxEntries,
+                            @Value("${custom.summary_cache_fresh_seconds:0}") long freshSeconds) {
+        this.maxEntries = maxEntries;
+        this.freshMillis = freshSeconds * 1000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) { // access order makes the eldest entry the least recently used one
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedSummary> eldest) {
+                boolean evict = size() > TestSummaryCache.this.maxEntries;
+                if (evict) {
+                    evictions.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached summary of a test if it was validated against the update time of the test document recently,
+     * so the update time does not need to be read.
+     *
+     * @param testId the ID of the test.
+     * @return the cached {@link TestSummary}, or null if there is no recently validated entry.
+     */
+    public synchronized TestSummary getFresh(String testId) {
+        CachedSummary cached = entries.get(testId);
+        if (cached == null || System.currentTimeMillis() - cached.validatedAtMillis >= freshMillis) {
+            return null; // Not counted as a miss, the caller validates the entry with get(testId, updateTime)
+        }
+        hits.incrementAndGet();
+        return cached.summary;
+    }
+
+    /**
+     * Returns the cached summary of a test if it was computed from the given document version.
+     *
+     * @param testId     the ID of the test.
+     * @param updateTime the current update time of the test document.
+     * @return the cached {@link TestSummary}, or null if there is no valid entry.
+     */
+    public synchronized TestSummary get(String testId, Timestamp updateTime) {
+        CachedSummary cached = entries.get(testId);
+        if (cached == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (updateTime == null || !updateTime.equals(cached.updateTime)) { // The document changed since the summary was computed
+            entries.remove(testId);
+            invalidations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        cached.validatedAtMillis = System.currentTimeMillis();
+        hits.incrementAndGet();
+        return cached.summary;
+    }
+
+    /**
+     * Stores the summary of a test computed from the given document version.
+     *
+     * @param testId     the ID of the test.
+     * @param updateTime the update time of the document the summary was computed from.
+     * @param summary    the computed summary.
+     */
+    public synchronized void put(String testId, Timestamp updateTime, TestSummary summary) {
+        if (updateTime == null) {
+            return; // Without an update time the entry could never be validated
+        }
+        entries.put(testId, new CachedSummary(updateTime, summary, System.currentTimeMillis()));
+    }
+
+    /**
+     * Removes the summary of a test that was modified or deleted.
+     *
+     * @param testId the ID of the test.
+     */
+    public synchronized void invalidate(String testId) {
+        if (entries.remove(testId) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns hit, miss, eviction and invalidation statistics of the cache.
+     *
+     * @return a map with the cache statistics.
+     */
+    public Map<String, Object> getStatistics() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long requests = hitCount + missCount;
+
+        Map<String, Object> statistics = new HashMap<>();
+        synchronized (this) {
+            statistics.put("size", entries.size());
+        }
+        statistics.put("maxEntries", maxEntries);
+        statistics.put("freshSeconds", freshMillis / 1000);
+        statistics.put("hits", hitCount);
+        statistics.put("misses", missCount);
+        statistics.put("evictions", evictions.get());
+        statistics.put("invalidations", invalidations.get());
+        statistics.put("hitRate", requests == 0 ? 0.0 : (double) hitCount / requests);
+        return statistics;
+    }
+}
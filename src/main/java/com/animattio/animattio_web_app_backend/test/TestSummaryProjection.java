@@ -0,0 +1,120 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.google.cloud.Timestamp;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Projection layer for aggregate queries over tests.
+ * Aggregate queries select only the denormalised "summary" field of test documents,
+ * so the raw trial arrays of the games are never transferred or deserialised.
+ * Tests without a summary of the current version are read in full and summarized on every read;
+ * only the backfill stores their summary field, so read paths never write.
+ * The {@link TestRepository} implementations read the summaries through this layer,
+ * which also counts the bytes read through projected and full reads.
+ */
+@Component
+public class TestSummaryProjection {
+
+    public static final String SUMMARY_FIELD = "summary";
+
+    private final AtomicLong projectedDocuments = new AtomicLong();
+    private final AtomicLong projectedBytes = new AtomicLong();
+    private final AtomicLong projectedSourceBytes = new AtomicLong();
+    private final AtomicLong fullDocuments = new AtomicLong();
+    private final AtomicLong fullBytes = new AtomicLong();
+
+    /**
+     * Reads the summary of a test from the fields of a projected read and records the bytes read.
+     *
+     * @param testId          the ID of the test document.
+     * @param projectedFields the fields returned by a read of the summary field only.
+     * @return the stored summary, or null if the test has no summary of the current version and must be read in full.
+     */
+    @SuppressWarnings("unchecked")
+    public TestErrorSummary readProjected(String testId, Map<String, Object> projectedFields) {
+        Map<String, Object> summaryFields = projectedFields != null ? (Map<String, Object>) projectedFields.get(SUMMARY_FIELD) : null;
+        TestErrorSummary stored = summaryFields != null ? TestErrorSummary.fromFirestoreMap(testId, summaryFields) : null;
+        if (stored == null || !stored.isCurrent()) {
+            return null; // Missing or of an older layout until the backfill stores it
+        }
+        projectedDocuments.incrementAndGet();
+        projectedBytes.addAndGet(estimateDocumentSize(testId, projectedFields));
+        projectedSourceBytes.addAndGet(stored.getDocumentBytes());
+        return stored;
+    }
+
+    /**
+     * Computes the summary of a full test document and records the bytes read.
+     *
+     * @param testId the ID of the test document.
+     * @param fields the fields of the full test document.
+     * @return the summary of the test.
+     * @throws MalformedTestException if the document does not have the layout of a test.
+     */
+    public TestErrorSummary summarize(String testId, Map<String, Object> fields) {
+        long documentBytes = estimateDocumentSize(testId, fields);
+        fullDocuments.incrementAndGet();
+        fullBytes.addAndGet(documentBytes);
+        return TestErrorSummary.fromRecord(TestRecord.decode(testId, fields), documentBytes);
+    }
+
+    /**
+     * Returns the number of documents and bytes read through projected and full reads.
+     * "bytesAvoided" is the difference between the size of the full documents behind the projected reads
+     * and the bytes actually read.
+     *
+     * @return a map with the read statistics.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("projectedDocuments", projectedDocuments.get());
+        statistics.put("projectedBytes", projectedBytes.get());
+        statistics.put("fullDocuments", fullDocuments.get());
+        statistics.put("fullBytes", fullBytes.get());
+        statistics.put("bytesAvoided", projectedSourceBytes.get() - projectedBytes.get());
+        return statistics;
+    }
+
+    /**
+     * Estimates the size of a document using the Firestore storage size rules.
+     *
+     * @param documentId the ID of the document.
+     * @param data       the fields of the document.
+     * @return the estimated size in bytes.
+     */
+    static long estimateDocumentSize(String documentId, Map<String, Object> data) {
+        return documentId.length() + 1 + 32 + estimateSize(data); // Document name, fixed overhead and fields
+    }
+
+    private static long estimateSize(Object value) {
+        if (value == null || value instanceof Boolean) {
+            return 1;
+        }
+        if (value instanceof String) {
+            return ((String) value).length() + 1;
+        }
+        if (value instanceof Number || value instanceof Timestamp) {
+            return 8;
+        }
+        if (value instanceof Map) {
+            long size = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += entry.getKey().toString().length() + 1 + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof List) {
+            long size = 0;
+            for (Object element : (List<?>) value) {
+                size += estimateSize(element);
+            }
+            return size;
+        }
+        return 16; // References, geo points and blobs are not used by test documents
+    }
+}
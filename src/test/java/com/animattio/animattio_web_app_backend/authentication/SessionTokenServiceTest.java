@@ -0,0 +1,113 @@
+package com.animattio.animattio_web_app_backend.authentication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionTokenServiceTest {
+
+    private static final String KEY_1 = "k1:" + secret("first-session-key-of-32-bytes!!!");
+    private static final String KEY_2 = "k2:" + secret("second-session-key-of-32-bytes!!");
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    @Test
+    void verifiesTheTokensItMints() {
+        SessionTokenService service = service(KEY_1, "", "", 900);
+
+        SessionTokenService.SessionToken minted = service.mint("uid-1", "doctor", NO_LIMIT);
+        SessionTokenService.SessionToken verified = service.verify(minted.getToken());
+
+        assertTrue(minted.getToken().startsWith(SessionTokenService.TOKEN_PREFIX));
+        assertNotNull(verified);
+        assertEquals("uid-1", verified.getUid());
+        assertEquals("doctor", verified.getRole());
+        assertEquals("k1", verified.getKeyId());
+        assertEquals(minted.getExpiresAt(), verified.getExpiresAt());
+    }
+
+    @Test
+    void rejectsExpiredTokens() {
+        SessionTokenService service = service(KEY_1, "", "", 0); // Tokens expire the second they are issued
+
+        assertNull(service.verify(service.mint("uid-1", "doctor", NO_LIMIT).getToken()));
+    }
+
+    @Test
+    void neverOutlivesTheIdToken() {
+        SessionTokenService service = service(KEY_1, "", "", 900);
+        long idTokenExpiryMillis = System.currentTimeMillis() - 1000; // ID token already expired
+
+        SessionTokenService.SessionToken minted = service.mint("uid-1", "doctor", idTokenExpiryMillis);
+
+        assertEquals(idTokenExpiryMillis / 1000, minted.getExpiresAt().getEpochSecond());
+        assertNull(service.verify(minted.getToken()));
+    }
+
+    @Test
+    void rejectsTokensSignedWithAnotherSecret() {
+        SessionTokenService signer = service(KEY_1, "", "", 900);
+        SessionTokenService verifier = service("k1:" + secret("another-secret-with-the-same-kid"), "", "", 900);
+
+        assertNull(verifier.verify(signer.mint("uid-1", "doctor", NO_LIMIT).getToken()));
+    }
+
+    @Test
+    void rejectsTamperedPayloads() {
+        SessionTokenService service = service(KEY_1, "", "", 900);
+        String token = service.mint("uid-1", "doctor", NO_LIMIT).getToken();
+        String[] parts = token.substring(SessionTokenService.TOKEN_PREFIX.length()).split("\\.");
+        String payload = new String(Base64.getUrlDecoder().decode(parts[0]), StandardCharsets.UTF_8).replace("doctor", "admin");
+        String forged = SessionTokenService.TOKEN_PREFIX
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + "." + parts[1];
+
+        assertNull(service.verify(forged));
+        assertNull(service.verify("sess.not-a-token"));
+        assertNull(service.verify("not-a-session-token"));
+    }
+
+    @Test
+    void acceptsTokensOfRotatedKeysUntilTheyAreRevoked() {
+        String token = service(KEY_1, "", "", 900).mint("uid-1", "doctor", NO_LIMIT).getToken();
+
+        SessionTokenService rotated = service(KEY_1 + "," + KEY_2, "k2", "", 900);
+        SessionTokenService revoked = service(KEY_1 + "," + KEY_2, "k2", "k1", 900);
+
+        assertNotNull(rotated.verify(token));
+        assertEquals("k2", rotated.mint("uid-1", "doctor", NO_LIMIT).getKeyId());
+        assertNull(revoked.verify(token));
+    }
+
+    @Test
+    void disablesSessionTokensWithoutKeys() {
+        SessionTokenService disabled = service("", "", "", 900);
+        String token = service(KEY_1, "", "", 900).mint("uid-1", "doctor", NO_LIMIT).getToken();
+
+        assertFalse(disabled.isEnabled());
+        assertEquals(false, disabled.getKeyStatus().get("enabled"));
+        assertThrows(IllegalStateException.class, () -> disabled.mint("uid-1", "doctor", NO_LIMIT));
+        assertNull(disabled.verify(token));
+        assertTrue(service(KEY_1, "", "", 900).isEnabled());
+    }
+
+    @Test
+    void rejectsAnActiveKeyThatIsNotConfigured() {
+        assertThrows(IllegalArgumentException.class, () -> service(KEY_1, "k2", "", 900));
+    }
+
+    private static SessionTokenService service(String keys, String activeKeyId, String revokedKeyIds, long ttlSeconds) {
+        return new SessionTokenService(new ObjectMapper(), ttlSeconds, keys, activeKeyId, revokedKeyIds);
+    }
+
+    private static String secret(String text) {
+        return Base64.getEncoder().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
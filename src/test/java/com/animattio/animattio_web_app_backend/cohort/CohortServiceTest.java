@@ -0,0 +1,89 @@
+package com.animattio.animattio_web_app_backend.cohort;
+
+import com.animattio.animattio_web_app_backend.patient.InMemoryPatientRepository;
+import com.animattio.animattio_web_app_backend.patient.InMemoryUserDirectoryRepository;
+import com.animattio.animattio_web_app_backend.patient.Patient;
+import com.animattio.animattio_web_app_backend.test.InMemoryTestRepository;
+import com.animattio.animattio_web_app_backend.test.TestSummaryProjection;
+import com.google.cloud.Timestamp;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CohortServiceTest {
+
+    private final InMemoryPatientRepository patientRepository = new InMemoryPatientRepository();
+    private final InMemoryUserDirectoryRepository userDirectoryRepository = new InMemoryUserDirectoryRepository();
+    private final InMemoryTestRepository testRepository = new InMemoryTestRepository(new TestSummaryProjection());
+    private final CohortService cohortService = new CohortService(patientRepository, userDirectoryRepository, testRepository, 2);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void aggregatesTheTestsOfEveryPatientOfADoctor() throws Exception {
+        storePatient("patient-1", "alice", "doctor-1");
+        storePatient("patient-2", "bob", "doctor-1");
+        storePatient("patient-3", "carl", "doctor-2");
+        userDirectoryRepository.save("user-1", "alice").get();
+        userDirectoryRepository.save("user-2", "carl").get();
+        storeTest("test-1", "user-1", "mode1", 2, 1);
+        storeTest("test-2", "user-1", "mode2", 4, 3);
+        storeTest("test-3", "user-2", "mode1", 5, 5); // A patient of another doctor
+
+        Map<String, Object> summary = cohortService.getCohortSummary("doctor-1");
+        Map<String, Object> cohort = (Map<String, Object>) summary.get("cohort");
+        List<Map<String, Object>> patients = (List<Map<String, Object>>) summary.get("patients");
+
+        assertEquals(2, cohort.get("patientCount"));
+        assertEquals(1, cohort.get("patientsWithTests"));
+        assertEquals(2, cohort.get("testCount"));
+        assertEquals(6L, cohort.get("commissionErrors"));
+        assertEquals(4L, cohort.get("omissionErrors"));
+        assertEquals(List.of("mode1", "mode2"), List.copyOf(((Map<String, Object>) cohort.get("modes")).keySet()));
+        assertEquals(2, patientResult(patients, "alice").get("testCount"));
+        assertEquals(0, patientResult(patients, "bob").get("testCount"));
+    }
+
+    @Test
+    void rejectsDoctorsWithoutPatients() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> cohortService.getCohortSummary("doctor-1"));
+
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
+    }
+
+    private void storePatient(String patientId, String username, String doctorUsername) throws Exception {
+        Patient patient = new Patient();
+        patient.setPatientUsername(username);
+        patient.setDoctorUsername(doctorUsername);
+        patientRepository.save(patientId, patient).get();
+    }
+
+    private void storeTest(String testId, String userId, String mode, int commissions, int omissions) throws Exception {
+        Map<String, Object> game = new HashMap<>();
+        game.put("mode", mode);
+        game.put("timestamp", Timestamp.parseTimestamp("2024-05-01T10:00:00Z"));
+        game.put("commissionErrors", (long) commissions); // Firestore returns whole numbers as Long
+        game.put("omissionErrors", (long) omissions);
+
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("userId", userId);
+        fields.put("gamesInTest", List.of(game));
+        testRepository.save(testId, fields).get();
+    }
+
+    private static Map<String, Object> patientResult(List<Map<String, Object>> patients, String username) {
+        for (Map<String, Object> patient : patients) {
+            if (username.equals(patient.get("patientUsername"))) {
+                return patient;
+            }
+        }
+        throw new AssertionError("No result for " + username);
+    }
+}
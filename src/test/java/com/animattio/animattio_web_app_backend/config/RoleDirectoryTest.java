@@ -0,0 +1,109 @@
+package com.animattio.animattio_web_app_backend.config;
+
+import com.animattio.animattio_web_app_backend.doctor.Doctor;
+import com.animattio.animattio_web_app_backend.doctor.DoctorRepository;
+import com.animattio.animattio_web_app_backend.doctor.InMemoryDoctorRepository;
+import com.google.firebase.auth.FirebaseToken;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RoleDirectoryTest {
+
+    private final InMemoryDoctorRepository doctorRepository = new InMemoryDoctorRepository();
+
+    @Test
+    void trustsTheRoleClaimWithoutAnyLookup() throws ExecutionException, InterruptedException {
+        DoctorRepository repository = mock(DoctorRepository.class);
+        RoleDirectory directory = new RoleDirectory(repository, 30);
+
+        assertEquals("admin", directory.roleOf(token("uid-1", "admin")));
+        assertEquals("doctor", directory.roleOf("uid-1", "doctor"));
+
+        verify(repository, never()).listenToRoles(any());
+        verify(repository, never()).findById(any());
+        assertEquals(2L, directory.getStatistics().get("claimLookups"));
+    }
+
+    @Test
+    void looksUpTokensWithoutAClaimInTheDirectory() throws ExecutionException, InterruptedException {
+        save("uid-1", "admin");
+        save("uid-2", null);
+        RoleDirectory directory = new RoleDirectory(doctorRepository, 30);
+
+        assertEquals("admin", directory.roleOf(token("uid-1", null)));
+        assertEquals(RoleDirectory.DEFAULT_ROLE, directory.roleOf("uid-2", null)); // No role field
+        assertEquals(RoleDirectory.DEFAULT_ROLE, directory.roleOf("uid-3")); // No doctor document
+
+        Map<String, Object> statistics = directory.getStatistics();
+        assertEquals(true, statistics.get("loaded"));
+        assertEquals(3L, statistics.get("directoryLookups"));
+        assertEquals(0L, statistics.get("fallbackReads"));
+    }
+
+    @Test
+    void followsSavedAndDeletedDoctors() throws ExecutionException, InterruptedException {
+        save("uid-1", "doctor");
+        RoleDirectory directory = new RoleDirectory(doctorRepository, 30);
+        assertEquals("doctor", directory.roleOf("uid-1"));
+
+        save("uid-1", "admin");
+        assertEquals("admin", directory.roleOf("uid-1"));
+
+        doctorRepository.deleteById("uid-1").join();
+        assertEquals(RoleDirectory.DEFAULT_ROLE, directory.roleOf("uid-1"));
+        assertEquals(0, directory.getStatistics().get("size"));
+    }
+
+    @Test
+    void readsDoctorDocumentsUntilTheListenerDeliversAndAfterItFails() throws ExecutionException, InterruptedException {
+        DoctorRepository repository = mock(DoctorRepository.class);
+        DoctorRepository.Subscription subscription = mock(DoctorRepository.Subscription.class);
+        ArgumentCaptor<DoctorRepository.RoleListener> listener = ArgumentCaptor.forClass(DoctorRepository.RoleListener.class);
+        when(repository.listenToRoles(listener.capture())).thenReturn(subscription);
+        when(repository.findById("uid-1")).thenReturn(CompletableFuture.completedFuture(doctor("admin")));
+        RoleDirectory directory = new RoleDirectory(repository, 0);
+
+        assertEquals("admin", directory.roleOf("uid-1")); // No roles delivered yet
+        listener.getValue().onChange(Map.of("uid-1", "doctor"), Set.of());
+        assertEquals("doctor", directory.roleOf("uid-1"));
+
+        listener.getValue().onError(new IllegalStateException("listener failed"));
+        verify(subscription).cancel();
+        assertEquals(false, directory.getStatistics().get("loaded"));
+        assertEquals("admin", directory.roleOf("uid-1")); // Registered again without delay, read until it delivers
+
+        verify(repository, times(2)).listenToRoles(any());
+        assertEquals(2L, directory.getStatistics().get("fallbackReads"));
+    }
+
+    private void save(String uid, String role) {
+        doctorRepository.save(uid, doctor(role)).join();
+    }
+
+    private static Doctor doctor(String role) {
+        Doctor doctor = new Doctor();
+        doctor.setUsername("user");
+        doctor.setRole(role);
+        return doctor;
+    }
+
+    private static FirebaseToken token(String uid, String roleClaim) {
+        FirebaseToken token = mock(FirebaseToken.class);
+        when(token.getUid()).thenReturn(uid);
+        when(token.getClaims()).thenReturn(roleClaim != null ? Map.of("role", roleClaim) : Map.of());
+        return token;
+    }
+}
@@ -0,0 +1,122 @@
+package com.animattio.animattio_web_app_backend.config;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VerifiedTokenCacheTest {
+
+    private static final long START_MILLIS = 1_700_000_000_000L;
+
+    private final FirebaseAuth firebaseAuth = mock(FirebaseAuth.class);
+    private final AtomicLong now = new AtomicLong(START_MILLIS);
+
+    @Test
+    void verifiesATokenOnceUntilItExpires() throws FirebaseAuthException {
+        VerifiedTokenCache cache = new VerifiedTokenCache(firebaseAuth, 10, false, 60, now::get);
+        FirebaseToken token = token("a", 3600);
+
+        assertSame(token, cache.verify("a"));
+        now.addAndGet(3_599_000);
+        assertSame(token, cache.verify("a"));
+
+        verify(firebaseAuth, times(1)).verifyIdToken("a", false);
+        assertEquals(1L, cache.getStatistics().get("hits"));
+        assertEquals(1L, cache.getStatistics().get("misses"));
+    }
+
+    @Test
+    void dropsExpiredTokensAndVerifiesThemAgain() throws FirebaseAuthException {
+        VerifiedTokenCache cache = new VerifiedTokenCache(firebaseAuth, 10, false, 60, now::get);
+        token("a", 60);
+
+        cache.verify("a");
+        now.addAndGet(60_000);
+        when(firebaseAuth.verifyIdToken("a", false)).thenThrow(mock(FirebaseAuthException.class));
+
+        assertThrows(FirebaseAuthException.class, () -> cache.verify("a"));
+        Map<String, Object> statistics = cache.getStatistics();
+        assertEquals(1L, statistics.get("expirations"));
+        assertEquals(0, statistics.get("size"));
+    }
+
+    @Test
+    void rechecksRevocationAfterTheInterval() throws FirebaseAuthException {
+        VerifiedTokenCache cache = new VerifiedTokenCache(firebaseAuth, 10, true, 60, now::get);
+        token("a", 3600);
+
+        cache.verify("a");
+        now.addAndGet(59_000);
+        cache.verify("a"); // Within the interval
+        verify(firebaseAuth, times(1)).verifyIdToken("a", true);
+
+        now.addAndGet(1_000);
+        cache.verify("a");
+        verify(firebaseAuth, times(2)).verifyIdToken("a", true);
+
+        now.addAndGet(1_000);
+        when(firebaseAuth.verifyIdToken("a", true)).thenThrow(mock(FirebaseAuthException.class));
+        cache.verify("a"); // Still within the interval of the second check
+        now.addAndGet(60_000);
+        assertThrows(FirebaseAuthException.class, () -> cache.verify("a")); // Revoked since
+    }
+
+    @Test
+    void evictsTheTokensClosestToExpiryOnceFull() throws FirebaseAuthException {
+        VerifiedTokenCache cache = new VerifiedTokenCache(firebaseAuth, 10, false, 60, now::get);
+        for (int i = 0; i < 10; i++) {
+            token("t" + i, 1000 + i); // t0 expires first
+            cache.verify("t" + i);
+        }
+        token("late", 5000);
+
+        cache.verify("late");
+
+        Map<String, Object> statistics = cache.getStatistics();
+        assertEquals(9, statistics.get("size"));
+        assertEquals(2L, statistics.get("evictions"));
+        cache.verify("t0");
+        cache.verify("t1");
+        cache.verify("t2");
+        cache.verify("late");
+        verify(firebaseAuth, times(2)).verifyIdToken(eq("t0"), anyBoolean());
+        verify(firebaseAuth, times(2)).verifyIdToken(eq("t1"), anyBoolean());
+        verify(firebaseAuth, times(1)).verifyIdToken(eq("t2"), anyBoolean());
+        verify(firebaseAuth, times(1)).verifyIdToken(eq("late"), anyBoolean());
+    }
+
+    @Test
+    void doesNotCacheTokensWithoutAnExpiry() throws FirebaseAuthException {
+        VerifiedTokenCache cache = new VerifiedTokenCache(firebaseAuth, 10, false, 60, now::get);
+        FirebaseToken token = mock(FirebaseToken.class);
+        when(token.getClaims()).thenReturn(Map.of());
+        when(firebaseAuth.verifyIdToken("a", false)).thenReturn(token);
+
+        cache.verify("a");
+        cache.verify("a");
+
+        verify(firebaseAuth, times(2)).verifyIdToken("a", false);
+        assertEquals(0, cache.getStatistics().get("size"));
+    }
+
+    private FirebaseToken token(String idToken, long lifetimeSeconds) throws FirebaseAuthException {
+        FirebaseToken token = mock(FirebaseToken.class);
+        when(token.getClaims()).thenReturn(Map.of("exp", START_MILLIS / 1000 + lifetimeSeconds));
+        when(firebaseAuth.verifyIdToken(eq(idToken), anyBoolean())).thenReturn(token);
+        return token;
+    }
+}
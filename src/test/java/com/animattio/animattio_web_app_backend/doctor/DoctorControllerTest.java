@@ -0,0 +1,37 @@
+package com.animattio.animattio_web_app_backend.doctor;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DoctorControllerTest {
+
+    private final DoctorService doctorService = mock(DoctorService.class);
+    private final DoctorController doctorController = new DoctorController(doctorService, null);
+
+    @Test
+    void returnsAFoundDoctor() throws Exception {
+        Doctor doctor = new Doctor();
+        when(doctorService.getDoctorAsync("doctor-1")).thenReturn(CompletableFuture.completedFuture(doctor));
+
+        ResponseEntity<Doctor> response = doctorController.getDoctor("doctor-1").get();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(doctor, response.getBody());
+    }
+
+    @Test
+    void mapsFirestoreFailuresToAnInternalServerError() throws Exception {
+        when(doctorService.getDoctorAsync("doctor-1")).thenReturn(CompletableFuture.failedFuture(new ExecutionException(null)));
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, doctorController.getDoctor("doctor-1").get().getStatusCode());
+    }
+}
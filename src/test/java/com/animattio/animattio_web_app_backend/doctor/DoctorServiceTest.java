@@ -0,0 +1,122 @@
+package com.animattio.animattio_web_app_backend.doctor;
+
+import com.animattio.animattio_web_app_backend.patient.InMemoryPatientRepository;
+import com.animattio.animattio_web_app_backend.patient.Patient;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+class DoctorServiceTest {
+
+    private final InMemoryDoctorRepository doctorRepository = new InMemoryDoctorRepository();
+    private final InMemoryPatientRepository patientRepository = spy(new InMemoryPatientRepository());
+    private final RoleClaimsSync roleClaimsSync = mock(RoleClaimsSync.class);
+    private final DoctorService doctorService = new DoctorService(roleClaimsSync, doctorRepository, patientRepository);
+
+    @Test
+    void renamesTheDoctorAndMovesEveryPatientInBatches() throws Exception {
+        storeDoctor("uid-1", "house");
+        for (int i = 0; i < 501; i++) {
+            storePatient("patient-" + i, "house");
+        }
+        storePatient("other", "wilson");
+
+        String result = doctorService.updateDoctorUsername("house", "greg");
+
+        assertEquals("Username updated successfully. Updated 501 patients in 2 batches.", result);
+        Doctor renamed = doctorRepository.findById("uid-1").get();
+        assertEquals("greg", renamed.getUsername());
+        assertNull(renamed.getPendingUsername());
+        assertEquals(501L, patientRepository.countByDoctor("greg").get());
+        assertEquals(0L, patientRepository.countByDoctor("house").get());
+        assertEquals(1L, patientRepository.countByDoctor("wilson").get());
+        verify(roleClaimsSync).syncRole("uid-1", "doctor");
+    }
+
+    @Test
+    void finishesARenameThatFailedPartWay() throws Exception {
+        storeDoctor("uid-1", "house");
+        storePatient("patient-1", "house");
+        storePatient("patient-2", "house");
+        doReturn(CompletableFuture.failedFuture(new ExecutionException("unavailable", null)))
+                .doCallRealMethod()
+                .when(patientRepository).reassignDoctor("house", "greg", 500); // Stubbing a spy without calling it
+
+        assertThrows(ExecutionException.class, () -> doctorService.updateDoctorUsername("house", "greg")); // The first batch fails
+        Doctor interrupted = doctorRepository.findById("uid-1").get();
+        assertEquals("house", interrupted.getUsername());
+        assertEquals("greg", interrupted.getPendingUsername());
+        assertEquals("A rename to 'greg' is in progress; repeat it to finish it first.",
+                doctorService.updateDoctorUsername("house", "cuddy"));
+
+        assertEquals("Username updated successfully. Updated 2 patients in 1 batches.", doctorService.updateDoctorUsername("house", "greg"));
+        assertEquals(2L, patientRepository.countByDoctor("greg").get());
+        assertNull(doctorRepository.findById("uid-1").get().getPendingUsername());
+    }
+
+    @Test
+    void refusesTakenUsernamesAndUnknownDoctors() throws Exception {
+        storeDoctor("uid-1", "house");
+        storeDoctor("uid-2", "wilson");
+        storePatient("patient-1", "house");
+
+        assertEquals("Username already exists.", doctorService.updateDoctorUsername("house", "wilson"));
+        assertEquals("Username already exists.", doctorService.updateDoctorUsername("house", "uid-2"));
+        assertEquals("Doctor not found.", doctorService.updateDoctorUsername("cuddy", "lisa"));
+        assertEquals(1L, patientRepository.countByDoctor("house").get());
+        verify(patientRepository, never()).reassignDoctor(anyString(), anyString(), anyInt());
+    }
+
+    @Test
+    void createsDoctorsKeyedByUsernameWithoutSyncingAClaim() throws Exception {
+        Doctor doctor = new Doctor();
+        doctor.setUsername("house");
+        doctor.setRole("doctor");
+
+        doctorService.createDoctor(doctor);
+
+        assertEquals("house", doctorRepository.findById("house").get().getUsername());
+        verify(roleClaimsSync, never()).syncRole(anyString(), any()); // No Auth user has the username as UID
+    }
+
+    @Test
+    void clearsTheRoleClaimOnceTheDoctorIsDeleted() throws Exception {
+        storeDoctor("uid-1", "house");
+        doAnswer(invocation -> {
+            assertNull(doctorRepository.findById("uid-1").get());
+            return null;
+        }).when(roleClaimsSync).clearRole("uid-1");
+
+        doctorService.deleteDoctor("uid-1");
+
+        verify(roleClaimsSync).clearRole("uid-1");
+    }
+
+    private void storeDoctor(String doctorId, String username) throws Exception {
+        Doctor doctor = new Doctor();
+        doctor.setUsername(username);
+        doctor.setRole("doctor");
+        doctorRepository.save(doctorId, doctor).get();
+    }
+
+    private void storePatient(String patientUsername, String doctorUsername) throws Exception {
+        Patient patient = new Patient();
+        patient.setPatientUsername(patientUsername);
+        patient.setDoctorUsername(doctorUsername);
+        patientRepository.save(patientUsername, patient).get();
+    }
+}
@@ -0,0 +1,146 @@
+package com.animattio.animattio_web_app_backend.doctor;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.GetUsersResult;
+import com.google.firebase.auth.UserIdentifier;
+import com.google.firebase.auth.UserRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RoleClaimsSyncTest {
+
+    private final FirebaseAuth firebaseAuth = mock(FirebaseAuth.class);
+    private final InMemoryDoctorRepository doctorRepository = new InMemoryDoctorRepository();
+    private final RoleClaimsSync roleClaimsSync = new RoleClaimsSync(firebaseAuth, doctorRepository);
+    private final Map<String, UserRecord> users = new HashMap<>();
+
+    @Test
+    void setsMissingClaimsWithoutRevokingSessions() throws Exception {
+        storeDoctor("uid-1", "admin");
+        storeDoctor("uid-2", null);
+        user("uid-1", Map.of());
+        user("uid-2", Map.of("tenant", "clinic"));
+        listUsers();
+
+        Map<String, Object> result = roleClaimsSync.reconcileAll();
+
+        assertEquals(Map.of("scanned", 2, "added", 2, "changed", 0, "missingUsers", 0, "failed", 0), result);
+        verify(firebaseAuth).setCustomUserClaims("uid-1", Map.of("role", "admin"));
+        verify(firebaseAuth).setCustomUserClaims("uid-2", Map.of("tenant", "clinic", "role", "doctor"));
+        verify(firebaseAuth, never()).revokeRefreshTokens(anyString());
+    }
+
+    @Test
+    void revokesSessionsOnlyWhenAClaimChanges() throws Exception {
+        storeDoctor("uid-1", "admin");
+        storeDoctor("uid-2", "doctor");
+        storeDoctor("username-keyed", "doctor");
+        user("uid-1", Map.of("role", "doctor"));
+        user("uid-2", Map.of("role", "doctor"));
+        listUsers();
+
+        Map<String, Object> result = roleClaimsSync.reconcileAll();
+
+        assertEquals(Map.of("scanned", 3, "added", 0, "changed", 1, "missingUsers", 1, "failed", 0), result);
+        verify(firebaseAuth).setCustomUserClaims("uid-1", Map.of("role", "admin"));
+        verify(firebaseAuth).revokeRefreshTokens("uid-1");
+        verify(firebaseAuth, never()).setCustomUserClaims(eq("uid-2"), any());
+        verify(firebaseAuth, never()).revokeRefreshTokens("uid-2");
+    }
+
+    @Test
+    void rejectsAReconciliationWhileOneIsRunning() throws Exception {
+        storeDoctor("uid-1", "doctor");
+        List<ResponseStatusException> rejected = new ArrayList<>();
+        when(firebaseAuth.getUsers(any())).thenAnswer(invocation -> {
+            rejected.add(assertThrows(ResponseStatusException.class, roleClaimsSync::reconcileAll));
+            return result(List.of(), Set.of());
+        });
+
+        roleClaimsSync.reconcileAll();
+
+        assertEquals(HttpStatus.CONFLICT, rejected.get(0).getStatusCode());
+        GetUsersResult noUsers = result(List.of(), Set.of());
+        doReturn(noUsers).when(firebaseAuth).getUsers(any()); // Stubbing without calling the answer above
+        assertEquals(1, roleClaimsSync.reconcileAll().get("scanned")); // The guard is released afterwards
+    }
+
+    @Test
+    void revokesSessionsWhenAClaimIsCleared() throws Exception {
+        UserRecord admin = user("uid-1", Map.of("role", "admin", "tenant", "clinic"));
+        UserRecord withoutClaims = user("uid-2", Map.of());
+        when(firebaseAuth.getUser("uid-1")).thenReturn(admin);
+        when(firebaseAuth.getUser("uid-2")).thenReturn(withoutClaims);
+
+        roleClaimsSync.clearRole("uid-1");
+        roleClaimsSync.clearRole("uid-2");
+
+        verify(firebaseAuth).setCustomUserClaims("uid-1", Map.of("tenant", "clinic"));
+        verify(firebaseAuth).revokeRefreshTokens("uid-1");
+        verify(firebaseAuth, never()).setCustomUserClaims("uid-2", Map.of());
+    }
+
+    private void storeDoctor(String doctorId, String role) {
+        Doctor doctor = new Doctor();
+        doctor.setUsername(doctorId);
+        doctor.setRole(role);
+        doctorRepository.save(doctorId, doctor).join();
+    }
+
+    private UserRecord user(String uid, Map<String, Object> customClaims) {
+        UserRecord user = mock(UserRecord.class);
+        when(user.getUid()).thenReturn(uid);
+        when(user.getCustomClaims()).thenReturn(customClaims);
+        users.put(uid, user);
+        return user;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void listUsers() throws FirebaseAuthException {
+        when(firebaseAuth.getUsers(any())).thenAnswer(invocation -> {
+            List<UserIdentifier> identifiers = new ArrayList<>((Collection<UserIdentifier>) invocation.getArgument(0));
+            List<String> doctorIds = new ArrayList<>(doctorRepository.findRolesPage(null, 100).join().keySet());
+            // The tests store fewer doctors than one lookup, so the identifiers are those of every doctor in order
+            List<UserRecord> found = new ArrayList<>();
+            Set<UserIdentifier> notFound = new HashSet<>();
+            for (int i = 0; i < identifiers.size(); i++) {
+                UserIdentifier identifier = identifiers.get(i);
+                UserRecord user = users.get(doctorIds.get(i));
+                if (user != null) {
+                    found.add(user);
+                } else {
+                    notFound.add(identifier);
+                }
+            }
+            return result(found, notFound);
+        });
+    }
+
+    private static GetUsersResult result(List<UserRecord> found, Set<UserIdentifier> notFound) {
+        GetUsersResult result = mock(GetUsersResult.class);
+        when(result.getUsers()).thenReturn(Set.copyOf(found));
+        when(result.getNotFound()).thenReturn(notFound);
+        return result;
+    }
+}
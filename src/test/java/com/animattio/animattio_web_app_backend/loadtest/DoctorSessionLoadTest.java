@@ -0,0 +1,297 @@
+package com.animattio.animattio_web_app_backend.loadtest;
+
+import com.animattio.animattio_web_app_backend.dataset.DatasetGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ActiveProfilesResolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * End-to-end load test of a doctor's session over HTTP, against the Firestore emulator or the in-memory repositories.
+ * The application is booted on a random port with the "dataset" profile, which seeds the store with the synthetic dataset,
+ * and with a stub token verifier accepting the UID of any doctor of the dataset as its ID token, so no Firebase project is needed.
+ * Without FIRESTORE_EMULATOR_HOST the "in-memory" profile is added, so the test measures the HTTP, authentication and
+ * service layers and runs anywhere; with it the repositories read and write the emulator.
+ * Each simulated session signs in and then, with the session token, lists the patients of its doctor, resolves the user ID
+ * of a patient, lists the patient's tests, opens the metrics of some of them and loads the daily and monthly aggregates.
+ * Latency percentiles and throughput per endpoint are written to target/load-test/results.json; the test fails on any failed request.
+ * The results are compared with the baseline of the store, src/test/resources/loadtest/baseline.json for the in-memory
+ * repositories and baseline-emulator.json next to it for the emulator, and the test fails on any regression;
+ * without a baseline the results are only reported.
+ *
+ * Run with ./mvnw -P load-test test, or against the emulator started
+ * (e.g. gcloud emulators firestore start --host-port=localhost:8080):
+ *     FIRESTORE_EMULATOR_HOST=localhost:8080 ./mvnw -P load-test test
+ * Sessions, concurrency and warm-up are set with -Dloadtest.sessions, -Dloadtest.concurrency and -Dloadtest.warmupSessions.
+ * -Dloadtest.updateBaseline=true records the results as the new baseline of the store instead of comparing with them;
+ * baselines are recorded on the reference machine, as latencies are only comparable on the same hardware.
+ */
+@Tag("load")
+@ActiveProfiles(resolver = DoctorSessionLoadTest.StoreProfiles.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.cloud.gcp.firestore.enabled=false", // The emulator is reached through the Firebase app created below
+        "custom.dataset_seed=42",
+        "custom.dataset_doctors=10",
+        "custom.dataset_patients_per_doctor=20",
+        "custom.dataset_tests_per_patient=20",
+        "custom.dataset_games_per_test=6",
+        "custom.dataset_target=repository"
+})
+class DoctorSessionLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(DoctorSessionLoadTest.class);
+    private static final String PROJECT_ID = "demo-animattio"; // "demo-" projects never reach Google Cloud
+    private static final boolean EMULATOR = System.getenv("FIRESTORE_EMULATOR_HOST") != null;
+    private static final String BASELINE_FILE = EMULATOR ? "baseline-emulator.json" : "baseline.json";
+    private static final Path RESULTS = Path.of("target", "load-test", "results.json");
+    private static final Path BASELINE_SOURCE = Path.of("src", "test", "resources", "loadtest", BASELINE_FILE);
+    private static final double DEFAULT_TOLERANCE = 0.25;
+    private static final int TESTS_OPENED_PER_SESSION = 3;
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${custom.dataset_doctors}")
+    private int doctors;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockBean
+    private FirebaseAuth firebaseAuth; // Replaces the FirebaseAuth bean, so the service account key is not needed
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    /**
+     * Activates the "in-memory" profile unless the Firestore emulator is configured.
+     */
+    static class StoreProfiles implements ActiveProfilesResolver {
+        @Override
+        public String[] resolve(Class<?> testClass) {
+            return EMULATOR
+                    ? new String[]{"dataset", "test"} // "test" lets the session tokens be signed with a generated key
+                    : new String[]{"dataset", "test", "in-memory"};
+        }
+    }
+
+    /**
+     * Creates the Firebase app the repositories use, pointed at the emulator, before the application starts.
+     */
+    @BeforeAll
+    static void connectToEmulator() {
+        if (EMULATOR && FirebaseApp.getApps().isEmpty()) {
+            FirebaseApp.initializeApp(FirebaseOptions.builder()
+                    .setProjectId(PROJECT_ID)
+                    .setCredentials(GoogleCredentials.create(new AccessToken("emulator", null))) // The emulator does not check credentials
+                    .build());
+        }
+    }
+
+    @Test
+    void doctorSessionsMeetTheBaseline() throws Exception {
+        stubTokenVerifier();
+        int sessions = Integer.getInteger("loadtest.sessions", 500);
+        int concurrency = Integer.getInteger("loadtest.concurrency", 16);
+        int warmupSessions = Integer.getInteger("loadtest.warmupSessions", 50);
+
+        runSessions(warmupSessions, concurrency, new LatencyRecorder()); // Warms up the JIT, the caches and the store
+
+        LatencyRecorder recorder = new LatencyRecorder();
+        long start = System.nanoTime();
+        int failedSessions = runSessions(sessions, concurrency, recorder);
+        Map<String, Map<String, Object>> report = recorder.report(System.nanoTime() - start);
+
+        Files.createDirectories(RESULTS.getParent());
+        objectMapper.writer(SerializationFeature.INDENT_OUTPUT).writeValue(RESULTS.toFile(), report);
+        report.forEach((endpoint, statistics) -> logger.info("{}: {}", endpoint, statistics));
+
+        assertEquals(0, failedSessions, "Sessions failed, see the log"); // Also never records a baseline with failures
+
+        if (Boolean.getBoolean("loadtest.updateBaseline")) {
+            Files.createDirectories(BASELINE_SOURCE.getParent());
+            objectMapper.writer(SerializationFeature.INDENT_OUTPUT).writeValue(BASELINE_SOURCE.toFile(),
+                    Map.of("tolerance", DEFAULT_TOLERANCE, "endpoints", report));
+            logger.info("Recorded the results as the new baseline in {}", BASELINE_SOURCE);
+            return;
+        }
+
+        Map<String, Object> baseline = readBaseline();
+        if (baseline == null) {
+            logger.info("No baseline at {}, the results are only reported; record one with -Dloadtest.updateBaseline=true", BASELINE_SOURCE);
+            return;
+        }
+        List<String> regressions = LoadTestBaseline.regressions(report, baseline);
+        assertTrue(regressions.isEmpty(), "Load-test regressions against the baseline:\n" + String.join("\n", regressions));
+    }
+
+    /**
+     * Makes the mocked FirebaseAuth accept the UID of each doctor of the dataset as its ID token.
+     */
+    private void stubTokenVerifier() throws FirebaseAuthException {
+        long expiresAtSeconds = System.currentTimeMillis() / 1000 + 3600; // Like a Firebase ID token
+        for (int d = 0; d < doctors; d++) {
+            String doctorId = DatasetGenerator.doctorId(d);
+            FirebaseToken token = mock(FirebaseToken.class);
+            when(token.getUid()).thenReturn(doctorId);
+            when(token.getClaims()).thenReturn(Map.of("role", "doctor", "exp", expiresAtSeconds));
+            when(firebaseAuth.verifyIdToken(eq(doctorId), anyBoolean())).thenReturn(token);
+        }
+    }
+
+    /**
+     * Runs doctor sessions on a fixed number of threads, each session for one of the doctors of the dataset in turn.
+     *
+     * @param sessions    the number of sessions.
+     * @param concurrency the number of sessions running at the same time.
+     * @param recorder    the recorder of the requests.
+     * @return the number of sessions that failed with an I/O error.
+     */
+    private int runSessions(int sessions, int concurrency, LatencyRecorder recorder) throws InterruptedException {
+        AtomicInteger nextSession = new AtomicInteger();
+        AtomicInteger failedSessions = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            executor.execute(() -> {
+                for (int session = nextSession.getAndIncrement(); session < sessions; session = nextSession.getAndIncrement()) {
+                    try {
+                        runSession(session, recorder);
+                    } catch (IOException e) {
+                        failedSessions.incrementAndGet();
+                        logger.warn("Session {} failed", session, e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.MINUTES), "Sessions did not finish in time");
+        return failedSessions.get();
+    }
+
+    /**
+     * Runs the requests of one doctor session. A session stops at the first request whose response it needs and did not get.
+     *
+     * @param session  the number of the session, which selects the doctor and seeds the choice of patient and tests.
+     * @param recorder the recorder of the requests.
+     */
+    private void runSession(int session, LatencyRecorder recorder) throws IOException, InterruptedException {
+        Random random = new Random(session);
+        String doctorId = DatasetGenerator.doctorId(session % doctors);
+
+        String signIn = send(recorder, "signin", HttpRequest.newBuilder(uri("/signin"))
+                .header("Authorization", "Bearer " + doctorId)
+                .POST(HttpRequest.BodyPublishers.noBody()));
+        if (signIn == null) {
+            return;
+        }
+        Object issued = objectMapper.readValue(signIn, new TypeReference<Map<String, Object>>() {}).get("sessionToken");
+        String sessionToken = issued != null ? (String) issued : doctorId; // Without session keys the ID token is sent on every request
+
+        String patientsBody = get(recorder, "patients", sessionToken, "/patients/get-all-patients?doctorId=" + encode(doctorId));
+        if (patientsBody == null) {
+            return;
+        }
+        List<Map<String, Object>> patients = objectMapper.readValue(patientsBody, new TypeReference<>() {});
+        String username = (String) patients.get(random.nextInt(patients.size())).get("patientUsername");
+
+        String patientIdBody = get(recorder, "patient-id", sessionToken, "/patients/get-patient-id?username=" + encode(username));
+        if (patientIdBody == null) {
+            return;
+        }
+        String userId = (String) objectMapper.readValue(patientIdBody, new TypeReference<Map<String, Object>>() {}).get("documentId");
+
+        String testsBody = get(recorder, "tests", sessionToken, "/tests/summed-errors/" + encode(userId));
+        if (testsBody == null) {
+            return;
+        }
+        List<Map<String, Object>> tests = new ArrayList<>(objectMapper.readValue(testsBody, new TypeReference<List<Map<String, Object>>>() {}));
+        for (int i = 0; i < TESTS_OPENED_PER_SESSION && !tests.isEmpty(); i++) {
+            String testId = (String) tests.remove(random.nextInt(tests.size())).get("testId");
+            get(recorder, "test-summary", sessionToken, "/tests/" + encode(testId) + "/summary");
+        }
+
+        get(recorder, "aggregate-daily", sessionToken, "/tests/aggregate-errors-daily/" + encode(userId));
+        get(recorder, "aggregate-monthly", sessionToken, "/tests/aggregate-errors-monthly/" + encode(userId));
+    }
+
+    private String get(LatencyRecorder recorder, String endpoint, String sessionToken, String path) throws IOException, InterruptedException {
+        return send(recorder, endpoint, HttpRequest.newBuilder(uri(path)).header("Authorization", "Bearer " + sessionToken).GET());
+    }
+
+    /**
+     * Sends a request and records its latency and outcome.
+     *
+     * @param recorder the recorder of the requests.
+     * @param endpoint the name the request is recorded under.
+     * @param request  the request to send.
+     * @return the response body, or null if the response did not have a 2xx status.
+     */
+    private String send(LatencyRecorder recorder, String endpoint, HttpRequest.Builder request) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<String> response = httpClient.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+        boolean successful = response.statusCode() / 100 == 2;
+        recorder.record(endpoint, System.nanoTime() - start, successful);
+        return successful ? response.body() : null;
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private Map<String, Object> readBaseline() throws IOException {
+        try (InputStream in = DoctorSessionLoadTest.class.getResourceAsStream("/loadtest/" + BASELINE_FILE)) {
+            return in != null ? objectMapper.readValue(in, new TypeReference<>() {}) : null; // Until one is recorded for the store
+        }
+    }
+}
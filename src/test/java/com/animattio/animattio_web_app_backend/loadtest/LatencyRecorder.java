@@ -0,0 +1,80 @@
+package com.animattio.animattio_web_app_backend.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the latency and outcome of every request, per endpoint, and reports latency percentiles and throughput.
+ */
+class LatencyRecorder {
+
+    /**
+     * The latencies and error count of one endpoint.
+     */
+    private static class EndpointSamples {
+        private final ConcurrentLinkedQueue<Long> latenciesNanos = new ConcurrentLinkedQueue<>();
+        private final AtomicLong errors = new AtomicLong();
+    }
+
+    private final Map<String, EndpointSamples> samples = new ConcurrentHashMap<>(); // endpoint -> samples
+
+    /**
+     * Records a request.
+     *
+     * @param endpoint     the name of the endpoint.
+     * @param latencyNanos the time from sending the request to receiving the whole response.
+     * @param successful   whether the response had a 2xx status.
+     */
+    void record(String endpoint, long latencyNanos, boolean successful) {
+        EndpointSamples endpointSamples = samples.computeIfAbsent(endpoint, key -> new EndpointSamples());
+        endpointSamples.latenciesNanos.add(latencyNanos);
+        if (!successful) {
+            endpointSamples.errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Reports the statistics of every endpoint, sorted by endpoint name.
+     *
+     * @param elapsedNanos the duration of the measured run, for the throughput.
+     * @return a map of endpoint name to its requests, errors, p50/p95/p99 latency in milliseconds and requests per second.
+     */
+    Map<String, Map<String, Object>> report(long elapsedNanos) {
+        Map<String, Map<String, Object>> report = new LinkedHashMap<>();
+        samples.keySet().stream().sorted().forEach(endpoint -> {
+            EndpointSamples endpointSamples = samples.get(endpoint);
+            long[] latencies = endpointSamples.latenciesNanos.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(latencies);
+
+            Map<String, Object> statistics = new LinkedHashMap<>();
+            statistics.put("requests", latencies.length);
+            statistics.put("errors", endpointSamples.errors.get());
+            statistics.put("p50Millis", percentileMillis(latencies, 50));
+            statistics.put("p95Millis", percentileMillis(latencies, 95));
+            statistics.put("p99Millis", percentileMillis(latencies, 99));
+            statistics.put("throughputPerSecond", Math.round(latencies.length * 1e9 / elapsedNanos * 10) / 10.0);
+            report.put(endpoint, statistics);
+        });
+        return report;
+    }
+
+    /**
+     * Returns a percentile by the nearest-rank method.
+     *
+     * @param sortedNanos the sorted latencies.
+     * @param percentile  the percentile, between 0 and 100.
+     * @return the percentile in milliseconds with one decimal, or 0 if there are no latencies.
+     */
+    private static double percentileMillis(long[] sortedNanos, int percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedNanos.length);
+        long nanos = sortedNanos[Math.max(0, rank - 1)];
+        return Math.round(nanos / 100_000.0) / 10.0;
+    }
+}
@@ -0,0 +1,68 @@
+package com.animattio.animattio_web_app_backend.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares a load-test report with the stored baseline.
+ * The baseline holds, per endpoint, the p50/p95/p99 latency in milliseconds and the requests per second of a reference run,
+ * and a relative tolerance: a latency above the baseline or a throughput below it by more than the tolerance is a regression.
+ * Failed requests are always a regression.
+ */
+final class LoadTestBaseline {
+
+    private static final String[] LATENCIES = {"p50Millis", "p95Millis", "p99Millis"};
+
+    private LoadTestBaseline() {
+    }
+
+    /**
+     * Lists the regressions of a report against a baseline.
+     *
+     * @param report   the report of {@link LatencyRecorder#report(long)}.
+     * @param baseline the baseline, with the "tolerance" and the statistics of each endpoint under "endpoints".
+     * @return a description of every regression, empty if there are none.
+     */
+    @SuppressWarnings("unchecked")
+    static List<String> regressions(Map<String, Map<String, Object>> report, Map<String, Object> baseline) {
+        double tolerance = ((Number) baseline.get("tolerance")).doubleValue();
+        Map<String, Map<String, Object>> baselineEndpoints = (Map<String, Map<String, Object>>) baseline.get("endpoints");
+
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Object>> endpoint : report.entrySet()) {
+            long errors = ((Number) endpoint.getValue().get("errors")).longValue();
+            if (errors > 0) {
+                regressions.add(endpoint.getKey() + ": " + errors + " failed requests");
+            }
+        }
+
+        for (Map.Entry<String, Map<String, Object>> expected : baselineEndpoints.entrySet()) {
+            String endpoint = expected.getKey();
+            Map<String, Object> actual = report.get(endpoint);
+            if (actual == null) {
+                regressions.add(endpoint + ": no requests were made");
+                continue;
+            }
+
+            for (String latency : LATENCIES) {
+                double limit = value(expected.getValue(), latency) * (1 + tolerance);
+                if (value(actual, latency) > limit) {
+                    regressions.add(String.format("%s: %s of %.1f ms is above the baseline limit of %.1f ms",
+                            endpoint, latency, value(actual, latency), limit));
+                }
+            }
+            double minThroughput = value(expected.getValue(), "throughputPerSecond") * (1 - tolerance);
+            if (value(actual, "throughputPerSecond") < minThroughput) {
+                regressions.add(String.format("%s: throughput of %.1f/s is below the baseline limit of %.1f/s",
+                        endpoint, value(actual, "throughputPerSecond"), minThroughput));
+            }
+        }
+        return regressions;
+    }
+
+    private static double value(Map<String, Object> statistics, String name) {
+        Object value = statistics.get(name);
+        return value != null ? ((Number) value).doubleValue() : 0;
+    }
+}
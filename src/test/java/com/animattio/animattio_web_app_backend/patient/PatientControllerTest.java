@@ -0,0 +1,44 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PatientControllerTest {
+
+    private final PatientService patientService = mock(PatientService.class);
+    private final PatientController patientController = new PatientController(patientService, null, null);
+
+    @Test
+    void returnsAFoundPatient() throws Exception {
+        Patient patient = new Patient();
+        when(patientService.getPatientAsync("ana")).thenReturn(CompletableFuture.completedFuture(patient));
+
+        ResponseEntity<?> response = patientController.getPatient("ana").get();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(patient, response.getBody());
+    }
+
+    @Test
+    void mapsAMissingPatientToNotFound() throws Exception {
+        when(patientService.getPatientAsync("ana")).thenReturn(CompletableFuture.completedFuture(null));
+
+        assertEquals(HttpStatus.NOT_FOUND, patientController.getPatient("ana").get().getStatusCode());
+    }
+
+    @Test
+    void mapsFirestoreFailuresToAnInternalServerError() throws Exception {
+        when(patientService.getPatientAsync("ana")).thenReturn(CompletableFuture.failedFuture(new ExecutionException(null)));
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, patientController.getPatient("ana").get().getStatusCode());
+    }
+}
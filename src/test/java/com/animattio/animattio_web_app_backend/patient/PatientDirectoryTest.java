@@ -0,0 +1,72 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PatientDirectoryTest {
+
+    private final InMemoryPatientRepository patientRepository = new InMemoryPatientRepository();
+    private final PatientDirectory directory = new PatientDirectory(patientRepository, 1);
+
+    @AfterEach
+    void stopListening() {
+        directory.destroy();
+    }
+
+    @Test
+    void indexesThePatientsOfADoctor() throws Exception {
+        patientRepository.save("patient-1", patient("bob", "doctor-1")).get();
+        patientRepository.save("patient-2", patient("alice", "doctor-1")).get();
+        patientRepository.save("patient-3", patient("carl", "doctor-2")).get();
+
+        assertEquals(List.of("alice", "bob"), usernames(directory.getIndex("doctor-1").getPatients()));
+        assertEquals(2, directory.getFacets("doctor-1").query(null, null, null, null, null, null, 10).get("total"));
+    }
+
+    @Test
+    void replacesTheIndexesWhenPatientsAreAddedRemovedOrReassigned() throws Exception {
+        patientRepository.save("patient-1", patient("bob", "doctor-1")).get();
+        assertEquals(List.of("bob"), usernames(directory.getIndex("doctor-1").getPatients()));
+
+        patientRepository.save("patient-2", patient("alice", "doctor-1")).get();
+        assertEquals(List.of("alice", "bob"), usernames(directory.getIndex("doctor-1").getPatients()));
+
+        patientRepository.deleteById("patient-1").get();
+        assertEquals(List.of("alice"), usernames(directory.getIndex("doctor-1").getPatients()));
+
+        patientRepository.reassignDoctor("doctor-1", "doctor-2", 10).get();
+        assertEquals(List.of(), usernames(directory.getIndex("doctor-1").getPatients()));
+    }
+
+    @Test
+    void reloadsADoctorAfterItWasEvicted() throws Exception {
+        patientRepository.save("patient-1", patient("bob", "doctor-1")).get();
+        patientRepository.save("patient-2", patient("carl", "doctor-2")).get();
+
+        directory.getIndex("doctor-1");
+        assertEquals(List.of("carl"), usernames(directory.getIndex("doctor-2").getPatients())); // Evicts doctor-1
+        patientRepository.save("patient-3", patient("alice", "doctor-1")).get();
+
+        assertEquals(List.of("alice", "bob"), usernames(directory.getIndex("doctor-1").getPatients()));
+    }
+
+    private static Patient patient(String username, String doctorUsername) {
+        Patient patient = new Patient();
+        patient.setPatientUsername(username);
+        patient.setDoctorUsername(doctorUsername);
+        return patient;
+    }
+
+    private static List<String> usernames(List<Patient> patients) {
+        List<String> usernames = new ArrayList<>();
+        for (Patient patient : patients) {
+            usernames.add(patient.getPatientUsername());
+        }
+        return usernames;
+    }
+}
@@ -0,0 +1,179 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import com.animattio.animattio_web_app_backend.test.InMemoryTestRepository;
+import com.animattio.animattio_web_app_backend.test.InMemoryTestRollupRepository;
+import com.animattio.animattio_web_app_backend.test.TestRollupStore;
+import com.animattio.animattio_web_app_backend.test.TestSummaryCache;
+import com.animattio.animattio_web_app_backend.test.TestSummaryProjection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PatientErasureServiceTest {
+
+    private final InMemoryPatientRepository patientRepository = new InMemoryPatientRepository();
+    private final InMemoryUserDirectoryRepository userDirectoryRepository = new InMemoryUserDirectoryRepository();
+    private final InMemoryTestRepository testRepository = new InMemoryTestRepository(new TestSummaryProjection());
+    private final InMemoryTestRollupRepository rollupRepository = new InMemoryTestRollupRepository();
+    private final Set<String> failingTestIds = new CopyOnWriteArraySet<>();
+    private final CountDownLatch deletesReleased = new CountDownLatch(1);
+    private volatile boolean holdDeletes;
+
+    private final ErasureRepository erasureRepository = new InMemoryErasureRepository(patientRepository, userDirectoryRepository,
+            testRepository) {
+        @Override
+        public BulkDelete openBulkDelete(int maxOpsPerSecond) {
+            BulkDelete deletes = super.openBulkDelete(maxOpsPerSecond);
+            return new BulkDelete() {
+                @Override
+                public CompletableFuture<Void> delete(String collection, String documentId) {
+                    if (holdDeletes) {
+                        try {
+                            deletesReleased.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    if (collection.equals("tests") && failingTestIds.remove(documentId)) {
+                        return CompletableFuture.failedFuture(new ExecutionException("unavailable", null)); // Fails once
+                    }
+                    return deletes.delete(collection, documentId);
+                }
+
+                @Override
+                public void flush() throws ExecutionException, InterruptedException {
+                    deletes.flush();
+                }
+
+                @Override
+                public void close() throws ExecutionException, InterruptedException {
+                    deletes.close();
+                }
+            };
+        }
+    };
+
+    private final PatientErasureService erasureService = new PatientErasureService(500, 2, erasureRepository,
+            new TestSummaryCache(10, 0), rollupRepository);
+
+    @AfterEach
+    void stopJobs() {
+        erasureService.destroy();
+    }
+
+    @Test
+    void erasesTheTestsRollupsUsersAndPatientOfAPatient() throws Exception {
+        storePatient("ana", "user-1", "test-1", "test-2");
+        storePatient("bob", "user-2", "test-3");
+
+        ErasureJob job = awaitFinished(erasureService.startErasure("ana"));
+
+        assertEquals(ErasureJob.State.COMPLETED, job.getState());
+        Map<String, Object> status = job.toStatus();
+        assertEquals(Map.of("patients", 1L, "tests", 2L, "users", 1L), status.get("found"));
+        assertEquals(Map.of("patients", 1L, "tests", 2L, "users", 1L), status.get("deleted"));
+        assertEquals(0L, testRepository.countByUser("user-1").get());
+        assertNull(rollupRepository.findByUser("user-1").get());
+        assertNull(userDirectoryRepository.findUserIdByUsername("ana").get());
+        assertNull(patientRepository.findById("ana").get());
+        assertEquals(1L, testRepository.countByUser("user-2").get()); // Other patients are untouched
+        assertNotNull(patientRepository.findById("bob").get());
+    }
+
+    @Test
+    void stopsAfterFailedTestDeletesAndFinishesWhenStartedAgain() throws Exception {
+        storePatient("ana", "user-1", "test-1", "test-2");
+        failingTestIds.add("test-2");
+
+        ErasureJob failed = awaitFinished(erasureService.startErasure("ana"));
+
+        assertEquals(ErasureJob.State.FAILED, failed.getState());
+        assertEquals("1 tests could not be deleted; start the erasure again to retry", failed.toStatus().get("error"));
+        assertEquals(Map.of("tests", 1L), failed.toStatus().get("failed"));
+        assertEquals(1L, testRepository.countByUser("user-1").get());
+        assertNotNull(rollupRepository.findByUser("user-1").get()); // Later stages keep their documents
+        assertEquals("user-1", userDirectoryRepository.findUserIdByUsername("ana").get());
+        assertNotNull(patientRepository.findById("ana").get());
+
+        ErasureJob retried = awaitFinished(erasureService.startErasure("ana"));
+
+        assertEquals(ErasureJob.State.COMPLETED, retried.getState());
+        assertEquals(0L, testRepository.countByUser("user-1").get());
+        assertNull(patientRepository.findById("ana").get());
+    }
+
+    @Test
+    void returnsTheRunningJobForRepeatedRequests() throws Exception {
+        storePatient("ana", "user-1", "test-1");
+        holdDeletes = true;
+
+        ErasureJob first = erasureService.startErasure("ana");
+        ErasureJob second = erasureService.startErasure("ana");
+        deletesReleased.countDown();
+
+        assertSame(first, second);
+        assertSame(first, erasureService.getJob(first.getJobId()));
+        assertEquals(ErasureJob.State.COMPLETED, awaitFinished(first).getState());
+    }
+
+    @Test
+    void rejectsUnknownPatientsAndJobs() {
+        ResponseStatusException patient = assertThrows(ResponseStatusException.class, () -> erasureService.startErasure("ana"));
+        ResponseStatusException job = assertThrows(ResponseStatusException.class, () -> erasureService.getJob("job-1"));
+
+        assertEquals(HttpStatus.NOT_FOUND, patient.getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, job.getStatusCode());
+    }
+
+    @Test
+    void evictsTheOldestFinishedJobsBeyondTheMaximum() throws Exception {
+        ErasureJob oldest = null;
+        ErasureJob newest = null;
+        for (int i = 0; i <= PatientErasureService.MAX_FINISHED_JOBS; i++) {
+            storePatient("patient-" + i, "user-" + i);
+            newest = awaitFinished(erasureService.startErasure("patient-" + i));
+            if (oldest == null) {
+                oldest = newest;
+            }
+        }
+
+        String oldestJobId = oldest.getJobId();
+        assertThrows(ResponseStatusException.class, () -> erasureService.getJob(oldestJobId));
+        assertSame(newest, erasureService.getJob(newest.getJobId()));
+    }
+
+    private void storePatient(String username, String userId, String... testIds) throws Exception {
+        Patient patient = new Patient();
+        patient.setPatientUsername(username);
+        patientRepository.save(username, patient).get();
+        userDirectoryRepository.save(userId, username).get();
+        for (String testId : testIds) {
+            testRepository.save(testId, Map.of("userId", userId)).get();
+            rollupRepository.saveContribution(userId, testId, new TestRollupStore.TestContribution(null, "mode1", 0, 0)).get();
+        }
+    }
+
+    private static ErasureJob awaitFinished(ErasureJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (job.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertFalse(job.isRunning(), "The erasure did not finish");
+        return job;
+    }
+}
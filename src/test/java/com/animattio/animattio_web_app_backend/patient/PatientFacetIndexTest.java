@@ -0,0 +1,107 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PatientFacetIndexTest {
+
+    private final PatientFacetIndex index = PatientFacetIndex.build(List.of(
+            patient("carl", "male", "epilepsy", 15),
+            patient("Bianca", "female", "control", 12),
+            patient("ana", "female", "epilepsy", 6),
+            patient("bob", "male", "epilepsy", 9),
+            patient("dora", "female", "epilepsy", 4),
+            patient("ben", "male", "control", 9),
+            patient(null, "male", "control", 9))); // Patients without a username are not indexed
+
+    @Test
+    void returnsEveryPatientWithoutFilters() {
+        Map<String, Object> result = index.query(null, null, null, null, null, null, 10);
+
+        assertEquals(6, result.get("total"));
+        assertEquals(List.of("ana", "ben", "Bianca", "bob", "carl", "dora"), usernames(result));
+    }
+
+    @Test
+    void intersectsAnAgeRangeWithAGender() {
+        Map<String, Object> result = index.query(5, 12, List.of("male"), null, null, null, 10);
+
+        assertEquals(2, result.get("total"));
+        assertEquals(List.of("ben", "bob"), usernames(result));
+    }
+
+    @Test
+    void matchesAnyOfSeveralValuesOfOneAttribute() {
+        assertEquals(6, index.query(null, null, null, List.of("epilepsy", "control"), null, null, 10).get("total"));
+        assertEquals(6, index.query(null, null, List.of("male", "female"), null, null, null, 10).get("total"));
+    }
+
+    @Test
+    void sortsByAgeThenUsername() {
+        assertEquals(List.of("dora", "ana"),
+                usernames(index.query(null, null, List.of("female"), List.of("epilepsy"), null, "age", 10)));
+        assertEquals(List.of("carl", "Bianca", "ben", "bob", "ana", "dora"),
+                usernames(index.query(null, null, null, null, null, "-age", 10)));
+        assertEquals(List.of("dora", "carl", "bob", "Bianca", "ben", "ana"),
+                usernames(index.query(null, null, null, null, null, "-username", 10)));
+    }
+
+    @Test
+    void filtersByACaseInsensitiveUsernamePrefix() {
+        assertEquals(List.of("ben", "Bianca"), usernames(index.query(null, null, null, List.of("control"), "B", null, 10)));
+        assertEquals(List.of("Bianca"), usernames(index.query(null, null, null, null, " bi", null, 10)));
+        assertEquals(0, index.query(null, null, null, null, "z", null, 10).get("total"));
+    }
+
+    @Test
+    void countsEveryMatchBeyondTheLimit() {
+        Map<String, Object> result = index.query(null, null, null, null, null, null, 2);
+
+        assertEquals(6, result.get("total"));
+        assertEquals(List.of("ana", "ben"), usernames(result));
+    }
+
+    @Test
+    void matchesNothingForUnknownValuesOrEmptyAgeRanges() {
+        assertEquals(0, index.query(null, null, List.of("unknown"), null, null, null, 10).get("total"));
+        assertEquals(0, index.query(16, null, null, null, null, null, 10).get("total"));
+        assertEquals(List.of("carl"), usernames(index.query(15, 15, null, null, null, null, 10)));
+    }
+
+    @Test
+    void rejectsInvalidAgeRangesAndSorts() {
+        ResponseStatusException ageRange = assertThrows(ResponseStatusException.class,
+                () -> index.query(12, 5, null, null, null, null, 10));
+        ResponseStatusException sort = assertThrows(ResponseStatusException.class,
+                () -> index.query(null, null, null, null, null, "gender", 10));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ageRange.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, sort.getStatusCode());
+    }
+
+    private static Patient patient(String username, String gender, String type, int age) {
+        Patient patient = new Patient();
+        patient.setPatientUsername(username);
+        patient.setGender(gender);
+        patient.setType(type);
+        patient.setAge(age);
+        return patient;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> usernames(Map<String, Object> result) {
+        List<String> usernames = new ArrayList<>();
+        for (Patient patient : (List<Patient>) result.get("patients")) {
+            usernames.add(patient.getPatientUsername());
+        }
+        return usernames;
+    }
+}
@@ -0,0 +1,123 @@
+package com.animattio.animattio_web_app_backend.patient;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PatientSearchIndexTest {
+
+    private final PatientSearchIndex index = PatientSearchIndex.build(List.of(
+            patient("robert"), patient("Alicia"), patient("bob"), patient("malik"), patient("alice"), patient("alina"),
+            patient(null))); // Patients without a username are not indexed
+
+    @Test
+    void indexesPatientsSortedByUsername() {
+        assertEquals(6, index.size());
+        assertEquals(List.of("alice", "Alicia", "alina", "bob", "malik", "robert"), usernames(index.getPatients()));
+    }
+
+    @Test
+    void findsExactUsernames() {
+        List<PatientSearchIndex.Match> matches = index.search("robert", 10);
+
+        assertEquals(List.of("robert"), usernames(matches));
+        assertEquals(PatientSearchIndex.MatchType.PREFIX, matches.get(0).getMatchType());
+        assertEquals(0, matches.get(0).getDistance());
+    }
+
+    @Test
+    void ranksPrefixMatchesBeforeInfixMatchesIgnoringCase() {
+        List<PatientSearchIndex.Match> matches = index.search(" ALI ", 10);
+
+        assertEquals(List.of("alice", "Alicia", "alina", "malik"), usernames(matches));
+        assertEquals(List.of(PatientSearchIndex.MatchType.PREFIX, PatientSearchIndex.MatchType.PREFIX,
+                PatientSearchIndex.MatchType.PREFIX, PatientSearchIndex.MatchType.INFIX), matchTypes(matches));
+    }
+
+    @Test
+    void matchesQueriesShorterThanATrigramWithoutTypos() {
+        assertEquals(List.of("alice", "Alicia", "alina", "malik"), usernames(index.search("al", 10)));
+        assertEquals(List.of("bob", "robert"), usernames(index.search("b", 10)));
+    }
+
+    @Test
+    void ranksMatchesWithATypoAfterExactMatches() {
+        List<PatientSearchIndex.Match> matches = index.search("alice", 10);
+
+        assertEquals(List.of("alice", "Alicia"), usernames(matches)); // "alici" is one substitution away
+        assertEquals(PatientSearchIndex.MatchType.FUZZY, matches.get(1).getMatchType());
+        assertEquals(1, matches.get(1).getDistance());
+    }
+
+    @Test
+    void matchesTyposOnlyInQueriesOfAtLeastFiveCharacters() {
+        assertEquals(List.of(), usernames(index.search("alx", 10))); // One typo in three characters matches most usernames
+        assertEquals(List.of(), usernames(index.search("bobx", 10)));
+
+        List<PatientSearchIndex.Match> matches = index.search("robet", 10);
+        assertEquals(List.of("robert"), usernames(matches));
+        assertEquals(1, matches.get(0).getDistance());
+        assertEquals(List.of(), usernames(index.search("rxbxt", 10))); // Two typos are too many for five characters
+    }
+
+    @Test
+    void toleratesTwoTyposInLongQueries() {
+        List<PatientSearchIndex.Match> matches = index.search("robret", 10); // Transposed letters are two substitutions
+
+        assertEquals(List.of("robert"), usernames(matches));
+        assertEquals(2, matches.get(0).getDistance());
+    }
+
+    @Test
+    void returnsEveryPatientForAnEmptyQueryUpToTheLimit() {
+        assertEquals(List.of("alice", "Alicia", "alina"), usernames(index.search("", 3)));
+        assertEquals(List.of("alice", "Alicia"), usernames(index.search("ali", 2)));
+    }
+
+    @Test
+    void findsUsernamesStartingWithAPrefixIgnoringOnlyTheCaseOfItsFirstLetter() {
+        PatientSearchIndex mixedCase = PatientSearchIndex.build(List.of(
+                patient("alina"), patient("Alicia"), patient("alice"), patient("ALIX"), patient("malik")));
+
+        assertEquals(List.of("alice", "Alicia"), usernames(mixedCase.startingWith("Alic")));
+        assertEquals(List.of("alice", "alina", "Alicia"), usernames(mixedCase.startingWith("ali")));
+        assertEquals(List.of(), usernames(mixedCase.startingWith("alx"))); // No typos
+        assertEquals(List.of(), usernames(mixedCase.startingWith("lik"))); // No infixes
+        assertEquals(5, mixedCase.startingWith(" ").size());
+        assertEquals(5, mixedCase.startingWith(null).size());
+    }
+
+    @Test
+    void computesTheEditDistanceToTheClosestSubstring() {
+        assertEquals(0, PatientSearchIndex.substringDistance("cat", "concatenate", 1));
+        assertEquals(1, PatientSearchIndex.substringDistance("cst", "concatenate", 1));
+        assertEquals(2, PatientSearchIndex.substringDistance("xyz", "concatenate", 1)); // Stops above the maximum
+    }
+
+    private static Patient patient(String username) {
+        Patient patient = new Patient();
+        patient.setPatientUsername(username);
+        return patient;
+    }
+
+    private static List<String> usernames(List<?> patientsOrMatches) {
+        List<String> usernames = new ArrayList<>();
+        for (Object element : patientsOrMatches) {
+            Patient patient = element instanceof PatientSearchIndex.Match
+                    ? ((PatientSearchIndex.Match) element).getPatient() : (Patient) element;
+            usernames.add(patient.getPatientUsername());
+        }
+        return usernames;
+    }
+
+    private static List<PatientSearchIndex.MatchType> matchTypes(List<PatientSearchIndex.Match> matches) {
+        List<PatientSearchIndex.MatchType> matchTypes = new ArrayList<>();
+        for (PatientSearchIndex.Match match : matches) {
+            matchTypes.add(match.getMatchType());
+        }
+        return matchTypes;
+    }
+}
@@ -0,0 +1,112 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ReactionTimeHistogramTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    void emptyHistogramHasNoStatistics() {
+        ReactionTimeHistogram histogram = new ReactionTimeHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertNull(histogram.getMin());
+        assertNull(histogram.getMax());
+        assertNull(histogram.getMean());
+        assertNull(histogram.getStandardDeviation());
+        assertNull(histogram.getMedian());
+        assertNull(histogram.getP90());
+        assertNull(histogram.getP99());
+    }
+
+    @Test
+    void interpolatesPercentilesInsideTheirBin() {
+        ReactionTimeHistogram histogram = histogram(100, 150); // 50 times in the bin 100-149
+        addRange(histogram, 300, 350); // 50 times in the bin 300-349
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(224.5, histogram.getMean(), DELTA);
+        assertEquals(150.0, histogram.getMedian(), DELTA); // Rank 50 is the end of the bin 100-149
+        assertEquals(340.0, histogram.getP90(), DELTA); // Rank 90 is 80% into the bin 300-349
+        assertEquals(349.0, histogram.getP99(), DELTA);
+    }
+
+    @Test
+    void keepsPercentilesInsideTheObservedRange() {
+        ReactionTimeHistogram histogram = new ReactionTimeHistogram();
+        for (int i = 0; i < 10; i++) {
+            histogram.add(120);
+        }
+
+        assertEquals(120.0, histogram.getMedian(), DELTA); // The bin midpoint 125 is above every time
+        assertEquals(120.0, histogram.getP99(), DELTA);
+        assertEquals(0.0, histogram.getStandardDeviation(), DELTA);
+    }
+
+    @Test
+    void countsTimesOutsideTheBinsInTheFirstAndLastBins() {
+        ReactionTimeHistogram histogram = new ReactionTimeHistogram();
+        histogram.add(-5);
+        histogram.add(10_000);
+
+        long[] bins = histogram.getBins();
+        assertEquals(1, bins[0]);
+        assertEquals(1, bins[ReactionTimeHistogram.BIN_COUNT - 1]);
+        assertEquals(-5L, histogram.getMin());
+        assertEquals(10_000L, histogram.getMax());
+        assertEquals(4999.0, histogram.getP99(), DELTA); // Interpolated inside the last bin, which ends at 5000 ms
+    }
+
+    @Test
+    void clampsPercentilesOfLongTimesToTheLargestTime() {
+        ReactionTimeHistogram histogram = new ReactionTimeHistogram();
+        histogram.add(10_000);
+
+        assertEquals(10_000.0, histogram.getMedian(), DELTA); // Not the 4975 ms of the last bin
+    }
+
+    @Test
+    void computesThePopulationStandardDeviation() {
+        ReactionTimeHistogram histogram = new ReactionTimeHistogram();
+        histogram.add(100);
+        histogram.add(300);
+
+        assertEquals(200.0, histogram.getMean(), DELTA);
+        assertEquals(100.0, histogram.getStandardDeviation(), DELTA);
+    }
+
+    @Test
+    void mergingEqualsAddingEveryTime() {
+        ReactionTimeHistogram merged = histogram(100, 150);
+        merged.merge(histogram(300, 350));
+        merged.merge(new ReactionTimeHistogram()); // Merging an empty histogram changes nothing
+
+        ReactionTimeHistogram combined = histogram(100, 150);
+        addRange(combined, 300, 350);
+
+        assertArrayEquals(combined.getBins(), merged.getBins());
+        assertEquals(combined.getCount(), merged.getCount());
+        assertEquals(combined.getMin(), merged.getMin());
+        assertEquals(combined.getMax(), merged.getMax());
+        assertEquals(combined.getMean(), merged.getMean(), DELTA);
+        assertEquals(combined.getStandardDeviation(), merged.getStandardDeviation(), DELTA);
+        assertEquals(combined.getP90(), merged.getP90(), DELTA);
+    }
+
+    private static ReactionTimeHistogram histogram(int from, int to) {
+        ReactionTimeHistogram histogram = new ReactionTimeHistogram();
+        addRange(histogram, from, to);
+        return histogram;
+    }
+
+    private static void addRange(ReactionTimeHistogram histogram, int from, int to) {
+        for (int time = from; time < to; time++) {
+            histogram.add(time);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.animattio.animattio_web_app_backend.game.Game;
+import com.google.cloud.Timestamp;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TestIngestServiceTest {
+
+    private final InMemoryTestRepository testRepository = new InMemoryTestRepository(new TestSummaryProjection());
+    private final InMemoryTestRollupRepository rollupRepository = new InMemoryTestRollupRepository();
+    private final TestIngestService ingestService = new TestIngestService(testRepository,
+            new TestRollupStore(testRepository, rollupRepository));
+
+    @Test
+    void storesTheTestWithItsSummaryAndAddsItToTheRollup() throws Exception {
+        Map<String, Object> response = ingestService.ingestTest(test(
+                game("mode1", "2024-05-01T10:00:00Z", 2, 1, 80),
+                game("mode2", "2024-05-01T10:05:00Z", 1, 3, 60)));
+
+        String testId = (String) response.get("testId");
+        TestErrorSummary stored = testRepository.findStoredSummary(testId).get().getSummary();
+        assertNotNull(stored);
+        assertEquals(3, stored.getCommissionErrors());
+        assertEquals(4, stored.getOmissionErrors());
+        assertEquals(2, stored.getGameCount());
+        assertEquals(TestErrorSummary.CURRENT_VERSION, stored.getVersion());
+        assertEquals(Timestamp.parseTimestamp("2024-05-01T10:00:00Z"), stored.getStartTimestamp());
+        assertEquals(Timestamp.parseTimestamp("2024-05-01T10:05:00Z"), stored.getEndTimestamp());
+        assertEquals(70.0, stored.getMeanHitRate());
+        assertEquals(1, rollupRepository.findByUser("user-1").get().size());
+    }
+
+    @Test
+    void computesStimuliCountsAndReactionTimeStatistics() throws Exception {
+        Map<String, Object> response = ingestService.ingestTest(test(game("mode1", "2024-05-01T10:00:00Z", 0, 0, 100)));
+
+        TestErrorSummary summary = (TestErrorSummary) response.get("summary");
+        assertEquals(1, summary.getStimuliCount()); // In mode1 the stimuli is the target
+        assertEquals(2, summary.getNonStimuliCount());
+        Map<String, Object> stats = summary.getReactionTimeStats().get("1250");
+        assertEquals(2L, ((Number) stats.get("count")).longValue()); // Both taps are among the first twenty images
+    }
+
+    @Test
+    void rejectsInvalidTestsWithoutStoringThem() throws Exception {
+        Game unknownMode = game("mode3", "2024-05-01T10:00:00Z", 0, 0, 100);
+        Game missingReactionTime = game("mode1", "2024-05-01T10:00:00Z", 0, 0, 100);
+        missingReactionTime.setReactionTimes(Arrays.asList(300));
+        Game otherIntervals = game("mode1", "2024-05-01T10:00:00Z", 0, 0, 100);
+        otherIntervals.setIntervals(Arrays.asList(1000, 2000, 4000));
+
+        for (com.animattio.animattio_web_app_backend.test.Test test : List.of(test(unknownMode), test(missingReactionTime),
+                test(otherIntervals), test())) {
+            ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> ingestService.ingestTest(test));
+            assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        }
+        assertEquals(0L, testRepository.countByUser("user-1").get());
+        assertNull(rollupRepository.findByUser("user-1").get());
+    }
+
+    private static com.animattio.animattio_web_app_backend.test.Test test(Game... games) {
+        com.animattio.animattio_web_app_backend.test.Test test = new com.animattio.animattio_web_app_backend.test.Test();
+        test.setUserId("user-1");
+        List<Game> gamesInTest = new ArrayList<>();
+        for (Game game : games) {
+            gamesInTest.add(game);
+        }
+        test.setGamesInTest(gamesInTest);
+        return test;
+    }
+
+    private static Game game(String mode, String timestamp, int commissions, int omissions, int hitRate) {
+        Game game = new Game();
+        game.setMode(mode);
+        game.setStimuli("cat");
+        game.setTimestamp(Date.from(Timestamp.parseTimestamp(timestamp).toSqlTimestamp().toInstant()));
+        game.setComissionErrors(commissions);
+        game.setOmissionErrors(omissions);
+        game.setHitRate(hitRate);
+        game.setShownImages(Arrays.asList("cat", "dog", "bird")); // Deserialized lists accept null lookups, unlike List.of
+        game.setResult(Arrays.asList(true, true, false));
+        game.setReactionTimes(Arrays.asList(300, 400));
+        game.setIntervals(Arrays.asList(1250, 2250, 4250));
+        return game;
+    }
+}
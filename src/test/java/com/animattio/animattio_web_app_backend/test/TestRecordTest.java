@@ -0,0 +1,199 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.animattio.animattio_web_app_backend.game.GameRecord;
+import com.animattio.animattio_web_app_backend.game.ImageDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestRecordTest {
+
+    private static final List<Long> INTERVALS = List.of(1250L, 2250L, 4250L);
+
+    @Test
+    void decodesTheUserAndGamesInStoredOrder() {
+        Map<String, Object> first = game(tapsAt(60, 5), List.of(300L), INTERVALS);
+        first.put("mode", "first");
+        Map<String, Object> last = game(tapsAt(60, 5), List.of(300L), INTERVALS);
+        last.put("mode", "last");
+
+        TestRecord test = TestRecord.decode("test-1", fields(first, last));
+
+        assertEquals("test-1", test.getTestId());
+        assertEquals("user-1", test.getUserId());
+        assertEquals(2, test.getGames().length);
+        assertEquals("first", test.firstGame().getMode());
+        assertEquals("last", test.lastGame().getMode());
+    }
+
+    @Test
+    void decodesMissingDocumentsAndGamesAsNoGames() {
+        TestRecord missing = TestRecord.decode("test-1", null);
+        TestRecord withoutGames = TestRecord.decode("test-1", Map.of("userId", "user-1"));
+
+        assertNull(missing.getUserId());
+        assertFalse(missing.hasGames());
+        assertNull(missing.firstGame());
+        assertFalse(withoutGames.hasGames());
+        assertNull(withoutGames.lastGame());
+    }
+
+    @Test
+    void decodesTapsReactionTimesAndIntervals() {
+        GameRecord game = decodeGame(game(tapsAt(60, 5, 25), List.of(300L, 400L), INTERVALS));
+
+        assertEquals(List.of(5, 25), game.getResult().stream().boxed().toList());
+        assertArrayEquals(new int[]{300, 400}, game.getReactionTimes());
+        assertArrayEquals(new int[]{1250, 2250, 4250}, game.getIntervals());
+    }
+
+    @Test
+    void assignsTheIntervalOfEachTappedImage() {
+        GameRecord game = decodeGame(game(tapsAt(60, 5, 25, 45, 50), List.of(300L, 400L, 500L, 600L), INTERVALS));
+
+        assertEquals(List.of(List.of(1250, 300), List.of(2250, 400), List.of(4250, 500), List.of(4250, 600)),
+                tappedReactions(game));
+    }
+
+    @Test
+    void switchesIntervalsAtTheTwentiethAndFortiethImages() {
+        GameRecord game = decodeGame(game(tapsAt(60, 19, 20, 39, 40), List.of(300L, 400L, 500L, 600L), INTERVALS));
+
+        assertEquals(List.of(List.of(1250, 300), List.of(2250, 400), List.of(2250, 500), List.of(4250, 600)),
+                tappedReactions(game));
+    }
+
+    @Test
+    void stopsWhenTheReactionTimesRunOut() {
+        GameRecord game = decodeGame(game(tapsAt(60, 5, 25, 45), List.of(300L, 400L), INTERVALS));
+
+        assertEquals(List.of(List.of(1250, 300), List.of(2250, 400)), tappedReactions(game));
+    }
+
+    @Test
+    void hasNoTappedReactionsWithoutResultsReactionTimesOrThreeIntervals() {
+        List<Boolean> taps = tapsAt(60, 5);
+
+        assertTrue(tappedReactions(decodeGame(game(null, List.of(300L), INTERVALS))).isEmpty());
+        assertTrue(tappedReactions(decodeGame(game(taps, null, INTERVALS))).isEmpty());
+        assertTrue(tappedReactions(decodeGame(game(taps, List.of(300L), null))).isEmpty());
+        assertTrue(tappedReactions(decodeGame(game(taps, List.of(300L), List.of(1250L, 2250L)))).isEmpty());
+    }
+
+    @Test
+    void recordsWhetherResultsAreStored() {
+        assertEquals(60, decodeGame(game(tapsAt(60, 5), List.of(300L), INTERVALS)).getResultLength());
+        assertEquals(-1, decodeGame(game(null, List.of(300L), INTERVALS)).getResultLength());
+    }
+
+    @Test
+    void encodesTheStimulusAndShownImagesAsTheSameCodes() {
+        Map<String, Object> stored = game(tapsAt(3, 0), List.of(300L), INTERVALS);
+        stored.put("stimuli", "cat");
+        stored.put("shownImages", Arrays.asList("cat", "dog", null));
+
+        GameRecord game = decodeGame(stored);
+        int[] shownImages = game.getShownImages();
+
+        assertEquals(game.getStimuliCode(), shownImages[0]);
+        assertNotEquals(game.getStimuliCode(), shownImages[1]);
+        assertEquals(ImageDictionary.NO_IMAGE, shownImages[2]);
+    }
+
+    @Test
+    void countsStimulusAndOtherImages() {
+        Map<String, Object> stored = game(tapsAt(4, 0), List.of(300L), INTERVALS);
+        stored.put("stimuli", "cat");
+        stored.put("shownImages", Arrays.asList("cat", "dog", "cat", null));
+
+        GameRecord game = decodeGame(stored);
+
+        assertEquals(2, game.countStimulusImages());
+        assertEquals(1, game.countOtherImages()); // Missing images are neither
+    }
+
+    @Test
+    void keepsTheImageCodesOfEachTestInItsOwnDictionary() {
+        Map<String, Object> stored = game(tapsAt(2, 0), List.of(300L), INTERVALS);
+        stored.put("stimuli", "dog");
+        stored.put("shownImages", List.of("dog", "cat"));
+
+        TestRecord test = TestRecord.decode("test-1", fields(stored));
+        GameRecord game = test.firstGame();
+
+        assertEquals(2, test.getImageDictionary().size());
+        assertEquals("cat", test.getImageDictionary().decode(game.getShownImages()[1]));
+        assertEquals(0, TestRecord.decode("test-2", Map.of("userId", "user-1")).getImageDictionary().size());
+    }
+
+    @Test
+    void rejectsFieldsOfTheWrongType() {
+        Map<String, Object> textReactionTimes = game(tapsAt(2, 0), List.of(300L), INTERVALS);
+        textReactionTimes.put("reactionTimes", List.of("300"));
+        Map<String, Object> numericMode = game(tapsAt(2, 0), List.of(300L), INTERVALS);
+        numericMode.put("mode", 3L);
+
+        MalformedTestException reactionTimes = assertThrows(MalformedTestException.class,
+                () -> TestRecord.decode("test-1", fields(textReactionTimes)));
+        assertThrows(MalformedTestException.class, () -> TestRecord.decode("test-1", fields(numericMode)));
+        assertThrows(MalformedTestException.class, () -> TestRecord.decode("test-1", Map.of("gamesInTest", "none")));
+        assertThrows(MalformedTestException.class, () -> TestRecord.decode("test-1", Map.of("gamesInTest", List.of(1L))));
+        assertThrows(MalformedTestException.class, () -> TestRecord.decode("test-1", Map.of("userId", 7L)));
+
+        assertEquals("test-1", reactionTimes.getTestId());
+        assertTrue(reactionTimes.getMessage().contains("reactionTimes"));
+    }
+
+    private static GameRecord decodeGame(Map<String, Object> game) {
+        return TestRecord.decode("test-1", fields(game)).firstGame();
+    }
+
+    @SafeVarargs
+    private static Map<String, Object> fields(Map<String, Object>... games) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("userId", "user-1");
+        List<Map<String, Object>> gamesInTest = new ArrayList<>();
+        for (Map<String, Object> game : games) {
+            gamesInTest.add(game);
+        }
+        fields.put("gamesInTest", gamesInTest);
+        return fields;
+    }
+
+    private static Map<String, Object> game(List<Boolean> result, List<Long> reactionTimes, List<Long> intervals) {
+        Map<String, Object> game = new HashMap<>(); // Firestore returns whole numbers as Long
+        game.put("result", result);
+        game.put("reactionTimes", reactionTimes);
+        game.put("intervals", intervals);
+        return game;
+    }
+
+    private static List<Boolean> tapsAt(int imageCount, int... tappedIndices) {
+        List<Boolean> result = new ArrayList<>();
+        for (int i = 0; i < imageCount; i++) {
+            result.add(false);
+        }
+        for (int index : tappedIndices) {
+            result.set(index, true);
+        }
+        return result;
+    }
+
+    private static List<List<Integer>> tappedReactions(GameRecord game) {
+        List<List<Integer>> reactions = new ArrayList<>();
+        game.forEachTappedReaction((interval, reactionTime) -> reactions.add(List.of(interval, reactionTime)));
+        return reactions;
+    }
+}
@@ -0,0 +1,151 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.google.cloud.Timestamp;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TestRollupStoreTest {
+
+    private final InMemoryTestRepository testRepository = new InMemoryTestRepository(new TestSummaryProjection());
+    private final InMemoryTestRollupRepository rollupRepository = new InMemoryTestRollupRepository();
+    private final TestRollupStore rollupStore = new TestRollupStore(testRepository, rollupRepository);
+
+    @Test
+    void servesACurrentRollup() throws Exception {
+        storeTest("test-1", "mode1", "2024-05-01", 2, 1, true);
+        storeTest("test-2", "mode1", "2024-05-01", 3, 0, true);
+        rollupStore.rebuild("user-1").get();
+
+        List<TestRollupStore.RollupBucket> buckets = rollupStore.getDailyBuckets("user-1");
+
+        assertEquals(List.of("2024-05-01 mode1 5/1 x2"), describe(buckets));
+        assertEquals(1L, rollupStore.getStatistics().get("currentReads"));
+    }
+
+    @Test
+    void readsTheSummariesWithoutWritingWhenTestsAreMissingFromTheRollup() throws Exception {
+        storeTest("test-1", "mode1", "2024-05-01", 2, 1, true);
+        rollupStore.rebuild("user-1").get();
+        storeTest("test-2", "mode2", "2024-05-02", 4, 4, false); // Written by the mobile app, without a summary
+
+        List<TestRollupStore.RollupBucket> buckets = rollupStore.getDailyBuckets("user-1");
+
+        assertEquals(List.of("2024-05-01 mode1 2/1 x1", "2024-05-02 mode2 4/4 x1"), describe(buckets));
+        assertEquals(1L, rollupStore.getStatistics().get("summaryReads"));
+        assertEquals(1, rollupRepository.findByUser("user-1").get().size()); // Only the backfill rebuilds the roll-up
+    }
+
+    @Test
+    void keepsTheRollupCurrentWithRecordedTests() throws Exception {
+        storeTest("test-1", "mode1", "2024-05-01", 2, 1, true);
+        rollupStore.rebuild("user-1").get();
+        Map<String, Object> fields = storeTest("test-2", "mode1", "2024-05-01", 1, 1, true);
+
+        rollupStore.recordTest("user-1", "test-2", summaryOf("test-2", fields)).get();
+
+        assertEquals(List.of("2024-05-01 mode1 3/2 x2"), describe(rollupStore.getDailyBuckets("user-1")));
+        assertEquals(1L, rollupStore.getStatistics().get("currentReads"));
+    }
+
+    @Test
+    void sortsBucketsByDayThenMode() throws Exception {
+        storeTest("test-1", "mode2", "2024-06-01", 1, 0, true);
+        storeTest("test-2", "mode2", "2024-05-01", 1, 0, true);
+        storeTest("test-3", "mode1", "2024-06-01", 1, 0, true);
+        storeTest("test-4", "mode1", "2024-04-30", 1, 0, true);
+        rollupStore.rebuild("user-1").get();
+
+        assertEquals(List.of("2024-04-30 mode1 1/0 x1", "2024-05-01 mode2 1/0 x1", "2024-06-01 mode1 1/0 x1", "2024-06-01 mode2 1/0 x1"),
+                describe(rollupStore.getDailyBuckets("user-1")));
+    }
+
+    @Test
+    void keepsUndatedTestsOutOfTheBucketsButInTheRollup() throws Exception {
+        storeTest("test-1", "mode1", "2024-05-01", 2, 1, true);
+        Map<String, Object> undated = new HashMap<>();
+        undated.put("userId", "user-1");
+        undated.put("gamesInTest", List.of());
+        testRepository.save("test-2", undated).get();
+        rollupStore.rebuild("user-1").get();
+
+        assertEquals(List.of("2024-05-01 mode1 2/1 x1"), describe(rollupStore.getDailyBuckets("user-1")));
+        assertEquals(1L, rollupStore.getStatistics().get("currentReads")); // Both tests are in the roll-up
+    }
+
+    @Test
+    void limitsBucketsToAnInclusiveRangeIncludingTestsWithoutASummary() throws Exception {
+        storeTest("test-1", "mode1", "2024-04-30", 1, 0, true);
+        storeTest("test-2", "mode1", "2024-05-01", 2, 0, true);
+        storeTest("test-3", "mode2", "2024-05-31", 3, 0, false); // Written by the mobile app, without a summary
+        storeTest("test-4", "mode1", "2024-06-01", 4, 0, true);
+
+        assertEquals(List.of("2024-05-01 mode1 2/0 x1", "2024-05-31 mode2 3/0 x1"),
+                describe(rollupStore.getDailyBuckets("user-1", LocalDate.of(2024, 5, 1), LocalDate.of(2024, 5, 31))));
+        assertEquals(List.of("2024-05-31 mode2 3/0 x1", "2024-06-01 mode1 4/0 x1"),
+                describe(rollupStore.getDailyBuckets("user-1", LocalDate.of(2024, 5, 2), null)));
+        assertEquals(List.of(), rollupStore.getDailyBuckets("user-1", LocalDate.of(2024, 7, 1), null));
+    }
+
+    @Test
+    void hasNoBucketsOrRollupForUsersWithoutTests() throws Exception {
+        rollupRepository.saveContribution("user-1", "erased-test", new TestRollupStore.TestContribution(null, "mode1", 0, 0)).get();
+
+        rollupStore.rebuild("user-1").get();
+
+        assertNull(rollupStore.getDailyBuckets("user-1"));
+        assertNull(rollupRepository.findByUser("user-1").get());
+    }
+
+    @Test
+    void assignsTestsToTheDayOfTheirLastGameInUtcPlusTwo() {
+        Map<String, Object> fields = testFields("mode1", Timestamp.parseTimestamp("2024-05-01T22:30:00Z"), 1, 0);
+
+        List<TestRollupStore.RollupBucket> buckets = TestRollupStore.bucketsFromSummaries(List.of(summaryOf("test-1", fields)));
+
+        assertEquals(LocalDate.of(2024, 5, 2), buckets.get(0).getDay());
+    }
+
+    private Map<String, Object> storeTest(String testId, String mode, String day, int commissions, int omissions,
+                                          boolean withSummary) throws Exception {
+        Map<String, Object> fields = testFields(mode, Timestamp.parseTimestamp(day + "T10:00:00Z"), commissions, omissions);
+        if (withSummary) {
+            fields.put(TestSummaryProjection.SUMMARY_FIELD, summaryOf(testId, fields).toFirestoreMap());
+        }
+        testRepository.save(testId, fields).get();
+        return fields;
+    }
+
+    static Map<String, Object> testFields(String mode, Timestamp timestamp, int commissions, int omissions) {
+        Map<String, Object> game = new HashMap<>();
+        game.put("mode", mode);
+        game.put("timestamp", timestamp);
+        game.put("commissionErrors", (long) commissions); // Firestore returns whole numbers as Long
+        game.put("omissionErrors", (long) omissions);
+
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("userId", "user-1");
+        fields.put("gamesInTest", List.of(game));
+        return fields;
+    }
+
+    private static TestErrorSummary summaryOf(String testId, Map<String, Object> fields) {
+        return TestErrorSummary.fromRecord(TestRecord.decode(testId, fields), 0);
+    }
+
+    private static List<String> describe(List<TestRollupStore.RollupBucket> buckets) {
+        List<String> descriptions = new ArrayList<>();
+        for (TestRollupStore.RollupBucket bucket : buckets) {
+            descriptions.add(bucket.getDay() + " " + bucket.getMode() + " " + bucket.getCommissions() + "/" + bucket.getOmissions()
+                    + " x" + bucket.getTestCount());
+        }
+        return descriptions;
+    }
+}
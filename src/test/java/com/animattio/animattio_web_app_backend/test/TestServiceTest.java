@@ -0,0 +1,207 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.google.cloud.Timestamp;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TestServiceTest {
+
+    private final TestSummaryProjection summaryProjection = new TestSummaryProjection();
+    private final InMemoryTestRepository testRepository = new InMemoryTestRepository(summaryProjection);
+    private final TestRollupStore rollupStore = new TestRollupStore(testRepository, new InMemoryTestRollupRepository());
+    private final TestService testService = new TestService(new TestSummaryCache(10, 0), rollupStore, summaryProjection,
+            testRepository);
+
+    @Test
+    void aggregatesOneRowPerDateAndModeSortedByDate() throws Exception {
+        storeTest("test-1", "mode2", "2024-05-02", 4, 3);
+        storeTest("test-2", "mode1", "2024-05-01", 2, 1);
+        storeTest("test-3", "mode1", "2024-05-01", 1, 0);
+        storeTest("test-4", "mode2", "2024-05-01", 0, 5);
+
+        List<Map<String, Object>> rows = testService.aggregateErrorsByFullDateAndMode("user-1");
+
+        assertEquals(List.of("1 May 2024 mode1", "1 May 2024 mode2", "2 May 2024 mode2"), keys(rows, "date"));
+        assertEquals(3, rows.get(0).get("commissions"));
+        assertEquals(1, rows.get(0).get("omissions"));
+        assertEquals(2, rows.get(0).get("testCount"));
+        assertEquals(72, rows.get(0).get("targetStimuli")); // 36 target stimuli per mode1 test
+        assertEquals(324, rows.get(1).get("targetStimuli")); // 324 target stimuli per mode2 test
+    }
+
+    @Test
+    void aggregatesMonthsWithTheTestsOfEveryDay() throws Exception {
+        storeTest("test-1", "mode1", "2024-06-03", 1, 1);
+        storeTest("test-2", "mode1", "2024-05-01", 2, 0);
+        storeTest("test-3", "mode1", "2024-05-31", 3, 0);
+        storeTest("test-4", "mode2", "2024-05-15", 0, 2);
+
+        List<Map<String, Object>> rows = testService.aggregateErrorsByMonthAndMode("user-1");
+
+        assertEquals(List.of("05.2024 mode1", "05.2024 mode2", "06.2024 mode1"), keys(rows, "month"));
+        assertEquals(2, rows.get(0).get("testCount"));
+        assertEquals(5, rows.get(0).get("commissions"));
+        assertEquals(72, rows.get(0).get("targetStimuli"));
+        assertEquals(648, rows.get(0).get("nonTargetStimuli"));
+        assertEquals(1, rows.get(2).get("testCount"));
+    }
+
+    @Test
+    void aggregatesOnlyTheDaysInARange() throws Exception {
+        storeTest("test-1", "mode1", "2024-05-01", 1, 0);
+        storeTest("test-2", "mode1", "2024-05-03", 2, 0);
+
+        List<Map<String, Object>> rows = testService.aggregateErrorsByFullDateAndMode("user-1", LocalDate.of(2024, 5, 2), null);
+
+        assertEquals(List.of("3 May 2024 mode1"), keys(rows, "date"));
+        assertEquals(List.of(), testService.aggregateErrorsByFullDateAndMode("user-1", LocalDate.of(2024, 6, 1), null));
+    }
+
+    @Test
+    void rejectsRangesThatEndBeforeTheyStart() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> testService.aggregateErrorsByMonthAndMode("user-1", LocalDate.of(2024, 5, 2), LocalDate.of(2024, 5, 1)));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+    }
+
+    @Test
+    void sumsErrorTotalsFromTheStoredSummaries() throws Exception {
+        storeTest("test-1", "mode1", "2024-05-01", 2, 1);
+        storeTest("test-2", "mode2", "2024-05-02", 3, 4);
+
+        Map<String, Object> totals = testService.sumErrorTotalsForUserAsync("user-1").get();
+
+        assertEquals(2L, totals.get("testCount"));
+        assertEquals(2L, totals.get("summarizedTestCount"));
+        assertEquals(5L, totals.get("commissionErrors"));
+        assertEquals(5L, totals.get("omissionErrors"));
+    }
+
+    @Test
+    void includesTestsWithoutAStoredSummaryInTheErrorTotals() throws Exception {
+        storeTest("test-1", "mode1", "2024-05-01", 2, 1);
+        testRepository.save("test-2", TestRollupStoreTest.testFields("mode1", Timestamp.parseTimestamp("2024-05-02T10:00:00Z"), 3, 4))
+                .get(); // Written by the mobile app, without a summary
+
+        Map<String, Object> totals = testService.sumErrorTotalsForUserAsync("user-1").get();
+
+        assertEquals(2L, totals.get("testCount"));
+        assertEquals(1L, totals.get("summarizedTestCount"));
+        assertEquals(5L, totals.get("commissionErrors"));
+        assertEquals(5L, totals.get("omissionErrors"));
+    }
+
+    @Test
+    void rejectsUsersWithoutTests() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> testService.aggregateErrorsByFullDateAndMode("user-1"));
+
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
+    }
+
+    @Test
+    void pagesThroughTheTestsOfAUserInIdOrder() throws Exception {
+        storeTest("test-3", "mode1", "2024-05-03", 0, 0);
+        storeTest("test-1", "mode1", "2024-05-01", 0, 0);
+        storeTest("test-2", "mode1", "2024-05-02", 0, 0);
+
+        TestPage<Map<String, Object>> first = testService.sumErrorsForUserTestsPage("user-1", 2, null);
+        TestPage<Map<String, Object>> second = testService.sumErrorsForUserTestsPage("user-1", 2, first.getNextPageToken());
+
+        assertEquals(List.of("test-1", "test-2"), testIds(first.getItems()));
+        assertEquals(List.of("test-3"), testIds(second.getItems()));
+        assertNull(second.getNextPageToken());
+        assertEquals(2, testService.getTestsByUserPage("user-1", 2, null).getItems().size());
+        assertEquals(1, testService.getTestsByUserPage("user-1", 2, first.getNextPageToken()).getItems().size());
+    }
+
+    @Test
+    void backfillsMissingSummariesAndSkipsMalformedTests() throws Exception {
+        storeTest("test-1", "mode1", "2024-05-01", 2, 1);
+        testRepository.save("test-2", TestRollupStoreTest.testFields("mode1", Timestamp.parseTimestamp("2024-05-02T10:00:00Z"), 3, 4))
+                .get(); // Written by the mobile app, without a summary
+        testRepository.save("test-3", Map.of("userId", "user-1", "gamesInTest", "none")).get();
+
+        Map<String, Object> result = testService.backfillSummaries();
+
+        assertEquals(3L, result.get("scanned"));
+        assertEquals(1L, result.get("backfilled"));
+        assertEquals(1L, result.get("malformed"));
+        assertEquals(0, result.get("rollupsRebuilt")); // The malformed test keeps the roll-up of its user from being rebuilt
+        assertEquals(List.of("user-1"), result.get("rollupsSkipped"));
+        assertNotNull(testRepository.findStoredSummary("test-2").get().getSummary());
+
+        testRepository.deleteById("test-3");
+        assertEquals(1, testService.backfillSummaries().get("rollupsRebuilt"));
+    }
+
+    @Test
+    void mergesTheReactionTimesOfSeveralTests() throws Exception {
+        storeTestWithReactionTimes("test-1", 300L);
+        storeTestWithReactionTimes("test-2", 500L);
+
+        Map<String, ReactionTimeHistogram> merged = testService.summarizeReactionTimesForTests(List.of("test-1", "test-2"));
+
+        assertEquals(2, merged.get("1250").getCount());
+    }
+
+    @Test
+    void rejectsTooManyOrMissingTestsInAMergedSummary() throws Exception {
+        storeTestWithReactionTimes("test-1", 300L);
+
+        ResponseStatusException tooMany = assertThrows(ResponseStatusException.class,
+                () -> testService.summarizeReactionTimesForTests(Collections.nCopies(TestService.MAX_MERGED_TESTS + 1, "test-1")));
+        ResponseStatusException missing = assertThrows(ResponseStatusException.class,
+                () -> testService.summarizeReactionTimesForTests(List.of("test-1", "test-2")));
+
+        assertEquals(HttpStatus.BAD_REQUEST, tooMany.getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, missing.getStatusCode());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void storeTestWithReactionTimes(String testId, long reactionTime) throws Exception {
+        Map<String, Object> fields = TestRollupStoreTest.testFields("mode1", Timestamp.parseTimestamp("2024-05-01T10:00:00Z"), 0, 0);
+        Map<String, Object> game = new HashMap<>(((List<Map<String, Object>>) fields.get("gamesInTest")).get(0));
+        game.put("result", List.of(true));
+        game.put("reactionTimes", List.of(reactionTime));
+        game.put("intervals", List.of(1250L, 2250L, 4250L));
+        fields.put("gamesInTest", List.of(game));
+        testRepository.save(testId, fields).get();
+    }
+
+    private void storeTest(String testId, String mode, String day, int commissions, int omissions) throws Exception {
+        Map<String, Object> fields = TestRollupStoreTest.testFields(mode, Timestamp.parseTimestamp(day + "T10:00:00Z"), commissions, omissions);
+        fields.put(TestSummaryProjection.SUMMARY_FIELD, TestErrorSummary.fromRecord(TestRecord.decode(testId, fields), 0).toFirestoreMap());
+        testRepository.save(testId, fields).get();
+    }
+
+    private static List<String> testIds(List<Map<String, Object>> rows) {
+        List<String> testIds = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            testIds.add((String) row.get("testId"));
+        }
+        return testIds;
+    }
+
+    private static List<String> keys(List<Map<String, Object>> rows, String period) {
+        List<String> keys = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            keys.add(row.get(period) + " " + row.get("mode"));
+        }
+        return keys;
+    }
+}
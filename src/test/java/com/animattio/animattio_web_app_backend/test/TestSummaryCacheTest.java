@@ -0,0 +1,95 @@
+package com.animattio.animattio_web_app_backend.test;
+
+import com.google.cloud.Timestamp;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TestSummaryCacheTest {
+
+    private static final Timestamp FIRST_UPDATE = Timestamp.ofTimeSecondsAndNanos(1_700_000_000L, 0);
+    private static final Timestamp SECOND_UPDATE = Timestamp.ofTimeSecondsAndNanos(1_700_000_060L, 0);
+
+    @Test
+    void servesSummariesComputedFromTheCurrentUpdateTime() {
+        TestSummaryCache cache = new TestSummaryCache(10, 0);
+        TestSummary summary = summary("test-1");
+        cache.put("test-1", FIRST_UPDATE, summary);
+
+        assertSame(summary, cache.get("test-1", FIRST_UPDATE));
+        assertEquals(1L, cache.getStatistics().get("hits"));
+    }
+
+    @Test
+    void missesUnknownTestsAndTestsWithoutAnUpdateTime() {
+        TestSummaryCache cache = new TestSummaryCache(10, 0);
+        cache.put("test-1", null, summary("test-1")); // Could never be validated, so it is not stored
+
+        assertNull(cache.get("test-1", FIRST_UPDATE));
+        assertNull(cache.get("test-2", FIRST_UPDATE));
+        assertEquals(2L, cache.getStatistics().get("misses"));
+    }
+
+    @Test
+    void dropsSummariesOfChangedDocuments() {
+        TestSummaryCache cache = new TestSummaryCache(10, 0);
+        cache.put("test-1", FIRST_UPDATE, summary("test-1"));
+
+        assertNull(cache.get("test-1", SECOND_UPDATE));
+        assertNull(cache.get("test-1", FIRST_UPDATE)); // The stale entry was removed
+        assertEquals(1L, cache.getStatistics().get("invalidations"));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedSummary() {
+        TestSummaryCache cache = new TestSummaryCache(2, 0);
+        cache.put("test-1", FIRST_UPDATE, summary("test-1"));
+        cache.put("test-2", FIRST_UPDATE, summary("test-2"));
+        cache.get("test-1", FIRST_UPDATE); // test-2 is now the least recently used
+
+        cache.put("test-3", FIRST_UPDATE, summary("test-3"));
+
+        assertNull(cache.get("test-2", FIRST_UPDATE));
+        assertEquals("test-1", cache.get("test-1", FIRST_UPDATE).getTestId());
+        assertEquals("test-3", cache.get("test-3", FIRST_UPDATE).getTestId());
+        assertEquals(1L, cache.getStatistics().get("evictions"));
+    }
+
+    @Test
+    void removesInvalidatedSummaries() {
+        TestSummaryCache cache = new TestSummaryCache(10, 0);
+        cache.put("test-1", FIRST_UPDATE, summary("test-1"));
+
+        cache.invalidate("test-1");
+        cache.invalidate("test-2"); // Unknown tests are not counted
+
+        assertNull(cache.get("test-1", FIRST_UPDATE));
+        assertEquals(1L, cache.getStatistics().get("invalidations"));
+    }
+
+    @Test
+    void validatesEveryHitWithoutAFreshWindow() {
+        TestSummaryCache cache = new TestSummaryCache(10, 0);
+        cache.put("test-1", FIRST_UPDATE, summary("test-1"));
+
+        assertNull(cache.getFresh("test-1"));
+    }
+
+    @Test
+    void servesRecentlyValidatedSummariesWithinTheFreshWindow() {
+        TestSummaryCache cache = new TestSummaryCache(10, 60);
+        TestSummary summary = summary("test-1");
+        cache.put("test-1", FIRST_UPDATE, summary);
+
+        assertSame(summary, cache.getFresh("test-1"));
+        assertNull(cache.getFresh("test-2"));
+    }
+
+    private static TestSummary summary(String testId) {
+        TestSummary summary = new TestSummary();
+        summary.setTestId(testId);
+        return summary;
+    }
+}